@@ -0,0 +1,202 @@
+package ibraim.opengles2;
+
+// The 'eye' of a 2D scene: pan, zoom and rotate the whole thing.
+//
+// Our shaders multiply every position by uScreen, the matrix that turns pixels
+// into the -1..1 coordinates OpenGL uses (see the Triangle2d sample). The
+// camera builds that matrix, with its own movement on top. With the camera at
+// 0,0 and zoom 1 it's exactly the matrix the samples always used:
+//
+//    2/width    0          0  -1
+//    0         -2/height   0   1
+//    0          0          0   0
+//    0          0          0   1
+//
+// (the third row is all zeros: every Z ends up as 0, see 'update')
+// The matrix is only rebuilt after something changed, and 'apply' only sends
+// it to OpenGL when it's different from what the program already has.
+public class Camera2D
+{
+  private int width = 1;
+  private int height = 1;
+  private float x;
+  private float y;
+  private float zoom = 1f;
+  private float rotation;
+
+  private final Mat3 view = new Mat3();
+  private final Mat3 inverse = new Mat3();
+  private final Mat4 matrix = new Mat4();
+  private boolean dirty = true;     // the matrix must be rebuilt
+  private boolean changed = true;   // ...and sent again
+
+  // Size of the screen, in pixels. Call from onSurfaceChanged.
+  public void setViewport(int width, int height)
+  {
+    if (this.width == width && this.height == height)
+      return;
+
+    this.width = width;
+    this.height = height;
+    markDirty();
+  }
+
+  // The point of the world shown on the top-left corner (when zoom is 1)
+  public void setPosition(float x, float y)
+  {
+    if (this.x == x && this.y == y)
+      return;
+
+    this.x = x;
+    this.y = y;
+    markDirty();
+  }
+
+  public void moveBy(float dx, float dy)
+  {
+    setPosition(x + dx, y + dy);
+  }
+
+  // Bigger than 1 gets closer. The zoom is centered on the middle of the screen.
+  public void setZoom(float zoom)
+  {
+    if (zoom <= 0f)
+      throw new IllegalArgumentException("Zoom must be positive: " + zoom);
+
+    if (this.zoom == zoom)
+      return;
+
+    this.zoom = zoom;
+    markDirty();
+  }
+
+  public void zoomBy(float factor)
+  {
+    setZoom(zoom * factor);
+  }
+
+  // Rotation around the middle of the screen, in radians
+  public void setRotation(float rotation)
+  {
+    if (this.rotation == rotation)
+      return;
+
+    this.rotation = rotation;
+    markDirty();
+  }
+
+  public int getViewportWidth()
+  {
+    return width;
+  }
+
+  public int getViewportHeight()
+  {
+    return height;
+  }
+
+  public float getX()
+  {
+    return x;
+  }
+
+  public float getY()
+  {
+    return y;
+  }
+
+  public float getZoom()
+  {
+    return zoom;
+  }
+
+  public float getRotation()
+  {
+    return rotation;
+  }
+
+  private void markDirty()
+  {
+    dirty = true;
+    changed = true;
+  }
+
+  // Forget what was sent. Call when the program changes (or on a new context),
+  // so the next 'apply' sends the matrix again.
+  public void invalidate()
+  {
+    changed = true;
+  }
+
+  private void update()
+  {
+    if (!dirty)
+      return;
+
+    float cx = width / 2f;
+    float cy = height / 2f;
+
+    // world -> pixels: move, then zoom and rotate around the center of the screen
+    view.identity()
+      .translate(cx, cy)
+      .scale(zoom, zoom)
+      .rotate(rotation)
+      .translate(-cx - x, -cy - y);
+
+    // ...and the way back, for screenToWorld
+    inverse.identity()
+      .translate(cx + x, cy + y)
+      .rotate(-rotation)
+      .scale(1f / zoom, 1f / zoom)
+      .translate(-cx, -cy);
+
+    // pixels -> OpenGL: flip Y and squeeze everything into -1..1
+    float[] v = matrix.set(view).values;
+    float sx = 2f / width;
+    float sy = -2f / height;
+
+    for (int col = 0; col < 16; col += 4)
+    {
+      float w = v[col + 3];
+      v[col] = v[col] * sx - w;
+      v[col + 1] = v[col + 1] * sy + w;
+    }
+
+    // Z doesn't matter in 2D; keep it at 0, like the hand-made matrix did
+    v[10] = 0f;
+    dirty = false;
+  }
+
+  // World (the coordinates we draw with) to OpenGL coordinates
+  public Mat4 getMatrix()
+  {
+    update();
+    return matrix;
+  }
+
+  // World to pixels
+  public Mat3 getView()
+  {
+    update();
+    return view;
+  }
+
+  // Turn a point on the screen (ex: a touch) into world coordinates
+  public Vec2 screenToWorld(Vec2 point)
+  {
+    update();
+    return point.transform(inverse);
+  }
+
+  // Send the matrix to 'location' (a mat4 uniform of the program in use), if
+  // it changed since the last time. Returns true if it was sent.
+  public boolean apply(GLES gles, int location)
+  {
+    if (!changed && !dirty)
+      return false;
+
+    gles.glUniformMatrix4fv(location, 1, false, getMatrix().values, 0);
+    changed = false;
+    return true;
+  }
+}
@@ -0,0 +1,113 @@
+package ibraim.opengles2;
+
+import android.app.Activity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One entry of the demo list (see Demos).
+//
+// Besides the name and the activity, every demo declares the shaders and the
+// textures it uses. That way the Prewarmer can build them before the demo is
+// even started, instead of the demo building them while the screen stays black.
+//
+// It also keeps the 'time to first frame' of the demo: from the click on the
+// list to the first frame drawn. 'Cold' is without anything prewarmed; 'warm'
+// is with everything the Prewarmer built.
+public class Demo
+{
+  // System.nanoTime() of the click, passed to the activity
+  public static final String EXTRA_LAUNCHED_AT = "launchedAt";
+
+  private final String name;
+  private final Class<? extends Activity> activity;
+  private final List<String> vertexSources = new ArrayList<String>();
+  private final List<String> fragmentSources = new ArrayList<String>();
+  private final List<Integer> textures = new ArrayList<Integer>();
+
+  // the last time measured, 0 if never
+  private volatile long coldFirstFrameNanos;
+  private volatile long warmFirstFrameNanos;
+
+  public Demo(String name, Class<? extends Activity> activity)
+  {
+    this.name = name;
+    this.activity = activity;
+  }
+
+  // A program (vertex + fragment shader) the demo uses
+  public Demo shaders(String vertexSrc, String fragmentSrc)
+  {
+    vertexSources.add(vertexSrc);
+    fragmentSources.add(fragmentSrc);
+    return this;
+  }
+
+  // A drawable the demo loads as a texture
+  public Demo texture(int resourceId)
+  {
+    textures.add(resourceId);
+    return this;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public Class<? extends Activity> getActivity()
+  {
+    return activity;
+  }
+
+  public int getProgramCount()
+  {
+    return vertexSources.size();
+  }
+
+  public String getVertexSource(int program)
+  {
+    return vertexSources.get(program);
+  }
+
+  public String getFragmentSource(int program)
+  {
+    return fragmentSources.get(program);
+  }
+
+  public int getTextureCount()
+  {
+    return textures.size();
+  }
+
+  public int getTexture(int index)
+  {
+    return textures.get(index);
+  }
+
+  // Called by the demo, once it drew its first frame
+  public void onFirstFrame(long nanos, boolean warm)
+  {
+    if (warm)
+      warmFirstFrameNanos = nanos;
+    else
+      coldFirstFrameNanos = nanos;
+  }
+
+  public long getColdFirstFrameNanos()
+  {
+    return coldFirstFrameNanos;
+  }
+
+  public long getWarmFirstFrameNanos()
+  {
+    return warmFirstFrameNanos;
+  }
+
+  // the list shows this
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
@@ -0,0 +1,28 @@
+package ibraim.opengles2;
+
+// Every demo of the app, in the order they're listed.
+//
+// MainActivity used to find the activities by name, with reflection. Here each
+// demo is declared once, with its activity and everything it needs on the GPU,
+// so the Prewarmer knows what to build ahead of time. A new demo only needs a
+// line here (and its activity in the manifest).
+public final class Demos
+{
+  public static final Demo EPILEPSY = new Demo("Epilepsy", EpilepsyActivity.class);
+
+  public static final Demo TRIANGLE_2D = new Demo("Triangle2d", Triangle2dActivity.class)
+    .shaders(Triangle2dScene.VERTEX_SRC, Triangle2dScene.FRAGMENT_SRC);
+
+  public static final Demo TRIANGLE_COLOR = new Demo("TriangleColor", TriangleColorActivity.class)
+    .shaders(TriangleColorScene.VERTEX_SRC, TriangleColorScene.FRAGMENT_SRC);
+
+  public static final Demo TEXTURE = new Demo("Texture", TextureActivity.class)
+    .shaders(TextureScene.VERTEX_SRC, TextureScene.FRAGMENT_SRC)
+    .texture(R.drawable.skull);
+
+  public static final Demo[] ALL = {EPILEPSY, TRIANGLE_2D, TRIANGLE_COLOR, TEXTURE};
+
+  private Demos()
+  {
+  }
+}
@@ -1,18 +1,31 @@
 package ibraim.opengles2;
 
 import android.app.Activity;
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.util.Log;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
-import java.util.Random;
 
 public class EpilepsyActivity extends Activity
 {
+  // Start with '--ei fps 30' to cap the frame rate (the default, 0, draws as
+  // fast as the device can). See FramePacer.
+  public static final String EXTRA_FPS = "fps";
+
+  private static final String TAG = "EpilepsyActivity";
+
   // this is the surface where the drawing will actually occur.
   private GLSurfaceView surface;
+  private RenderScheduler scheduler;
+
+  // nothing to prewarm here, but the first frame is still timed (see Demo)
+  private boolean warm;
+
+  // What we draw. The Android part (the surface, the activity's life) is
+  // here; the drawing itself, and everything it needs, is there. See Scene.
+  private EpilepsyScene scene;
 
   @Override
   protected void onCreate(Bundle savedInstanceState)
@@ -25,6 +38,20 @@ public class EpilepsyActivity extends Activity
     surface.setEGLContextClientVersion(2);
     surface.setRenderer(new EpilepsyRenderer());
 
+    // This sample changes EVERY frame, so we really want to draw as fast
+    // as we can. The other samples draw a static image, so they only draw
+    // when something changes (take a look at RenderScheduler).
+    scheduler = new RenderScheduler(surface, true);
+
+    // ...but "as fast as we can" is also "as much battery as we can", so the
+    // frame rate can be capped (ex: '--ei fps 30'). The GL thread only starts
+    // once the surface is on screen, so the scene is there before the first
+    // callback.
+    scene = new EpilepsyScene(new AndroidGLES(), scheduler, getIntent().getIntExtra(EXTRA_FPS, 0));
+
+    scheduler.setLaunchTime(getIntent().getLongExtra(Demo.EXTRA_LAUNCHED_AT, 0));
+    warm = Prewarmer.get().isDone();
+
     // The widget (view) of our gui is the OpenGL surface.
     setContentView(surface);
   }
@@ -35,6 +62,7 @@ public class EpilepsyActivity extends Activity
     // Don't forget to RESUME the view when the app resumes
     super.onResume();
     surface.onResume();
+    scene.getLoop().start();
   }
 
   @Override
@@ -45,40 +73,45 @@ public class EpilepsyActivity extends Activity
     // totally screwing the performance and the battery life of the
     // device.
     super.onPause();
+    GameLoop<float[]> loop = scene.getLoop();
+    loop.stop();
     surface.onPause();
+    Log.d(TAG, scheduler.getFramesRendered() + " frames rendered so far");
+
+    // the update and the drawing are measured separately
+    long updates = Math.max(1, loop.getUpdateCount());
+    long frames = Math.max(1, loop.getFrameCount());
+    Log.d(TAG, loop.getUpdateCount() + " updates, " + (loop.getUpdateTimeNanos() / updates) + "ns each (" + loop.getSkippedSteps() + " skipped); " +
+      loop.getFrameCount() + " frames, " + (loop.getRenderTimeNanos() / frames) + "ns each");
+    Log.d(TAG, scene.getPacer().toString());
+
+    long firstFrame = scheduler.getTimeToFirstFrameNanos();
+    if (firstFrame > 0)
+    {
+      Demos.EPILEPSY.onFirstFrame(firstFrame, warm);
+      Log.d(TAG, "First frame after " + (firstFrame / 1000000) + "ms (" + (warm ? "warm" : "cold") + ")");
+    }
   }
 
-  // This is where the drawing logic lives
+  // The GLSurfaceView calls these on the GL thread; the scene does the drawing
   private class EpilepsyRenderer implements GLSurfaceView.Renderer
   {
-    // Random number generator used to set the background color
-    private Random r = new Random();
-
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config)
     {
-      // This method will be called EVERY TIME our application resumes.
-      // When the app pauses, the surfaces and all of the OpenGL resources
-      // are freed (textures, etc). Since we don't use anything special in
-      // this sample, we don't need to do anything.
+      scene.onContextCreated(null);
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height)
     {
-      // Called when the surface change size or right after it's created.
-      // Generally, you will set Viewport and camera options here.
-      GLES20.glViewport(0, 0, width, height);
+      scene.onSurfaceChanged(width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl)
     {
-      // This is the drawing of every app frame. Nothing really special here,
-      // We just set the clearColor to random values and clear the screen using
-      // that color.
-      GLES20.glClearColor(r.nextFloat(), r.nextFloat(), r.nextFloat(), 1.0f);
-      GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+      scene.drawFrame();
     }
   }
 }
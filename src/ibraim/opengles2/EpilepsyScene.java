@@ -0,0 +1,125 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.util.Random;
+
+// The Epilepsy sample: the whole screen, a new random color all the time.
+// EpilepsyActivity only glues it to a GLSurfaceView (see Scene).
+public class EpilepsyScene implements Scene
+{
+  // How many times per second the color changes. Try a lower value and see
+  // how the renderer blends the colors between the updates.
+  private static final int UPDATES_PER_SECOND = 60;
+
+  // All the OpenGL calls go through this object. On a device it just calls
+  // GLES20, but it could be anything (ex: a fake one, to run without a device).
+  private final GLES gles;
+  private final Frames frames;
+
+  // Holds the frame rate at the cap. If the frames keep taking too long, it
+  // halves the rate, so at least the frames we do draw arrive on time.
+  private final FramePacer pacer;
+
+  // The 'logic' of the sample (picking colors) runs on its own thread, at a
+  // fixed rate, and we only draw what it picked. See GameLoop.
+  private final GameLoop<float[]> loop = new GameLoop<float[]>(new EpilepsySimulation(), UPDATES_PER_SECOND);
+
+  // The whole 'game': every step, a new random color.
+  private static class EpilepsySimulation implements GameLoop.Simulation<float[]>
+  {
+    // Random number generator used to set the background color
+    private final Random r = new Random();
+    private float red, green, blue;
+
+    @Override
+    public float[] createSnapshot()
+    {
+      return new float[3];
+    }
+
+    @Override
+    public void update(float dt)
+    {
+      red = r.nextFloat();
+      green = r.nextFloat();
+      blue = r.nextFloat();
+    }
+
+    @Override
+    public void copyTo(float[] snapshot)
+    {
+      snapshot[0] = red;
+      snapshot[1] = green;
+      snapshot[2] = blue;
+    }
+  }
+
+  // 'fps' caps the frame rate (0: as fast as we can)
+  public EpilepsyScene(GLES gles, Frames frames, int fps)
+  {
+    this.gles = gles;
+    this.frames = frames;
+
+    // ...because "as fast as we can" is also "as much battery as we can". With
+    // a cap, the pacer makes each frame wait for its turn.
+    this.pacer = new FramePacer(fps);
+    pacer.setAdaptive(FramePacer.ADAPT_RATE, 1);
+  }
+
+  // Picks the colors; start it when the demo shows up, and stop it when it's gone
+  public GameLoop<float[]> getLoop()
+  {
+    return loop;
+  }
+
+  public FramePacer getPacer()
+  {
+    return pacer;
+  }
+
+  @Override
+  public void onContextCreated(SharedResources shared)
+  {
+    // This method will be called EVERY TIME our application resumes.
+    // When the app pauses, the surfaces and all of the OpenGL resources
+    // are freed (textures, etc). Since we don't use anything special in
+    // this sample, we don't need to do anything.
+  }
+
+  @Override
+  public void onSurfaceChanged(int width, int height)
+  {
+    // Called when the surface change size or right after it's created.
+    // Generally, you will set Viewport and camera options here.
+    gles.glViewport(0, 0, width, height);
+    frames.invalidate();
+  }
+
+  @Override
+  public void drawFrame()
+  {
+    // This is the drawing of every app frame. Nothing really special here,
+    // We just set the clearColor to the color picked by the simulation and
+    // clear the screen using that color. Since the frames and the updates
+    // don't happen at the same time, we blend the last two colors.
+    // The pacer may wait a bit first, if there's a frame rate cap.
+    pacer.beginFrame();
+    float t = loop.beginFrame();
+    float[] from = loop.getPrevious();
+    float[] to = loop.getCurrent();
+
+    gles.glClearColor(from[0] + (to[0] - from[0]) * t, from[1] + (to[1] - from[1]) * t, from[2] + (to[2] - from[2]) * t, 1.0f);
+    gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+    loop.endFrame();
+    pacer.endFrame();
+    frames.onFrameRendered();
+  }
+
+  @Override
+  public void tearDown()
+  {
+    // nothing of ours in OpenGL
+  }
+}
@@ -0,0 +1,413 @@
+package ibraim.opengles2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// ETC1 texture compression, and the PKM files that hold it.
+//
+// An RGBA texture costs 4 bytes per texel, both in memory and every time the
+// GPU reads it. ETC1 is supported by pretty much every OpenGL ES 2.0 device and
+// packs each 4x4 block of texels in 8 bytes: half a byte per texel, 8 times
+// smaller! The catch: it has no alpha channel, so images with transparency keep
+// their alpha in a SECOND ETC1 texture (the alpha goes in the gray levels) and
+// the shader puts the two together.
+//
+// How a block works: it is split in two halves (2x4 side by side, or 4x2 if
+// 'flipped'). Each half gets a base color and one of 8 'tables' of brightness
+// modifiers; each texel then picks one of the 4 modifiers of its half. That's
+// all there is to it.
+//
+// Nothing here touches Android, so the build (see tools/) uses this very class
+// to encode the drawables, and it can be checked on any JVM.
+public class Etc1
+{
+  // from the OES_compressed_ETC1_RGB8_texture extension
+  public static final String EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+  public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+  public static final int BLOCK_SIZE = 8;        // bytes per 4x4 block
+  public static final int PKM_HEADER_SIZE = 16;
+
+  private static final int PKM_ETC1_RGB_NO_MIPMAPS = 0;
+
+  // the brightness modifiers: a 'small' and a 'large' one for each table;
+  // a texel can add or subtract any of the two
+  private static final int[][] MODIFIERS =
+  {
+    {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+  };
+
+  // An ETC1 image, as read from a PKM file. 'data' is ready for glCompressedTexImage2D.
+  public static class Image
+  {
+    public final int width;
+    public final int height;
+    public final ByteBuffer data;
+
+    public Image(int width, int height, ByteBuffer data)
+    {
+      this.width = width;
+      this.height = height;
+      this.data = data;
+    }
+  }
+
+  // Bytes needed for an image of this size (blocks are always 4x4)
+  public static int getEncodedDataSize(int width, int height)
+  {
+    return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_SIZE;
+  }
+
+  // Encode an image, given as ARGB pixels (like Bitmap.getPixels or
+  // BufferedImage.getRGB). With 'alpha', the alpha channel is encoded instead
+  // of the colors. Images that aren't a multiple of 4 are padded by repeating
+  // the last row/column.
+  public static byte[] encode(int[] argb, int width, int height, boolean alpha)
+  {
+    byte[] out = new byte[getEncodedDataSize(width, height)];
+    int[] block = new int[16];
+    int offset = 0;
+
+    for (int by = 0; by < height; by += 4)
+    {
+      for (int bx = 0; bx < width; bx += 4)
+      {
+        for (int i = 0; i < 16; i++)
+        {
+          int x = Math.min(bx + (i & 3), width - 1);
+          int y = Math.min(by + (i >> 2), height - 1);
+          int p = argb[y * width + x];
+
+          if (alpha)
+          {
+            int a = p >>> 24;
+            p = (a << 16) | (a << 8) | a;
+          }
+
+          block[i] = p & 0xffffff;
+        }
+
+        encodeBlock(block, out, offset);
+        offset += BLOCK_SIZE;
+      }
+    }
+
+    return out;
+  }
+
+  // Encode 16 RGB texels (row by row) into 8 bytes.
+  // We try both ways to split the block and both ways to store the base colors,
+  // and keep whatever looks closest to the original.
+  public static void encodeBlock(int[] block, byte[] out, int offset)
+  {
+    int[] table = new int[2];
+    int[] indices = new int[16];
+    int[] bestIndices = new int[16];
+    long best = Long.MAX_VALUE;
+    long bestHigh = 0;
+
+    for (int flip = 0; flip < 2; flip++)
+    {
+      // average color of each half
+      int[] sum = new int[6];
+      for (int i = 0; i < 16; i++)
+      {
+        int half = halfOf(i, flip);
+        sum[half * 3] += (block[i] >> 16) & 0xff;
+        sum[half * 3 + 1] += (block[i] >> 8) & 0xff;
+        sum[half * 3 + 2] += block[i] & 0xff;
+      }
+
+      // 'individual' mode: two 4-bit colors
+      int[] c4 = new int[6];
+      for (int i = 0; i < 6; i++)
+        c4[i] = quantize(sum[i] / 8f, 15);
+
+      long error = encodeHalf(block, flip, 0, expand4(c4[0]), expand4(c4[1]), expand4(c4[2]), table, indices)
+        + encodeHalf(block, flip, 1, expand4(c4[3]), expand4(c4[4]), expand4(c4[5]), table, indices);
+
+      if (error < best)
+      {
+        best = error;
+        bestHigh = (c4[0] << 28) | (c4[3] << 24) | (c4[1] << 20) | (c4[4] << 16) | (c4[2] << 12) | (c4[5] << 8) |
+          (table[0] << 5) | (table[1] << 2) | flip;
+        System.arraycopy(indices, 0, bestIndices, 0, 16);
+      }
+
+      // 'differential' mode: a 5-bit color and the (small) difference to the second
+      int[] c5 = new int[6];
+      for (int i = 0; i < 6; i++)
+        c5[i] = quantize(sum[i] / 8f, 31);
+
+      int dr = c5[3] - c5[0];
+      int dg = c5[4] - c5[1];
+      int db = c5[5] - c5[2];
+
+      if (dr < -4 || dr > 3 || dg < -4 || dg > 3 || db < -4 || db > 3)
+        continue;
+
+      error = encodeHalf(block, flip, 0, expand5(c5[0]), expand5(c5[1]), expand5(c5[2]), table, indices)
+        + encodeHalf(block, flip, 1, expand5(c5[3]), expand5(c5[4]), expand5(c5[5]), table, indices);
+
+      if (error < best)
+      {
+        best = error;
+        bestHigh = (c5[0] << 27) | ((dr & 7) << 24) | (c5[1] << 19) | ((dg & 7) << 16) | (c5[2] << 11) | ((db & 7) << 8) |
+          (table[0] << 5) | (table[1] << 2) | 2 | flip;
+        System.arraycopy(indices, 0, bestIndices, 0, 16);
+      }
+    }
+
+    // the texel indices are stored column by column: the high bits first, then the low bits
+    int low = 0;
+    for (int i = 0; i < 16; i++)
+    {
+      int bit = (i & 3) * 4 + (i >> 2);
+      low |= ((bestIndices[i] >> 1) << (bit + 16)) | ((bestIndices[i] & 1) << bit);
+    }
+
+    writeInt(out, offset, (int) bestHigh);
+    writeInt(out, offset + 4, low);
+  }
+
+  // Find the best table (and the index of each texel) for one half of a block.
+  // Returns the squared error.
+  private static long encodeHalf(int[] block, int flip, int half, int r, int g, int b, int[] table, int[] indices)
+  {
+    long best = Long.MAX_VALUE;
+    int[] candidate = new int[16];
+
+    for (int t = 0; t < MODIFIERS.length; t++)
+    {
+      long error = 0;
+
+      for (int i = 0; i < 16; i++)
+      {
+        if (halfOf(i, flip) != half)
+          continue;
+
+        int pr = (block[i] >> 16) & 0xff;
+        int pg = (block[i] >> 8) & 0xff;
+        int pb = block[i] & 0xff;
+        int bestTexel = Integer.MAX_VALUE;
+
+        for (int index = 0; index < 4; index++)
+        {
+          int m = modifier(t, index);
+          int er = clamp(r + m) - pr;
+          int eg = clamp(g + m) - pg;
+          int eb = clamp(b + m) - pb;
+          int e = er * er + eg * eg + eb * eb;
+
+          if (e < bestTexel)
+          {
+            bestTexel = e;
+            candidate[i] = index;
+          }
+        }
+
+        error += bestTexel;
+      }
+
+      if (error < best)
+      {
+        best = error;
+        table[half] = t;
+
+        for (int i = 0; i < 16; i++)
+          if (halfOf(i, flip) == half)
+            indices[i] = candidate[i];
+      }
+    }
+
+    return best;
+  }
+
+  // Decode an image back to RGB pixels (0xRRGGBB), row by row. The result has
+  // the padded size, a multiple of 4. Mostly useful to see how much we lost.
+  public static int[] decode(byte[] data, int width, int height)
+  {
+    int encodedWidth = (width + 3) & ~3;
+    int encodedHeight = (height + 3) & ~3;
+    int[] rgb = new int[encodedWidth * encodedHeight];
+    int[] block = new int[16];
+    int offset = 0;
+
+    for (int by = 0; by < encodedHeight; by += 4)
+    {
+      for (int bx = 0; bx < encodedWidth; bx += 4)
+      {
+        decodeBlock(data, offset, block);
+        offset += BLOCK_SIZE;
+
+        for (int i = 0; i < 16; i++)
+          rgb[(by + (i >> 2)) * encodedWidth + bx + (i & 3)] = block[i];
+      }
+    }
+
+    return rgb;
+  }
+
+  // Decode 8 bytes into 16 RGB texels (row by row)
+  public static void decodeBlock(byte[] data, int offset, int[] block)
+  {
+    int high = readInt(data, offset);
+    int low = readInt(data, offset + 4);
+    int flip = high & 1;
+    int[] base = new int[6];
+
+    if ((high & 2) != 0)
+    {
+      int r = (high >>> 27) & 31, g = (high >>> 19) & 31, b = (high >>> 11) & 31;
+      base[0] = expand5(r);
+      base[1] = expand5(g);
+      base[2] = expand5(b);
+      base[3] = expand5(r + signed3(high >>> 24));
+      base[4] = expand5(g + signed3(high >>> 16));
+      base[5] = expand5(b + signed3(high >>> 8));
+    }
+    else
+    {
+      base[0] = expand4((high >>> 28) & 15);
+      base[3] = expand4((high >>> 24) & 15);
+      base[1] = expand4((high >>> 20) & 15);
+      base[4] = expand4((high >>> 16) & 15);
+      base[2] = expand4((high >>> 12) & 15);
+      base[5] = expand4((high >>> 8) & 15);
+    }
+
+    for (int i = 0; i < 16; i++)
+    {
+      int half = halfOf(i, flip);
+      int t = half == 0 ? (high >>> 5) & 7 : (high >>> 2) & 7;
+      int bit = (i & 3) * 4 + (i >> 2);
+      int index = (((low >>> (bit + 16)) & 1) << 1) | ((low >>> bit) & 1);
+      int m = modifier(t, index);
+
+      block[i] = (clamp(base[half * 3] + m) << 16) | (clamp(base[half * 3 + 1] + m) << 8) | clamp(base[half * 3 + 2] + m);
+    }
+  }
+
+  // Read a PKM file: a 16 byte header and the ETC1 data
+  public static Image readPkm(InputStream in) throws IOException
+  {
+    byte[] header = new byte[PKM_HEADER_SIZE];
+    readFully(in, header);
+
+    if (header[0] != 'P' || header[1] != 'K' || header[2] != 'M' || header[3] != ' ' || header[4] != '1' || header[5] != '0')
+      throw new IOException("Not a PKM file");
+
+    if (readShort(header, 6) != PKM_ETC1_RGB_NO_MIPMAPS)
+      throw new IOException("Unsupported PKM format: " + readShort(header, 6));
+
+    int encodedWidth = readShort(header, 8);
+    int encodedHeight = readShort(header, 10);
+    int width = readShort(header, 12);
+    int height = readShort(header, 14);
+
+    if (width > encodedWidth || height > encodedHeight)
+      throw new IOException("Invalid PKM size: " + width + "x" + height);
+
+    byte[] data = new byte[getEncodedDataSize(encodedWidth, encodedHeight)];
+    readFully(in, data);
+
+    // OpenGL can only read from direct buffers
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).order(ByteOrder.nativeOrder());
+    buffer.put(data).position(0);
+    return new Image(width, height, buffer);
+  }
+
+  // Write a PKM file, for data returned by 'encode'
+  public static void writePkm(OutputStream out, byte[] data, int width, int height) throws IOException
+  {
+    byte[] header = { 'P', 'K', 'M', ' ', '1', '0', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+    writeShort(header, 6, PKM_ETC1_RGB_NO_MIPMAPS);
+    writeShort(header, 8, (width + 3) & ~3);
+    writeShort(header, 10, (height + 3) & ~3);
+    writeShort(header, 12, width);
+    writeShort(header, 14, height);
+
+    out.write(header);
+    out.write(data);
+  }
+
+  // 0 for the first half of the block, 1 for the second one
+  private static int halfOf(int i, int flip)
+  {
+    return flip == 0 ? (i & 3) >> 1 : i >> 3;
+  }
+
+  // index 0 and 1 add the small/large modifier, 2 and 3 subtract them
+  private static int modifier(int table, int index)
+  {
+    int m = MODIFIERS[table][index & 1];
+    return (index & 2) == 0 ? m : -m;
+  }
+
+  private static int quantize(float value, int max)
+  {
+    return Math.max(0, Math.min(max, Math.round(value * max / 255f)));
+  }
+
+  private static int expand4(int c)
+  {
+    return (c << 4) | c;
+  }
+
+  private static int expand5(int c)
+  {
+    return (c << 3) | (c >> 2);
+  }
+
+  private static int signed3(int bits)
+  {
+    return ((bits & 7) ^ 4) - 4;
+  }
+
+  private static int clamp(int c)
+  {
+    return c < 0 ? 0 : (c > 255 ? 255 : c);
+  }
+
+  private static void readFully(InputStream in, byte[] buffer) throws IOException
+  {
+    int read = 0;
+
+    while (read < buffer.length)
+    {
+      int n = in.read(buffer, read, buffer.length - read);
+
+      if (n < 0)
+        throw new EOFException("Truncated PKM file");
+
+      read += n;
+    }
+  }
+
+  // everything in ETC1 and PKM is big endian
+  private static int readShort(byte[] b, int offset)
+  {
+    return ((b[offset] & 0xff) << 8) | (b[offset + 1] & 0xff);
+  }
+
+  private static void writeShort(byte[] b, int offset, int value)
+  {
+    b[offset] = (byte) (value >> 8);
+    b[offset + 1] = (byte) value;
+  }
+
+  private static int readInt(byte[] b, int offset)
+  {
+    return (readShort(b, offset) << 16) | readShort(b, offset + 2);
+  }
+
+  private static void writeInt(byte[] b, int offset, int value)
+  {
+    writeShort(b, offset, value >>> 16);
+    writeShort(b, offset + 2, value);
+  }
+}
@@ -0,0 +1,300 @@
+package ibraim.opengles2;
+
+import java.util.Arrays;
+
+// Keeps a continuous renderer at a steady frame rate (and no faster).
+//
+// GLSurfaceView in RENDERMODE_CONTINUOUSLY draws as fast as it can. A cap of,
+// say, 30fps looks almost the same for many scenes and uses a lot less battery.
+// Call 'beginFrame' first thing in onDrawFrame: it waits until it's time for the
+// next frame. Call 'endFrame' at the end: it checks if the frame fit in its
+// budget (1/fps seconds) and keeps a histogram of the frame times.
+//
+// When frames keep missing the budget, the adaptive mode steps down: either the
+// frame rate (60 -> 30 -> 20...) or a 'quality level' the renderer reads with
+// getLevel (ex: draw fewer things). When there's plenty of room again, it steps
+// back up.
+//
+// Time comes from a Clock, so a fake one can drive all of this without waiting.
+public class FramePacer
+{
+  // Where time comes from. The real one is SYSTEM_CLOCK.
+  public interface Clock
+  {
+    long nanoTime();
+    void sleep(long nanos) throws InterruptedException;
+  }
+
+  public static final Clock SYSTEM_CLOCK = new Clock()
+  {
+    @Override
+    public long nanoTime()
+    {
+      return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long nanos) throws InterruptedException
+    {
+      Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+    }
+  };
+
+  // adaptive modes
+  public static final int ADAPT_NONE = 0;
+  public static final int ADAPT_RATE = 1;     // divide the frame rate by (level + 1)
+  public static final int ADAPT_QUALITY = 2;  // only change the level; the renderer decides what it means
+
+  // the histogram has one bucket per millisecond; the last one is 'this or slower'
+  public static final int HISTOGRAM_BUCKETS = 100;
+
+  // without a cap, frames are still expected to fit in a 60fps budget
+  private static final int DEFAULT_BUDGET_FPS = 60;
+
+  // step down after this many misses in a window, up after this many frames with room to spare
+  private static final int WINDOW = 60;
+  private static final int MISSES_TO_STEP_DOWN = 15;
+  private static final int GOOD_FRAMES_TO_STEP_UP = 300;
+  private static final float HEADROOM = 0.6f; // 'room to spare': the frame used at most 60% of its budget
+
+  private final Clock clock;
+  private int targetFps;
+  private int mode = ADAPT_NONE;
+  private int maxLevel;
+  private int level;
+
+  private long deadline;
+  private long frameStart;
+  private long lastFrameStart;
+
+  // window of the adaptive mode
+  private int windowFrames;
+  private int windowMisses;
+  private int goodFrames;
+
+  // metrics
+  private final int[] histogram = new int[HISTOGRAM_BUCKETS];
+  private long frames;
+  private long missed;
+  private long workNanos;
+  private long sleepNanos;
+
+  public FramePacer(int targetFps)
+  {
+    this(SYSTEM_CLOCK, targetFps);
+  }
+
+  public FramePacer(Clock clock, int targetFps)
+  {
+    this.clock = clock;
+    setTargetFps(targetFps);
+  }
+
+  // 0 means no cap
+  public void setTargetFps(int targetFps)
+  {
+    if (targetFps < 0)
+      throw new IllegalArgumentException("Invalid frame rate: " + targetFps);
+
+    this.targetFps = targetFps;
+    deadline = 0;
+  }
+
+  public int getTargetFps()
+  {
+    return targetFps;
+  }
+
+  // The frame rate we're actually aiming at (the target, after the adaptive mode)
+  public int getEffectiveFps()
+  {
+    if (targetFps == 0)
+      return 0;
+
+    return mode == ADAPT_RATE ? targetFps / (level + 1) : targetFps;
+  }
+
+  // Step down (at most 'maxLevel' times) when frames keep missing their budget
+  public void setAdaptive(int mode, int maxLevel)
+  {
+    this.mode = mode;
+    this.maxLevel = mode == ADAPT_NONE ? 0 : maxLevel;
+    this.level = 0;
+    windowFrames = windowMisses = goodFrames = 0;
+  }
+
+  // 0 is full quality/rate; bigger means we stepped down
+  public int getLevel()
+  {
+    return level;
+  }
+
+  // The time a frame is allowed to take
+  public long getBudgetNanos()
+  {
+    int fps = getEffectiveFps();
+    return 1000000000L / (fps > 0 ? fps : DEFAULT_BUDGET_FPS);
+  }
+
+  // Call at the start of onDrawFrame. Waits for the next frame slot, if capped.
+  public void beginFrame()
+  {
+    long now = clock.nanoTime();
+    int fps = getEffectiveFps();
+
+    if (fps > 0)
+    {
+      long interval = 1000000000L / fps;
+
+      // the slots are kept on a fixed grid, so small delays don't add up;
+      // when we're too far behind, we start a new grid from now
+      if (deadline == 0 || now - deadline > interval)
+        deadline = now;
+
+      if (deadline > now)
+      {
+        try
+        {
+          clock.sleep(deadline - now);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+
+        long slept = clock.nanoTime();
+        sleepNanos += slept - now;
+        now = slept;
+      }
+
+      deadline += interval;
+    }
+
+    // frame time: from the start of the last frame to the start of this one
+    if (lastFrameStart != 0)
+    {
+      int bucket = (int) ((now - lastFrameStart) / 1000000);
+      histogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)]++;
+    }
+
+    lastFrameStart = now;
+    frameStart = now;
+  }
+
+  // Call at the end of onDrawFrame. Returns true if the frame fit in its budget.
+  public boolean endFrame()
+  {
+    long work = clock.nanoTime() - frameStart;
+    long budget = getBudgetNanos();
+    boolean fit = work <= budget;
+
+    frames++;
+    workNanos += work;
+
+    if (!fit)
+      missed++;
+
+    if (mode != ADAPT_NONE)
+      adapt(fit, work <= budget * HEADROOM);
+
+    return fit;
+  }
+
+  private void adapt(boolean fit, boolean roomToSpare)
+  {
+    windowFrames++;
+
+    if (!fit)
+      windowMisses++;
+
+    goodFrames = roomToSpare ? goodFrames + 1 : 0;
+
+    if (windowMisses >= MISSES_TO_STEP_DOWN && level < maxLevel)
+    {
+      setLevel(level + 1);
+      return;
+    }
+
+    if (goodFrames >= GOOD_FRAMES_TO_STEP_UP && level > 0)
+    {
+      setLevel(level - 1);
+      return;
+    }
+
+    if (windowFrames == WINDOW)
+      windowFrames = windowMisses = 0;
+  }
+
+  private void setLevel(int level)
+  {
+    this.level = level;
+    windowFrames = windowMisses = goodFrames = 0;
+    deadline = 0;
+  }
+
+  public long getFrameCount()
+  {
+    return frames;
+  }
+
+  // Frames that took longer than their budget
+  public long getMissedFrames()
+  {
+    return missed;
+  }
+
+  // Total time between beginFrame and endFrame
+  public long getWorkNanos()
+  {
+    return workNanos;
+  }
+
+  // Total time spent waiting for the next slot
+  public long getSleepNanos()
+  {
+    return sleepNanos;
+  }
+
+  // Frame times, one bucket per millisecond. Copied into 'out' (HISTOGRAM_BUCKETS long).
+  public void getHistogram(int[] out)
+  {
+    System.arraycopy(histogram, 0, out, 0, HISTOGRAM_BUCKETS);
+  }
+
+  // The frame time (in ms, rounded up to the bucket) that 'percent'% of the frames didn't go over
+  public int getPercentileMillis(float percent)
+  {
+    long total = 0;
+    for (int count : histogram)
+      total += count;
+
+    long wanted = (long) Math.ceil(total * percent / 100f);
+    long seen = 0;
+
+    for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+    {
+      seen += histogram[i];
+
+      if (seen >= wanted && seen > 0)
+        return i + 1;
+    }
+
+    return 0;
+  }
+
+  public void reset()
+  {
+    Arrays.fill(histogram, 0);
+    frames = missed = workNanos = sleepNanos = 0;
+    lastFrameStart = 0;
+    deadline = 0;
+  }
+
+  // A one-line summary, for the logs
+  @Override
+  public String toString()
+  {
+    return frames + " frames, " + missed + " over budget, level " + level + ", " + getEffectiveFps() + "fps cap; frame time p50 " +
+      getPercentileMillis(50) + "ms, p90 " + getPercentileMillis(90) + "ms, p99 " + getPercentileMillis(99) + "ms";
+  }
+}
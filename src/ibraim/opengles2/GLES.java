@@ -0,0 +1,71 @@
+package ibraim.opengles2;
+
+import java.nio.Buffer;
+
+// The OpenGL ES 2.0 calls used by the samples.
+//
+// GLES20 is a bunch of static methods, which means the only way to run a
+// renderer is on a real device, with a real context. Going through this
+// interface instead lets us swap the 'backend': AndroidGLES talks to the
+// driver, RecordingGLES just counts the calls and can run on any JVM, and
+// GLStateCache sits in the middle dropping redundant state changes.
+//
+// The methods have exactly the same names and parameters as in GLES20, and
+// the constants still come from GLES20.
+public interface GLES
+{
+  // shaders and programs
+  int glCreateShader(int type);
+  void glShaderSource(int shader, String source);
+  void glCompileShader(int shader);
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+  String glGetShaderInfoLog(int shader);
+  void glDeleteShader(int shader);
+  int glCreateProgram();
+  void glAttachShader(int program, int shader);
+  void glLinkProgram(int program);
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+  String glGetProgramInfoLog(int program);
+  void glUseProgram(int program);
+  void glDeleteProgram(int program);
+  void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+  void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+  int glGetAttribLocation(int program, String name);
+  int glGetUniformLocation(int program, String name);
+
+  // uniforms
+  void glUniform1i(int location, int x);
+  void glUniform4f(int location, float x, float y, float z, float w);
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  // buffers and vertex attributes
+  void glGenBuffers(int n, int[] buffers, int offset);
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+  void glBindBuffer(int target, int buffer);
+  void glBufferData(int target, int size, Buffer data, int usage);
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+  void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+  void glEnableVertexAttribArray(int index);
+  void glDisableVertexAttribArray(int index);
+
+  // textures
+  void glGenTextures(int n, int[] textures, int offset);
+  void glDeleteTextures(int n, int[] textures, int offset);
+  void glActiveTexture(int texture);
+  void glBindTexture(int target, int texture);
+  void glTexParameteri(int target, int pname, int param);
+  void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+  void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data);
+
+  // everything else
+  String glGetString(int name);
+  void glFinish();
+  void glBlendFunc(int sfactor, int dfactor);
+  void glEnable(int cap);
+  void glDisable(int cap);
+  void glViewport(int x, int y, int width, int height);
+  void glClearColor(float red, float green, float blue, float alpha);
+  void glClear(int mask);
+  void glDrawArrays(int mode, int first, int count);
+  void glDrawElements(int mode, int count, int type, int offset);
+}
@@ -0,0 +1,507 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+// Remembers the OpenGL state we set and drops the calls that wouldn't change it.
+//
+// OpenGL is a big state machine: once you bind a texture or enable blending, it
+// stays that way until you say otherwise. Asking the driver to do something that
+// is ALREADY done isn't free, though; every call crosses into native code and the
+// driver has to validate it. So the renderers talk to this class instead of the
+// real backend, and we only pass the state calls that really change something.
+// Everything else goes straight through.
+//
+// IMPORTANT: when the context is lost (onSurfaceCreated is called again) the
+// real state is reset, so 'invalidate' MUST be called or we would skip calls
+// that are needed.
+public class GLStateCache implements GLES
+{
+  private static final int UNKNOWN = -1;
+  private static final int MAX_TEXTURE_UNITS = 32;
+  private static final int MAX_ATTRIBS = 32;
+
+  // the capabilities we keep track of; anything else goes straight to OpenGL
+  private static final int[] CAPABILITIES =
+  {
+    GLES20.GL_BLEND, GLES20.GL_DEPTH_TEST, GLES20.GL_CULL_FACE, GLES20.GL_SCISSOR_TEST, GLES20.GL_DITHER
+  };
+
+  private final GLES backend;
+
+  private int program;
+  private int arrayBuffer;
+  private int elementBuffer;
+  private int activeTexture;
+  private final int[] textures = new int[MAX_TEXTURE_UNITS];
+  private int blendSrc;
+  private int blendDst;
+  private final int[] capabilities = new int[CAPABILITIES.length]; // UNKNOWN, 0 or 1
+  private final int[] attribs = new int[MAX_ATTRIBS];              // UNKNOWN, 0 or 1
+  private boolean clearColorKnown;
+  private float clearRed, clearGreen, clearBlue, clearAlpha;
+
+  private long issued;
+  private long skipped;
+
+  public GLStateCache(GLES backend)
+  {
+    this.backend = backend;
+    invalidate();
+  }
+
+  // Forget everything. The next call of each kind will always reach OpenGL.
+  public void invalidate()
+  {
+    program = arrayBuffer = elementBuffer = activeTexture = UNKNOWN;
+    blendSrc = blendDst = UNKNOWN;
+    Arrays.fill(textures, UNKNOWN);
+    Arrays.fill(capabilities, UNKNOWN);
+    Arrays.fill(attribs, UNKNOWN);
+    clearColorKnown = false;
+  }
+
+  @Override
+  public void glUseProgram(int program)
+  {
+    if (this.program == program)
+    {
+      skipped++;
+      return;
+    }
+
+    this.program = program;
+    issued++;
+    backend.glUseProgram(program);
+  }
+
+  @Override
+  public void glDeleteProgram(int program)
+  {
+    // deleting the current program doesn't unbind it, but its name may be
+    // reused by the next glCreateProgram
+    if (this.program == program)
+      this.program = UNKNOWN;
+
+    issued++;
+    backend.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer)
+  {
+    if (target == GLES20.GL_ARRAY_BUFFER)
+    {
+      if (arrayBuffer == buffer)
+      {
+        skipped++;
+        return;
+      }
+
+      arrayBuffer = buffer;
+    }
+    else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+    {
+      if (elementBuffer == buffer)
+      {
+        skipped++;
+        return;
+      }
+
+      elementBuffer = buffer;
+    }
+
+    issued++;
+    backend.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset)
+  {
+    // deleting a bound buffer binds 0 in its place
+    for (int i = offset; i < offset + n; i++)
+    {
+      if (arrayBuffer == buffers[i])
+        arrayBuffer = 0;
+
+      if (elementBuffer == buffers[i])
+        elementBuffer = 0;
+    }
+
+    issued++;
+    backend.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glActiveTexture(int texture)
+  {
+    if (activeTexture == texture)
+    {
+      skipped++;
+      return;
+    }
+
+    activeTexture = texture;
+    issued++;
+    backend.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture)
+  {
+    // we only track 2D textures, on the units we know about
+    int unit = activeTexture == UNKNOWN ? UNKNOWN : activeTexture - GLES20.GL_TEXTURE0;
+    boolean tracked = target == GLES20.GL_TEXTURE_2D && unit >= 0 && unit < MAX_TEXTURE_UNITS;
+
+    if (tracked)
+    {
+      if (textures[unit] == texture)
+      {
+        skipped++;
+        return;
+      }
+
+      textures[unit] = texture;
+    }
+
+    issued++;
+    backend.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset)
+  {
+    // deleting a bound texture binds 0 in its place, on every unit
+    for (int i = offset; i < offset + n; i++)
+      for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++)
+        if (this.textures[unit] == textures[i])
+          this.textures[unit] = 0;
+
+    issued++;
+    backend.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glBlendFunc(int src, int dst)
+  {
+    if (blendSrc == src && blendDst == dst)
+    {
+      skipped++;
+      return;
+    }
+
+    blendSrc = src;
+    blendDst = dst;
+    issued++;
+    backend.glBlendFunc(src, dst);
+  }
+
+  @Override
+  public void glEnable(int capability)
+  {
+    if (setCapability(capability, 1))
+    {
+      issued++;
+      backend.glEnable(capability);
+    }
+    else
+      skipped++;
+  }
+
+  @Override
+  public void glDisable(int capability)
+  {
+    if (setCapability(capability, 0))
+    {
+      issued++;
+      backend.glDisable(capability);
+    }
+    else
+      skipped++;
+  }
+
+  // returns true when the call must reach OpenGL
+  private boolean setCapability(int capability, int value)
+  {
+    for (int i = 0; i < CAPABILITIES.length; i++)
+    {
+      if (CAPABILITIES[i] == capability)
+      {
+        if (capabilities[i] == value)
+          return false;
+
+        capabilities[i] = value;
+        return true;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index)
+  {
+    if (index >= 0 && index < MAX_ATTRIBS)
+    {
+      if (attribs[index] == 1)
+      {
+        skipped++;
+        return;
+      }
+
+      attribs[index] = 1;
+    }
+
+    issued++;
+    backend.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index)
+  {
+    if (index >= 0 && index < MAX_ATTRIBS)
+    {
+      if (attribs[index] == 0)
+      {
+        skipped++;
+        return;
+      }
+
+      attribs[index] = 0;
+    }
+
+    issued++;
+    backend.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha)
+  {
+    if (clearColorKnown && clearRed == red && clearGreen == green && clearBlue == blue && clearAlpha == alpha)
+    {
+      skipped++;
+      return;
+    }
+
+    clearColorKnown = true;
+    clearRed = red;
+    clearGreen = green;
+    clearBlue = blue;
+    clearAlpha = alpha;
+    issued++;
+    backend.glClearColor(red, green, blue, alpha);
+  }
+
+  // Everything below is not cached, and goes straight to the backend
+
+  @Override
+  public int glCreateShader(int type)
+  {
+    return backend.glCreateShader(type);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String source)
+  {
+    backend.glShaderSource(shader, source);
+  }
+
+  @Override
+  public void glCompileShader(int shader)
+  {
+    backend.glCompileShader(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+  {
+    backend.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader)
+  {
+    return backend.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glDeleteShader(int shader)
+  {
+    backend.glDeleteShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram()
+  {
+    return backend.glCreateProgram();
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader)
+  {
+    backend.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program)
+  {
+    backend.glLinkProgram(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset)
+  {
+    backend.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program)
+  {
+    return backend.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+  {
+    backend.glGetActiveAttrib(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+  }
+
+  @Override
+  public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+  {
+    backend.glGetActiveUniform(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name)
+  {
+    return backend.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name)
+  {
+    return backend.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x)
+  {
+    backend.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w)
+  {
+    backend.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+  {
+    backend.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset)
+  {
+    backend.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage)
+  {
+    backend.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data)
+  {
+    backend.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+  {
+    backend.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset)
+  {
+    backend.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param)
+  {
+    backend.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+  {
+    backend.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data)
+  {
+    backend.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public String glGetString(int name)
+  {
+    return backend.glGetString(name);
+  }
+
+  @Override
+  public void glFinish()
+  {
+    backend.glFinish();
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height)
+  {
+    backend.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void glClear(int mask)
+  {
+    backend.glClear(mask);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count)
+  {
+    backend.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset)
+  {
+    backend.glDrawElements(mode, count, type, offset);
+  }
+
+  // Number of state calls that reached OpenGL
+  public long getIssuedCalls()
+  {
+    return issued;
+  }
+
+  // Number of state calls we dropped because they wouldn't change anything
+  public long getSkippedCalls()
+  {
+    return skipped;
+  }
+
+  public void resetCounters()
+  {
+    issued = skipped = 0;
+  }
+}
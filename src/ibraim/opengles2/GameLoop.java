@@ -0,0 +1,269 @@
+package ibraim.opengles2;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs the 'logic' of a scene on its own thread, at a fixed rate.
+//
+// If everything happens inside onDrawFrame, a slow update means a slow frame,
+// and the speed of the game depends on the frame rate. Here the simulation is
+// updated on a separate thread, always with the same time step (ex: 1/60s), and
+// the renderer only DRAWS what the simulation did.
+//
+// The two threads never share the live state. After every step the simulation
+// copies what the renderer needs into a 'snapshot' and publishes it. There are
+// 4 snapshots: the one being written, the two newest the renderer is drawing
+// (to interpolate between them), and a spare one that changes hands with a
+// single atomic swap. No locks, and nobody ever waits for anybody.
+//
+// Since the renderer draws 'one step in the past', the last two snapshots
+// always surround the moment being drawn, and the movement is smooth even when
+// the frame rate and the update rate don't match.
+public class GameLoop<S>
+{
+  // The logic of a scene
+  public interface Simulation<S>
+  {
+    // A new, empty snapshot. Called 4 times, up front.
+    S createSnapshot();
+
+    // Advance the simulation by 'dt' seconds. Called on the simulation thread.
+    void update(float dt);
+
+    // Copy whatever the renderer needs into 'snapshot'
+    void copyTo(S snapshot);
+  }
+
+  // when falling behind, how many steps we run in a row before giving up and
+  // skipping time (or a slow update would make us fall behind forever)
+  private static final int MAX_CATCH_UP = 5;
+
+  // set on the spare snapshot index when it holds something the renderer didn't see yet
+  private static final int FRESH = 4;
+
+  private final Simulation<S> simulation;
+  private final Object[] snapshots = new Object[4];
+  private final long[] times = new long[4]; // the moment (System.nanoTime) each snapshot shows
+
+  private final AtomicInteger spare = new AtomicInteger(0);
+  private int back = 1;     // owned by the simulation thread
+  private int previous = 2; // owned by the renderer
+  private int current = 3;  // owned by the renderer
+
+  private volatile long stepNanos;
+  private volatile boolean running;
+  private Thread thread;
+  private long frameStart;
+
+  // metrics
+  private final AtomicLong updates = new AtomicLong();
+  private final AtomicLong updateNanos = new AtomicLong();
+  private final AtomicLong skippedSteps = new AtomicLong();
+  private volatile long frames;
+  private volatile long renderNanos;
+
+  public GameLoop(Simulation<S> simulation, int updatesPerSecond)
+  {
+    this.simulation = simulation;
+    setUpdateRate(updatesPerSecond);
+
+    long now = System.nanoTime();
+    for (int i = 0; i < snapshots.length; i++)
+    {
+      snapshots[i] = simulation.createSnapshot();
+      simulation.copyTo(get(i));
+      times[i] = now;
+    }
+  }
+
+  // Can be changed at any time, even while running
+  public void setUpdateRate(int updatesPerSecond)
+  {
+    if (updatesPerSecond <= 0)
+      throw new IllegalArgumentException("Invalid update rate: " + updatesPerSecond);
+
+    stepNanos = 1000000000L / updatesPerSecond;
+  }
+
+  public int getUpdateRate()
+  {
+    return (int) (1000000000L / stepNanos);
+  }
+
+  // Start the simulation thread. Call from onResume.
+  public synchronized void start()
+  {
+    if (running)
+      return;
+
+    running = true;
+    thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        simulate();
+      }
+    }, "GameLoop");
+    thread.start();
+  }
+
+  // Stop the simulation thread, and wait for it. Call from onPause.
+  public synchronized void stop()
+  {
+    if (!running)
+      return;
+
+    running = false;
+    thread.interrupt();
+
+    try
+    {
+      thread.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+
+    thread = null;
+  }
+
+  private void simulate()
+  {
+    // the moment the current state of the simulation shows
+    long time = System.nanoTime();
+    publish(time);
+
+    while (running)
+    {
+      long step = stepNanos;
+      long now = System.nanoTime();
+      long wait = time + step - now;
+
+      if (wait > 0)
+      {
+        try
+        {
+          Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+        catch (InterruptedException e)
+        {
+          // stop() wants us out
+        }
+
+        continue;
+      }
+
+      // one step for every 'step' nanoseconds that passed, always the same dt
+      int steps = 0;
+      while (time + step <= now && steps < MAX_CATCH_UP)
+      {
+        long start = System.nanoTime();
+        simulation.update(step / 1000000000f);
+        updateNanos.addAndGet(System.nanoTime() - start);
+        updates.incrementAndGet();
+
+        time += step;
+        steps++;
+      }
+
+      // too far behind: forget about the lost time
+      if (time + step <= now)
+      {
+        skippedSteps.addAndGet((now - time) / step);
+        time = now;
+      }
+
+      publish(time);
+    }
+  }
+
+  // simulation thread: fill the back snapshot and swap it with the spare one
+  private void publish(long time)
+  {
+    simulation.copyTo(get(back));
+    times[back] = time;
+    back = spare.getAndSet(back | FRESH) & ~FRESH;
+  }
+
+  // Called by the renderer at the start of every frame. Picks up the newest
+  // snapshot (if any) and returns how far between 'getPrevious' and 'getCurrent'
+  // this frame is, from 0 to 1.
+  public float beginFrame()
+  {
+    frameStart = System.nanoTime();
+
+    // something new? it becomes the current one, and the oldest goes back
+    if ((spare.get() & FRESH) != 0)
+    {
+      int fresh = spare.getAndSet(previous) & ~FRESH;
+      previous = current;
+      current = fresh;
+    }
+
+    long from = times[previous];
+    long to = times[current];
+
+    if (to <= from)
+      return 1f;
+
+    // we draw one step in the past, so there's always a newer snapshot to go to
+    float alpha = (float) (frameStart - stepNanos - from) / (to - from);
+    return alpha < 0f ? 0f : (alpha > 1f ? 1f : alpha);
+  }
+
+  // Called by the renderer at the end of every frame
+  public void endFrame()
+  {
+    renderNanos += System.nanoTime() - frameStart;
+    frames++;
+  }
+
+  // The older of the two snapshots being drawn. Renderer only.
+  public S getPrevious()
+  {
+    return get(previous);
+  }
+
+  // The newest snapshot being drawn. Renderer only.
+  public S getCurrent()
+  {
+    return get(current);
+  }
+
+  @SuppressWarnings("unchecked")
+  private S get(int index)
+  {
+    return (S) snapshots[index];
+  }
+
+  public long getUpdateCount()
+  {
+    return updates.get();
+  }
+
+  // Total time spent in Simulation.update
+  public long getUpdateTimeNanos()
+  {
+    return updateNanos.get();
+  }
+
+  // Steps we didn't run because the simulation was too slow to keep up
+  public long getSkippedSteps()
+  {
+    return skippedSteps.get();
+  }
+
+  // Frames drawn (between beginFrame and endFrame). Renderer only.
+  public long getFrameCount()
+  {
+    return frames;
+  }
+
+  // Total time spent between beginFrame and endFrame. Renderer only.
+  public long getRenderTimeNanos()
+  {
+    return renderNanos;
+  }
+}
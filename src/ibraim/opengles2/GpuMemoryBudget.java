@@ -0,0 +1,369 @@
+package ibraim.opengles2;
+
+import java.util.Locale;
+
+// Keeps the GPU memory we use under a budget, by throwing away the textures
+// that weren't used for the longest time ('least recently used', LRU).
+//
+// Every texture and buffer we create is added here, with an estimate of its
+// size (OpenGL can't tell us). When the total goes over the budget, the oldest
+// textures are 'evicted': deleted from the GPU, and back to the placeholder. A
+// texture that was evicted is loaded again, by itself, the next time someone
+// asks for its handle (see Texture.getHandle and TextureLoader). Buffers can't
+// be rebuilt like that, so they only count: they're never evicted.
+//
+// The entries are kept in a linked list, the oldest first. Using an entry just
+// moves it to the end, so it costs nothing even if it's done for every sprite.
+// The ones used in the current frame (see 'beginFrame') are never evicted to
+// respect the budget: we'd only have to load them again right away. A budget
+// too small for a single frame is simply exceeded.
+//
+// Android also tells us when the whole system is short on memory (see
+// onTrimMemory in TextureActivity). Instead of waiting to be killed, we give
+// some of it back: the lower the level, the more we evict.
+//
+// There's no Android in here (TRIM_MEMORY_* are the values of ComponentCallbacks2),
+// so the eviction logic can be run on a plain JVM (see MemoryBudgetReport).
+// Not thread safe: use it on the GL thread only, since evicting deletes textures.
+public class GpuMemoryBudget
+{
+  // the levels of ComponentCallbacks2.onTrimMemory
+  public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+  public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+  public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+  public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+  public static final int TRIM_MEMORY_BACKGROUND = 40;
+  public static final int TRIM_MEMORY_MODERATE = 60;
+  public static final int TRIM_MEMORY_COMPLETE = 80;
+
+  // What an evictable entry is made of (a texture, for the TextureLoader)
+  public interface Evictable
+  {
+    // Delete it from the GPU. The entry is already out of the budget.
+    void evict();
+
+    // Someone wants it again: start loading it (and call setResident when done)
+    void reload();
+  }
+
+  private static final int RESIDENT = 0;
+  private static final int EVICTED = 1;
+  private static final int RELOADING = 2;
+  private static final int REMOVED = 3;
+
+  public class Entry
+  {
+    private final String name;
+    private final Evictable owner;
+    private int bytes;
+    private int state;
+    private long frame;
+    private Entry prev;
+    private Entry next;
+
+    private Entry(String name, int bytes, Evictable owner)
+    {
+      this.name = name;
+      this.bytes = bytes;
+      this.owner = owner;
+    }
+
+    // It's being used (this frame): move it to the end of the list. If it was
+    // evicted, this is where it starts to load again.
+    public void use()
+    {
+      if (state == RESIDENT)
+      {
+        hits++;
+        frame = GpuMemoryBudget.this.frame;
+
+        if (this != newest)
+        {
+          unlink(this);
+          link(this);
+        }
+      }
+      else if (state == EVICTED)
+      {
+        misses++;
+        state = RELOADING;
+        owner.reload();
+      }
+    }
+
+    // It's on the GPU (again), with this size. May evict others.
+    public void setResident(int bytes)
+    {
+      if (state == REMOVED)
+        return;
+
+      if (state == RESIDENT)
+      {
+        total += bytes - this.bytes;
+        this.bytes = bytes;
+      }
+      else
+      {
+        if (state == RELOADING)
+          reloads++;
+
+        this.bytes = bytes;
+        this.state = RESIDENT;
+        total += bytes;
+        link(this);
+      }
+
+      frame = GpuMemoryBudget.this.frame;
+      peak = Math.max(peak, total);
+      enforce();
+    }
+
+    // It was deleted for good: stop counting it
+    public void remove()
+    {
+      if (state == RESIDENT)
+      {
+        unlink(this);
+        total -= bytes;
+      }
+
+      state = REMOVED;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public int getBytes()
+    {
+      return bytes;
+    }
+
+    public boolean isResident()
+    {
+      return state == RESIDENT;
+    }
+
+    public boolean isEvicted()
+    {
+      return state == EVICTED || state == RELOADING;
+    }
+
+    // Buffers and such, that count but can't be evicted
+    public boolean isPinned()
+    {
+      return owner == null;
+    }
+  }
+
+  // the oldest and the newest entries on the GPU
+  private Entry oldest;
+  private Entry newest;
+  private int count;
+  private long total;
+  private long budget;
+  private long frame;
+
+  // metrics
+  private long hits;
+  private long misses;
+  private long reloads;
+  private long evictions;
+  private long bytesEvicted;
+  private long peak;
+  private int trims;
+
+  public GpuMemoryBudget(long budgetBytes)
+  {
+    this.budget = budgetBytes;
+  }
+
+  // Something that's already on the GPU. With no 'owner' it's never evicted.
+  public Entry add(String name, int bytes, Evictable owner)
+  {
+    Entry entry = new Entry(name, 0, owner);
+    entry.state = EVICTED;      // not counted yet
+    entry.setResident(bytes);
+    return entry;
+  }
+
+  // A new frame: whatever is used from now on is protected from the budget,
+  // and what the last frame used over it may go now
+  public void beginFrame()
+  {
+    frame++;
+    enforce();
+  }
+
+  public void setBudget(long budgetBytes)
+  {
+    this.budget = budgetBytes;
+    enforce();
+  }
+
+  private void enforce()
+  {
+    if (total > budget)
+      trim(budget, false);
+  }
+
+  // Evict the oldest textures until we're at 'target' bytes (or there's nothing
+  // left to evict). 'evenInUse' also evicts the ones used in this frame.
+  // Returns how many bytes were freed.
+  public long trim(long target, boolean evenInUse)
+  {
+    long freed = 0;
+    Entry entry = oldest;
+
+    while (entry != null && total > target)
+    {
+      Entry next = entry.next;
+
+      if (entry.owner != null && (evenInUse || entry.frame != frame))
+      {
+        unlink(entry);
+        entry.state = EVICTED;
+        total -= entry.bytes;
+        freed += entry.bytes;
+        evictions++;
+        bytesEvicted += entry.bytes;
+        entry.owner.evict();
+      }
+
+      entry = next;
+    }
+
+    return freed;
+  }
+
+  // Android is short on memory: give some back. While we're on screen, only
+  // what this frame doesn't use; once we're hidden, anything. Returns the bytes freed.
+  public long onTrimMemory(int level)
+  {
+    trims++;
+    return trim(trimTarget(level), level >= TRIM_MEMORY_UI_HIDDEN);
+  }
+
+  // How much we keep at each level
+  long trimTarget(int level)
+  {
+    if (level >= TRIM_MEMORY_MODERATE)
+      return 0;               // we're next in line to be killed
+
+    if (level >= TRIM_MEMORY_BACKGROUND)
+      return budget / 4;
+
+    if (level >= TRIM_MEMORY_UI_HIDDEN)
+      return budget / 2;      // nothing is on screen, but the user may come back
+
+    if (level >= TRIM_MEMORY_RUNNING_CRITICAL)
+      return budget / 4;
+
+    if (level >= TRIM_MEMORY_RUNNING_LOW)
+      return budget / 2;
+
+    return budget * 3 / 4;
+  }
+
+  private void link(Entry entry)
+  {
+    entry.prev = newest;
+    entry.next = null;
+
+    if (newest != null)
+      newest.next = entry;
+    else
+      oldest = entry;
+
+    newest = entry;
+    count++;
+  }
+
+  private void unlink(Entry entry)
+  {
+    if (entry.prev != null)
+      entry.prev.next = entry.next;
+    else
+      oldest = entry.next;
+
+    if (entry.next != null)
+      entry.next.prev = entry.prev;
+    else
+      newest = entry.prev;
+
+    entry.prev = entry.next = null;
+    count--;
+  }
+
+  public long getBudget()
+  {
+    return budget;
+  }
+
+  // Estimated bytes on the GPU right now, and the most there ever was
+  public long getResidentBytes()
+  {
+    return total;
+  }
+
+  public long getPeakBytes()
+  {
+    return peak;
+  }
+
+  public int getResidentCount()
+  {
+    return count;
+  }
+
+  // The name of the entry that would be evicted first (for the logs)
+  public String getOldestName()
+  {
+    for (Entry entry = oldest; entry != null; entry = entry.next)
+      if (entry.owner != null)
+        return entry.name;
+
+    return null;
+  }
+
+  // Uses of something on the GPU...
+  public long getHitCount()
+  {
+    return hits;
+  }
+
+  // ...and of something we had to load again
+  public long getMissCount()
+  {
+    return misses;
+  }
+
+  // evicted textures that made it back to the GPU
+  public long getReloadCount()
+  {
+    return reloads;
+  }
+
+  public long getEvictionCount()
+  {
+    return evictions;
+  }
+
+  public long getBytesEvicted()
+  {
+    return bytesEvicted;
+  }
+
+  public int getTrimCount()
+  {
+    return trims;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(Locale.US, "%dKB of %dKB in %d resident (peak %dKB); %d hits, %d misses, %d evictions (%dKB), %d reloads, %d trims",
+      total / 1024, budget / 1024, count, peak / 1024, hits, misses, evictions, bytesEvicted / 1024, reloads, trims);
+  }
+}
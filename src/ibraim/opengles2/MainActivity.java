@@ -1,41 +1,56 @@
 package ibraim.opengles2;
 
-import android.app.Activity;
 import android.app.ListActivity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 public class MainActivity extends ListActivity
 {
-  private final String tests[] =
-    {"Epilepsy", "Triangle2d", "TriangleColor", "Texture"};
+  // Start with '--ez prewarm false' to skip the Prewarmer, and see the 'cold'
+  // time to first frame of each demo.
+  public static final String EXTRA_PREWARM = "prewarm";
+
+  private static final String TAG = "MainActivity";
 
   /** Called when the activity is first created. */
   @Override
   public void onCreate(Bundle savedInstanceState)
   {
     super.onCreate(savedInstanceState);
-    setListAdapter(new ArrayAdapter<String>(this, android.R.layout.simple_list_item_1, tests));
+    setListAdapter(new ArrayAdapter<Demo>(this, android.R.layout.simple_list_item_1, Demos.ALL));
+
+    // while the user picks a demo, build what the demos need (see Prewarmer)
+    if (getIntent().getBooleanExtra(EXTRA_PREWARM, true))
+      Prewarmer.get().start(getApplicationContext().getResources());
+  }
+
+  @Override
+  protected void onResume()
+  {
+    super.onResume();
+
+    // back from a demo? Show how long the first frames took
+    for (Demo demo : Demos.ALL)
+      if (demo.getColdFirstFrameNanos() > 0 || demo.getWarmFirstFrameNanos() > 0)
+        Log.d(TAG, demo.getName() + ": first frame after " + (demo.getColdFirstFrameNanos() / 1000000) + "ms cold, " +
+          (demo.getWarmFirstFrameNanos() / 1000000) + "ms warm");
+
+    // ...and what the demos are sharing (see SharedResources)
+    Log.d(TAG, SharedResources.get().getInventory());
   }
 
   @Override
   protected void onListItemClick(ListView l, View v, int position, long id)
   {
     super.onListItemClick(l, v, position, id);
-    String name = tests[position];
-
-    try
-    {
-      Class c = Class.forName("ibraim.opengles2." + name + "Activity");
-      Intent i = new Intent(this, c);
-      startActivity(i);
-    }
-    catch (ClassNotFoundException e)
-    {
-      e.printStackTrace();
-    }
+    Demo demo = Demos.ALL[position];
+
+    Intent i = new Intent(this, demo.getActivity());
+    i.putExtra(Demo.EXTRA_LAUNCHED_AT, System.nanoTime());
+    startActivity(i);
   }
 }
@@ -0,0 +1,118 @@
+package ibraim.opengles2;
+
+// A 3x3 matrix: everything you need to move, rotate and scale things in 2D.
+//
+// The values are stored column by column, just like OpenGL wants them (see the
+// long explanation in the Triangle2d sample). 'translate', 'rotate' and 'scale'
+// multiply on the RIGHT, the same way the old glTranslate/glRotate/glScale did:
+// the last one you call is the first one applied to your points.
+//
+// Nothing here allocates; every method changes this matrix and returns it.
+public class Mat3
+{
+  public final float[] values = new float[9];
+
+  public Mat3()
+  {
+    identity();
+  }
+
+  public Mat3 identity()
+  {
+    float[] v = values;
+    v[0] = 1f; v[3] = 0f; v[6] = 0f;
+    v[1] = 0f; v[4] = 1f; v[7] = 0f;
+    v[2] = 0f; v[5] = 0f; v[8] = 1f;
+    return this;
+  }
+
+  public Mat3 set(Mat3 other)
+  {
+    System.arraycopy(other.values, 0, values, 0, 9);
+    return this;
+  }
+
+  // this = this * translation(tx, ty)
+  public Mat3 translate(float tx, float ty)
+  {
+    float[] v = values;
+    v[6] += v[0] * tx + v[3] * ty;
+    v[7] += v[1] * tx + v[4] * ty;
+    v[8] += v[2] * tx + v[5] * ty;
+    return this;
+  }
+
+  // this = this * rotation(radians); positive angles turn from X towards Y
+  public Mat3 rotate(float radians)
+  {
+    float c = (float) Math.cos(radians);
+    float s = (float) Math.sin(radians);
+    float[] v = values;
+
+    for (int row = 0; row < 3; row++)
+    {
+      float a = v[row];
+      float b = v[row + 3];
+      v[row] = a * c + b * s;
+      v[row + 3] = b * c - a * s;
+    }
+
+    return this;
+  }
+
+  // this = this * scaling(sx, sy)
+  public Mat3 scale(float sx, float sy)
+  {
+    float[] v = values;
+    v[0] *= sx; v[1] *= sx; v[2] *= sx;
+    v[3] *= sy; v[4] *= sy; v[5] *= sy;
+    return this;
+  }
+
+  // this = this * other. 'other' can't be this very matrix.
+  public Mat3 multiply(Mat3 other)
+  {
+    float[] v = values;
+    float[] o = other.values;
+
+    // each row of the result only depends on the same row of 'this'
+    for (int row = 0; row < 3; row++)
+    {
+      float a = v[row];
+      float b = v[row + 3];
+      float c = v[row + 6];
+      v[row] = a * o[0] + b * o[1] + c * o[2];
+      v[row + 3] = a * o[3] + b * o[4] + c * o[5];
+      v[row + 6] = a * o[6] + b * o[7] + c * o[8];
+    }
+
+    return this;
+  }
+
+  // this = other * this. 'other' can't be this very matrix.
+  public Mat3 premultiply(Mat3 other)
+  {
+    float[] v = values;
+    float[] o = other.values;
+
+    // ...and here each column only depends on the same column
+    for (int col = 0; col < 9; col += 3)
+    {
+      float a = v[col];
+      float b = v[col + 1];
+      float c = v[col + 2];
+      v[col] = o[0] * a + o[3] * b + o[6] * c;
+      v[col + 1] = o[1] * a + o[4] * b + o[7] * c;
+      v[col + 2] = o[2] * a + o[5] * b + o[8] * c;
+    }
+
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    float[] v = values;
+    return "[" + v[0] + ", " + v[3] + ", " + v[6] + "; " + v[1] + ", " + v[4] + ", " + v[7] + "; " + v[2] + ", " + v[5] + ", " + v[8] + "]";
+  }
+}
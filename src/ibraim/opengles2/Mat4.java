@@ -0,0 +1,77 @@
+package ibraim.opengles2;
+
+// A 4x4 matrix, the kind our shaders take (uniform mat4).
+//
+// In 2D we do all the math with Mat3, and only turn the result into a Mat4
+// (with 'set') to send it to OpenGL. Values are stored column by column, so
+// 'values' can go straight to glUniformMatrix4fv.
+public class Mat4
+{
+  public final float[] values = new float[16];
+
+  public Mat4()
+  {
+    identity();
+  }
+
+  public Mat4 identity()
+  {
+    for (int i = 0; i < 16; i++)
+      values[i] = i % 5 == 0 ? 1f : 0f;
+
+    return this;
+  }
+
+  public Mat4 set(Mat4 other)
+  {
+    System.arraycopy(other.values, 0, values, 0, 16);
+    return this;
+  }
+
+  // A 2D transform, leaving Z alone
+  public Mat4 set(Mat3 m)
+  {
+    float[] v = values;
+    float[] o = m.values;
+    v[0] = o[0]; v[4] = o[3]; v[8] = 0f;  v[12] = o[6];
+    v[1] = o[1]; v[5] = o[4]; v[9] = 0f;  v[13] = o[7];
+    v[2] = 0f;   v[6] = 0f;   v[10] = 1f; v[14] = 0f;
+    v[3] = o[2]; v[7] = o[5]; v[11] = 0f; v[15] = o[8];
+    return this;
+  }
+
+  // The usual orthographic projection: the given box becomes the -1..1 cube
+  public Mat4 setOrtho(float left, float right, float bottom, float top, float near, float far)
+  {
+    identity();
+    float[] v = values;
+    v[0] = 2f / (right - left);
+    v[5] = 2f / (top - bottom);
+    v[10] = -2f / (far - near);
+    v[12] = -(right + left) / (right - left);
+    v[13] = -(top + bottom) / (top - bottom);
+    v[14] = -(far + near) / (far - near);
+    return this;
+  }
+
+  // this = this * other. 'other' can't be this very matrix.
+  public Mat4 multiply(Mat4 other)
+  {
+    float[] v = values;
+    float[] o = other.values;
+
+    // each row of the result only depends on the same row of 'this'
+    for (int row = 0; row < 4; row++)
+    {
+      float a = v[row];
+      float b = v[row + 4];
+      float c = v[row + 8];
+      float d = v[row + 12];
+
+      for (int col = 0; col < 16; col += 4)
+        v[row + col] = a * o[col] + b * o[col + 1] + c * o[col + 2] + d * o[col + 3];
+    }
+
+    return this;
+  }
+}
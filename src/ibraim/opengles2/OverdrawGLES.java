@@ -0,0 +1,332 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.HashSet;
+import java.util.Set;
+
+// Shows the overdraw of a scene, on the device.
+//
+// Put this between a renderer and the real backend and every program it builds
+// gets a different fragment shader: one that ignores textures and colors and
+// only ADDS a little bit of color to the pixel, with additive blending always
+// on. Each time a pixel is drawn it gets brighter, so the screen becomes a
+// heatmap of how many times each pixel was shaded:
+//
+//    black: never, dark red: once, red: 8 times, yellow: 16, white: 32 or more
+//
+// The vertex shaders are left alone, so everything is drawn exactly where it
+// would be. Since the shaders are replaced when they're compiled, this must be
+// in place BEFORE the programs are created. For numbers instead of colors, see
+// OverdrawRasterizer.
+public class OverdrawGLES implements GLES
+{
+  // every layer adds 1/8 of red, 1/16 of green and 1/32 of blue
+  private static final String COUNTING_SHADER =
+    "precision mediump float;\n" +
+    "void main(void)\n" +
+    "{\n" +
+    "  gl_FragColor = vec4(0.125, 0.0625, 0.03125, 1.0);\n" +
+    "}";
+
+  private final GLES backend;
+  private final Set<Integer> fragmentShaders = new HashSet<Integer>();
+
+  public OverdrawGLES(GLES backend)
+  {
+    this.backend = backend;
+  }
+
+  @Override
+  public int glCreateShader(int type)
+  {
+    int shader = backend.glCreateShader(type);
+
+    if (type == GLES20.GL_FRAGMENT_SHADER)
+      fragmentShaders.add(shader);
+
+    return shader;
+  }
+
+  @Override
+  public void glShaderSource(int shader, String source)
+  {
+    // the uniforms of the original shader are gone, but setting a uniform
+    // that doesn't exist (location -1) is simply ignored by OpenGL
+    backend.glShaderSource(shader, fragmentShaders.contains(shader) ? COUNTING_SHADER : source);
+  }
+
+  @Override
+  public void glDeleteShader(int shader)
+  {
+    fragmentShaders.remove(shader);
+    backend.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glClear(int mask)
+  {
+    // start every frame from black, with our blending. Whatever the renderer
+    // asks for is ignored (see below).
+    if ((mask & GLES20.GL_COLOR_BUFFER_BIT) != 0)
+    {
+      backend.glClearColor(0f, 0f, 0f, 1f);
+      backend.glEnable(GLES20.GL_BLEND);
+      backend.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE);
+    }
+
+    backend.glClear(mask);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha)
+  {
+    // always black
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor)
+  {
+    // always additive
+  }
+
+  @Override
+  public void glEnable(int cap)
+  {
+    if (cap != GLES20.GL_BLEND)
+      backend.glEnable(cap);
+  }
+
+  @Override
+  public void glDisable(int cap)
+  {
+    // blending stays on, no matter what
+    if (cap != GLES20.GL_BLEND)
+      backend.glDisable(cap);
+  }
+
+  // Everything below goes straight to the backend
+
+  @Override
+  public void glCompileShader(int shader)
+  {
+    backend.glCompileShader(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+  {
+    backend.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader)
+  {
+    return backend.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public int glCreateProgram()
+  {
+    return backend.glCreateProgram();
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader)
+  {
+    backend.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program)
+  {
+    backend.glLinkProgram(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset)
+  {
+    backend.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program)
+  {
+    return backend.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glUseProgram(int program)
+  {
+    backend.glUseProgram(program);
+  }
+
+  @Override
+  public void glDeleteProgram(int program)
+  {
+    backend.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+  {
+    backend.glGetActiveAttrib(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+  }
+
+  @Override
+  public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+  {
+    backend.glGetActiveUniform(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name)
+  {
+    return backend.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name)
+  {
+    return backend.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x)
+  {
+    backend.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w)
+  {
+    backend.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+  {
+    backend.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset)
+  {
+    backend.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset)
+  {
+    backend.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer)
+  {
+    backend.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage)
+  {
+    backend.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data)
+  {
+    backend.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+  {
+    backend.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index)
+  {
+    backend.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index)
+  {
+    backend.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset)
+  {
+    backend.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset)
+  {
+    backend.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glActiveTexture(int texture)
+  {
+    backend.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture)
+  {
+    backend.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param)
+  {
+    backend.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+  {
+    backend.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data)
+  {
+    backend.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public String glGetString(int name)
+  {
+    return backend.glGetString(name);
+  }
+
+  @Override
+  public void glFinish()
+  {
+    backend.glFinish();
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height)
+  {
+    backend.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count)
+  {
+    backend.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset)
+  {
+    backend.glDrawElements(mode, count, type, offset);
+  }
+}
@@ -0,0 +1,169 @@
+package ibraim.opengles2;
+
+import java.util.Arrays;
+
+// Counts how many times each pixel gets drawn, without a GPU.
+//
+// Filling pixels ('fill rate') is what low-end GPUs are worst at, and every
+// time a pixel is covered again (overdraw) we pay for it once more; with
+// blending, we also pay to READ what was there. This is a tiny software
+// rasterizer that follows the same rules as OpenGL (pixel centers and the
+// 'top-left' rule, so two triangles sharing an edge never count a pixel twice)
+// but instead of colors, it keeps a counter per pixel.
+//
+// RecordingGLES feeds it every triangle it draws (see setRasterizer), so the
+// overdraw of a frame can be measured on any JVM.
+public class OverdrawRasterizer
+{
+  private int width;
+  private int height;
+  private int[] layers = new int[0];
+
+  private long fragments;
+  private long blendedFragments;
+  private int maxLayers;
+
+  // Size of the 'screen', in pixels. Clears everything.
+  public void setViewport(int width, int height)
+  {
+    if (width != this.width || height != this.height)
+    {
+      this.width = width;
+      this.height = height;
+      layers = new int[width * height];
+    }
+
+    clear();
+  }
+
+  // Start a new frame
+  public void clear()
+  {
+    Arrays.fill(layers, 0);
+    fragments = 0;
+    blendedFragments = 0;
+    maxLayers = 0;
+  }
+
+  // Fill a triangle given in window coordinates (pixels, 0,0 at the bottom-left,
+  // just like OpenGL after the viewport transform)
+  public void triangle(float x0, float y0, float x1, float y1, float x2, float y2, boolean blended)
+  {
+    float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+
+    if (area == 0f)
+      return;
+
+    // make it counter-clockwise, so 'inside' is always positive
+    if (area < 0f)
+    {
+      float tx = x1, ty = y1;
+      x1 = x2; y1 = y2;
+      x2 = tx; y2 = ty;
+    }
+
+    int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+    int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+    int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+    int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+
+    boolean topLeft0 = isTopLeft(x1, y1, x2, y2);
+    boolean topLeft1 = isTopLeft(x2, y2, x0, y0);
+    boolean topLeft2 = isTopLeft(x0, y0, x1, y1);
+
+    for (int py = minY; py <= maxY; py++)
+    {
+      float cy = py + 0.5f;
+
+      for (int px = minX; px <= maxX; px++)
+      {
+        float cx = px + 0.5f;
+
+        // a pixel is inside when its center is on the inner side of the 3 edges;
+        // centers exactly ON an edge only count for top and left edges
+        if (inside(edge(x1, y1, x2, y2, cx, cy), topLeft0) && inside(edge(x2, y2, x0, y0, cx, cy), topLeft1) && inside(edge(x0, y0, x1, y1, cx, cy), topLeft2))
+        {
+          int count = ++layers[py * width + px];
+
+          if (count > maxLayers)
+            maxLayers = count;
+
+          fragments++;
+
+          if (blended)
+            blendedFragments++;
+        }
+      }
+    }
+  }
+
+  private static float edge(float ax, float ay, float bx, float by, float px, float py)
+  {
+    return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+  }
+
+  // for a counter-clockwise triangle, with Y going up
+  private static boolean isTopLeft(float ax, float ay, float bx, float by)
+  {
+    return by < ay || (by == ay && bx < ax);
+  }
+
+  private static boolean inside(float e, boolean topLeft)
+  {
+    return e > 0f || (e == 0f && topLeft);
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  // How many times each pixel was drawn, row by row from the bottom. This is
+  // the heatmap; don't change it.
+  public int[] getLayers()
+  {
+    return layers;
+  }
+
+  // Pixels drawn (counting every time) since the last clear
+  public long getFragments()
+  {
+    return fragments;
+  }
+
+  // ...of those, how many were blended
+  public long getBlendedFragments()
+  {
+    return blendedFragments;
+  }
+
+  // The most times a single pixel was drawn
+  public int getMaxLayers()
+  {
+    return maxLayers;
+  }
+
+  // Average times each pixel of the screen was drawn. 1 means we filled the
+  // screen exactly once.
+  public float getAverageLayers()
+  {
+    return layers.length == 0 ? 0f : (float) fragments / layers.length;
+  }
+
+  // Average times each pixel was drawn, only counting pixels drawn at least once
+  public float getAverageCoveredLayers()
+  {
+    int covered = 0;
+
+    for (int count : layers)
+      if (count > 0)
+        covered++;
+
+    return covered == 0 ? 0f : (float) fragments / covered;
+  }
+}
@@ -0,0 +1,260 @@
+package ibraim.opengles2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Builds the vertices of lots of sprites using every core of the device.
+//
+// The SpriteBatch writes each sprite's vertices as it's drawn, on the GL
+// thread. With tens of thousands of sprites (and some math for each: they're
+// rotated) that alone takes most of the frame, while the other cores do
+// nothing. Here the sprites are given all at once, as an array, and split in
+// equal slices, one per thread. Each thread turns its sprites into quads and
+// writes them straight into its own part of one big direct buffer: no thread
+// ever writes where another one does, so there's nothing to lock, and the
+// result is the same no matter how many threads we use.
+//
+// The threads are started once, in the constructor, and wait for work; the GL
+// thread does the first slice itself, and then waits for the others. Nothing is
+// allocated on 'build'.
+//
+// Each sprite is INPUT_FLOATS floats: X, Y (top-left corner), width, height,
+// angle (radians, around the center) and the U0, V0, U1, V1 of the texture.
+// The vertices are in the SpriteBatch layout (see its draw with a FloatBuffer).
+public class ParallelSpriteBuilder
+{
+  public static final int INPUT_FLOATS = 9;
+  public static final int FLOATS_PER_SPRITE = 16;  // 4 vertices of X, Y, U, V
+
+  // a slice smaller than this isn't worth waking a thread for
+  private static final int MIN_SPRITES_PER_THREAD = 512;
+
+  // each thread builds this many sprites in a local array, then copies them
+  private static final int CHUNK_SPRITES = 128;
+
+  // how long a thread spins, checking for work, before sleeping. With a single
+  // core there's no point: whoever we're waiting for can't run while we spin.
+  private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 2000 : 0;
+
+  private final int capacity;
+  private final FloatBuffer vertices;
+  private final Worker[] workers;
+  private final Worker caller;
+
+  // the current job. Written before each worker's 'job' (volatile), read after it.
+  private float[] input;
+  private int count;
+  private int active;
+  private int generation;
+  private volatile boolean running = true;
+
+  // workers still busy; the last one wakes up the caller
+  private final AtomicInteger pending = new AtomicInteger();
+  private volatile Thread waiting;
+
+  private long lastBuildNanos;
+
+  // One slice of the job, and what it needs to build it
+  private class Worker implements Runnable
+  {
+    final int index;
+    final FloatBuffer view;   // the same memory, with its own position
+    final float[] chunk = new float[CHUNK_SPRITES * FLOATS_PER_SPRITE];
+    Thread thread;
+
+    // bumped by the caller when this worker has a slice to build. Only the
+    // workers needed get one, so a worker never looks at a job that isn't its.
+    volatile int job;
+
+    Worker(int index)
+    {
+      this.index = index;
+      this.view = vertices.duplicate();
+    }
+
+    @Override
+    public void run()
+    {
+      int seen = 0;
+
+      while (true)
+      {
+        // wait for a new job: spin a bit (a frame is coming soon), then sleep
+        int spins = 0;
+
+        while (job == seen && running)
+        {
+          if (++spins > SPINS)
+            LockSupport.park(this);
+        }
+
+        if (!running)
+          return;
+
+        seen = job;
+        buildSlice(this);
+
+        if (pending.decrementAndGet() == 0)
+          LockSupport.unpark(waiting);
+      }
+    }
+  }
+
+  // 'capacity' is the most sprites a build can have, 'threads' how many
+  // threads share the work (the calling one included)
+  public ParallelSpriteBuilder(int capacity, int threads)
+  {
+    if (capacity <= 0)
+      throw new IllegalArgumentException("Invalid sprite builder capacity: " + capacity);
+
+    if (threads <= 0)
+      throw new IllegalArgumentException("Invalid number of threads: " + threads);
+
+    this.capacity = capacity;
+    this.vertices = ByteBuffer.allocateDirect(capacity * FLOATS_PER_SPRITE * VertexBuffer.FLOAT_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+    caller = new Worker(0);
+    workers = new Worker[threads - 1];
+
+    for (int i = 0; i < workers.length; i++)
+    {
+      workers[i] = new Worker(i + 1);
+      Thread t = new Thread(workers[i], "SpriteBuilder-" + (i + 1));
+      t.setDaemon(true);
+      workers[i].thread = t;
+      t.start();
+    }
+  }
+
+  // As many threads as the device has cores
+  public ParallelSpriteBuilder(int capacity)
+  {
+    this(capacity, Runtime.getRuntime().availableProcessors());
+  }
+
+  // Build the vertices of the first 'count' sprites of 'sprites' (see
+  // INPUT_FLOATS). Returns them from position 0 to the limit; they're only good
+  // until the next build.
+  public FloatBuffer build(float[] sprites, int count)
+  {
+    if (count > capacity)
+      throw new IllegalArgumentException("Too many sprites: " + count + ", capacity " + capacity);
+
+    if (!running)
+      throw new IllegalStateException("ParallelSpriteBuilder was shut down");
+
+    long start = System.nanoTime();
+    int threads = Math.max(1, Math.min(workers.length + 1, count / MIN_SPRITES_PER_THREAD));
+
+    input = sprites;
+    this.count = count;
+    active = threads;
+    waiting = Thread.currentThread();
+    pending.set(threads - 1);
+
+    // publishes everything above to the workers we need
+    generation++;
+
+    for (int i = 0; i < threads - 1; i++)
+    {
+      workers[i].job = generation;
+      LockSupport.unpark(workers[i].thread);
+    }
+
+    buildSlice(caller);
+
+    int spins = 0;
+
+    while (pending.get() > 0)
+    {
+      if (++spins > SPINS)
+        LockSupport.park(this);
+    }
+
+    lastBuildNanos = System.nanoTime() - start;
+
+    vertices.limit(count * FLOATS_PER_SPRITE);
+    vertices.position(0);
+    return vertices;
+  }
+
+  // Turn the sprites of this worker's slice into quads
+  private void buildSlice(Worker worker)
+  {
+    int first = (int) ((long) count * worker.index / active);
+    int last = (int) ((long) count * (worker.index + 1) / active);
+
+    float[] in = input;
+    float[] v = worker.chunk;
+    FloatBuffer out = worker.view;
+    out.limit(out.capacity());
+    out.position(first * FLOATS_PER_SPRITE);
+
+    for (int s = first; s < last; s += CHUNK_SPRITES)
+    {
+      int n = Math.min(CHUNK_SPRITES, last - s);
+
+      for (int k = 0, j = s * INPUT_FLOATS, i = 0; k < n; k++, j += INPUT_FLOATS, i += FLOATS_PER_SPRITE)
+      {
+        float hw = in[j + 2] / 2, hh = in[j + 3] / 2;
+        float cx = in[j] + hw, cy = in[j + 1] + hh;
+        float angle = in[j + 4];
+        float u0 = in[j + 5], v0 = in[j + 6], u1 = in[j + 7], v1 = in[j + 8];
+
+        // the corners, from the center: (-hw, -hh) is V1, the top-left one
+        float ax, ay, bx, by;
+
+        if (angle == 0f)
+        {
+          ax = hw;
+          ay = 0f;
+          bx = 0f;
+          by = hh;
+        }
+        else
+        {
+          float cos = (float) Math.cos(angle), sin = (float) Math.sin(angle);
+          ax = hw * cos;
+          ay = hw * sin;
+          bx = -hh * sin;
+          by = hh * cos;
+        }
+
+        v[i]      = cx - ax - bx; v[i + 1]  = cy - ay - by; v[i + 2]  = u0; v[i + 3]  = v0; // V1
+        v[i + 4]  = cx - ax + bx; v[i + 5]  = cy - ay + by; v[i + 6]  = u0; v[i + 7]  = v1; // V2
+        v[i + 8]  = cx + ax - bx; v[i + 9]  = cy + ay - by; v[i + 10] = u1; v[i + 11] = v0; // V3
+        v[i + 12] = cx + ax + bx; v[i + 13] = cy + ay + by; v[i + 14] = u1; v[i + 15] = v1; // V4
+      }
+
+      out.put(v, 0, n * FLOATS_PER_SPRITE);
+    }
+  }
+
+  // Stop the threads. The builder can't be used after this.
+  public void shutdown()
+  {
+    running = false;
+
+    for (Worker worker : workers)
+      LockSupport.unpark(worker.thread);
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  public int getThreadCount()
+  {
+    return workers.length + 1;
+  }
+
+  // Time taken by the last build, waiting for the other threads included
+  public long getLastBuildNanos()
+  {
+    return lastBuildNanos;
+  }
+}
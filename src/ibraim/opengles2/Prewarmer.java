@@ -0,0 +1,241 @@
+package ibraim.opengles2;
+
+import android.content.res.Resources;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// Builds the programs and textures of every demo before they're needed.
+//
+// A demo can only compile its shaders and upload its textures once its surface
+// exists, and that's exactly when the user is staring at a black screen. But
+// OpenGL contexts can SHARE objects (programs, shaders, textures, buffers):
+// anything made in one is visible in the others.
+//
+// So, while the user is still looking at the list, 'start' creates a tiny
+// off-screen context on a background thread and builds everything the demos
+// declared (see Demos), putting it in SharedResources. Each demo asks its
+// GLSurfaceView to create its context through 'newContextFactory', sharing
+// with ours, and ProgramCache and TextureLoader take the ready objects from
+// SharedResources instead of building them again.
+//
+// Our context is never destroyed, so the objects live as long as the process.
+// If sharing doesn't work on a device, the demos just build everything as usual.
+// If it worked before and suddenly doesn't, our context was lost: we start
+// over, and SharedResources rebuilds what the demos ask for.
+public class Prewarmer
+{
+  private static final String TAG = "Prewarmer";
+
+  // not in EGL10
+  private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+  private static final int EGL_OPENGL_ES2_BIT = 4;
+
+  private static final Prewarmer instance = new Prewarmer();
+
+  private Resources resources;
+  private volatile EGLContext context;
+  private boolean started;
+  private volatile boolean done;
+  private volatile boolean sharedOnce;
+  private volatile long prewarmNanos;
+
+  public static Prewarmer get()
+  {
+    return instance;
+  }
+
+  private Prewarmer()
+  {
+  }
+
+  // Start building, in the background. Only the first call does anything.
+  public synchronized void start(final Resources resources)
+  {
+    if (started)
+      return;
+
+    started = true;
+    this.resources = resources;
+
+    Thread thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        prewarm(resources);
+      }
+    }, "Prewarmer");
+
+    thread.setDaemon(true);
+    thread.setPriority(Thread.NORM_PRIORITY - 1);
+    thread.start();
+  }
+
+  private void prewarm(Resources resources)
+  {
+    long start = System.nanoTime();
+    EGL10 egl = (EGL10) EGLContext.getEGL();
+    EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+
+    // we never call eglTerminate: the display is shared with every GLSurfaceView
+    if (!egl.eglInitialize(display, new int[2]))
+    {
+      Log.e(TAG, "Unable to initialize EGL: " + egl.eglGetError());
+      return;
+    }
+
+    // any ES 2.0 config with a pbuffer will do; we never draw anything
+    int[] configAttributes = {EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT, EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT, EGL10.EGL_NONE};
+    EGLConfig[] configs = new EGLConfig[1];
+    int[] count = new int[1];
+
+    if (!egl.eglChooseConfig(display, configAttributes, configs, 1, count) || count[0] == 0)
+    {
+      Log.e(TAG, "No EGL config for an off-screen context: " + egl.eglGetError());
+      return;
+    }
+
+    EGLContext created = egl.eglCreateContext(display, configs[0], EGL10.EGL_NO_CONTEXT, new int[] {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE});
+    EGLSurface surface = egl.eglCreatePbufferSurface(display, configs[0], new int[] {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE});
+
+    if (created == null || created == EGL10.EGL_NO_CONTEXT || surface == null || surface == EGL10.EGL_NO_SURFACE ||
+      !egl.eglMakeCurrent(display, surface, surface, created))
+    {
+      Log.e(TAG, "Unable to create an off-screen context: " + egl.eglGetError());
+      return;
+    }
+
+    // build everything, and let go of it right away: nobody is using it yet,
+    // but SharedResources keeps it for the demos
+    GLES gles = new AndroidGLES();
+    SharedResources shared = SharedResources.get();
+    ProgramCache cache = new ProgramCache(gles);
+    TextureLoader loader = new TextureLoader(gles, resources, Integer.MAX_VALUE);
+    cache.setSharedResources(shared);
+    loader.setSharedResources(shared);
+    loader.onContextCreated();
+
+    for (Demo demo : Demos.ALL)
+    {
+      for (int i = 0; i < demo.getProgramCount(); i++)
+        cache.get(demo.getVertexSource(i), demo.getFragmentSource(i));
+
+      for (int i = 0; i < demo.getTextureCount(); i++)
+        loader.load(demo.getTexture(i));
+    }
+
+    // the textures are decoded on the loader's own thread; we upload them
+    // here, as they arrive
+    while (loader.getQueueDepth() > 0)
+    {
+      if (!loader.uploadPending())
+      {
+        try
+        {
+          Thread.sleep(1);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+
+    cache.release();
+    loader.release();
+
+    // everything must be done before another context uses it, and our context
+    // must not be current anywhere
+    gles.glFinish();
+    egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+    egl.eglDestroySurface(display, surface);
+
+    context = created;
+    prewarmNanos = System.nanoTime() - start;
+    done = true;
+
+    Log.d(TAG, "Ready in " + (prewarmNanos / 1000000) + "ms; " + shared.getInventory());
+  }
+
+  // Our context was lost (and everything in it): build it all again
+  private synchronized void restart()
+  {
+    if (!done)
+      return;
+
+    done = false;
+    started = false;
+    sharedOnce = false;
+    SharedResources.get().onContextLost();
+    start(resources);
+  }
+
+  // Is everything built?
+  public boolean isDone()
+  {
+    return done;
+  }
+
+  public long getPrewarmTimeNanos()
+  {
+    return prewarmNanos;
+  }
+
+  // Creates contexts that share objects with ours. Set it on the GLSurfaceView
+  // (before setRenderer) and check 'isShared' in onSurfaceCreated.
+  public ContextFactory newContextFactory()
+  {
+    return new ContextFactory();
+  }
+
+  public class ContextFactory implements GLSurfaceView.EGLContextFactory
+  {
+    private volatile boolean shared;
+
+    @Override
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config)
+    {
+      int[] attributes = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
+      EGLContext created = null;
+
+      if (done)
+        created = egl.eglCreateContext(display, config, context, attributes);
+
+      shared = created != null && created != EGL10.EGL_NO_CONTEXT;
+
+      if (shared)
+        sharedOnce = true;
+      else
+      {
+        // it worked before, so it's our context that is gone
+        if (done && sharedOnce)
+          restart();
+
+        // not ready yet, or this device won't share: a context of our own, then
+        created = egl.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, attributes);
+      }
+
+      return created;
+    }
+
+    @Override
+    public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context)
+    {
+      if (!egl.eglDestroyContext(display, context))
+        Log.e(TAG, "Unable to destroy a context: " + egl.eglGetError());
+    }
+
+    // Does the last context we created share objects with the Prewarmer's?
+    public boolean isShared()
+    {
+      return shared;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package ibraim.opengles2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps the compiled programs around, so the same shaders are never built twice.
+//
+// Compiling and linking is by far the slowest thing a renderer does during
+// setup, and the result is good for as long as the OpenGL context lives. The
+// samples used to throw everything away and recompile on every onSurfaceChanged,
+// even on a simple rotation where the context is still perfectly fine.
+//
+// A program is found by its pair of sources: the vertex and the fragment
+// shader, as a single string. The only time the cache is emptied is when the
+// context is lost ('onContextLost', from onSurfaceCreated) or when we're done
+// with it ('release', on the GL thread).
+//
+// When the context shares its objects with the Prewarmer's, the programs come
+// from SharedResources instead: built once for the whole process, and most
+// likely already there (the Prewarmer or another demo built them).
+public class ProgramCache
+{
+  private final GLES gles;
+  private final Map<String, ShaderProgram> programs = new HashMap<String, ShaderProgram>();
+  private SharedResources resources;
+
+  private int hits;
+  private int misses;
+  private int shared;
+  private long compileNanos;
+  private long linkNanos;
+
+  public ProgramCache(GLES gles)
+  {
+    this.gles = gles;
+  }
+
+  public ShaderProgram get(String vertexSrc, String fragmentSrc)
+  {
+    String key = key(vertexSrc, fragmentSrc);
+    ShaderProgram program = programs.get(key);
+
+    if (program != null)
+    {
+      hits++;
+      return program;
+    }
+
+    if (resources != null)
+    {
+      program = resources.acquireProgram(gles, vertexSrc, fragmentSrc);
+      programs.put(key, program);
+      shared++;
+      return program;
+    }
+
+    program = new ShaderProgram(gles, vertexSrc, fragmentSrc);
+    programs.put(key, program);
+
+    misses++;
+    compileNanos += program.getCompileTimeNanos();
+    linkNanos += program.getLinkTimeNanos();
+    return program;
+  }
+
+  private static String key(String vertexSrc, String fragmentSrc)
+  {
+    return vertexSrc + '\0' + fragmentSrc;
+  }
+
+  // Get the programs from SharedResources. Only do this when the context
+  // really shares objects with the Prewarmer's (see Prewarmer.ContextFactory);
+  // pass null to build everything here.
+  public void setSharedResources(SharedResources resources)
+  {
+    this.resources = resources;
+  }
+
+  // The context is gone, and so are the programs. Don't delete anything
+  // (the handles mean nothing now), just forget about them. The shared ones
+  // are still counted by SharedResources, though, so we let go of them.
+  public void onContextLost()
+  {
+    for (ShaderProgram program : programs.values())
+      if (program.isShared())
+        program.tearDown();
+
+    programs.clear();
+  }
+
+  // Delete every program. Must run on the GL thread.
+  public void release()
+  {
+    for (ShaderProgram program : programs.values())
+      program.tearDown();
+
+    programs.clear();
+  }
+
+  public int getHits()
+  {
+    return hits;
+  }
+
+  // every miss is a compile + link
+  public int getMisses()
+  {
+    return misses;
+  }
+
+  // programs taken from SharedResources
+  public int getShared()
+  {
+    return shared;
+  }
+
+  // Total time spent compiling shaders since this cache was created
+  public long getCompileTimeNanos()
+  {
+    return compileNanos;
+  }
+
+  // Total time spent linking programs since this cache was created
+  public long getLinkTimeNanos()
+  {
+    return linkNanos;
+  }
+}
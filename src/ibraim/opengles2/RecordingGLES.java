@@ -0,0 +1,708 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A fake OpenGL that draws nothing and only keeps score.
+//
+// Nothing here touches Android (the GLES20 constants are compiled into this
+// class), so a renderer running on top of it works on a plain JVM, without a
+// device or a context. Handy to measure how much work a frame costs on the CPU
+// side and how many calls it makes.
+//
+// Every 'gen'/'create' call returns a new name, every compile and link succeeds,
+// and the attributes/uniforms of a program are taken from its shader sources
+// (only the lines a simple #define/#ifdef/#else/#endif pass leaves in), so
+// ShaderProgram finds its locations just like it would on a device.
+// The per-frame calls don't allocate anything.
+//
+// With a rasterizer (see setRasterizer) it goes one step further and actually
+// 'draws' the triangles, to measure overdraw. It keeps a copy of the buffers
+// and runs the vertex shader the way all our samples write it: the
+// 'aPosition' attribute (2 components, of any VertexFormat type), multiplied
+// by the 'uScreen' matrix.
+public class RecordingGLES implements GLES
+{
+  private static final Pattern DECLARATION = Pattern.compile("\\b(attribute|uniform)\\s+(?:\\w+\\s+)?\\w+\\s+(\\w+)");
+  private static final int MAX_ATTRIBS = 32;
+
+  private long calls;
+  private long drawCalls;
+  private long vertices;
+  private long bytesUploaded;
+  private int nextName = 1;
+
+  private final Map<Integer, String> shaderSources = new HashMap<Integer, String>();
+  private final Map<Integer, List<Integer>> programShaders = new HashMap<Integer, List<Integer>>();
+  private final Map<Integer, List<String>> programAttributes = new HashMap<Integer, List<String>>();
+  private final Map<Integer, List<String>> programUniforms = new HashMap<Integer, List<String>>();
+
+  // what the rasterizer needs to know
+  private OverdrawRasterizer rasterizer;
+  private final Map<Integer, ByteBuffer> bufferData = new HashMap<Integer, ByteBuffer>();
+  private final Map<Integer, float[]> screenMatrices = new HashMap<Integer, float[]>();
+  private int currentProgram;
+  private int arrayBuffer;
+  private int elementBuffer;
+  private boolean blend;
+  private int viewportWidth;
+  private int viewportHeight;
+  private final int[] attribBuffer = new int[MAX_ATTRIBS];
+  private final int[] attribSize = new int[MAX_ATTRIBS];
+  private final int[] attribType = new int[MAX_ATTRIBS];
+  private final int[] attribStride = new int[MAX_ATTRIBS];
+  private final int[] attribOffset = new int[MAX_ATTRIBS];
+  private final boolean[] attribNormalized = new boolean[MAX_ATTRIBS];
+  private final float[] window = new float[6];
+
+  // Draw every triangle on 'rasterizer' (or stop, with null). Set it before
+  // creating the buffers: only the ones created afterwards can be drawn.
+  public void setRasterizer(OverdrawRasterizer rasterizer)
+  {
+    this.rasterizer = rasterizer;
+
+    if (rasterizer != null && viewportWidth > 0)
+      rasterizer.setViewport(viewportWidth, viewportHeight);
+  }
+
+  public OverdrawRasterizer getRasterizer()
+  {
+    return rasterizer;
+  }
+
+  // Total number of calls, of any kind
+  public long getCallCount()
+  {
+    return calls;
+  }
+
+  // Number of glDrawArrays/glDrawElements calls
+  public long getDrawCallCount()
+  {
+    return drawCalls;
+  }
+
+  // Number of vertices (or indices) sent by the draw calls
+  public long getVertexCount()
+  {
+    return vertices;
+  }
+
+  // Bytes sent with glBufferData, glBufferSubData and glTexImage2D (or its compressed version)
+  public long getBytesUploaded()
+  {
+    return bytesUploaded;
+  }
+
+  public void resetCounters()
+  {
+    calls = drawCalls = vertices = bytesUploaded = 0;
+  }
+
+  @Override
+  public int glCreateShader(int type)
+  {
+    calls++;
+    return nextName++;
+  }
+
+  @Override
+  public void glShaderSource(int shader, String source)
+  {
+    calls++;
+    shaderSources.put(shader, source);
+  }
+
+  @Override
+  public void glCompileShader(int shader)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+  {
+    calls++;
+    params[offset] = pname == GLES20.GL_COMPILE_STATUS ? GLES20.GL_TRUE : 0;
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader)
+  {
+    calls++;
+    return "";
+  }
+
+  @Override
+  public void glDeleteShader(int shader)
+  {
+    calls++;
+    shaderSources.remove(shader);
+  }
+
+  @Override
+  public int glCreateProgram()
+  {
+    calls++;
+    int program = nextName++;
+    programShaders.put(program, new ArrayList<Integer>());
+    return program;
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader)
+  {
+    calls++;
+    programShaders.get(program).add(shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program)
+  {
+    calls++;
+
+    // 'link' the program: collect the declarations of all its shaders
+    List<String> attributes = new ArrayList<String>();
+    List<String> uniforms = new ArrayList<String>();
+
+    for (int shader : programShaders.get(program))
+    {
+      Matcher m = DECLARATION.matcher(preprocess(shaderSources.get(shader)));
+
+      while (m.find())
+      {
+        List<String> names = m.group(1).equals("attribute") ? attributes : uniforms;
+
+        if (!names.contains(m.group(2)))
+          names.add(m.group(2));
+      }
+    }
+
+    programAttributes.put(program, attributes);
+    programUniforms.put(program, uniforms);
+  }
+
+  // The lines of 'source' the GLSL preprocessor would keep, for the
+  // #ifdef/#ifndef/#else/#endif blocks (see ShaderVariants). Nothing fancier.
+  private static String preprocess(String source)
+  {
+    if (source.indexOf('#') < 0)
+      return source;
+
+    List<String> defined = new ArrayList<String>();
+    List<Boolean> active = new ArrayList<Boolean>();
+    StringBuilder sb = new StringBuilder();
+    boolean on = true;
+
+    for (String line : source.split("\n"))
+    {
+      String[] words = line.trim().split("\\s+");
+
+      if (words[0].equals("#ifdef") || words[0].equals("#ifndef"))
+      {
+        active.add(on);
+        on = on && (defined.contains(words[1]) == words[0].equals("#ifdef"));
+      }
+      else if (words[0].equals("#else"))
+        on = active.get(active.size() - 1) && !on;
+      else if (words[0].equals("#endif"))
+        on = active.remove(active.size() - 1);
+      else if (on && words[0].equals("#define"))
+        defined.add(words[1]);
+      else if (on)
+        sb.append(line).append('\n');
+    }
+
+    return sb.toString();
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset)
+  {
+    calls++;
+
+    switch (pname)
+    {
+      case GLES20.GL_LINK_STATUS:
+        params[offset] = GLES20.GL_TRUE;
+        break;
+      case GLES20.GL_ACTIVE_ATTRIBUTES:
+        params[offset] = programAttributes.get(program).size();
+        break;
+      case GLES20.GL_ACTIVE_UNIFORMS:
+        params[offset] = programUniforms.get(program).size();
+        break;
+      case GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH:
+        params[offset] = maxLength(programAttributes.get(program));
+        break;
+      case GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+        params[offset] = maxLength(programUniforms.get(program));
+        break;
+      default:
+        params[offset] = 0;
+    }
+  }
+
+  private static int maxLength(List<String> names)
+  {
+    int max = 0;
+
+    for (String name : names)
+      max = Math.max(max, name.length() + 1); // the terminating zero
+
+    return max;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program)
+  {
+    calls++;
+    return "";
+  }
+
+  @Override
+  public void glUseProgram(int program)
+  {
+    calls++;
+    currentProgram = program;
+  }
+
+  @Override
+  public void glDeleteProgram(int program)
+  {
+    calls++;
+    programShaders.remove(program);
+    programAttributes.remove(program);
+    programUniforms.remove(program);
+    screenMatrices.remove(program);
+  }
+
+  @Override
+  public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+  {
+    calls++;
+    getActive(programAttributes.get(program).get(index), bufsize, length, lengthOffset, size, sizeOffset, name, nameOffset);
+  }
+
+  @Override
+  public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+  {
+    calls++;
+    getActive(programUniforms.get(program).get(index), bufsize, length, lengthOffset, size, sizeOffset, name, nameOffset);
+  }
+
+  private static void getActive(String active, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, byte[] name, int nameOffset)
+  {
+    byte[] bytes = active.getBytes();
+    int n = Math.min(bytes.length, bufsize - 1);
+    System.arraycopy(bytes, 0, name, nameOffset, n);
+    length[lengthOffset] = n;
+    size[sizeOffset] = 1;
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name)
+  {
+    calls++;
+    return programAttributes.get(program).indexOf(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name)
+  {
+    calls++;
+    return programUniforms.get(program).indexOf(name);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+  {
+    calls++;
+
+    List<String> uniforms = programUniforms.get(currentProgram);
+
+    if (rasterizer == null || location < 0 || uniforms == null || location != uniforms.indexOf("uScreen"))
+      return;
+
+    float[] matrix = screenMatrices.get(currentProgram);
+    if (matrix == null)
+    {
+      matrix = new float[16];
+      screenMatrices.put(currentProgram, matrix);
+    }
+
+    System.arraycopy(value, offset, matrix, 0, 16);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset)
+  {
+    calls++;
+    gen(n, buffers, offset);
+  }
+
+  private void gen(int n, int[] names, int offset)
+  {
+    for (int i = 0; i < n; i++)
+      names[offset + i] = nextName++;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset)
+  {
+    calls++;
+
+    for (int i = offset; i < offset + n; i++)
+      bufferData.remove(buffers[i]);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer)
+  {
+    calls++;
+
+    if (target == GLES20.GL_ARRAY_BUFFER)
+      arrayBuffer = buffer;
+    else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+      elementBuffer = buffer;
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage)
+  {
+    calls++;
+
+    if (data != null)
+      bytesUploaded += size;
+
+    if (rasterizer != null)
+    {
+      ByteBuffer copy = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+      bufferData.put(boundBuffer(target), copy);
+
+      if (data != null)
+        copy(data, copy, 0, size);
+    }
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data)
+  {
+    calls++;
+    bytesUploaded += size;
+
+    ByteBuffer copy = rasterizer != null ? bufferData.get(boundBuffer(target)) : null;
+    if (copy != null)
+      copy(data, copy, offset, size);
+  }
+
+  private int boundBuffer(int target)
+  {
+    return target == GLES20.GL_ELEMENT_ARRAY_BUFFER ? elementBuffer : arrayBuffer;
+  }
+
+  // copy 'size' bytes of 'data' (starting at its position) to 'target', at 'offset'
+  private static void copy(Buffer data, ByteBuffer target, int offset, int size)
+  {
+    ByteBuffer to = target.duplicate();
+    to.position(offset);
+    to = to.slice().order(ByteOrder.nativeOrder());
+
+    if (data instanceof ByteBuffer)
+    {
+      ByteBuffer from = ((ByteBuffer) data).duplicate();
+      from.limit(Math.min(from.limit(), from.position() + size));
+      to.put(from);
+    }
+    else if (data instanceof FloatBuffer)
+    {
+      FloatBuffer from = ((FloatBuffer) data).duplicate();
+      from.limit(Math.min(from.limit(), from.position() + size / 4));
+      to.asFloatBuffer().put(from);
+    }
+    else if (data instanceof ShortBuffer)
+    {
+      ShortBuffer from = ((ShortBuffer) data).duplicate();
+      from.limit(Math.min(from.limit(), from.position() + size / 2));
+      to.asShortBuffer().put(from);
+    }
+    else if (data instanceof IntBuffer)
+    {
+      IntBuffer from = ((IntBuffer) data).duplicate();
+      from.limit(Math.min(from.limit(), from.position() + size / 4));
+      to.asIntBuffer().put(from);
+    }
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+  {
+    calls++;
+
+    if (index >= 0 && index < MAX_ATTRIBS)
+    {
+      attribBuffer[index] = arrayBuffer;
+      attribSize[index] = size;
+      attribType[index] = type;
+      attribStride[index] = stride;
+      attribOffset[index] = offset;
+      attribNormalized[index] = normalized;
+    }
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset)
+  {
+    calls++;
+    gen(n, textures, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glActiveTexture(int texture)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+  {
+    calls++;
+
+    // close enough: all the samples upload RGBA, one byte per channel
+    if (pixels != null)
+      bytesUploaded += width * height * 4;
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data)
+  {
+    calls++;
+    bytesUploaded += imageSize;
+  }
+
+  @Override
+  public String glGetString(int name)
+  {
+    calls++;
+
+    // pretend we have what every Android device has
+    return name == GLES20.GL_EXTENSIONS ? Etc1.EXTENSION : "RecordingGLES";
+  }
+
+  @Override
+  public void glFinish()
+  {
+    calls++;
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glEnable(int cap)
+  {
+    calls++;
+
+    if (cap == GLES20.GL_BLEND)
+      blend = true;
+  }
+
+  @Override
+  public void glDisable(int cap)
+  {
+    calls++;
+
+    if (cap == GLES20.GL_BLEND)
+      blend = false;
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height)
+  {
+    calls++;
+    viewportWidth = width;
+    viewportHeight = height;
+
+    if (rasterizer != null)
+      rasterizer.setViewport(width, height);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha)
+  {
+    calls++;
+  }
+
+  @Override
+  public void glClear(int mask)
+  {
+    calls++;
+
+    // a new frame (most likely)
+    if (rasterizer != null && (mask & GLES20.GL_COLOR_BUFFER_BIT) != 0)
+      rasterizer.clear();
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count)
+  {
+    calls++;
+    drawCalls++;
+    vertices += count;
+
+    if (rasterizer != null)
+      rasterize(mode, first, count, false);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset)
+  {
+    calls++;
+    drawCalls++;
+    vertices += count;
+
+    if (rasterizer != null && type == GLES20.GL_UNSIGNED_SHORT)
+      rasterize(mode, offset, count, true);
+  }
+
+  // Run our 'vertex shader' and send the triangles to the rasterizer. 'first' is
+  // the first vertex or, for indexed draws, the offset (in bytes) of the first index.
+  private void rasterize(int mode, int first, int count, boolean indexed)
+  {
+    if (mode != GLES20.GL_TRIANGLES && mode != GLES20.GL_TRIANGLE_STRIP && mode != GLES20.GL_TRIANGLE_FAN)
+      return;
+
+    List<String> attributes = programAttributes.get(currentProgram);
+    int position = attributes == null ? -1 : attributes.indexOf("aPosition");
+
+    if (position < 0 || position >= MAX_ATTRIBS || viewportWidth == 0)
+      return;
+
+    ByteBuffer data = bufferData.get(attribBuffer[position]);
+    ByteBuffer indices = indexed ? bufferData.get(elementBuffer) : null;
+
+    if (data == null || (indexed && indices == null))
+      return;
+
+    int type = attribType[position];
+    int size = VertexFormat.typeSize(type);
+    int stride = attribStride[position] != 0 ? attribStride[position] : attribSize[position] * size;
+    float[] m = screenMatrices.get(currentProgram);
+    int triangles = mode == GLES20.GL_TRIANGLES ? count / 3 : count - 2;
+
+    for (int t = 0; t < triangles; t++)
+    {
+      // the 3 vertices of this triangle, in the list/strip/fan
+      int a = mode == GLES20.GL_TRIANGLES ? t * 3 : (mode == GLES20.GL_TRIANGLE_FAN ? 0 : t);
+      int b = mode == GLES20.GL_TRIANGLES ? t * 3 + 1 : t + 1;
+      int c = mode == GLES20.GL_TRIANGLES ? t * 3 + 2 : t + 2;
+
+      for (int i = 0; i < 3; i++)
+      {
+        int corner = i == 0 ? a : (i == 1 ? b : c);
+        int vertex = indexed ? indices.getShort(first + corner * 2) & 0xffff : first + corner;
+        int at = attribOffset[position] + vertex * stride;
+        project(component(data, at, type, position), component(data, at + size, type, position), m, i * 2);
+      }
+
+      rasterizer.triangle(window[0], window[1], window[2], window[3], window[4], window[5], blend);
+    }
+  }
+
+  // A component of an attribute, converted to float the way OpenGL does it
+  private float component(ByteBuffer data, int at, int type, int attribute)
+  {
+    boolean normalized = attribNormalized[attribute];
+
+    switch (type)
+    {
+      case GLES20.GL_FLOAT:
+        return data.getFloat(at);
+
+      case GLES20.GL_SHORT:
+        return normalized ? Math.max(data.getShort(at) / 32767f, -1f) : data.getShort(at);
+
+      case GLES20.GL_UNSIGNED_SHORT:
+        return normalized ? (data.getShort(at) & 0xffff) / 65535f : data.getShort(at) & 0xffff;
+
+      case GLES20.GL_BYTE:
+        return normalized ? Math.max(data.get(at) / 127f, -1f) : data.get(at);
+
+      default:
+        return normalized ? (data.get(at) & 0xff) / 255f : data.get(at) & 0xff;
+    }
+  }
+
+  // position -> uScreen -> window coordinates
+  private void project(float x, float y, float[] m, int at)
+  {
+    float cx = x, cy = y, cw = 1f;
+
+    if (m != null)
+    {
+      cx = m[0] * x + m[4] * y + m[12];
+      cy = m[1] * x + m[5] * y + m[13];
+      cw = m[3] * x + m[7] * y + m[15];
+    }
+
+    window[at] = (cx / cw + 1f) * 0.5f * viewportWidth;
+    window[at + 1] = (cy / cw + 1f) * 0.5f * viewportHeight;
+  }
+}
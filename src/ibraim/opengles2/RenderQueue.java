@@ -0,0 +1,267 @@
+package ibraim.opengles2;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Collects the draws of a frame, sorts them and only then talks to OpenGL.
+//
+// Drawing things in the order the code happens to run them means switching
+// programs, textures and blend modes back and forth, and each switch costs. So
+// instead of drawing right away, every draw is 'recorded': a 64 bit sort key
+// with the state it needs, plus a few floats of payload (ex: a sprite's
+// position). In onDrawFrame, 'submit' sorts the keys and replays the draws, so
+// everything that shares a state is drawn together:
+//
+//    bits 56-63: layer    (what must be drawn first stays first)
+//    bits 52-55: blend mode
+//    bits 40-51: program
+//    bits 24-39: texture
+//    bits  0-23: the order the draw was recorded in
+//
+// The last field keeps draws with the same state in their original order, and
+// tells us where the payload is. Sorting is a radix sort over the keys: no
+// comparisons and no allocation, and it skips the bytes that are the same on
+// every key (usually most of them).
+//
+// 'record' can be called from any thread: each call takes its own slot with an
+// atomic counter. All the recording for a frame must be done before 'submit',
+// and the thread that submits must be able to SEE it: the slots are plain
+// arrays, and the queue does nothing to publish them. Recording on the GL
+// thread is fine; from other threads, wait for them with something that gives
+// that guarantee (Thread.join, a CountDownLatch, a Future's get...) before
+// calling 'submit'.
+public class RenderQueue
+{
+  // Receives the sorted draws. State setters are only called on changes.
+  public interface Target
+  {
+    void setProgram(int program);
+    void setTexture(int texture);
+    void setBlend(int blend);
+    void draw(float[] payload, int offset);
+
+    // all the draws of the frame were sent
+    void finish();
+  }
+
+  public static final int MAX_LAYER = 0xff;
+  public static final int MAX_BLEND = 0xf;
+  public static final int MAX_PROGRAM = 0xfff;
+  public static final int MAX_TEXTURE = 0xffff;
+  public static final int MAX_COMMANDS = 1 << 24;
+
+  private static final int INDEX_MASK = MAX_COMMANDS - 1;
+
+  private final int capacity;
+  private final int payloadSize;
+  private final long[] keys;
+  private final long[] sorted;   // scratch space for the radix sort
+  private final float[] payload;
+  private final int[] counts = new int[8 * 256];
+  private final AtomicInteger count = new AtomicInteger();
+
+  // metrics, for the last submitted frame
+  private int commands;
+  private int dropped;
+  private int stateChanges;
+  private int unsortedStateChanges;
+
+  // 'payloadSize' is the number of floats each draw carries
+  public RenderQueue(int capacity, int payloadSize)
+  {
+    if (capacity <= 0 || capacity > MAX_COMMANDS)
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+    this.capacity = capacity;
+    this.payloadSize = payloadSize;
+    this.keys = new long[capacity];
+    this.sorted = new long[capacity];
+    this.payload = new float[capacity * payloadSize];
+  }
+
+  // Build the sort key of a draw
+  public static long key(int layer, int blend, int program, int texture)
+  {
+    if (layer < 0 || layer > MAX_LAYER || blend < 0 || blend > MAX_BLEND || program < 0 || program > MAX_PROGRAM || texture < 0 || texture > MAX_TEXTURE)
+      throw new IllegalArgumentException("Key out of range: layer " + layer + ", blend " + blend + ", program " + program + ", texture " + texture);
+
+    return ((long) layer << 56) | ((long) blend << 52) | ((long) program << 40) | ((long) texture << 24);
+  }
+
+  // Record a draw: 'payloadSize' floats are copied from 'data'. Returns false
+  // (and drops the draw) if the queue is full.
+  public boolean record(long key, float[] data, int offset)
+  {
+    int index = count.getAndIncrement();
+
+    if (index >= capacity)
+      return false;
+
+    keys[index] = (key & ~(long) INDEX_MASK) | index;
+    System.arraycopy(data, offset, payload, index * payloadSize, payloadSize);
+    return true;
+  }
+
+  // Sort everything recorded so far, send it to 'target' and empty the queue.
+  // Call on the GL thread, once all the recording is done.
+  public void submit(Target target)
+  {
+    int recorded = count.get();
+    int n = Math.min(recorded, capacity);
+    dropped = recorded - n;
+    commands = n;
+
+    // how many state changes would we have if we didn't sort?
+    unsortedStateChanges = countStateChanges(keys, n);
+
+    long[] result = sort(n);
+    stateChanges = countStateChanges(result, n);
+
+    int program = -1;
+    int texture = -1;
+    int blend = -1;
+
+    for (int i = 0; i < n; i++)
+    {
+      long key = result[i];
+      int b = (int) (key >>> 52) & MAX_BLEND;
+      int p = (int) (key >>> 40) & MAX_PROGRAM;
+      int t = (int) (key >>> 24) & MAX_TEXTURE;
+
+      if (p != program)
+      {
+        program = p;
+        target.setProgram(p);
+      }
+
+      if (b != blend)
+      {
+        blend = b;
+        target.setBlend(b);
+      }
+
+      if (t != texture)
+      {
+        texture = t;
+        target.setTexture(t);
+      }
+
+      target.draw(payload, ((int) key & INDEX_MASK) * payloadSize);
+    }
+
+    target.finish();
+    count.set(0);
+  }
+
+  // LSD radix sort, one byte at a time. Returns the array that ended up with
+  // the sorted keys (either 'keys' or 'sorted').
+  private long[] sort(int n)
+  {
+    int[] c = counts;
+    Arrays.fill(c, 0);
+
+    // one pass to count every byte of every key
+    for (int i = 0; i < n; i++)
+    {
+      long key = keys[i];
+      for (int b = 0; b < 8; b++)
+        c[(b << 8) + (int) ((key >>> (b << 3)) & 0xff)]++;
+    }
+
+    long[] from = keys;
+    long[] to = sorted;
+
+    for (int b = 0; b < 8; b++)
+    {
+      int base = b << 8;
+
+      // every key has the same value in this byte: nothing to do
+      if (n == 0 || c[base + (int) ((from[0] >>> (b << 3)) & 0xff)] == n)
+        continue;
+
+      // counts -> first position of each value
+      int sum = 0;
+      for (int v = 0; v < 256; v++)
+      {
+        int tmp = c[base + v];
+        c[base + v] = sum;
+        sum += tmp;
+      }
+
+      int shift = b << 3;
+      for (int i = 0; i < n; i++)
+      {
+        long key = from[i];
+        to[c[base + (int) ((key >>> shift) & 0xff)]++] = key;
+      }
+
+      long[] swap = from;
+      from = to;
+      to = swap;
+    }
+
+    return from;
+  }
+
+  // a change of program, texture or blend mode counts as one each
+  private static int countStateChanges(long[] keys, int n)
+  {
+    int changes = 0;
+    long last = -1;
+
+    for (int i = 0; i < n; i++)
+    {
+      long state = keys[i] >>> 24;
+
+      // the first draw sets all three
+      if (last == -1)
+        changes += 3;
+      else
+      {
+        long diff = state ^ last;
+
+        if ((diff & MAX_TEXTURE) != 0)
+          changes++;
+
+        if (((diff >>> 16) & MAX_PROGRAM) != 0)
+          changes++;
+
+        if (((diff >>> 28) & MAX_BLEND) != 0)
+          changes++;
+      }
+
+      last = state;
+    }
+
+    return changes;
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  // Draws in the last submitted frame
+  public int getCommandCount()
+  {
+    return commands;
+  }
+
+  // Draws that didn't fit in the last submitted frame
+  public int getDroppedCount()
+  {
+    return dropped;
+  }
+
+  // Program/texture/blend changes sent to the target in the last frame
+  public int getStateChanges()
+  {
+    return stateChanges;
+  }
+
+  // ...and how many there would be without sorting
+  public int getUnsortedStateChanges()
+  {
+    return unsortedStateChanges;
+  }
+}
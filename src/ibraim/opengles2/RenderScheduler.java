@@ -0,0 +1,121 @@
+package ibraim.opengles2;
+
+import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decides WHEN a GLSurfaceView draws a new frame.
+//
+// By default GLSurfaceView redraws as fast as it can (RENDERMODE_CONTINUOUSLY).
+// That makes sense for something that changes every frame, but most of our
+// samples draw the very same static image over and over, about 60 times per
+// second, burning battery for nothing.
+//
+// In 'dirty' mode (RENDERMODE_WHEN_DIRTY) the view only draws when someone asks
+// for it. Anything that changes the scene calls 'invalidate' and a single new
+// frame is drawn. Animations (like the fade in of the Texture sample) use
+// 'startAnimation' to ask for frames at a fixed interval, and only while they
+// need them. A tick that finds the last frame still pending doesn't ask again.
+//
+// The renderer must call 'onFrameRendered' at the end of onDrawFrame, so we
+// can count how many frames were actually drawn. It's what a Scene sees of us
+// (Scene.Frames).
+public class RenderScheduler implements Scene.Frames
+{
+  private final GLSurfaceView surface;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final AtomicLong framesRendered = new AtomicLong();
+
+  private volatile boolean dirty = true;
+  private volatile boolean continuous;
+  private volatile long animationInterval;
+
+  // time to first frame, see Demo
+  private volatile long launchedAt;
+  private volatile long firstFrameNanos;
+
+  private final Runnable animationTick = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      if (!dirty)
+        invalidate();
+
+      handler.postDelayed(this, animationInterval);
+    }
+  };
+
+  // Must be created AFTER the renderer was set on the surface.
+  public RenderScheduler(GLSurfaceView surface, boolean continuous)
+  {
+    this.surface = surface;
+    setContinuous(continuous);
+  }
+
+  public void setContinuous(boolean continuous)
+  {
+    this.continuous = continuous;
+    surface.setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY : GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+  }
+
+  public boolean isContinuous()
+  {
+    return continuous;
+  }
+
+  // The scene changed and needs to be drawn again. Can be called from any thread.
+  @Override
+  public void invalidate()
+  {
+    dirty = true;
+
+    if (!continuous)
+      surface.requestRender();
+  }
+
+  // Ask for a new frame every 'intervalMillis' until stopAnimation is called.
+  // Can be called from any thread (the ticks run on the UI thread).
+  @Override
+  public void startAnimation(long intervalMillis)
+  {
+    stopAnimation();
+    animationInterval = intervalMillis;
+    handler.post(animationTick);
+  }
+
+  @Override
+  public void stopAnimation()
+  {
+    handler.removeCallbacks(animationTick);
+  }
+
+  // When the demo was started (System.nanoTime); the first frame is timed from here
+  public void setLaunchTime(long launchedAt)
+  {
+    this.launchedAt = launchedAt;
+  }
+
+  // Called by the renderer (on the GL thread) after each frame
+  @Override
+  public void onFrameRendered()
+  {
+    dirty = false;
+
+    if (framesRendered.incrementAndGet() == 1 && launchedAt != 0)
+      firstFrameNanos = System.nanoTime() - launchedAt;
+  }
+
+  // From the launch to the end of the first frame; 0 if we don't know
+  public long getTimeToFirstFrameNanos()
+  {
+    return firstFrameNanos;
+  }
+
+  public long getFramesRendered()
+  {
+    return framesRendered.get();
+  }
+}
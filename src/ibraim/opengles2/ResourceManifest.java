@@ -0,0 +1,277 @@
+package ibraim.opengles2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Everything a renderer creates in OpenGL, and how to create it again.
+//
+// When the context is lost (the activity was paused, and the device couldn't
+// keep it), every object is gone. The samples used to build it all again right
+// there, in onSurfaceCreated: the more we had, the longer the black screen
+// after coming back. Instead, each object is added here once, with the code
+// that (re)creates it, and after a context loss they're restored a few at a
+// time, at the start of each frame, within a time budget.
+//
+// Each one has a priority, and they're restored in that order:
+//
+//  - REQUIRED: nothing can be drawn without it (the program, the buffers)
+//  - VISIBLE: it's on screen, but something else can stand in for a while (a
+//    texture, with its placeholder)
+//  - BACKGROUND: not on screen yet
+//
+// A frame can only be drawn once everything REQUIRED is back ('isReady').
+// Restoring may also take more than one frame by itself: 'restore' returns
+// false to be called again on the next frame (for things like textures, that
+// load in the background).
+//
+// The first creation of the context goes through here too, so the launch of
+// the demo is just as incremental. Not thread safe: use it on the GL thread.
+public class ResourceManifest
+{
+  public static final int REQUIRED = 0;
+  public static final int VISIBLE = 1;
+  public static final int BACKGROUND = 2;
+
+  private static final int PRIORITIES = 3;
+
+  // How to create something again
+  public interface Restorable
+  {
+    // (Re)create it on the current context. Returns true when it's done, or
+    // false to be called again on the next frame.
+    boolean restore();
+  }
+
+  public static class Entry
+  {
+    private final String name;
+    private final int priority;
+    private final Restorable restorable;
+    private boolean restored;
+    private long restoreNanos;
+
+    private Entry(String name, int priority, Restorable restorable)
+    {
+      this.name = name;
+      this.priority = priority;
+      this.restorable = restorable;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public int getPriority()
+    {
+      return priority;
+    }
+
+    public boolean isRestored()
+    {
+      return restored;
+    }
+
+    // time spent in 'restore' since the context was lost
+    public long getRestoreTimeNanos()
+    {
+      return restoreNanos;
+    }
+  }
+
+  // sorted by priority; same priority, in the order they were added
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private final int[] pending = new int[PRIORITIES];
+
+  // metrics, since the last context loss
+  private long lostAt;
+  private long firstFrameAt;
+  private long restoredAt;
+  private int frames;
+  private long restoreNanos;
+  private long maxFrameNanos;
+
+  // Something to restore on every new context. Add everything before the first one.
+  public Entry add(String name, int priority, Restorable restorable)
+  {
+    if (priority < REQUIRED || priority > BACKGROUND)
+      throw new IllegalArgumentException("Invalid priority: " + priority);
+
+    Entry entry = new Entry(name, priority, restorable);
+    int at = entries.size();
+
+    while (at > 0 && entries.get(at - 1).priority > priority)
+      at--;
+
+    entries.add(at, entry);
+    pending[priority]++;
+    return entry;
+  }
+
+  // There's a new context, and nothing of ours is in it: restore it all again
+  public void onContextLost()
+  {
+    for (int i = 0; i < PRIORITIES; i++)
+      pending[i] = 0;
+
+    for (Entry entry : entries)
+    {
+      entry.restored = false;
+      entry.restoreNanos = 0;
+      pending[entry.priority]++;
+    }
+
+    lostAt = System.nanoTime();
+    firstFrameAt = 0;
+    restoredAt = 0;
+    frames = 0;
+    restoreNanos = 0;
+    maxFrameNanos = 0;
+  }
+
+  // Restore what we can in 'budgetNanos'. Call at the start of each frame.
+  // At least one entry is always restored (or asked again), so even a tiny
+  // budget gets there eventually. Returns true if there's still something left.
+  public boolean restore(long budgetNanos)
+  {
+    if (isRestored())
+      return false;
+
+    long start = System.nanoTime();
+    long now = start;
+    boolean first = true;
+
+    for (int i = 0; i < entries.size(); i++)
+    {
+      Entry entry = entries.get(i);
+
+      if (entry.restored)
+        continue;
+
+      if (!first && now - start >= budgetNanos)
+        break;
+
+      boolean done = entry.restorable.restore();
+      long end = System.nanoTime();
+      entry.restoreNanos += end - now;
+      now = end;
+      first = false;
+
+      if (done)
+      {
+        entry.restored = true;
+        pending[entry.priority]--;
+      }
+    }
+
+    frames++;
+    restoreNanos += now - start;
+    maxFrameNanos = Math.max(maxFrameNanos, now - start);
+
+    if (isRestored())
+    {
+      restoredAt = now;
+      return false;
+    }
+
+    return true;
+  }
+
+  // Restore this one right now, whatever the budget (something needs it this frame)
+  public void require(Entry entry)
+  {
+    if (entry.restored)
+      return;
+
+    long start = System.nanoTime();
+    boolean done = entry.restorable.restore();
+    long nanos = System.nanoTime() - start;
+    entry.restoreNanos += nanos;
+    restoreNanos += nanos;
+
+    if (done)
+    {
+      entry.restored = true;
+      pending[entry.priority]--;
+
+      if (isRestored())
+        restoredAt = System.nanoTime();
+    }
+  }
+
+  // Is everything of this priority (and above) back?
+  public boolean isReady(int priority)
+  {
+    for (int i = REQUIRED; i <= priority; i++)
+      if (pending[i] > 0)
+        return false;
+
+    return true;
+  }
+
+  // Is everything back?
+  public boolean isRestored()
+  {
+    return isReady(BACKGROUND);
+  }
+
+  // The renderer drew a real frame (not a blank one, waiting for REQUIRED)
+  public void onFrameRendered()
+  {
+    if (firstFrameAt == 0 && lostAt != 0)
+      firstFrameAt = System.nanoTime();
+  }
+
+  public int getCount()
+  {
+    return entries.size();
+  }
+
+  public int getPendingCount()
+  {
+    return pending[REQUIRED] + pending[VISIBLE] + pending[BACKGROUND];
+  }
+
+  // From the new context to the first frame drawn (0 until then)...
+  public long getTimeToFirstFrameNanos()
+  {
+    return firstFrameAt != 0 ? firstFrameAt - lostAt : 0;
+  }
+
+  // ...and to everything restored
+  public long getTimeToRestoredNanos()
+  {
+    return restoredAt != 0 ? restoredAt - lostAt : 0;
+  }
+
+  // Frames that restored something, the time it took, and the worst frame
+  public int getRestoreFrames()
+  {
+    return frames;
+  }
+
+  public long getRestoreTimeNanos()
+  {
+    return restoreNanos;
+  }
+
+  public long getMaxFrameRestoreNanos()
+  {
+    return maxFrameNanos;
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.US, "%d/%d restored in %d frame(s), %.1fms restoring (%.1fms at most per frame); first frame after %.1fms, all restored after %.1fms",
+      entries.size() - getPendingCount(), entries.size(), frames, restoreNanos / 1e6, maxFrameNanos / 1e6,
+      getTimeToFirstFrameNanos() / 1e6, getTimeToRestoredNanos() / 1e6));
+
+    for (Entry entry : entries)
+      sb.append(String.format(Locale.US, "\n  %s: %s, %.2fms", entry.name, entry.restored ? "restored" : "pending", entry.restoreNanos / 1e6));
+
+    return sb.toString();
+  }
+}
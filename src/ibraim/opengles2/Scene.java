@@ -0,0 +1,37 @@
+package ibraim.opengles2;
+
+// What a demo draws, without the Android around it.
+//
+// Every OpenGL call of a scene goes through a GLES, so the very same code draws
+// on a device (AndroidGLES) and runs on a plain JVM (RecordingGLES; see
+// RendererBenchmark). The activities only glue it to their GLSurfaceView: the
+// Renderer callbacks come here, on the GL thread, and the frames the scene
+// asks for go to a RenderScheduler.
+public interface Scene
+{
+  // Whoever decides when the frames are drawn: the RenderScheduler, on a device
+  interface Frames
+  {
+    // the scene changed and needs to be drawn again (from any thread)
+    void invalidate();
+
+    // a new frame every 'intervalMillis', until stopAnimation
+    void startAnimation(long intervalMillis);
+
+    void stopAnimation();
+
+    // at the end of every frame actually drawn
+    void onFrameRendered();
+  }
+
+  // A brand new context: whatever was created in the old one is gone. 'shared'
+  // is set when it shares its objects with the Prewarmer's (null otherwise).
+  void onContextCreated(SharedResources shared);
+
+  void onSurfaceChanged(int width, int height);
+
+  void drawFrame();
+
+  // Leaving for good: free everything, while the context is still there
+  void tearDown();
+}
@@ -0,0 +1,262 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// A compiled and linked shader program.
+//
+// This is the loadShader/createProgram pair that every sample used to carry
+// around, plus one extra trick: right after linking, we ask OpenGL for ALL the
+// active attributes and uniforms of the program and remember where they are.
+// glGetAttribLocation/glGetUniformLocation are a round trip to the driver, so
+// calling them on every frame is a waste; the locations never change after
+// the program is linked.
+public class ShaderProgram
+{
+  private final GLES gles;
+  private final String vertexSrc;
+  private final String fragmentSrc;
+  private int vertexHandle;
+  private int fragmentHandle;
+  private int programHandle;
+
+  private final Map<String, Integer> attributes = new HashMap<String, Integer>();
+  private final Map<String, Integer> uniforms = new HashMap<String, Integer>();
+
+  // how long it took to build this program; compiling is SLOW
+  private final long compileNanos;
+  private final long linkNanos;
+
+  // built by someone else (see the second constructor)
+  private final SharedResources owner;
+
+  public ShaderProgram(GLES gles, String vertexSrc, String fragmentSrc)
+  {
+    this.gles = gles;
+    this.vertexSrc = vertexSrc;
+    this.fragmentSrc = fragmentSrc;
+
+    long start = System.nanoTime();
+    long compiled;
+
+    // if anything fails, delete what was already built before giving up
+    // (loadShader and createProgram clean up after themselves)
+    try
+    {
+      vertexHandle = loadShader(GLES20.GL_VERTEX_SHADER, vertexSrc);
+      fragmentHandle = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSrc);
+      compiled = System.nanoTime();
+      programHandle = createProgram(vertexHandle, fragmentHandle);
+    }
+    catch (RuntimeException e)
+    {
+      if (vertexHandle != GLES20.GL_FALSE)
+        gles.glDeleteShader(vertexHandle);
+
+      if (fragmentHandle != GLES20.GL_FALSE)
+        gles.glDeleteShader(fragmentHandle);
+
+      vertexHandle = fragmentHandle = GLES20.GL_FALSE;
+      throw e;
+    }
+
+    compileNanos = compiled - start;
+    linkNanos = System.nanoTime() - compiled;
+
+    readAttributes();
+    readUniforms();
+    owner = null;
+  }
+
+  // A program that lives in SharedResources, maybe built in another context
+  // (one that shares its objects with ours). Nothing is compiled here: we just
+  // take its handles and locations. tearDown only tells the owner we're done.
+  ShaderProgram(GLES gles, ShaderProgram prebuilt, SharedResources owner)
+  {
+    this.gles = gles;
+    this.vertexSrc = prebuilt.vertexSrc;
+    this.fragmentSrc = prebuilt.fragmentSrc;
+    this.vertexHandle = prebuilt.vertexHandle;
+    this.fragmentHandle = prebuilt.fragmentHandle;
+    this.programHandle = prebuilt.programHandle;
+    this.attributes.putAll(prebuilt.attributes);
+    this.uniforms.putAll(prebuilt.uniforms);
+    this.compileNanos = 0;
+    this.linkNanos = 0;
+    this.owner = owner;
+  }
+
+  public void use()
+  {
+    gles.glUseProgram(programHandle);
+  }
+
+  public void tearDown()
+  {
+    if (owner != null)
+    {
+      if (programHandle != GLES20.GL_FALSE)
+        owner.releaseProgram(this);
+
+      programHandle = vertexHandle = fragmentHandle = GLES20.GL_FALSE;
+      return;
+    }
+
+    if (programHandle != GLES20.GL_FALSE)
+    {
+      gles.glDeleteProgram(programHandle);
+      gles.glDeleteShader(vertexHandle);
+      gles.glDeleteShader(fragmentHandle);
+      programHandle = vertexHandle = fragmentHandle = GLES20.GL_FALSE;
+    }
+  }
+
+  public int getHandle()
+  {
+    return programHandle;
+  }
+
+  // Does it belong to SharedResources?
+  public boolean isShared()
+  {
+    return owner != null;
+  }
+
+  public String getVertexSource()
+  {
+    return vertexSrc;
+  }
+
+  public String getFragmentSource()
+  {
+    return fragmentSrc;
+  }
+
+  public long getCompileTimeNanos()
+  {
+    return compileNanos;
+  }
+
+  public long getLinkTimeNanos()
+  {
+    return linkNanos;
+  }
+
+  // Location of an attribute, or -1 if the program doesn't use it
+  // (the GLSL compiler is free to throw away anything that isn't used!)
+  public int getAttribute(String name)
+  {
+    Integer location = attributes.get(name);
+    return location == null ? -1 : location;
+  }
+
+  // Location of an uniform, or -1 if the program doesn't use it
+  public int getUniform(String name)
+  {
+    Integer location = uniforms.get(name);
+    return location == null ? -1 : location;
+  }
+
+  private void readAttributes()
+  {
+    int[] count = new int[1];
+    int[] maxLength = new int[1];
+    gles.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+    gles.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, maxLength, 0);
+
+    int[] length = new int[1];
+    int[] size = new int[1];
+    int[] type = new int[1];
+    byte[] name = new byte[Math.max(maxLength[0], 1)];
+
+    for (int i = 0; i < count[0]; i++)
+    {
+      gles.glGetActiveAttrib(programHandle, i, name.length, length, 0, size, 0, type, 0, name, 0);
+      String attribute = cleanName(name, length[0]);
+      attributes.put(attribute, gles.glGetAttribLocation(programHandle, attribute));
+    }
+  }
+
+  private void readUniforms()
+  {
+    int[] count = new int[1];
+    int[] maxLength = new int[1];
+    gles.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_UNIFORMS, count, 0);
+    gles.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH, maxLength, 0);
+
+    int[] length = new int[1];
+    int[] size = new int[1];
+    int[] type = new int[1];
+    byte[] name = new byte[Math.max(maxLength[0], 1)];
+
+    for (int i = 0; i < count[0]; i++)
+    {
+      gles.glGetActiveUniform(programHandle, i, name.length, length, 0, size, 0, type, 0, name, 0);
+      String uniform = cleanName(name, length[0]);
+      uniforms.put(uniform, gles.glGetUniformLocation(programHandle, uniform));
+    }
+  }
+
+  // arrays are reported as 'name[0]'; we want to find them by 'name'
+  private static String cleanName(byte[] name, int length)
+  {
+    String s = new String(name, 0, length);
+    int bracket = s.indexOf('[');
+    return bracket == -1 ? s : s.substring(0, bracket);
+  }
+
+  // auxiliary shader functions. Doesn't matter WHAT you're trying to do, they're
+  // always the same thing.
+  private int loadShader(int shaderType, String shaderSource)
+  {
+    int handle = gles.glCreateShader(shaderType);
+
+    if (handle == GLES20.GL_FALSE)
+      throw new RuntimeException("Error creating shader!");
+
+    // set and compile the shader
+    gles.glShaderSource(handle, shaderSource);
+    gles.glCompileShader(handle);
+
+    // check if the compilation was OK
+    int[] compileStatus = new int[1];
+    gles.glGetShaderiv(handle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+
+    if (compileStatus[0] == 0)
+    {
+      String error = gles.glGetShaderInfoLog(handle);
+      gles.glDeleteShader(handle);
+      throw new RuntimeException("Error compiling shader: " + error);
+    }
+    else
+      return handle;
+  }
+
+  private int createProgram(int vertexShader, int fragmentShader)
+  {
+    int handle = gles.glCreateProgram();
+
+    if (handle == GLES20.GL_FALSE)
+      throw new RuntimeException("Error creating program!");
+
+    // attach the shaders and link the program
+    gles.glAttachShader(handle, vertexShader);
+    gles.glAttachShader(handle, fragmentShader);
+    gles.glLinkProgram(handle);
+
+    // check if the link was successful
+    int[] linkStatus = new int[1];
+    gles.glGetProgramiv(handle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+
+    if (linkStatus[0] == 0)
+    {
+      String error = gles.glGetProgramInfoLog(handle);
+      gles.glDeleteProgram(handle);
+      throw new RuntimeException("Error in program linking: " + error);
+    }
+    else
+      return handle;
+  }
+}
@@ -0,0 +1,193 @@
+package ibraim.opengles2;
+
+import java.util.Arrays;
+
+// One shader for everything (an 'uber-shader'), in as many flavors as we need.
+//
+// Look at the shaders of the samples: they're all the same, give or take a
+// color or a texture coordinate. With every new feature (a tint, an alpha
+// test...) the number of handwritten shaders would double. Instead, there's
+// ONE source here, with the optional parts between #ifdef and #endif. The
+// features we want are turned on with #define lines at the top, and the GLSL
+// compiler simply drops the rest:
+//
+//  - COLOR: a color per vertex (aColor), multiplied in
+//  - TEXTURE: texture coordinates per vertex (aTexPos) and a texture (uTexture)
+//  - ALPHA_TEXTURE: the alpha may come from a second texture (uAlpha, in its
+//    red channel), when uSeparateAlpha is set. For ETC1 (see TextureLoader).
+//  - ALPHA_TEST: fragments with alpha below 0.5 are thrown away ('discard')
+//  - TINT: everything is multiplied by a uniform color (uTint)
+//
+// Each combination of features (a 'variant') is a bitmask, and a different
+// program. They're only compiled the first time they're asked for, and then
+// kept here, by bitmask, so asking again is just an array lookup. The
+// compiling itself goes through the ProgramCache, so the variants can also be
+// shared and prewarmed like any other program (see Demos).
+public class ShaderVariants
+{
+  public static final int COLOR = 1;
+  public static final int TEXTURE = 2;
+  public static final int ALPHA_TEXTURE = 4;
+  public static final int ALPHA_TEST = 8;
+  public static final int TINT = 16;
+
+  public static final int VARIANT_COUNT = 32;
+
+  private static final String[] NAMES = {"COLOR", "TEXTURE", "ALPHA_TEXTURE", "ALPHA_TEST", "TINT"};
+
+  private static final String VERTEX_SRC =
+    "uniform mat4 uScreen;\n" +
+    "attribute vec2 aPosition;\n" +
+    "#ifdef COLOR\n" +
+    "attribute vec4 aColor;\n" +
+    "varying vec4 vColor;\n" +
+    "#endif\n" +
+    "#ifdef TEXTURE\n" +
+    "attribute vec2 aTexPos;\n" +
+    "varying vec2 vTexPos;\n" +
+    "#endif\n" +
+    "void main() {\n" +
+    "#ifdef COLOR\n" +
+    "  vColor = aColor;\n" +
+    "#endif\n" +
+    "#ifdef TEXTURE\n" +
+    "  vTexPos = aTexPos;\n" +
+    "#endif\n" +
+    "  gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);\n" +
+    "}";
+
+  private static final String FRAGMENT_SRC =
+    "precision mediump float;\n" +
+    "#ifdef COLOR\n" +
+    "varying vec4 vColor;\n" +
+    "#endif\n" +
+    "#ifdef TEXTURE\n" +
+    "uniform sampler2D uTexture;\n" +
+    "varying vec2 vTexPos;\n" +
+    "#endif\n" +
+    "#ifdef ALPHA_TEXTURE\n" +
+    "uniform sampler2D uAlpha;\n" +
+    "uniform bool uSeparateAlpha;\n" +
+    "#endif\n" +
+    "#ifdef TINT\n" +
+    "uniform vec4 uTint;\n" +
+    "#endif\n" +
+    "void main(void)\n" +
+    "{\n" +
+    "  vec4 color = vec4(1.0);\n" +
+    "#ifdef COLOR\n" +
+    "  color *= vColor;\n" +
+    "#endif\n" +
+    "#ifdef TEXTURE\n" +
+    "  vec4 texel = texture2D(uTexture, vTexPos);\n" +
+    "#ifdef ALPHA_TEXTURE\n" +
+    "  if (uSeparateAlpha)\n" +
+    "    texel.a = texture2D(uAlpha, vTexPos).r;\n" +
+    "#endif\n" +
+    "  color *= texel;\n" +
+    "#endif\n" +
+    "#ifdef TINT\n" +
+    "  color *= uTint;\n" +
+    "#endif\n" +
+    "#ifdef ALPHA_TEST\n" +
+    "  if (color.a < 0.5)\n" +
+    "    discard;\n" +
+    "#endif\n" +
+    "  gl_FragColor = color;\n" +
+    "}";
+
+  private final ProgramCache programs;
+  private final ShaderProgram[] variants = new ShaderProgram[VARIANT_COUNT];
+
+  private int compiles;
+  private int hits;
+
+  public ShaderVariants(ProgramCache programs)
+  {
+    this.programs = programs;
+  }
+
+  // The vertex shader of a variant
+  public static String vertexSource(int features)
+  {
+    return defines(features) + VERTEX_SRC;
+  }
+
+  // ...and its fragment shader
+  public static String fragmentSource(int features)
+  {
+    return defines(features) + FRAGMENT_SRC;
+  }
+
+  private static String defines(int features)
+  {
+    if (features < 0 || features >= VARIANT_COUNT)
+      throw new IllegalArgumentException("Unknown shader features: " + features);
+
+    if ((features & ALPHA_TEXTURE) != 0 && (features & TEXTURE) == 0)
+      throw new IllegalArgumentException("ALPHA_TEXTURE needs TEXTURE");
+
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < NAMES.length; i++)
+      if ((features & (1 << i)) != 0)
+        sb.append("#define ").append(NAMES[i]).append('\n');
+
+    return sb.toString();
+  }
+
+  // The features, by name (ex: "COLOR|TINT"), for the logs
+  public static String describe(int features)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < NAMES.length; i++)
+    {
+      if ((features & (1 << i)) != 0)
+      {
+        if (sb.length() > 0)
+          sb.append('|');
+
+        sb.append(NAMES[i]);
+      }
+    }
+
+    return sb.length() > 0 ? sb.toString() : "NONE";
+  }
+
+  // The program of a variant, compiled now if this is the first time. Call on
+  // the GL thread.
+  public ShaderProgram get(int features)
+  {
+    ShaderProgram program = features >= 0 && features < VARIANT_COUNT ? variants[features] : null;
+
+    if (program != null)
+    {
+      hits++;
+      return program;
+    }
+
+    program = programs.get(vertexSource(features), fragmentSource(features));
+    variants[features] = program;
+    compiles++;
+    return program;
+  }
+
+  // The context is gone: forget every variant (the ProgramCache does the rest)
+  public void onContextLost()
+  {
+    Arrays.fill(variants, null);
+  }
+
+  // Variants compiled (or taken from SharedResources) so far
+  public int getCompileCount()
+  {
+    return compiles;
+  }
+
+  // ...and how many times one was asked for again
+  public int getHitCount()
+  {
+    return hits;
+  }
+}
@@ -0,0 +1,88 @@
+package ibraim.opengles2;
+
+// A shape turned into triangles (see ShapeTessellator), ready to be drawn
+// with a ShapeBatch.
+//
+// The vertices are X, Y pairs, 3 per triangle (a 'triangle list', like
+// GL_TRIANGLES), around the shape's own origin: the batch moves them to where
+// the shape is drawn. A shape never changes once made, so the same one can be
+// drawn as many times as we want, anywhere, in any color.
+public class Shape
+{
+  private final float[] vertices;
+  private final int vertexCount;
+  private final float minX, minY, maxX, maxY;
+
+  // 'vertices' is kept (not copied), up to 'vertexCount' vertices
+  Shape(float[] vertices, int vertexCount)
+  {
+    this.vertices = vertices;
+    this.vertexCount = vertexCount;
+
+    float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+
+    for (int i = 0; i < vertexCount * 2; i += 2)
+    {
+      x0 = Math.min(x0, vertices[i]);
+      y0 = Math.min(y0, vertices[i + 1]);
+      x1 = Math.max(x1, vertices[i]);
+      y1 = Math.max(y1, vertices[i + 1]);
+    }
+
+    minX = vertexCount > 0 ? x0 : 0;
+    minY = vertexCount > 0 ? y0 : 0;
+    maxX = vertexCount > 0 ? x1 : 0;
+    maxY = vertexCount > 0 ? y1 : 0;
+  }
+
+  // X, Y of each vertex. Don't change it!
+  public float[] getVertices()
+  {
+    return vertices;
+  }
+
+  public int getVertexCount()
+  {
+    return vertexCount;
+  }
+
+  public int getTriangleCount()
+  {
+    return vertexCount / 3;
+  }
+
+  // The box around it, from its origin
+  public float getMinX()
+  {
+    return minX;
+  }
+
+  public float getMinY()
+  {
+    return minY;
+  }
+
+  public float getMaxX()
+  {
+    return maxX;
+  }
+
+  public float getMaxY()
+  {
+    return maxY;
+  }
+
+  // The area covered by the triangles (for checks: it should match the shape's)
+  public float getArea()
+  {
+    float area = 0;
+
+    for (int i = 0; i < vertexCount * 2; i += 6)
+    {
+      float ax = vertices[i], ay = vertices[i + 1];
+      area += Math.abs((vertices[i + 2] - ax) * (vertices[i + 5] - ay) - (vertices[i + 4] - ax) * (vertices[i + 3] - ay)) / 2;
+    }
+
+    return area;
+  }
+}
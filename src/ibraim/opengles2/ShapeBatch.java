@@ -0,0 +1,173 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+// Draws Shapes (see ShapeTessellator) with as few draw calls as possible.
+//
+// It's the SpriteBatch idea, for the colored triangles of the TriangleColor
+// sample: each shape's triangles are moved to where it's drawn, get its color,
+// and go into one big array; only when it's full (or the frame ends) all of it
+// is sent to a StreamBuffer and drawn with a single glDrawArrays. A shape is
+// already a list of triangles, so there's no index buffer this time, and no
+// texture to change: circles, lines and polygons of any color share the same
+// draw call.
+//
+// The vertices are the XY + color of the TriangleColor sample (so its program,
+// the COLOR variant of ShaderVariants, draws them), but the position is a
+// float: shapes can be scaled and rotated, and rounding every vertex to a
+// whole pixel would make small circles wobble. The color has alpha, too; turn
+// blending on to use it.
+//
+// Usage: begin(), draw() as many times as you want, end(). Once per frame.
+public class ShapeBatch
+{
+  public static final VertexFormat FORMAT = new VertexFormat(
+    new VertexFormat.Attribute("aPosition", 2, GLES20.GL_FLOAT, false),
+    new VertexFormat.Attribute("aColor", 4, GLES20.GL_UNSIGNED_BYTE, true));
+
+  private static final int POSITION = 0;
+  private static final int COLOR = 1;
+
+  private final GLES gles;
+  private final int capacity;
+  private final int[] attributes;
+
+  // allocated up front; nothing is allocated while drawing
+  private final VertexWriter writer;
+  private final StreamBuffer vertexBuffer;
+
+  private boolean drawing;
+
+  private int drawCalls;
+  private int lastDrawCalls;
+  private int triangles;
+  private int lastTriangles;
+
+  // 'program' must have the aPosition and aColor attributes of the
+  // TriangleColor sample; 'capacity' is in vertices (3 per triangle). The
+  // batch must be created on the GL thread.
+  public ShapeBatch(GLES gles, ShaderProgram program, int capacity)
+  {
+    if (capacity < 3)
+      throw new IllegalArgumentException("Invalid shape batch capacity: " + capacity);
+
+    this.gles = gles;
+    this.capacity = capacity;
+    this.attributes = FORMAT.getLocations(program);
+
+    writer = new VertexWriter(FORMAT, capacity);
+    vertexBuffer = new StreamBuffer(gles, capacity * FORMAT.getStride());
+  }
+
+  public void begin()
+  {
+    if (drawing)
+      throw new IllegalStateException("ShapeBatch.end() must be called before begin()");
+
+    drawing = true;
+    drawCalls = 0;
+    triangles = 0;
+    writer.clear();
+
+    // a new frame, a new region of the stream
+    vertexBuffer.beginFrame();
+  }
+
+  // Draw 'shape' with its origin at (x, y)
+  public void draw(Shape shape, float x, float y, float r, float g, float b, float a)
+  {
+    draw(shape, x, y, 1f, 0f, r, g, b, a);
+  }
+
+  // Same, but scaled and then rotated ('angle' in radians) around its origin
+  public void draw(Shape shape, float x, float y, float scale, float angle, float r, float g, float b, float a)
+  {
+    if (!drawing)
+      throw new IllegalStateException("ShapeBatch.begin() must be called before draw()");
+
+    int n = shape.getVertexCount();
+
+    if (n > capacity)
+      throw new IllegalArgumentException("Shape too big for the batch: " + n + " vertices, capacity " + capacity);
+
+    // no more room means we need to draw what we have
+    if (writer.getVertexCount() + n > capacity)
+      flush();
+
+    float cos = scale, sin = 0f;
+
+    if (angle != 0f)
+    {
+      cos = (float) Math.cos(angle) * scale;
+      sin = (float) Math.sin(angle) * scale;
+    }
+
+    float[] v = shape.getVertices();
+    VertexWriter w = writer;
+
+    for (int i = 0; i < n * 2; i += 2)
+    {
+      float vx = v[i], vy = v[i + 1];
+      w.put(POSITION, x + vx * cos - vy * sin, y + vx * sin + vy * cos).put(COLOR, r, g, b, a).next();
+    }
+
+    triangles += shape.getTriangleCount();
+  }
+
+  public void end()
+  {
+    if (!drawing)
+      throw new IllegalStateException("ShapeBatch.begin() must be called before end()");
+
+    flush();
+    drawing = false;
+    lastDrawCalls = drawCalls;
+    lastTriangles = triangles;
+  }
+
+  // Draw what we have right now. Needed before changing any state the
+  // batch doesn't know about (ex: the blend mode).
+  public void flush()
+  {
+    int count = writer.getVertexCount();
+
+    if (count == 0)
+      return;
+
+    // send only what we wrote, to a fresh slice, and point the attributes there
+    int offset = vertexBuffer.upload(writer.getBuffer(), writer.getSizeInBytes());
+    FORMAT.bind(gles, attributes, offset);
+    gles.glDrawArrays(GLES20.GL_TRIANGLES, 0, count);
+
+    drawCalls++;
+    writer.clear();
+  }
+
+  public void tearDown()
+  {
+    vertexBuffer.tearDown();
+  }
+
+  // Number of draw calls used by the last begin()/end() pair
+  public int getDrawCalls()
+  {
+    return lastDrawCalls;
+  }
+
+  // Number of triangles drawn by the last begin()/end() pair
+  public int getTriangleCount()
+  {
+    return lastTriangles;
+  }
+
+  // Where the vertices go (for its metrics)
+  public StreamBuffer getStreamBuffer()
+  {
+    return vertexBuffer;
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+}
@@ -0,0 +1,611 @@
+package ibraim.opengles2;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Turns shapes into triangles (see Shape), the only thing OpenGL can draw.
+//
+//  - circles, and the corners of rounded rectangles, are arcs: a polygon with
+//    enough sides to look round. How many depends on the size: the sides are
+//    never more than 'tolerance' pixels away from the real curve, so a small
+//    circle gets a handful and a big one gets many more.
+//  - any simple polygon (no holes, no crossing sides, convex or not) is cut
+//    into triangles by 'ear clipping': a corner whose triangle has no other
+//    point inside it (an 'ear') is cut off, again and again, until only one
+//    triangle is left.
+//  - lines with a thickness (polylines, and arcs) get a rectangle per segment,
+//    and where two segments meet, the corners are extended until they touch
+//    (a 'miter'). A very sharp corner would make a very long spike, so past
+//    'miter limit' times the thickness the corner is cut flat (a 'bevel').
+//
+// Making the triangles takes time, and most shapes never change, so they're
+// cached: asking for the same shape (same kind, same numbers) gives the same
+// Shape. The cache only holds 'maxCached' shapes, and throws away the ones not
+// asked for the longest time. Shapes that change all the time (an animated
+// radius, for instance) would only fill it: use the 'tessellate' methods for
+// those, they skip the cache.
+//
+// Looking a shape up doesn't allocate: its numbers go into a scratch key, and
+// only a miss copies them into a key of its own, to keep in the cache. So a
+// frame of shapes that are all cached makes no garbage.
+//
+// There's no Android in here. Not thread safe.
+public class ShapeTessellator
+{
+  public static final float DEFAULT_TOLERANCE = 0.25f;
+  public static final float DEFAULT_MITER_LIMIT = 4f;
+  public static final int DEFAULT_MAX_CACHED = 512;
+
+  // an arc never has more sides than this
+  private static final int MAX_SEGMENTS = 512;
+
+  private static final int CIRCLE = 0;
+  private static final int ROUNDED_RECT = 1;
+  private static final int POLYGON = 2;
+  private static final int POLYLINE = 3;
+  private static final int ARC = 4;
+
+  private static final float EPSILON = 1e-6f;
+
+  // what a shape is made of: its kind and its numbers (the first 'length' of
+  // 'params'). The scratch key is filled with 'start' and 'add'; the ones in
+  // the cache are copies, and never change.
+  private static class Key
+  {
+    int kind;
+    float[] params;
+    int length;
+    int hash;
+
+    Key(int capacity)
+    {
+      params = new float[capacity];
+    }
+
+    Key start(int kind)
+    {
+      this.kind = kind;
+      this.length = 0;
+      this.hash = kind;
+      return this;
+    }
+
+    Key add(float value)
+    {
+      if (length == params.length)
+        params = Arrays.copyOf(params, Math.max(8, length * 2));
+
+      params[length++] = value;
+      hash = 31 * hash + Float.floatToIntBits(value);
+      return this;
+    }
+
+    Key add(float[] values)
+    {
+      for (float value : values)
+        add(value);
+
+      return this;
+    }
+
+    Key copy()
+    {
+      Key key = new Key(0);
+      key.kind = kind;
+      key.params = Arrays.copyOf(params, length);
+      key.length = length;
+      key.hash = hash;
+      return key;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Key))
+        return false;
+
+      Key other = (Key) o;
+
+      if (kind != other.kind || length != other.length)
+        return false;
+
+      for (int i = 0; i < length; i++)
+        if (Float.floatToIntBits(params[i]) != Float.floatToIntBits(other.params[i]))
+          return false;
+
+      return true;
+    }
+  }
+
+  private final float tolerance;
+  private final float miterLimit;
+  private final Map<Key, Shape> cache;
+  private final Key probe = new Key(16);
+
+  // the triangles being made (X, Y), grown as needed
+  private float[] out = new float[256];
+  private int outCount;
+
+  // metrics
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long tessellated;
+  private long tessellateNanos;
+
+  public ShapeTessellator()
+  {
+    this(DEFAULT_TOLERANCE, DEFAULT_MITER_LIMIT, DEFAULT_MAX_CACHED);
+  }
+
+  public ShapeTessellator(float tolerance, float miterLimit, final int maxCached)
+  {
+    if (tolerance <= 0)
+      throw new IllegalArgumentException("Invalid tolerance: " + tolerance);
+
+    this.tolerance = tolerance;
+    this.miterLimit = miterLimit;
+
+    // in access order: the first one is the one not asked for the longest time
+    this.cache = new LinkedHashMap<Key, Shape>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Shape> eldest)
+      {
+        if (size() <= maxCached)
+          return false;
+
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  // A circle around the origin
+  public Shape circle(float radius)
+  {
+    Shape shape = find(probe.start(CIRCLE).add(radius));
+    return shape != null ? shape : keep(tessellateCircle(radius));
+  }
+
+  // A rectangle from the origin to (width, height), with round corners
+  public Shape roundedRect(float width, float height, float radius)
+  {
+    Shape shape = find(probe.start(ROUNDED_RECT).add(width).add(height).add(radius));
+    return shape != null ? shape : keep(tessellateRoundedRect(width, height, radius));
+  }
+
+  // Any simple polygon: X, Y of each corner, in order (either direction)
+  public Shape polygon(float[] points)
+  {
+    Shape shape = find(probe.start(POLYGON).add(points));
+    return shape != null ? shape : keep(tessellatePolygon(points));
+  }
+
+  // A line through 'points' (X, Y), 'thickness' wide. A closed one goes back
+  // to the first point.
+  public Shape polyline(float[] points, float thickness, boolean closed)
+  {
+    Shape shape = find(probe.start(POLYLINE).add(points).add(thickness).add(closed ? 1 : 0));
+    return shape != null ? shape : keep(tessellatePolyline(points, thickness, closed));
+  }
+
+  // Part of a circle's outline, 'thickness' wide, from 'startAngle' and going
+  // 'sweepAngle' radians (positive: from X towards Y)
+  public Shape arc(float radius, float startAngle, float sweepAngle, float thickness)
+  {
+    Shape shape = find(probe.start(ARC).add(radius).add(startAngle).add(sweepAngle).add(thickness));
+    return shape != null ? shape : keep(tessellateArc(radius, startAngle, sweepAngle, thickness));
+  }
+
+  private Shape find(Key key)
+  {
+    Shape shape = cache.get(key);
+
+    if (shape != null)
+      hits++;
+    else
+      misses++;
+
+    return shape;
+  }
+
+  // after a miss: the probe still holds what the shape is made of
+  private Shape keep(Shape shape)
+  {
+    cache.put(probe.copy(), shape);
+    return shape;
+  }
+
+  // Forget every cached shape
+  public void clear()
+  {
+    cache.clear();
+  }
+
+  // How many sides an arc of 'angle' radians needs so it's never more than
+  // 'tolerance' away from the real curve. The middle of a side is the farthest
+  // point: radius * (1 - cos(step / 2)) away.
+  public int segments(float radius, float angle)
+  {
+    angle = Math.abs(angle);
+    int min = Math.max(1, (int) Math.ceil(8 * angle / (2 * Math.PI) - 1e-3));
+
+    if (radius <= tolerance)
+      return min;
+
+    double step = 2 * Math.acos(1 - tolerance / radius);
+    int n = (int) Math.ceil(angle / step);
+    return Math.max(min, Math.min(MAX_SEGMENTS, n));
+  }
+
+  // ---- the tessellation itself (these don't use the cache) ----
+
+  public Shape tessellateCircle(float radius)
+  {
+    long start = begin();
+    int n = segments(radius, (float) (2 * Math.PI));
+    float px = radius, py = 0;
+
+    // a fan around the center
+    for (int i = 1; i <= n; i++)
+    {
+      double a = 2 * Math.PI * i / n;
+      float x = i == n ? radius : (float) (radius * Math.cos(a));
+      float y = i == n ? 0 : (float) (radius * Math.sin(a));
+      triangle(0, 0, px, py, x, y);
+      px = x;
+      py = y;
+    }
+
+    return end(start);
+  }
+
+  public Shape tessellateRoundedRect(float width, float height, float radius)
+  {
+    long start = begin();
+    radius = Math.max(0, Math.min(radius, Math.min(width, height) / 2));
+
+    if (radius == 0)
+    {
+      triangle(0, 0, 0, height, width, 0);
+      triangle(width, 0, 0, height, width, height);
+      return end(start);
+    }
+
+    // the outline: a quarter of a circle at each corner
+    int n = segments(radius, (float) (Math.PI / 2));
+    float[] outline = new float[(n + 1) * 4 * 2];
+    float[] cx = {width - radius, radius, radius, width - radius};
+    float[] cy = {height - radius, height - radius, radius, radius};
+    int at = 0;
+
+    for (int corner = 0; corner < 4; corner++)
+    {
+      for (int i = 0; i <= n; i++)
+      {
+        double a = Math.PI / 2 * (corner + (double) i / n);
+        outline[at++] = cx[corner] + (float) (radius * Math.cos(a));
+        outline[at++] = cy[corner] + (float) (radius * Math.sin(a));
+      }
+    }
+
+    // it's convex: a fan around the center will do
+    fan(width / 2, height / 2, outline, at / 2);
+    return end(start);
+  }
+
+  public Shape tessellatePolygon(float[] points)
+  {
+    long start = begin();
+    int n = points.length / 2;
+
+    if (n < 3)
+      return end(start);
+
+    // the corners still there, in counterclockwise order (positive area)
+    int[] left = new int[n];
+    boolean reverse = signedArea(points) < 0;
+
+    for (int i = 0; i < n; i++)
+      left[i] = reverse ? n - 1 - i : i;
+
+    int count = n;
+    int i = 0;
+    int misses = 0;
+
+    while (count > 3)
+    {
+      int prev = left[(i + count - 1) % count];
+      int cur = left[i % count];
+      int next = left[(i + 1) % count];
+
+      float cross = cross(points, prev, cur, next);
+
+      // A corner in a straight line is just dropped. If we went all the way
+      // around without finding an ear, the polygon isn't simple (its sides
+      // cross): cut something anyway, or we'd never finish.
+      boolean ear = cross > EPSILON && isEmpty(points, left, count, prev, cur, next);
+
+      if (ear || Math.abs(cross) <= EPSILON || misses >= count)
+      {
+        if (Math.abs(cross) > EPSILON)
+          triangle(points[prev * 2], points[prev * 2 + 1], points[cur * 2], points[cur * 2 + 1], points[next * 2], points[next * 2 + 1]);
+
+        // remove the corner
+        int at = i % count;
+        System.arraycopy(left, at + 1, left, at, count - at - 1);
+        count--;
+        misses = 0;
+
+        // step back, the previous corner may be an ear now
+        i = at == 0 ? count - 1 : at - 1;
+      }
+      else
+      {
+        i = (i + 1) % count;
+        misses++;
+      }
+    }
+
+    if (cross(points, left[0], left[1], left[2]) > EPSILON)
+      triangle(points[left[0] * 2], points[left[0] * 2 + 1], points[left[1] * 2], points[left[1] * 2 + 1], points[left[2] * 2], points[left[2] * 2 + 1]);
+
+    return end(start);
+  }
+
+  // No other corner still there is inside the triangle (or on its sides)
+  private static boolean isEmpty(float[] p, int[] left, int count, int a, int b, int c)
+  {
+    for (int k = 0; k < count; k++)
+    {
+      int v = left[k];
+
+      if (v == a || v == b || v == c)
+        continue;
+
+      float x = p[v * 2], y = p[v * 2 + 1];
+
+      // the same point as a corner of the triangle doesn't count
+      if (x == p[a * 2] && y == p[a * 2 + 1] || x == p[b * 2] && y == p[b * 2 + 1] || x == p[c * 2] && y == p[c * 2 + 1])
+        continue;
+
+      if (side(p, a, b, x, y) >= 0 && side(p, b, c, x, y) >= 0 && side(p, c, a, x, y) >= 0)
+        return false;
+    }
+
+    return true;
+  }
+
+  public Shape tessellatePolyline(float[] points, float thickness, boolean closed)
+  {
+    long start = begin();
+    stroke(points, points.length / 2, thickness / 2, closed);
+    return end(start);
+  }
+
+  public Shape tessellateArc(float radius, float startAngle, float sweepAngle, float thickness)
+  {
+    long start = begin();
+
+    // the outer side is the longest, so that's the one that must look round
+    int n = segments(radius + thickness / 2, sweepAngle);
+    float[] points = new float[(n + 1) * 2];
+
+    for (int i = 0; i <= n; i++)
+    {
+      double a = startAngle + (double) sweepAngle * i / n;
+      points[i * 2] = (float) (radius * Math.cos(a));
+      points[i * 2 + 1] = (float) (radius * Math.sin(a));
+    }
+
+    boolean full = Math.abs(sweepAngle) >= 2 * Math.PI - EPSILON;
+    stroke(points, full ? n : n + 1, thickness / 2, full);
+    return end(start);
+  }
+
+  // The triangles of a line through the first 'n' points, 'hw' to each side
+  private void stroke(float[] points, int n, float hw, boolean closed)
+  {
+    // drop repeated points: they have no direction
+    float[] p = new float[n * 2];
+    int m = 0;
+
+    for (int i = 0; i < n; i++)
+    {
+      float x = points[i * 2], y = points[i * 2 + 1];
+
+      if (m > 0 && x == p[(m - 1) * 2] && y == p[(m - 1) * 2 + 1])
+        continue;
+
+      p[m * 2] = x;
+      p[m * 2 + 1] = y;
+      m++;
+    }
+
+    if (closed && m > 1 && p[0] == p[(m - 1) * 2] && p[1] == p[(m - 1) * 2 + 1])
+      m--;
+
+    if (m < 2 || hw <= 0)
+      return;
+
+    int segments = closed ? m : m - 1;
+
+    // the normal (to the left) of each segment, 'hw' long
+    float[] nx = new float[segments];
+    float[] ny = new float[segments];
+
+    for (int s = 0; s < segments; s++)
+    {
+      int a = s, b = (s + 1) % m;
+      float dx = p[b * 2] - p[a * 2], dy = p[b * 2 + 1] - p[a * 2 + 1];
+      float length = (float) Math.sqrt(dx * dx + dy * dy);
+      nx[s] = -dy / length * hw;
+      ny[s] = dx / length * hw;
+    }
+
+    // where each segment starts and ends, on each side (left, then right)
+    float[] corners = new float[segments * 8];
+
+    for (int s = 0; s < segments; s++)
+    {
+      int a = s, b = (s + 1) % m;
+      setCorner(corners, s * 8, p[a * 2] + nx[s], p[a * 2 + 1] + ny[s], p[a * 2] - nx[s], p[a * 2 + 1] - ny[s]);
+      setCorner(corners, s * 8 + 4, p[b * 2] + nx[s], p[b * 2 + 1] + ny[s], p[b * 2] - nx[s], p[b * 2 + 1] - ny[s]);
+    }
+
+    // the joints: segment 'in' ends where 'out' starts
+    int joints = closed ? m : m - 2;
+
+    for (int j = 0; j < joints; j++)
+    {
+      int in = closed ? (j + segments - 1) % segments : j;
+      int out = closed ? j : j + 1;
+      int at = closed ? j : j + 1;
+      float x = p[at * 2], y = p[at * 2 + 1];
+
+      // the miter goes along the sum of both normals, until it's 'hw' away
+      // from both sides
+      float mx = nx[in] + nx[out], my = ny[in] + ny[out];
+      float dot = (mx * nx[in] + my * ny[in]) / hw;   // the sum's length along the normal
+      float length2 = mx * mx + my * my;
+
+      if (dot > EPSILON && length2 / (dot * dot) <= miterLimit * miterLimit)
+      {
+        float scale = hw / dot;
+        float ox = mx * scale, oy = my * scale;
+        setCorner(corners, in * 8 + 4, x + ox, y + oy, x - ox, y - oy);
+        setCorner(corners, out * 8, x + ox, y + oy, x - ox, y - oy);
+      }
+      else
+      {
+        // bevel: fill the gap on the outer side of the turn
+        float turn = nx[in] * ny[out] - ny[in] * nx[out];
+
+        if (turn > 0)
+          triangle(x, y, x - nx[in], y - ny[in], x - nx[out], y - ny[out]);
+        else if (turn < 0)
+          triangle(x, y, x + nx[in], y + ny[in], x + nx[out], y + ny[out]);
+      }
+    }
+
+    // a rectangle (two triangles) per segment
+    for (int s = 0; s < segments; s++)
+    {
+      int c = s * 8;
+      triangle(corners[c], corners[c + 1], corners[c + 2], corners[c + 3], corners[c + 4], corners[c + 5]);
+      triangle(corners[c + 4], corners[c + 5], corners[c + 2], corners[c + 3], corners[c + 6], corners[c + 7]);
+    }
+  }
+
+  private static void setCorner(float[] corners, int at, float lx, float ly, float rx, float ry)
+  {
+    corners[at] = lx;
+    corners[at + 1] = ly;
+    corners[at + 2] = rx;
+    corners[at + 3] = ry;
+  }
+
+  private void fan(float cx, float cy, float[] outline, int n)
+  {
+    for (int i = 0; i < n; i++)
+    {
+      int j = (i + 1) % n;
+      triangle(cx, cy, outline[i * 2], outline[i * 2 + 1], outline[j * 2], outline[j * 2 + 1]);
+    }
+  }
+
+  private static float signedArea(float[] p)
+  {
+    int n = p.length / 2;
+    float area = 0;
+
+    for (int i = 0, j = n - 1; i < n; j = i++)
+      area += p[j * 2] * p[i * 2 + 1] - p[i * 2] * p[j * 2 + 1];
+
+    return area / 2;
+  }
+
+  // > 0 when a, b, c turn counterclockwise
+  private static float cross(float[] p, int a, int b, int c)
+  {
+    return (p[b * 2] - p[a * 2]) * (p[c * 2 + 1] - p[a * 2 + 1]) - (p[b * 2 + 1] - p[a * 2 + 1]) * (p[c * 2] - p[a * 2]);
+  }
+
+  // which side of a -> b the point is on (> 0: left)
+  private static float side(float[] p, int a, int b, float x, float y)
+  {
+    return (p[b * 2] - p[a * 2]) * (y - p[a * 2 + 1]) - (p[b * 2 + 1] - p[a * 2 + 1]) * (x - p[a * 2]);
+  }
+
+  private long begin()
+  {
+    outCount = 0;
+    return System.nanoTime();
+  }
+
+  private void triangle(float x0, float y0, float x1, float y1, float x2, float y2)
+  {
+    if (outCount + 6 > out.length)
+      out = Arrays.copyOf(out, out.length * 2);
+
+    float[] o = out;
+    int i = outCount;
+    o[i] = x0;
+    o[i + 1] = y0;
+    o[i + 2] = x1;
+    o[i + 3] = y1;
+    o[i + 4] = x2;
+    o[i + 5] = y2;
+    outCount = i + 6;
+  }
+
+  private Shape end(long start)
+  {
+    Shape shape = new Shape(Arrays.copyOf(out, outCount), outCount / 2);
+    tessellated += shape.getTriangleCount();
+    tessellateNanos += System.nanoTime() - start;
+    return shape;
+  }
+
+  public int getCachedCount()
+  {
+    return cache.size();
+  }
+
+  // Shapes found in the cache...
+  public long getHitCount()
+  {
+    return hits;
+  }
+
+  // ...and the ones that had to be made
+  public long getMissCount()
+  {
+    return misses;
+  }
+
+  // shapes thrown away to make room
+  public long getEvictionCount()
+  {
+    return evictions;
+  }
+
+  // Triangles made so far, and the time it took
+  public long getTriangleCount()
+  {
+    return tessellated;
+  }
+
+  public long getTessellateTimeNanos()
+  {
+    return tessellateNanos;
+  }
+}
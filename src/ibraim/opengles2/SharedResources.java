@@ -0,0 +1,364 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Programs, textures and buffers shared by every demo of the process.
+//
+// Each demo has its own GLSurfaceView and its own context, so going back and
+// forth between them used to compile the same shaders and upload the same
+// textures every single time. But the demo contexts share their objects with
+// the Prewarmer's (see Prewarmer.ContextFactory), and that one lives as long as
+// the process. Anything created in one of them can be used by all the others.
+//
+// So every resource lives here, found by what it's made of: the shader
+// sources, the drawable id, or a name given to a buffer. Asking for the same
+// thing twice gives the same object, and each one counts how many demos are
+// using it. A resource nobody uses is NOT deleted: it stays here, ready for the
+// next demo that needs it.
+//
+// The objects handed out are 'shared' copies: tearDown on them just lets go of
+// the resource (see ShaderProgram, VertexBuffer and Texture). Only use this on
+// a context that really shares objects with the Prewarmer's.
+//
+// When memory is short (see GpuMemoryBudget), 'trimUnused' deletes the
+// textures and buffers nobody is using after all.
+//
+// If the contexts are lost, 'onContextLost' forgets every handle. The
+// resources are rebuilt, from the same sources, the next time they're asked for.
+public class SharedResources
+{
+  private static final SharedResources instance = new SharedResources();
+
+  private static final int PROGRAM = 0;
+  private static final int TEXTURE = 1;
+  private static final int BUFFER = 2;
+
+  private static class Entry
+  {
+    final int kind;
+    final String name;
+    int refs;
+    int generation;
+    int bytes;
+    ShaderProgram program;
+    Texture texture;
+    VertexBuffer buffer;
+
+    Entry(int kind, String name)
+    {
+      this.kind = kind;
+      this.name = name;
+    }
+
+    boolean isEmpty()
+    {
+      return program == null && texture == null && buffer == null;
+    }
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+  private int generation;
+
+  // metrics
+  private int built;
+  private int reused;
+
+  public static SharedResources get()
+  {
+    return instance;
+  }
+
+  private SharedResources()
+  {
+  }
+
+  // The program made of these sources, compiled now if we don't have it yet.
+  // Call on a GL thread.
+  public synchronized ShaderProgram acquireProgram(GLES gles, String vertexSrc, String fragmentSrc)
+  {
+    Entry entry = entry(programKey(vertexSrc, fragmentSrc), PROGRAM, "program");
+
+    if (entry.program == null)
+    {
+      entry.program = new ShaderProgram(gles, vertexSrc, fragmentSrc);
+      built++;
+    }
+    else
+      reused++;
+
+    entry.refs++;
+    return new ShaderProgram(gles, entry.program, this);
+  }
+
+  // The shared copy of a program is done with it
+  synchronized void releaseProgram(ShaderProgram program)
+  {
+    release(programKey(program.getVertexSource(), program.getFragmentSource()));
+  }
+
+  // A static buffer with this data, uploaded now if we don't have it yet. All
+  // the buffers with the same 'name' must have the same data. Call on a GL thread.
+  public synchronized VertexBuffer acquireBuffer(GLES gles, String name, float[] data)
+  {
+    return acquireBuffer(gles, name, data, null);
+  }
+
+  // The same, for data packed with a VertexWriter
+  public synchronized VertexBuffer acquireBuffer(GLES gles, String name, ByteBuffer data)
+  {
+    return acquireBuffer(gles, name, null, data);
+  }
+
+  private VertexBuffer acquireBuffer(GLES gles, String name, float[] floats, ByteBuffer bytes)
+  {
+    Entry entry = entry(bufferKey(name), BUFFER, name);
+
+    if (entry.buffer == null)
+    {
+      entry.buffer = floats != null ? new VertexBuffer(gles, floats) : new VertexBuffer(gles, bytes);
+      entry.bytes = entry.buffer.getSizeInBytes();
+      built++;
+    }
+    else
+      reused++;
+
+    entry.refs++;
+    return new VertexBuffer(gles, entry.buffer, this, name);
+  }
+
+  synchronized void releaseBuffer(String name)
+  {
+    release(bufferKey(name));
+  }
+
+  // The texture of a drawable, if someone already uploaded it (or null).
+  // Textures are decoded by a TextureLoader, which gives them to us with 'addTexture'.
+  public synchronized Texture acquireTexture(int resourceId)
+  {
+    Entry entry = entries.get(textureKey(resourceId));
+
+    if (entry == null || entry.texture == null || entry.generation != generation)
+      return null;
+
+    entry.refs++;
+    reused++;
+    return entry.texture;
+  }
+
+  // A TextureLoader uploaded a drawable: it's ours now, and the loader holds
+  // one reference. If someone was faster and uploaded the same drawable, we
+  // keep that one and return it; the loader must delete its own.
+  public synchronized Texture addTexture(Texture uploaded)
+  {
+    Entry entry = entry(textureKey(uploaded.getResourceId()), TEXTURE, "drawable 0x" + Integer.toHexString(uploaded.getResourceId()));
+
+    if (entry.texture == null)
+    {
+      Texture texture = new Texture(uploaded.getResourceId(), 0);
+      texture.setLoaded(uploaded.getHandle(), uploaded.getAlphaHandle(), uploaded.getWidth(), uploaded.getHeight(), uploaded.isCompressed());
+      entry.texture = texture;
+      entry.bytes = textureBytes(texture);
+      built++;
+    }
+
+    entry.refs++;
+    return entry.texture;
+  }
+
+  public synchronized void releaseTexture(int resourceId)
+  {
+    release(textureKey(resourceId));
+  }
+
+  // Every context sharing our objects is gone, and so are the objects. Forget
+  // the handles; whatever is still in use is rebuilt the next time it's asked
+  // for. What nobody uses is simply dropped.
+  public synchronized void onContextLost()
+  {
+    generation++;
+
+    for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); )
+    {
+      Entry entry = i.next();
+
+      if (entry.refs == 0)
+        i.remove();
+      else
+      {
+        entry.program = null;
+        entry.texture = null;
+        entry.buffer = null;
+        entry.bytes = 0;
+      }
+    }
+  }
+
+  // Memory is short: delete the textures and buffers nobody is using. Call on
+  // a GL thread whose context shares our objects. Programs are kept (they're
+  // small, and each one belongs to the context that compiled it). Returns the
+  // bytes freed.
+  public synchronized long trimUnused(GLES gles)
+  {
+    long freed = 0;
+    int[] handle = new int[1];
+
+    for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); )
+    {
+      Entry entry = i.next();
+
+      if (entry.refs > 0 || entry.kind == PROGRAM)
+        continue;
+
+      if (entry.generation == generation && entry.texture != null)
+      {
+        handle[0] = entry.texture.peekHandle();
+        gles.glDeleteTextures(1, handle, 0);
+
+        if (entry.texture.hasSeparateAlpha())
+        {
+          handle[0] = entry.texture.getAlphaHandle();
+          gles.glDeleteTextures(1, handle, 0);
+        }
+      }
+      else if (entry.generation == generation && entry.buffer != null)
+      {
+        handle[0] = entry.buffer.getHandle();
+        gles.glDeleteBuffers(1, handle, 0);
+      }
+
+      freed += entry.bytes;
+      i.remove();
+    }
+
+    return freed;
+  }
+
+  private Entry entry(String key, int kind, String name)
+  {
+    Entry entry = entries.get(key);
+
+    if (entry == null)
+    {
+      entry = new Entry(kind, name);
+      entry.generation = generation;
+      entries.put(key, entry);
+    }
+
+    // made before the contexts were lost: build it again
+    if (entry.generation != generation)
+    {
+      entry.program = null;
+      entry.texture = null;
+      entry.buffer = null;
+      entry.generation = generation;
+    }
+
+    return entry;
+  }
+
+  private void release(String key)
+  {
+    Entry entry = entries.get(key);
+
+    if (entry != null && entry.refs > 0)
+      entry.refs--;
+  }
+
+  private static String programKey(String vertexSrc, String fragmentSrc)
+  {
+    return "program:" + vertexSrc + '\0' + fragmentSrc;
+  }
+
+  private static String textureKey(int resourceId)
+  {
+    return "texture:" + resourceId;
+  }
+
+  private static String bufferKey(String name)
+  {
+    return "buffer:" + name;
+  }
+
+  // ETC1 is 4 bits per pixel (plus the alpha texture, if any); RGBA is 32
+  private static int textureBytes(Texture texture)
+  {
+    if (!texture.isCompressed())
+      return texture.getWidth() * texture.getHeight() * 4;
+
+    int size = Etc1.getEncodedDataSize(texture.getWidth(), texture.getHeight());
+    return texture.hasSeparateAlpha() ? size * 2 : size;
+  }
+
+  public synchronized int getCount()
+  {
+    return entries.size();
+  }
+
+  // GPU memory used by the textures and buffers we know about (the size of a
+  // program can't be asked to OpenGL, so they don't count)
+  public synchronized long getTotalBytes()
+  {
+    long total = 0;
+
+    for (Entry entry : entries.values())
+      total += entry.bytes;
+
+    return total;
+  }
+
+  // Resources created here
+  public synchronized int getBuiltCount()
+  {
+    return built;
+  }
+
+  // ...and how many times one was given again instead of built
+  public synchronized int getReusedCount()
+  {
+    return reused;
+  }
+
+  // Everything we have right now, one per line: what it is, how many are
+  // using it, and how big it is. For the logs.
+  public synchronized String getInventory()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(entries.size()).append(" shared resource(s), ").append(getTotalBytes() / 1024).append("KB; ")
+      .append(built).append(" built, ").append(reused).append(" reused");
+
+    for (Entry entry : entries.values())
+    {
+      sb.append("\n  ");
+
+      switch (entry.kind)
+      {
+        case PROGRAM:
+          sb.append("program ").append(entry.program != null ? entry.program.getHandle() : GLES20.GL_FALSE);
+          break;
+
+        case TEXTURE:
+          sb.append("texture ").append(entry.name);
+
+          if (entry.texture != null)
+            sb.append(" ").append(entry.texture.getWidth()).append("x").append(entry.texture.getHeight()).append(entry.texture.isCompressed() ? " ETC1" : " RGBA");
+          break;
+
+        default:
+          sb.append("buffer ").append(entry.name);
+          break;
+      }
+
+      sb.append(entry.isEmpty() ? " (lost)" : "").append(", ").append(entry.refs).append(" ref(s)");
+
+      if (entry.kind != PROGRAM)
+        sb.append(", ").append(entry.bytes).append(" bytes");
+    }
+
+    return sb.toString();
+  }
+}
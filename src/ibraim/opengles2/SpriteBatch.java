@@ -0,0 +1,231 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+// Draws lots of textured rectangles ('sprites') with as few draw calls as possible.
+//
+// Drawing a sprite the way the Texture sample does (one buffer, one glDrawArrays)
+// is fine for ONE image, but each draw call has a fixed cost on the CPU side. With
+// a few thousand sprites, that cost alone eats the whole frame.
+//
+// The trick is simple: instead of drawing each sprite right away, we write its
+// 4 vertices (same XY + UV layout used by the Texture sample) into a big array,
+// and only send everything to OpenGL when we must: when the texture changes,
+// when the array is full or when the frame ends. Since a rectangle is now made of
+// 2 separate triangles (a strip can't hold more than one rectangle), we use a
+// static index buffer that says which vertices form each triangle.
+//
+// The vertices change every frame, so they go to a StreamBuffer: each flush
+// gets its own slice, and we never overwrite what the GPU may still be drawing.
+//
+// Usage: begin(), draw() as many times as you want, end(). Once per frame: each
+// begin() moves the StreamBuffer to its next frame.
+public class SpriteBatch
+{
+  // 4 vertices per sprite, and the indices are unsigned shorts: 65536 / 4
+  public static final int MAX_SPRITES = 16384;
+
+  private static final int FLOATS_PER_VERTEX = 4; // X, Y, U, V
+  private static final int FLOATS_PER_SPRITE = FLOATS_PER_VERTEX * 4;
+  private static final int INDICES_PER_SPRITE = 6;
+  private static final int STRIDE = FLOATS_PER_VERTEX * VertexBuffer.FLOAT_SIZE;
+
+  private final GLES gles;
+  private final int capacity;
+  private final int aPosition;
+  private final int aTexPos;
+
+  // everything is allocated up front; nothing is allocated while drawing
+  private final float[] vertices;
+  private final FloatBuffer staging;
+  private final StreamBuffer vertexBuffer;
+  private final VertexBuffer indexBuffer;
+
+  private int count;
+  private int texture = -1;
+  private boolean drawing;
+
+  private int drawCalls;
+  private int lastDrawCalls;
+  private int sprites;
+  private int lastSprites;
+
+  // 'program' must have the aPosition and aTexPos attributes of the Texture
+  // sample. The batch must be created on the GL thread.
+  public SpriteBatch(GLES gles, ShaderProgram program, int capacity)
+  {
+    if (capacity <= 0 || capacity > MAX_SPRITES)
+      throw new IllegalArgumentException("Invalid sprite batch capacity: " + capacity);
+
+    this.gles = gles;
+    this.capacity = capacity;
+    this.aPosition = program.getAttribute("aPosition");
+    this.aTexPos = program.getAttribute("aTexPos");
+
+    vertices = new float[capacity * FLOATS_PER_SPRITE];
+    staging = ByteBuffer.allocateDirect(vertices.length * VertexBuffer.FLOAT_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    vertexBuffer = new StreamBuffer(gles, vertices.length * VertexBuffer.FLOAT_SIZE);
+
+    // The indices never change: sprite N always uses vertices 4N to 4N+3
+    // V1 (top-left), V2 (bottom-left), V3 (top-right), V4 (bottom-right)
+    short[] indices = new short[capacity * INDICES_PER_SPRITE];
+    for (int i = 0, v = 0; i < indices.length; i += INDICES_PER_SPRITE, v += 4)
+    {
+      indices[i]     = (short) v;
+      indices[i + 1] = (short) (v + 1);
+      indices[i + 2] = (short) (v + 2);
+      indices[i + 3] = (short) (v + 2);
+      indices[i + 4] = (short) (v + 1);
+      indices[i + 5] = (short) (v + 3);
+    }
+
+    indexBuffer = new VertexBuffer(gles, indices);
+  }
+
+  public void begin()
+  {
+    if (drawing)
+      throw new IllegalStateException("SpriteBatch.end() must be called before begin()");
+
+    drawing = true;
+    drawCalls = 0;
+    sprites = 0;
+    texture = -1;
+
+    // a new frame, a new region of the stream; the attributes are pointed to
+    // each slice as we flush
+    vertexBuffer.beginFrame();
+    indexBuffer.bind();
+    gles.glEnableVertexAttribArray(aPosition);
+    gles.glEnableVertexAttribArray(aTexPos);
+  }
+
+  // Draw the whole texture
+  public void draw(int texture, float x, float y, float width, float height)
+  {
+    draw(texture, x, y, width, height, 0f, 0f, 1f, 1f);
+  }
+
+  // Draw only part of the texture, from (u0, v0) to (u1, v1)
+  public void draw(int texture, float x, float y, float width, float height, float u0, float v0, float u1, float v1)
+  {
+    if (!drawing)
+      throw new IllegalStateException("SpriteBatch.begin() must be called before draw()");
+
+    // a different texture (or no more room) means we need to draw what we have
+    if (texture != this.texture || count == capacity)
+    {
+      flush();
+      this.texture = texture;
+    }
+
+    int i = count * FLOATS_PER_SPRITE;
+    float[] v = vertices;
+
+    v[i]      = x;         v[i + 1]  = y;          v[i + 2]  = u0; v[i + 3]  = v0; // V1
+    v[i + 4]  = x;         v[i + 5]  = y + height; v[i + 6]  = u0; v[i + 7]  = v1; // V2
+    v[i + 8]  = x + width; v[i + 9]  = y;          v[i + 10] = u1; v[i + 11] = v0; // V3
+    v[i + 12] = x + width; v[i + 13] = y + height; v[i + 14] = u1; v[i + 15] = v1; // V4
+
+    count++;
+    sprites++;
+  }
+
+  // Draw 'count' sprites whose vertices are already built, in our layout (see
+  // ParallelSpriteBuilder), from the start of 'built'. They skip our array:
+  // whatever we have is drawn first, then these go to the stream as they are,
+  // one draw call per 'capacity' sprites.
+  public void draw(int texture, FloatBuffer built, int count)
+  {
+    if (!drawing)
+      throw new IllegalStateException("SpriteBatch.begin() must be called before draw()");
+
+    flush();
+    this.texture = texture;
+    gles.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+
+    for (int first = 0; first < count; first += capacity)
+    {
+      int n = Math.min(capacity, count - first);
+      built.position(first * FLOATS_PER_SPRITE);
+      int offset = vertexBuffer.upload(built, n * FLOATS_PER_SPRITE * VertexBuffer.FLOAT_SIZE);
+
+      gles.glVertexAttribPointer(aPosition, 2, GLES20.GL_FLOAT, false, STRIDE, offset);
+      gles.glVertexAttribPointer(aTexPos, 2, GLES20.GL_FLOAT, false, STRIDE, offset + 2 * VertexBuffer.FLOAT_SIZE);
+      gles.glDrawElements(GLES20.GL_TRIANGLES, n * INDICES_PER_SPRITE, GLES20.GL_UNSIGNED_SHORT, 0);
+
+      drawCalls++;
+    }
+
+    built.position(0);
+    sprites += count;
+  }
+
+  public void end()
+  {
+    if (!drawing)
+      throw new IllegalStateException("SpriteBatch.begin() must be called before end()");
+
+    flush();
+    drawing = false;
+    lastDrawCalls = drawCalls;
+    lastSprites = sprites;
+  }
+
+  // Draw what we have right now. Needed before changing any state the
+  // batch doesn't know about (ex: the blend mode).
+  public void flush()
+  {
+    if (count == 0)
+      return;
+
+    // send only the part of the array we actually used, to a fresh slice
+    int floats = count * FLOATS_PER_SPRITE;
+    staging.clear();
+    staging.put(vertices, 0, floats);
+    staging.position(0);
+    int offset = vertexBuffer.upload(staging, floats * VertexBuffer.FLOAT_SIZE);
+
+    gles.glVertexAttribPointer(aPosition, 2, GLES20.GL_FLOAT, false, STRIDE, offset);
+    gles.glVertexAttribPointer(aTexPos, 2, GLES20.GL_FLOAT, false, STRIDE, offset + 2 * VertexBuffer.FLOAT_SIZE);
+
+    gles.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    gles.glDrawElements(GLES20.GL_TRIANGLES, count * INDICES_PER_SPRITE, GLES20.GL_UNSIGNED_SHORT, 0);
+
+    drawCalls++;
+    count = 0;
+  }
+
+  public void tearDown()
+  {
+    vertexBuffer.tearDown();
+    indexBuffer.tearDown();
+  }
+
+  // Number of draw calls used by the last begin()/end() pair
+  public int getDrawCalls()
+  {
+    return lastDrawCalls;
+  }
+
+  // Number of sprites drawn by the last begin()/end() pair
+  public int getSpriteCount()
+  {
+    return lastSprites;
+  }
+
+  // Where the vertices go (for its metrics)
+  public StreamBuffer getStreamBuffer()
+  {
+    return vertexBuffer;
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+}
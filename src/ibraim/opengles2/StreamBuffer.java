@@ -0,0 +1,204 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+// A buffer object for vertices that change every frame.
+//
+// Updating the same part of a buffer over and over (like the SpriteBatch used
+// to) looks harmless, but the GPU runs a frame or two BEHIND the CPU: the draw
+// calls we made a moment ago may still be reading that memory. The driver has
+// two choices, and both are bad: wait for the GPU (a 'stall'), or quietly copy
+// the whole buffer.
+//
+// So we never write where the GPU may still be reading. The buffer is split in
+// 'framesInFlight' regions, one per frame, used in turns (a 'ring'): by the time
+// we're back to a region, the frame that used it is long done. Each 'upload' is
+// a slice of the current region, right after the previous one, and returns its
+// offset (in bytes) for glVertexAttribPointer.
+//
+// There are two ways to send the data (see the constructor):
+//  - UPLOAD_SUB_DATA: glBufferSubData into the slice, nothing else.
+//  - UPLOAD_ORPHAN: also, every time the ring goes back to the first region, the
+//    whole buffer is 'orphaned' (glBufferData with null): the driver gives us
+//    fresh memory, and frees the old one when the GPU is done with it. For
+//    drivers that don't trust us, and check anyway.
+//
+// If a frame needs more than a region, the buffer grows right away: a new,
+// bigger one is created and the old one deleted. OpenGL only really frees it
+// after the draws using it are done, so nobody waits. The biggest frame we've
+// seen is the 'high water mark'; when it stops growing, so does the buffer,
+// and nothing is allocated anymore.
+//
+// Usage: beginFrame() once per frame, then upload() and draw as many times as
+// you want. Create it on the GL thread.
+public class StreamBuffer
+{
+  public static final int UPLOAD_SUB_DATA = 0;
+  public static final int UPLOAD_ORPHAN = 1;
+
+  public static final int DEFAULT_FRAMES_IN_FLIGHT = 3;
+
+  private final GLES gles;
+  private final int framesInFlight;
+  private final int uploadMode;
+
+  private VertexBuffer buffer;
+  private int regionSize;
+  private int frame = -1;   // the region we're writing to
+  private int used;         // bytes used in it
+  private int frameUsed;    // bytes uploaded this frame (more than 'used' if we grew)
+
+  // metrics
+  private int highWaterMark;
+  private int grows;
+  private int orphans;
+  private long frames;
+  private long bytesStreamed;
+
+  // 'frameBytes' is how much we expect a frame to need (it grows if needed)
+  public StreamBuffer(GLES gles, int frameBytes, int framesInFlight, int uploadMode)
+  {
+    if (frameBytes <= 0 || framesInFlight <= 0)
+      throw new IllegalArgumentException("Invalid stream buffer size: " + frameBytes + " bytes x " + framesInFlight + " frames");
+
+    if (uploadMode != UPLOAD_SUB_DATA && uploadMode != UPLOAD_ORPHAN)
+      throw new IllegalArgumentException("Invalid upload mode: " + uploadMode);
+
+    this.gles = gles;
+    this.framesInFlight = framesInFlight;
+    this.uploadMode = uploadMode;
+    this.regionSize = align(frameBytes);
+    this.buffer = new VertexBuffer(gles, GLES20.GL_ARRAY_BUFFER, GLES20.GL_STREAM_DRAW, regionSize * framesInFlight);
+  }
+
+  public StreamBuffer(GLES gles, int frameBytes)
+  {
+    this(gles, frameBytes, DEFAULT_FRAMES_IN_FLIGHT, UPLOAD_SUB_DATA);
+  }
+
+  // Move to the next region of the ring
+  public void beginFrame()
+  {
+    frame = (frame + 1) % framesInFlight;
+    used = 0;
+    frameUsed = 0;
+    frames++;
+
+    if (frame == 0 && uploadMode == UPLOAD_ORPHAN && frames > 1)
+    {
+      buffer.orphan();
+      orphans++;
+    }
+  }
+
+  // Send 'countInBytes' bytes of 'data' (from its position) to a new slice of
+  // this frame's region, and return where it is in the buffer, in bytes. The
+  // buffer is left bound, so point the attributes to it right after.
+  public int upload(Buffer data, int countInBytes)
+  {
+    if (frame < 0)
+      throw new IllegalStateException("StreamBuffer.beginFrame() must be called before upload()");
+
+    int size = align(countInBytes);
+
+    if (used + size > regionSize)
+      grow(frameUsed + size);
+
+    int offset = frame * regionSize + used;
+    buffer.update(offset, countInBytes, data);
+
+    used += size;
+    frameUsed += size;
+    bytesStreamed += countInBytes;
+
+    if (frameUsed > highWaterMark)
+      highWaterMark = frameUsed;
+
+    return offset;
+  }
+
+  // A frame needs 'needed' bytes and they don't fit: start over with a buffer
+  // where they do (at least twice as big, so it doesn't happen every frame).
+  // This frame carries on in the same region of the new buffer.
+  private void grow(int needed)
+  {
+    regionSize = Math.max(regionSize * 2, align(needed));
+    buffer.tearDown();
+    buffer = new VertexBuffer(gles, GLES20.GL_ARRAY_BUFFER, GLES20.GL_STREAM_DRAW, regionSize * framesInFlight);
+    used = 0;
+    grows++;
+  }
+
+  // slices start at multiples of 4 bytes, like the attributes in VertexFormat
+  private static int align(int bytes)
+  {
+    return (bytes + 3) & ~3;
+  }
+
+  public void bind()
+  {
+    buffer.bind();
+  }
+
+  public void tearDown()
+  {
+    buffer.tearDown();
+  }
+
+  public int getHandle()
+  {
+    return buffer.getHandle();
+  }
+
+  // The region being written (0 to framesInFlight - 1), and where it starts
+  public int getFrameIndex()
+  {
+    return frame;
+  }
+
+  public int getRegionStart()
+  {
+    return frame * regionSize;
+  }
+
+  public int getRegionSize()
+  {
+    return regionSize;
+  }
+
+  public int getFramesInFlight()
+  {
+    return framesInFlight;
+  }
+
+  // The most bytes a single frame uploaded
+  public int getHighWaterMark()
+  {
+    return highWaterMark;
+  }
+
+  // Times the buffer had to grow
+  public int getGrowCount()
+  {
+    return grows;
+  }
+
+  public int getOrphanCount()
+  {
+    return orphans;
+  }
+
+  public long getBytesStreamed()
+  {
+    return bytesStreamed;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%d x %dKB regions, %dKB at most per frame, grew %d time(s), %d orphan(s), %dKB streamed in %d frame(s)",
+      framesInFlight, regionSize / 1024, highWaterMark / 1024, grows, orphans, bytesStreamed / 1024, frames);
+  }
+}
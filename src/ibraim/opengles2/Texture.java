@@ -0,0 +1,155 @@
+package ibraim.opengles2;
+
+// A texture that may not be ready yet.
+//
+// TextureLoader hands these out right away and fills them in later, once the
+// image was decoded and uploaded. Until then, 'getHandle' returns a placeholder
+// texture, so the renderer can draw as if everything was already there.
+//
+// ETC1 textures (see Etc1) have no alpha channel. When the image is
+// transparent, its alpha lives in a second texture: 'getAlphaHandle'.
+//
+// Most textures are drawables, but they can also come from the assets (like
+// the pages of a TextureAtlas); those have an asset name and no resource id.
+//
+// When the loader has a GpuMemoryBudget, the texture may be evicted to save
+// memory; it's back to the placeholder then, and 'getHandle' loads it again.
+//
+// A texture can also be 'shared': it belongs to SharedResources, and may have
+// been uploaded in another context that shares its objects with ours. The
+// loader never deletes those.
+public class Texture
+{
+  private final int resourceId;
+  private final String asset;
+  private int handle;
+  private int alphaHandle;
+  private boolean compressed;
+  private boolean loaded;
+  private boolean shared;
+  private int width;
+  private int height;
+  private GpuMemoryBudget.Entry residency;
+
+  Texture(int resourceId, int placeholder)
+  {
+    this.resourceId = resourceId;
+    this.asset = null;
+    this.handle = placeholder;
+  }
+
+  Texture(String asset, int placeholder)
+  {
+    this.resourceId = 0;
+    this.asset = asset;
+    this.handle = placeholder;
+  }
+
+  // The texture to bind: the real one, or the placeholder while loading.
+  // Counts as a use for the budget (and brings the texture back if it was evicted).
+  public int getHandle()
+  {
+    if (residency != null)
+      residency.use();
+
+    return handle;
+  }
+
+  // The same, for the loader: it doesn't count as a use
+  int peekHandle()
+  {
+    return handle;
+  }
+
+  // The texture with the alpha channel, or 0 if it's in 'getHandle' already
+  public int getAlphaHandle()
+  {
+    return alphaHandle;
+  }
+
+  public boolean hasSeparateAlpha()
+  {
+    return alphaHandle != 0;
+  }
+
+  // Was it uploaded as ETC1?
+  public boolean isCompressed()
+  {
+    return compressed;
+  }
+
+  public boolean isLoaded()
+  {
+    return loaded;
+  }
+
+  public boolean isShared()
+  {
+    return shared;
+  }
+
+  public int getResourceId()
+  {
+    return resourceId;
+  }
+
+  // The asset it comes from, or null for a drawable
+  public String getAsset()
+  {
+    return asset;
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  // Called by the loader, on the GL thread
+  void setLoaded(int handle, int width, int height)
+  {
+    setLoaded(handle, 0, width, height, false);
+  }
+
+  void setLoaded(int handle, int alphaHandle, int width, int height, boolean compressed)
+  {
+    this.handle = handle;
+    this.alphaHandle = alphaHandle;
+    this.compressed = compressed;
+    this.width = width;
+    this.height = height;
+    this.loaded = true;
+    this.shared = false;
+  }
+
+  // Use the handles of a texture from SharedResources
+  void setShared(Texture prebuilt)
+  {
+    setLoaded(prebuilt.handle, prebuilt.alphaHandle, prebuilt.width, prebuilt.height, prebuilt.compressed);
+    this.shared = true;
+  }
+
+  // Where it is in the GpuMemoryBudget (null when there's none, or it's shared)
+  GpuMemoryBudget.Entry getResidency()
+  {
+    return residency;
+  }
+
+  void setResidency(GpuMemoryBudget.Entry residency)
+  {
+    this.residency = residency;
+  }
+
+  void setPlaceholder(int placeholder)
+  {
+    this.handle = placeholder;
+    this.alphaHandle = 0;
+    this.compressed = false;
+    this.loaded = false;
+    this.shared = false;
+  }
+}
@@ -1,23 +1,64 @@
 package ibraim.opengles2;
 
 import android.app.Activity;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.os.Bundle;
+import android.util.Log;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 
 public class TextureActivity extends Activity
 {
+  // Start this activity with a sprite count to see the SpriteBatch in action:
+  // adb shell am start -n ibraim.opengles2/.TextureActivity --ei sprites 5000
+  public static final String EXTRA_SPRITES = "sprites";
+
+  // Add '--ez mixed true' and every other skull glows (additive blending). The
+  // sprites go through a RenderQueue, which sorts them by blend mode, so the
+  // batch doesn't need to break every single sprite.
+  public static final String EXTRA_MIXED = "mixed";
+
+  // Add '--ez overdraw true' to see how many times each pixel is drawn, as a
+  // heatmap (black: never, red: 8 times, white: 32). See OverdrawGLES.
+  public static final String EXTRA_OVERDRAW = "overdraw";
+
+  // Add '--ei fps 30' to cap the frame rate of the stress mode. When the frames
+  // keep missing the budget, fewer skulls are drawn (see FramePacer).
+  public static final String EXTRA_FPS = "fps";
+
+  // Add '--ei budget 256' to keep the textures under 256KB of GPU memory (the
+  // default is 16MB). The ones not used for a while are evicted, and loaded
+  // again when needed; see GpuMemoryBudget.
+  public static final String EXTRA_BUDGET = "budget";
+
+  // Add '--ei threads 4' to build the vertices of the skulls on 4 threads
+  // (0: one per core, if there's more than one) with a ParallelSpriteBuilder,
+  // instead of one by one in the batch. Not with 'mixed': the blend modes need
+  // the RenderQueue.
+  public static final String EXTRA_THREADS = "threads";
+
+  private static final int DEFAULT_BUDGET_KB = 16 * 1024;
+
+  private static final String TAG = "TextureActivity";
+
   private GLSurfaceView surface;
-  private TextureRenderer renderer;
+  private RenderScheduler scheduler;
+
+  // creates our context, sharing what the Prewarmer built (if it could)
+  private Prewarmer.ContextFactory contextFactory;
+  private boolean warm;
+
+  // what we draw; everything but the Android part lives there (see Scene)
+  private TextureScene scene;
+
+  // The skull is decoded in the background; see TextureLoader.
+  // We can upload up to 1MB of pixels per frame.
+  private TextureLoader loader;
+
+  // what the stress frames and the pacer did, for the log (GL thread only)
+  private int frames;
+  private int level;
 
   @Override
   protected void onCreate(Bundle savedInstanceState)
@@ -27,9 +68,46 @@ public class TextureActivity extends Activity
     // If you don't know what we're doing here, take a look at the
     // epilepsy sample.
     surface = new GLSurfaceView(this);
-    renderer = new TextureRenderer();
+    int sprites = getIntent().getIntExtra(EXTRA_SPRITES, 0);
     surface.setEGLContextClientVersion(2);
-    surface.setRenderer(renderer);
+    contextFactory = Prewarmer.get().newContextFactory();
+    surface.setEGLContextFactory(contextFactory);
+    surface.setRenderer(new TextureRenderer());
+
+    // Try to keep the OpenGL context (and everything we created in it) when
+    // the activity is paused, so we don't need to build it all again on resume.
+    // Some devices can't do this; in that case onSurfaceCreated is called again.
+    surface.setPreserveEGLContextOnPause(true);
+
+    // The image never changes, so there's no point in drawing it 60 times
+    // per second. Only draw when the scene is 'dirty' (see RenderScheduler).
+    // The stress mode is a benchmark, though, so it draws all the time.
+    scheduler = new RenderScheduler(surface, sprites > 0);
+
+    // (the GL thread only starts once the surface is on screen, so the scene
+    // is there before the first callback)
+    scene = new TextureScene(new AndroidGLES(), scheduler, new LoaderSource(), sprites, getIntent().getBooleanExtra(EXTRA_MIXED, false),
+      getIntent().getBooleanExtra(EXTRA_OVERDRAW, false), getIntent().getIntExtra(EXTRA_FPS, 0),
+      getIntent().getIntExtra(EXTRA_BUDGET, DEFAULT_BUDGET_KB) * 1024L, getIntent().getIntExtra(EXTRA_THREADS, -1));
+
+    // the loader sends its textures through the same GLES as the scene, and
+    // counts them in its budget
+    loader = new TextureLoader(scene.getGles(), getResources(), 1024 * 1024);
+    loader.setMemoryBudget(scene.getBudget());
+
+    // when the skull is ready, we need a new frame to show it
+    loader.setOnDecodedListener(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        scheduler.invalidate();
+      }
+    });
+
+    // the first frame is timed from the click on the list
+    scheduler.setLaunchTime(getIntent().getLongExtra(Demo.EXTRA_LAUNCHED_AT, 0));
+    warm = Prewarmer.get().isDone();
 
     setContentView(surface);
   }
@@ -45,245 +123,152 @@ public class TextureActivity extends Activity
   protected void onPause()
   {
     super.onPause();
+
+    // Leaving for good? Then free everything while the context is still there.
+    // OpenGL calls only work on the GL thread, so we queue the work there
+    // BEFORE pausing the view.
+    if (isFinishing())
+      surface.queueEvent(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          scene.tearDown();
+        }
+      });
+
     surface.onPause();
-    renderer.tearDown();
-  }
+    scheduler.stopAnimation();
+    Log.d(TAG, scheduler.getFramesRendered() + " frames rendered so far");
 
-  private class TextureRenderer implements GLSurfaceView.Renderer
-  {
-    private int vertexHandle;
-    private int fragmentHandle;
-    private int programHandle = -1;
-    private int[] textures = new int[1];
-
-    // These two methods help to Load/Unload the shaders used by OpenGL Es 2.0
-    // Remember that now OpenGL DOES NOT CONTAIN most of the 'old' OpenGL functions;
-    // Now you need to create your own vertex and fragment shaders. Yay!
-    public void setup()
+    long firstFrame = scheduler.getTimeToFirstFrameNanos();
+    if (firstFrame > 0)
     {
-      // make sure there's nothing already created
-      tearDown();
-
-      // Vertex shader source.
-      // Now things start to get interesting. Take note of a new attribute,
-      // aTexPos, that will store the texture coordinate (the "places" of the texture that
-      // we will use. We also have vTexPos, to pass the attribute value to the
-      // fragment shader.
-      String vertexSrc =
-        "uniform mat4 uScreen;\n" +
-        "attribute vec2 aPosition;\n" +
-        "attribute vec2 aTexPos;\n" +
-        "varying vec2 vTexPos;\n" +
-        "void main() {\n" +
-        "  vTexPos = aTexPos;\n" +
-        "  gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);\n" +
-        "}";
-
-      // Our fragment shader.
-      // Here we have a uniform (uTexture) that will hold the texture
-      // for drawing. The 'color' of the vertex is calculated using the
-      // texture coordinate (vTexPos) and the texture itself.
-      String fragmentSrc =
-        "precision mediump float;\n"+
-        "uniform sampler2D uTexture;\n" +
-        "varying vec2 vTexPos;\n" +
-        "void main(void)\n" +
-        "{\n" +
-        "  gl_FragColor = texture2D(uTexture, vTexPos);\n" +
-        "}";
-
-      // Lets load and compile our shaders, link the program
-      // and tell OpenGL ES to use it for future drawing.
-      vertexHandle = loadShader(GLES20.GL_VERTEX_SHADER, vertexSrc);
-      fragmentHandle = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSrc);
-      programHandle = createProgram(vertexHandle, fragmentHandle);
-
-      GLES20.glUseProgram(programHandle);
+      Demos.TEXTURE.onFirstFrame(firstFrame, warm);
+      Log.d(TAG, "First frame after " + (firstFrame / 1000000) + "ms (" + (warm ? "warm" : "cold") + ")");
     }
 
-    public void tearDown()
+    Log.d(TAG, loader.getUploadedCount() + " texture(s) uploaded (" + loader.getSharedCount() + " shared), " + loader.getQueueDepth() + " pending; " +
+      (loader.getDecodeTimeNanos() / 1000) + "us decoding, " + (loader.getUploadTimeNanos() / 1000) + "us uploading, " +
+      (loader.getBytesSaved() / 1024) + "KB saved with ETC1");
+
+    if (scene.getPacer().getFrameCount() > 0)
+      Log.d(TAG, scene.getPacer().toString());
+
+    Log.d(TAG, "GPU memory: " + scene.getBudget());
+    Log.d(TAG, "Last restore: " + scene.getManifest());
+  }
+
+  // The system is short on memory. Give some back before it kills us: the
+  // budget evicts textures (on the GL thread, where they can be deleted).
+  @Override
+  public void onTrimMemory(final int level)
+  {
+    super.onTrimMemory(level);
+    surface.queueEvent(new Runnable()
     {
-      if (programHandle != -1)
+      @Override
+      public void run()
       {
-        GLES20.glDeleteProgram(programHandle);
-        GLES20.glDeleteShader(vertexHandle);
-        GLES20.glDeleteShader(fragmentHandle);
-        GLES20.glDeleteTextures(textures.length, textures, 0); // free the texture!
+        long freed = scene.trimMemory(level);
+        Log.d(TAG, "Trim level " + level + ": " + (freed / 1024) + "KB freed; " + scene.getBudget());
       }
-    }
+    });
+  }
 
-    // auxiliary shader functions. Doesn't matter WHAT you're trying to do, they're
-    // always the same thing.
-    private int loadShader(int shaderType, String shaderSource)
-    {
-      int handle = GLES20.glCreateShader(shaderType);
+  // what older versions say instead of the worst trim level
+  @Override
+  public void onLowMemory()
+  {
+    super.onLowMemory();
+    onTrimMemory(GpuMemoryBudget.TRIM_MEMORY_COMPLETE);
+  }
 
-      if (handle == GLES20.GL_FALSE)
-        throw new RuntimeException("Error creating shader!");
+  // The skull comes from our TextureLoader
+  private class LoaderSource implements TextureScene.Source
+  {
+    private Texture skull;
 
-      // set and compile the shader
-      GLES20.glShaderSource(handle, shaderSource);
-      GLES20.glCompileShader(handle);
+    @Override
+    public Texture onContextCreated(GLES gles, SharedResources shared)
+    {
+      // shared textures come from (and go to) SharedResources; on a new
+      // context, the loader reloads the skull by itself
+      loader.setSharedResources(shared);
+      loader.onContextCreated();
 
-      // check if the compilation was OK
-      int[] compileStatus = new int[1];
-      GLES20.glGetShaderiv(handle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+      if (skull == null)
+        skull = loader.load(R.drawable.skull);
 
-      if (compileStatus[0] == 0)
-      {
-        String error = GLES20.glGetShaderInfoLog(handle);
-        GLES20.glDeleteShader(handle);
-        throw new RuntimeException("Error compiling shader: " + error);
-      }
-      else
-        return handle;
+      return skull;
     }
 
-    private int createProgram(int vertexShader, int fragmentShader)
+    @Override
+    public boolean uploadPending()
     {
-      int handle = GLES20.glCreateProgram();
-
-      if (handle == GLES20.GL_FALSE)
-        throw new RuntimeException("Error creating program!");
-
-      // attach the shaders and link the program
-      GLES20.glAttachShader(handle, vertexShader);
-      GLES20.glAttachShader(handle, fragmentShader);
-      GLES20.glLinkProgram(handle);
-
-      // check if the link was successful
-      int[] linkStatus = new int[1];
-      GLES20.glGetProgramiv(handle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+      return loader.uploadPending();
+    }
 
-      if (linkStatus[0] == 0)
-      {
-        String error = GLES20.glGetProgramInfoLog(handle);
-        GLES20.glDeleteProgram(handle);
-        throw new RuntimeException("Error in program linking: " + error);
-      }
-      else
-        return handle;
+    @Override
+    public void release()
+    {
+      loader.release();
+      skull = null;
     }
+  }
 
+  // Hands the GLSurfaceView callbacks (on the GL thread) to the scene, and
+  // logs what it did
+  private class TextureRenderer implements GLSurfaceView.Renderer
+  {
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config)
     {
-      // first, try to generate a texture handle
-      GLES20.glGenTextures(1, textures, 0);
-
-      if (textures[0] == GLES20.GL_FALSE)
-        throw new RuntimeException("Error loading texture");
-
-      // bind the texture and set parameters
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-      GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-      GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-
-      // Load a bitmap from resources folder and pass it to OpenGL
-      // in the end, we recycle it to free unneeded resources
-      Bitmap b = BitmapFactory.decodeResource(getResources(), R.drawable.skull);
-      GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, b, 0);
-      b.recycle();
+      // if our context shares with the Prewarmer's, the program, the buffer
+      // and the skull come from SharedResources
+      scene.onContextCreated(contextFactory.isShared() ? SharedResources.get() : null);
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height)
     {
-      // lets initialize everything
-      setup();
-
-      // discover the 'position' of the uScreen and uTexture
-      int uScreenPos = GLES20.glGetUniformLocation(programHandle, "uScreen");
-      int uTexture = GLES20.glGetUniformLocation(programHandle, "uTexture");
+      // A rotation lands here: the textures uploaded so far stay on the GPU,
+      // and nothing is decoded again.
+      Log.d(TAG, "Surface changed to " + width + "x" + height + "; " + loader.getUploadedCount() + " texture(s) uploaded so far, " +
+        loader.getQueueDepth() + " still loading");
 
-      // The uScreen matrix
-      // This is explained in detail in the Triangle2d sample.
-      float[] uScreen =
-      {
-         2f/width,   0f,         0f, 0f,
-         0f,        -2f/height,  0f, 0f,
-         0f,         0f,         0f, 0f,
-        -1f,         1f,         0f, 1f
-      };
-
-      // Now, let's set the value.
-      FloatBuffer b = ByteBuffer.allocateDirect(uScreen.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-      b.put(uScreen).position(0);
-      GLES20.glUniformMatrix4fv(uScreenPos, b.limit() / uScreen.length, false, b);
-
-      // Activate the first texture (GL_TEXTURE0) and bind it to our handle
-      GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-      GLES20.glUniform1i(uTexture, 0);
-
-      // set the viewport and a fixed, white background
-      GLES20.glViewport(0, 0, width, height);
-      GLES20.glClearColor(1f, 1f, 1f, 1f);
-
-      // since we're using a PNG file with transparency, enable alpha blending.
-      GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-      GLES20.glEnable(GLES20.GL_BLEND);
+      scene.onSurfaceChanged(width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl)
     {
-      // get the position of our attributes
-      int aPosition = GLES20.glGetAttribLocation(programHandle, "aPosition");
-      int aTexPos = GLES20.glGetAttribLocation(programHandle, "aTexPos");
-
-      // Ok, now is the FUN part.
-      // First of all, our image is a rectangle right? but in OpenGL, we can only draw
-      // triangles! To remedy that we will use 4 vertices (V1 to V4) and draw using
-      // the TRIANGLE_STRIP option. If you look closely to our positions, you will note
-      // that we're drawing a 'N' (or 'Z') shaped line... and TRIANGLE_STRIP 'closes' the
-      // remaining GAP between the vertices, so we have a rectangle (or square)! Yay!
-      //
-      // Apart from V1 to V4, we also specify the position IN THE TEXTURE. Each vertex
-      // of our rectangle must relate to a position in the texture. The texture coordinates
-      // are ALWAYS 0,0 on bottom-left and 1,1 on top-right. Take a look at the values
-      // used and you will understand it easily. If not, mess a little bit with the values
-      // and take a look at the result.
-      float[] data =
+      ResourceManifest manifest = scene.getManifest();
+      boolean restoring = !manifest.isRestored();
+
+      scene.drawFrame();
+
+      if (restoring && manifest.isRestored())
+        Log.d(TAG, "Context restored: " + manifest);
+
+      if (scene.getSpriteCount() == 0)
+        return;
+
+      FramePacer pacer = scene.getPacer();
+
+      if (pacer.getLevel() != level)
       {
-        50f, 100f,  //V1
-        0f, 0f,     //Texture coordinate for V1
-
-        50f, 300f,  //V2
-        0f,  1f,
-
-        300f, 100f, //V3
-        1f, 0f,
-
-        300f, 300f,  //V4
-        1f, 1f
-      };
-
-      // constants. You know the drill by now.
-      final int FLOAT_SIZE = 4;
-      final int POSITION_SIZE = 2;
-      final int TEXTURE_SIZE = 2;
-      final int TOTAL_SIZE = POSITION_SIZE + TEXTURE_SIZE;
-      final int POSITION_OFFSET = 0;
-      final int TEXTURE_OFFSET = 2;
-
-      // Again, a FloatBuffer will be used to pass the values
-      FloatBuffer b = ByteBuffer.allocateDirect(data.length * FLOAT_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
-      b.put(data);
-
-      // Position of our image
-      b.position(POSITION_OFFSET);
-      GLES20.glVertexAttribPointer(aPosition, POSITION_SIZE, GLES20.GL_FLOAT, false, TOTAL_SIZE * FLOAT_SIZE, b);
-      GLES20.glEnableVertexAttribArray(aPosition);
-
-      // Positions of the texture
-      b.position(TEXTURE_OFFSET);
-      GLES20.glVertexAttribPointer(aTexPos, TEXTURE_SIZE, GLES20.GL_FLOAT, false, TOTAL_SIZE * FLOAT_SIZE, b);
-      GLES20.glEnableVertexAttribArray(aTexPos);
-
-      // Clear the screen and draw the rectangle
-      GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-      GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        level = pacer.getLevel();
+        Log.d(TAG, "Quality level " + level + ": " + (scene.getSpriteCount() >> level) + " of " + scene.getSpriteCount() + " skulls from now on (" + pacer + ")");
+      }
+
+      if (++frames % 120 == 0)
+      {
+        String stress = scene.describeStress();
+
+        if (stress != null)
+          Log.d(TAG, stress);
+      }
     }
   }
 }
@@ -0,0 +1,265 @@
+package ibraim.opengles2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Many small images packed into a few big textures (the 'pages').
+//
+// The SpriteBatch can only draw sprites of the same texture together: every
+// time the texture changes, it has to flush. A scene with 20 different images,
+// mixed, could easily take one draw call per sprite. But if all the images are
+// in the same texture, each sprite just uses a different part of it (its
+// 'region'), and the whole scene goes in one draw call.
+//
+// The build packs the drawables into pages (see AtlasTool and custom_rules.xml)
+// and writes them to the assets, with a small index of where each image
+// ended up. Here we read that index and turn a name into the UVs to give to
+// SpriteBatch.draw:
+//
+//    TextureAtlas.Region r = atlas.find("skull");
+//    batch.draw(atlas.getPageTexture(r.getPage()).getHandle(), x, y, w, h, r.getU0(), r.getV0(), r.getU1(), r.getV1());
+//
+// Load it with TextureLoader.loadAtlas. There's no Android in this class, so
+// the build can use it to write the index.
+public class TextureAtlas
+{
+  public static final String ASSET_DIR = "atlas";
+  public static final String INDEX_NAME = "atlas.idx";
+
+  // "ATLS", and the version of the format
+  private static final int MAGIC = 0x41544c53;
+  private static final int VERSION = 1;
+
+  public static class Region
+  {
+    private final String name;
+    private final int page;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final float u0;
+    private final float v0;
+    private final float u1;
+    private final float v1;
+
+    Region(String name, int page, int x, int y, int width, int height, int pageWidth, int pageHeight)
+    {
+      this.name = name;
+      this.page = page;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+
+      // the first row of the image is V = 0, like everywhere else in the samples
+      this.u0 = (float) x / pageWidth;
+      this.v0 = (float) y / pageHeight;
+      this.u1 = (float) (x + width) / pageWidth;
+      this.v1 = (float) (y + height) / pageHeight;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public int getPage()
+    {
+      return page;
+    }
+
+    // Where it is in the page, in pixels (without the padding)
+    public int getX()
+    {
+      return x;
+    }
+
+    public int getY()
+    {
+      return y;
+    }
+
+    public int getWidth()
+    {
+      return width;
+    }
+
+    public int getHeight()
+    {
+      return height;
+    }
+
+    public float getU0()
+    {
+      return u0;
+    }
+
+    public float getV0()
+    {
+      return v0;
+    }
+
+    public float getU1()
+    {
+      return u1;
+    }
+
+    public float getV1()
+    {
+      return v1;
+    }
+  }
+
+  private final List<String> pageNames = new ArrayList<String>();
+  private final List<int[]> pageSizes = new ArrayList<int[]>();
+  private final Map<String, Region> regions = new LinkedHashMap<String, Region>();
+  private Texture[] pageTextures = new Texture[0];
+
+  // A page, 'name' being its file (next to the index). Returns its number.
+  public int addPage(String name, int width, int height)
+  {
+    pageNames.add(name);
+    pageSizes.add(new int[] {width, height});
+    return pageNames.size() - 1;
+  }
+
+  public Region addRegion(String name, int page, int x, int y, int width, int height)
+  {
+    int[] size = pageSizes.get(page);
+    Region region = new Region(name, page, x, y, width, height, size[0], size[1]);
+    regions.put(name, region);
+    return region;
+  }
+
+  // The region of an image (its drawable name, without the extension), or null.
+  // Look your regions up once, not on every frame.
+  public Region find(String name)
+  {
+    return regions.get(name);
+  }
+
+  public Collection<Region> getRegions()
+  {
+    return regions.values();
+  }
+
+  public int getRegionCount()
+  {
+    return regions.size();
+  }
+
+  public int getPageCount()
+  {
+    return pageNames.size();
+  }
+
+  public String getPageName(int page)
+  {
+    return pageNames.get(page);
+  }
+
+  public int getPageWidth(int page)
+  {
+    return pageSizes.get(page)[0];
+  }
+
+  public int getPageHeight(int page)
+  {
+    return pageSizes.get(page)[1];
+  }
+
+  // The texture of a page, once TextureLoader.loadAtlas started loading it
+  public Texture getPageTexture(int page)
+  {
+    return page < pageTextures.length ? pageTextures[page] : null;
+  }
+
+  void setPageTexture(int page, Texture texture)
+  {
+    if (pageTextures.length < pageNames.size())
+    {
+      Texture[] grown = new Texture[pageNames.size()];
+      System.arraycopy(pageTextures, 0, grown, 0, pageTextures.length);
+      pageTextures = grown;
+    }
+
+    pageTextures[page] = texture;
+  }
+
+  // The index, as the build writes it:
+  //
+  //    int magic, byte version, byte page count
+  //    for each page: UTF file name, short width, short height
+  //    short region count
+  //    for each region: UTF name, byte page, short x, y, width, height
+  public void write(OutputStream out) throws IOException
+  {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeByte(pageNames.size());
+
+    for (int i = 0; i < pageNames.size(); i++)
+    {
+      data.writeUTF(pageNames.get(i));
+      data.writeShort(getPageWidth(i));
+      data.writeShort(getPageHeight(i));
+    }
+
+    data.writeShort(regions.size());
+
+    for (Region r : regions.values())
+    {
+      data.writeUTF(r.name);
+      data.writeByte(r.page);
+      data.writeShort(r.x);
+      data.writeShort(r.y);
+      data.writeShort(r.width);
+      data.writeShort(r.height);
+    }
+
+    data.flush();
+  }
+
+  public static TextureAtlas read(InputStream in) throws IOException
+  {
+    DataInputStream data = new DataInputStream(in);
+
+    if (data.readInt() != MAGIC)
+      throw new IOException("Not a texture atlas index");
+
+    int version = data.readUnsignedByte();
+    if (version != VERSION)
+      throw new IOException("Unsupported texture atlas version: " + version);
+
+    TextureAtlas atlas = new TextureAtlas();
+    int pages = data.readUnsignedByte();
+
+    for (int i = 0; i < pages; i++)
+      atlas.addPage(data.readUTF(), data.readUnsignedShort(), data.readUnsignedShort());
+
+    int count = data.readUnsignedShort();
+
+    for (int i = 0; i < count; i++)
+    {
+      String name = data.readUTF();
+      int page = data.readUnsignedByte();
+
+      if (page >= pages)
+        throw new IOException("Region " + name + " is in page " + page + ", but there are only " + pages);
+
+      atlas.addRegion(name, page, data.readUnsignedShort(), data.readUnsignedShort(), data.readUnsignedShort(), data.readUnsignedShort());
+    }
+
+    return atlas;
+  }
+}
@@ -0,0 +1,616 @@
+package ibraim.opengles2;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Loads textures without blocking the GL thread.
+//
+// Decoding a PNG is slow, and the Texture sample used to do it right there in
+// onSurfaceCreated, so the first frame had to wait for it. With dozens of images
+// that's a long black screen. Here the work is split in two:
+//
+// 1. Decoding happens on a background thread. The decoded pixels are put on a
+//    (lock-free) queue.
+// 2. The GL thread calls 'uploadPending' once per frame, and sends the decoded
+//    pixels to OpenGL. To keep the frame rate smooth, it stops after a given
+//    number of bytes and leaves the rest for the next frames.
+//
+// Until its pixels arrive, every Texture shows a tiny placeholder.
+//
+// When the build made an ETC1 version of a drawable (see Etc1 and
+// custom_rules.xml), we load that instead of the PNG: it's 8 times smaller on
+// the GPU and there's nothing to decode. The PNG is still used when there's no
+// ETC1 version, or the device can't handle it.
+//
+// When the context shares its objects with the Prewarmer's, the textures go to
+// SharedResources once uploaded, so the other demos don't load them again. And
+// if a drawable is already there, we use it and skip all of the above.
+//
+// With a GpuMemoryBudget, every texture we upload is counted there, and the
+// ones not used for a while may be evicted (deleted, and back to the
+// placeholder) to stay under it. The next time its handle is asked for, an
+// evicted texture is simply loaded again, like the first time.
+public class TextureLoader
+{
+  private static final String TAG = "TextureLoader";
+
+  // a 1x1 light gray texture
+  private static final int PLACEHOLDER_COLOR = 0xffc0c0c0;
+
+  // decoded, waiting to be uploaded
+  private static class Decoded
+  {
+    final Texture texture;
+    final int width;
+    final int height;
+    final ByteBuffer pixels;
+    final ByteBuffer alpha;     // ETC1 only, and only if the image has transparency
+    final boolean compressed;
+    final int generation;
+
+    Decoded(Texture texture, int width, int height, ByteBuffer pixels, ByteBuffer alpha, boolean compressed, int generation)
+    {
+      this.texture = texture;
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+      this.alpha = alpha;
+      this.compressed = compressed;
+      this.generation = generation;
+    }
+
+    int size()
+    {
+      return pixels.capacity() + (alpha != null ? alpha.capacity() : 0);
+    }
+  }
+
+  private final GLES gles;
+  private final Resources resources;
+  private final String etc1Dir;
+  private final int bytesPerFrame;
+  private final ExecutorService decoder;
+  private final Queue<Decoded> decoded = new ConcurrentLinkedQueue<Decoded>();
+  private final List<Texture> textures = new ArrayList<Texture>();
+  private final int[] handle = new int[1];
+  private int placeholder;
+  private Runnable onDecoded;
+  private SharedResources sharedResources;
+  private GpuMemoryBudget budget;
+  private volatile boolean etc1Supported;
+
+  // bumped on every context loss, so stale pixels are uploaded again and not lost
+  private volatile int generation;
+
+  // metrics
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicLong decodeNanos = new AtomicLong();
+  private volatile long uploadNanos;
+  private volatile int uploaded;
+  private int shared;
+  private volatile long bytesSaved;
+
+  // 'bytesPerFrame' is how much we're allowed to upload in a single frame.
+  // A texture bigger than that is still uploaded, alone, in its own frame.
+  public TextureLoader(GLES gles, Resources resources, int bytesPerFrame)
+  {
+    this.gles = gles;
+    this.resources = resources;
+    this.bytesPerFrame = bytesPerFrame;
+    this.etc1Dir = "etc1/" + densityDir(resources.getDisplayMetrics().densityDpi) + "/";
+    this.decoder = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "TextureLoader");
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+      }
+    });
+  }
+
+  // Called (from the decoding thread) every time a texture is ready to upload.
+  // Renderers that only draw when needed use it to ask for a new frame.
+  public void setOnDecodedListener(Runnable onDecoded)
+  {
+    this.onDecoded = onDecoded;
+  }
+
+  // Share the textures through SharedResources. Only do this when the context
+  // really shares objects with the Prewarmer's (see Prewarmer.ContextFactory);
+  // pass null to keep everything here.
+  public void setSharedResources(SharedResources sharedResources)
+  {
+    this.sharedResources = sharedResources;
+  }
+
+  // Count our textures in this budget, so they can be evicted when it's over
+  // (or when Android asks for memory). Call before loading anything.
+  public void setMemoryBudget(GpuMemoryBudget budget)
+  {
+    this.budget = budget;
+  }
+
+  // Create the placeholder. Call from onSurfaceCreated, on the GL thread.
+  // On a NEW context, every texture we had is gone: they all go back to the
+  // placeholder and are loaded again.
+  public void onContextCreated()
+  {
+    // ETC1 is an extension, even if almost everyone has it
+    String extensions = gles.glGetString(GLES20.GL_EXTENSIONS);
+    etc1Supported = extensions != null && extensions.contains(Etc1.EXTENSION);
+
+    generation++;
+    placeholder = createTexture();
+
+    ByteBuffer pixel = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+    pixel.put((byte) (PLACEHOLDER_COLOR >> 16)).put((byte) (PLACEHOLDER_COLOR >> 8)).put((byte) PLACEHOLDER_COLOR).put((byte) (PLACEHOLDER_COLOR >> 24));
+    pixel.position(0);
+    gles.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixel);
+
+    for (Texture texture : textures)
+    {
+      // still counted as used by SharedResources
+      if (texture.isShared())
+        SharedResources.get().releaseTexture(texture.getResourceId());
+
+      untrack(texture);
+      texture.setPlaceholder(placeholder);
+
+      if (!adopt(texture))
+        decode(texture);
+    }
+  }
+
+  // Start loading a drawable. Returns right away. Call on the GL thread.
+  public Texture load(int resourceId)
+  {
+    Texture texture = new Texture(resourceId, placeholder);
+    textures.add(texture);
+
+    if (!adopt(texture))
+      decode(texture);
+
+    return texture;
+  }
+
+  // Start loading a PNG from the assets (ex: "atlas/drawable-mdpi/atlas_0.png").
+  // These are never shared, and never ETC1. Call on the GL thread.
+  public Texture loadAsset(String asset)
+  {
+    Texture texture = new Texture(asset, placeholder);
+    textures.add(texture);
+    decode(texture);
+    return texture;
+  }
+
+  // The atlas the build made for our screen density (see TextureAtlas), with
+  // its pages loading, or null if the build didn't make one. Call on the GL thread.
+  public TextureAtlas loadAtlas() throws IOException
+  {
+    String dir = TextureAtlas.ASSET_DIR + "/" + densityDir(resources.getDisplayMetrics().densityDpi) + "/";
+    InputStream in;
+
+    try
+    {
+      in = resources.getAssets().open(dir + TextureAtlas.INDEX_NAME);
+    }
+    catch (FileNotFoundException e)
+    {
+      return null;
+    }
+
+    TextureAtlas atlas;
+
+    try
+    {
+      atlas = TextureAtlas.read(in);
+    }
+    finally
+    {
+      in.close();
+    }
+
+    for (int i = 0; i < atlas.getPageCount(); i++)
+      atlas.setPageTexture(i, loadAsset(dir + atlas.getPageName(i)));
+
+    return atlas;
+  }
+
+  // Use the texture from SharedResources, if it has one ready
+  private boolean adopt(Texture texture)
+  {
+    if (texture.getAsset() != null)
+      return false;
+
+    Texture prebuilt = sharedResources != null ? sharedResources.acquireTexture(texture.getResourceId()) : null;
+
+    if (prebuilt == null)
+      return false;
+
+    texture.setShared(prebuilt);
+    shared++;
+    return true;
+  }
+
+  private void decode(final Texture texture)
+  {
+    // released: there's no thread to decode it, and no context to upload it to
+    // (an entry of the budget may still ask for a reload, if it outlived us)
+    if (decoder.isShutdown())
+      return;
+
+    final int generation = this.generation;
+    pending.incrementAndGet();
+
+    decoder.execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        long start = System.nanoTime();
+        Decoded d = etc1Supported && texture.getAsset() == null ? readEtc1(texture, generation) : null;
+
+        if (d == null)
+          d = decodePng(texture, generation);
+
+        if (d == null)
+        {
+          Log.e(TAG, "Unable to decode " + (texture.getAsset() != null ? texture.getAsset() : "resource " + texture.getResourceId()));
+          pending.decrementAndGet();
+          return;
+        }
+
+        // released while we were decoding: nobody will upload it
+        if (decoder.isShutdown())
+          return;
+
+        decoded.add(d);
+        decodeNanos.addAndGet(System.nanoTime() - start);
+
+        Runnable listener = onDecoded;
+        if (listener != null)
+          listener.run();
+      }
+    });
+  }
+
+  private Decoded decodePng(Texture texture, int generation)
+  {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    Bitmap b = texture.getAsset() != null ? decodeAsset(texture.getAsset(), options) : BitmapFactory.decodeResource(resources, texture.getResourceId(), options);
+
+    if (b == null)
+      return null;
+
+    if (b.getConfig() != Bitmap.Config.ARGB_8888)
+    {
+      Bitmap converted = b.copy(Bitmap.Config.ARGB_8888, false);
+      b.recycle();
+      b = converted;
+    }
+
+    // ARGB_8888 bitmaps are stored as R, G, B, A bytes: exactly what
+    // GL_RGBA + GL_UNSIGNED_BYTE expects
+    ByteBuffer pixels = ByteBuffer.allocateDirect(b.getRowBytes() * b.getHeight()).order(ByteOrder.nativeOrder());
+    b.copyPixelsToBuffer(pixels);
+    pixels.position(0);
+
+    Decoded d = new Decoded(texture, b.getWidth(), b.getHeight(), pixels, null, false, generation);
+    b.recycle();
+    return d;
+  }
+
+  private Bitmap decodeAsset(String asset, BitmapFactory.Options options)
+  {
+    try
+    {
+      InputStream in = resources.getAssets().open(asset);
+
+      try
+      {
+        return BitmapFactory.decodeStream(in, null, options);
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch (IOException e)
+    {
+      Log.e(TAG, "Unable to read " + asset, e);
+      return null;
+    }
+  }
+
+  // The ETC1 version of a drawable, or null if the build didn't make one
+  private Decoded readEtc1(Texture texture, int generation)
+  {
+    String name = etc1Dir + resources.getResourceEntryName(texture.getResourceId());
+
+    try
+    {
+      Etc1.Image rgb = readPkm(name + ".pkm");
+      Etc1.Image alpha = null;
+
+      try
+      {
+        alpha = readPkm(name + "_alpha.pkm");
+      }
+      catch (FileNotFoundException e)
+      {
+        // no transparency, no alpha texture
+      }
+
+      return new Decoded(texture, rgb.width, rgb.height, rgb.data, alpha != null ? alpha.data : null, true, generation);
+    }
+    catch (FileNotFoundException e)
+    {
+      return null;
+    }
+    catch (IOException e)
+    {
+      Log.e(TAG, "Unable to read " + name + ", using the PNG", e);
+      return null;
+    }
+  }
+
+  private Etc1.Image readPkm(String asset) throws IOException
+  {
+    InputStream in = resources.getAssets().open(asset);
+
+    try
+    {
+      return Etc1.readPkm(in);
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  // the build encodes each drawable-*dpi folder we have
+  private static String densityDir(int densityDpi)
+  {
+    if (densityDpi <= DisplayMetrics.DENSITY_LOW)
+      return "drawable-ldpi";
+
+    if (densityDpi <= DisplayMetrics.DENSITY_MEDIUM)
+      return "drawable-mdpi";
+
+    return "drawable-hdpi";
+  }
+
+  // Upload what was decoded, within the per-frame budget. Call on the GL thread,
+  // once per frame. Returns true if there are decoded textures left for the
+  // next frame (the ones still decoding will call the listener when ready).
+  public boolean uploadPending()
+  {
+    int budget = bytesPerFrame;
+    long start = System.nanoTime();
+    boolean first = true;
+    Decoded d;
+
+    while ((d = decoded.peek()) != null)
+    {
+      int size = d.size();
+
+      // always upload at least one, or a big texture would never make it
+      if (!first && size > budget)
+        break;
+
+      decoded.poll();
+      pending.decrementAndGet();
+      first = false;
+
+      // decoded for a context that doesn't exist anymore; it was queued again
+      if (d.generation != generation)
+        continue;
+
+      // decoded twice (or taken from SharedResources meanwhile): it already has
+      // a texture, and a second upload would leak one of them
+      if (d.texture.isLoaded())
+        continue;
+
+      if (d.compressed)
+      {
+        int texture = createTexture();
+        gles.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, Etc1.GL_ETC1_RGB8_OES, d.width, d.height, 0, d.pixels.capacity(), d.pixels);
+
+        int alpha = 0;
+        if (d.alpha != null)
+        {
+          alpha = createTexture();
+          gles.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, Etc1.GL_ETC1_RGB8_OES, d.width, d.height, 0, d.alpha.capacity(), d.alpha);
+        }
+
+        d.texture.setLoaded(texture, alpha, d.width, d.height, true);
+
+        // what it would cost as RGBA
+        int saved = d.width * d.height * 4 - size;
+        bytesSaved += saved;
+        Log.d(TAG, "Resource " + d.texture.getResourceId() + " (" + d.width + "x" + d.height + ") uploaded as ETC1, " + size + " bytes, " + saved + " saved");
+      }
+      else
+      {
+        int texture = createTexture();
+        gles.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, d.width, d.height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, d.pixels);
+        d.texture.setLoaded(texture, d.width, d.height);
+      }
+
+      // it belongs to SharedResources now, so the other demos can use it too
+      if (sharedResources != null && d.texture.getAsset() == null)
+        share(d.texture);
+
+      // the shared ones belong to SharedResources; ours count in the budget
+      if (this.budget != null && !d.texture.isShared())
+        track(d.texture, size);
+
+      budget -= size;
+      uploaded++;
+    }
+
+    if (!first)
+      uploadNanos += System.nanoTime() - start;
+
+    return !decoded.isEmpty();
+  }
+
+  private void share(Texture texture)
+  {
+    Texture owned = sharedResources.addTexture(texture);
+
+    // someone uploaded the same drawable first; ours isn't needed
+    if (owned.peekHandle() != texture.peekHandle())
+      deleteTexture(texture);
+
+    texture.setShared(owned);
+  }
+
+  // Count a texture that just got to the GPU (for the first time, or again
+  // after being evicted). This may evict older ones.
+  private void track(final Texture texture, int size)
+  {
+    GpuMemoryBudget.Entry residency = texture.getResidency();
+
+    if (residency == null)
+    {
+      String name = texture.getAsset() != null ? texture.getAsset() : "drawable 0x" + Integer.toHexString(texture.getResourceId());
+      texture.setResidency(budget.add(name, size, new GpuMemoryBudget.Evictable()
+      {
+        @Override
+        public void evict()
+        {
+          deleteTexture(texture);
+          texture.setPlaceholder(placeholder);
+        }
+
+        @Override
+        public void reload()
+        {
+          decode(texture);
+        }
+      }));
+    }
+    else
+      residency.setResident(size);
+  }
+
+  private void untrack(Texture texture)
+  {
+    if (texture.getResidency() != null)
+    {
+      texture.getResidency().remove();
+      texture.setResidency(null);
+    }
+  }
+
+  private void deleteTexture(Texture texture)
+  {
+    handle[0] = texture.peekHandle();
+    gles.glDeleteTextures(1, handle, 0);
+
+    if (texture.hasSeparateAlpha())
+    {
+      handle[0] = texture.getAlphaHandle();
+      gles.glDeleteTextures(1, handle, 0);
+    }
+  }
+
+  private int createTexture()
+  {
+    gles.glGenTextures(1, handle, 0);
+
+    if (handle[0] == GLES20.GL_FALSE)
+      throw new RuntimeException("Error loading texture");
+
+    gles.glBindTexture(GLES20.GL_TEXTURE_2D, handle[0]);
+    gles.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    gles.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+    return handle[0];
+  }
+
+  // Delete every texture and stop the decoding thread. Call on the GL thread.
+  public void release()
+  {
+    decoder.shutdownNow();
+    decoded.clear();
+
+    for (Texture texture : textures)
+    {
+      untrack(texture);
+
+      // shared textures belong to SharedResources; we just stop using them
+      if (texture.isShared())
+        SharedResources.get().releaseTexture(texture.getResourceId());
+      else if (texture.isLoaded())
+        deleteTexture(texture);
+    }
+
+    textures.clear();
+
+    if (placeholder != GLES20.GL_FALSE)
+    {
+      handle[0] = placeholder;
+      gles.glDeleteTextures(1, handle, 0);
+      placeholder = GLES20.GL_FALSE;
+    }
+  }
+
+  // Textures still being decoded or waiting to be uploaded
+  public int getQueueDepth()
+  {
+    return pending.get();
+  }
+
+  // Total time spent decoding, on the background thread
+  public long getDecodeTimeNanos()
+  {
+    return decodeNanos.get();
+  }
+
+  // Total time spent uploading, on the GL thread
+  public long getUploadTimeNanos()
+  {
+    return uploadNanos;
+  }
+
+  public int getUploadedCount()
+  {
+    return uploaded;
+  }
+
+  // textures taken from SharedResources, instead of loaded
+  public int getSharedCount()
+  {
+    return shared;
+  }
+
+  // GPU memory saved by uploading ETC1 instead of RGBA
+  public long getBytesSaved()
+  {
+    return bytesSaved;
+  }
+}
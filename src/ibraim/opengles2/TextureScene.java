@@ -0,0 +1,746 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.util.Random;
+
+// The Texture sample: the skull, fading in once it's loaded, or thousands of
+// small ones in 'stress' mode. TextureActivity only glues it to a GLSurfaceView
+// (see Scene), and loads the skull.
+public class TextureScene implements Scene
+{
+  // Vertex shader source.
+  // Now things start to get interesting. Take note of a new attribute,
+  // aTexPos, that will store the texture coordinate (the "places" of the texture that
+  // we will use. We also have vTexPos, to pass the attribute value to the
+  // fragment shader.
+  //
+  // It comes from ShaderVariants, with the TEXTURE, ALPHA_TEXTURE and TINT
+  // features (TINT doesn't change the vertex shader):
+  //
+  //    uniform mat4 uScreen;
+  //    attribute vec2 aPosition;
+  //    attribute vec2 aTexPos;
+  //    varying vec2 vTexPos;
+  //    void main() {
+  //      vTexPos = aTexPos;
+  //      gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);
+  //    }
+  static final int FEATURES = ShaderVariants.TEXTURE | ShaderVariants.ALPHA_TEXTURE | ShaderVariants.TINT;
+  static final String VERTEX_SRC = ShaderVariants.vertexSource(FEATURES);
+
+  // Our fragment shader.
+  // Here we have a uniform (uTexture) that will hold the texture
+  // for drawing. The 'color' of the vertex is calculated using the
+  // texture coordinate (vTexPos) and the texture itself.
+  //
+  // ETC1 textures (see TextureLoader) have no alpha, so when the skull
+  // comes as ETC1 its alpha is in a second texture (uAlpha), in the red
+  // channel (the ALPHA_TEXTURE feature). uSeparateAlpha tells which one we have.
+  //
+  // uTint (the TINT feature) fades the skull in when it's loaded: its alpha
+  // goes from 0 to 1.
+  //
+  //    precision mediump float;
+  //    uniform sampler2D uTexture;
+  //    varying vec2 vTexPos;
+  //    uniform sampler2D uAlpha;
+  //    uniform bool uSeparateAlpha;
+  //    uniform vec4 uTint;
+  //    void main(void)
+  //    {
+  //      vec4 color = vec4(1.0);
+  //      vec4 texel = texture2D(uTexture, vTexPos);
+  //      if (uSeparateAlpha)
+  //        texel.a = texture2D(uAlpha, vTexPos).r;
+  //      color *= texel;
+  //      color *= uTint;
+  //      gl_FragColor = color;
+  //    }
+  static final String FRAGMENT_SRC = ShaderVariants.fragmentSource(FEATURES);
+
+  private static final float STRESS_SPRITE_SIZE = 64f;
+
+  // How a vertex of the single skull is laid out (see VertexFormat).
+  // The texture coordinates are only ever 0 or 1, so a normalized unsigned byte
+  // (0 or 255) holds them just fine, and the position in pixels fits in a
+  // short. 8 bytes per vertex, instead of the 16 of four floats.
+  static final VertexFormat FORMAT = new VertexFormat(
+    new VertexFormat.Attribute("aPosition", 2, GLES20.GL_SHORT, false),
+    new VertexFormat.Attribute("aTexPos", 2, GLES20.GL_UNSIGNED_BYTE, true));
+
+  private static final int POSITION = 0;
+  private static final int TEXTURE = 1;
+
+  // blend modes of the stress sprites, as used in the RenderQueue keys
+  private static final int BLEND_ALPHA = 0;
+  private static final int BLEND_ADD = 1;
+
+  // the stress mode halves the sprites at most this many times
+  private static final int MAX_QUALITY_LEVEL = 3;
+
+  // time per frame spent rebuilding what a new context lost (see ResourceManifest)
+  private static final long RESTORE_BUDGET_NANOS = 4000000;
+
+  // how long the skull takes to fade in, and the frame interval while it does
+  private static final long FADE_NANOS = 500000000;
+  private static final long FADE_FRAME_MILLIS = 16;
+
+  // Where the skull comes from. On a device, that's a TextureLoader (see
+  // TextureActivity): it decodes in the background, and hands out a Texture
+  // that shows a placeholder until then.
+  public interface Source
+  {
+    // A new context (see Scene.onContextCreated). Returns the skull; 'gles'
+    // is the one the scene draws with.
+    Texture onContextCreated(GLES gles, SharedResources shared);
+
+    // Send what was decoded since the last frame. True if there's more to come.
+    boolean uploadPending();
+
+    // Free the textures
+    void release();
+  }
+
+  // A skull that's there from the very first frame: blank pixels, of the size
+  // of the real one, uploaded right away. For running the scene without a
+  // device, where there's no TextureLoader (see RendererBenchmark).
+  public static class BlankSource implements Source
+  {
+    private static final int SIZE = 128;
+
+    private GLES gles;
+    private Texture texture;
+
+    @Override
+    public Texture onContextCreated(GLES gles, SharedResources shared)
+    {
+      this.gles = gles;
+
+      int[] handle = new int[1];
+      gles.glGenTextures(1, handle, 0);
+      gles.glBindTexture(GLES20.GL_TEXTURE_2D, handle[0]);
+      gles.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, SIZE, SIZE, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+      texture = new Texture(0, handle[0]);
+      texture.setLoaded(handle[0], SIZE, SIZE);
+      return texture;
+    }
+
+    @Override
+    public boolean uploadPending()
+    {
+      return false;
+    }
+
+    @Override
+    public void release()
+    {
+      if (texture == null)
+        return;
+
+      gles.glDeleteTextures(1, new int[] {texture.peekHandle()}, 0);
+      texture = null;
+    }
+  }
+
+  // the stress sprites switch textures and blend modes all the time: the
+  // RenderQueue sorts them to switch less, and GLStateCache drops what's left
+  // of the switches that change nothing
+  private final GLStateCache gles;
+  private final ProgramCache programs;
+  private final ShaderVariants variants;
+  private ShaderProgram program;
+  private int[] attributes;
+  private int uScreen;
+  private final Camera2D camera = new Camera2D();
+  private int uTexture;
+  private int uAlpha;
+  private int uSeparateAlpha;
+  private int separateAlpha;
+  private int uTint;
+  private float tintAlpha;
+
+  // when the skull started to fade in (0: it hasn't yet), and whether we're
+  // asking for the frames of the fade
+  private long fadeStart;
+  private boolean fading;
+  private VertexBuffer vertices;
+
+  // set when our context shares objects with the Prewarmer's
+  private SharedResources shared;
+
+  // asks for our frames (a RenderScheduler, on a device)
+  private final Frames frames;
+
+  // where the skull comes from (see Source)
+  private final Source source;
+  private final boolean overdraw;
+
+  // what we have on the GPU; our buffers only count, the textures may be evicted
+  private final GpuMemoryBudget budget;
+  private GpuMemoryBudget.Entry vertexBytes;
+  private GpuMemoryBudget.Entry batchBytes;
+
+  // how to build everything again on a new context, a bit on each frame
+  private final ResourceManifest manifest = new ResourceManifest();
+  private Texture skull;
+
+  // 'stress' mode: lots of small skulls, drawn with a SpriteBatch
+  private final int spriteCount;
+  private final float[] spritePositions;
+  private SpriteBatch batch;
+
+  // the stress sprites are recorded here (payload: x and y), sorted, and
+  // only then sent to the batch
+  private final boolean mixed;
+  private final RenderQueue queue;
+
+  // every quality level the pacer steps down draws half the sprites. Only
+  // with a cap ('fps'): without one, every run must draw all of them, or
+  // the stress numbers wouldn't compare
+  private final FramePacer pacer;
+
+  // builds the vertices of the stress sprites on all cores (if asked to),
+  // from their X, Y, size, angle and UVs
+  private final ParallelSpriteBuilder builder;
+  private final float[] spriteInput;
+
+  private final RenderQueue.Target spriteTarget = new RenderQueue.Target()
+  {
+    private int texture;
+
+    @Override
+    public void setProgram(int program)
+    {
+      // we only have one
+    }
+
+    @Override
+    public void setTexture(int texture)
+    {
+      this.texture = texture;
+    }
+
+    @Override
+    public void setBlend(int blend)
+    {
+      // the batch has to draw what it has with the OLD blend mode first
+      batch.flush();
+      gles.glBlendFunc(GLES20.GL_SRC_ALPHA, blend == BLEND_ADD ? GLES20.GL_ONE : GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    @Override
+    public void draw(float[] payload, int offset)
+    {
+      batch.draw(texture, payload[offset], payload[offset + 1], STRESS_SPRITE_SIZE, STRESS_SPRITE_SIZE);
+    }
+
+    @Override
+    public void finish()
+    {
+    }
+  };
+
+  public TextureScene(GLES gles, Frames frames, Source source, int spriteCount, boolean mixed, boolean overdraw, int fps, long budgetBytes, int threads)
+  {
+    // in overdraw mode, OverdrawGLES swaps our fragment shader for one that counts
+    this.gles = new GLStateCache(overdraw ? new OverdrawGLES(gles) : gles);
+    programs = new ProgramCache(this.gles);
+    variants = new ShaderVariants(programs);
+    this.frames = frames;
+    this.source = source;
+    this.overdraw = overdraw;
+    budget = new GpuMemoryBudget(budgetBytes);
+
+    this.spriteCount = spriteCount;
+    this.spritePositions = new float[spriteCount * 2];
+    this.mixed = mixed;
+    this.queue = spriteCount > 0 ? new RenderQueue(spriteCount, 2) : null;
+    this.pacer = new FramePacer(fps);
+
+    if (fps > 0)
+      pacer.setAdaptive(FramePacer.ADAPT_QUALITY, MAX_QUALITY_LEVEL);
+
+    // on a single core, 'one per core' is just the batch with extra steps
+    boolean parallel = spriteCount > 0 && !mixed && (threads > 0 || (threads == 0 && Runtime.getRuntime().availableProcessors() > 1));
+    this.builder = !parallel ? null : (threads > 0 ? new ParallelSpriteBuilder(spriteCount, threads) : new ParallelSpriteBuilder(spriteCount));
+    this.spriteInput = parallel ? new float[spriteCount * ParallelSpriteBuilder.INPUT_FLOATS] : null;
+
+    // Everything we create in OpenGL, in the order it's needed. Without the
+    // program and the buffers, nothing can be drawn; the skull has its
+    // placeholder until it's ready.
+    manifest.add("program", ResourceManifest.REQUIRED, new ResourceManifest.Restorable()
+    {
+      @Override
+      public boolean restore()
+      {
+        setupProgram();
+        return true;
+      }
+    });
+
+    manifest.add("vertices", ResourceManifest.REQUIRED, new ResourceManifest.Restorable()
+    {
+      @Override
+      public boolean restore()
+      {
+        setupVertices();
+        return true;
+      }
+    });
+
+    if (spriteCount > 0)
+      manifest.add("sprite batch", ResourceManifest.REQUIRED, new ResourceManifest.Restorable()
+      {
+        @Override
+        public boolean restore()
+        {
+          batch = new SpriteBatch(gles, program, Math.min(spriteCount, SpriteBatch.MAX_SPRITES));
+          StreamBuffer stream = batch.getStreamBuffer();
+
+          if (batchBytes != null)
+            batchBytes.remove();
+
+          batchBytes = budget.add("SpriteBatch stream", stream.getRegionSize() * stream.getFramesInFlight(), null);
+          return true;
+        }
+      });
+
+    // the source does the work, in the background; we just wait for it
+    manifest.add("skull", ResourceManifest.VISIBLE, new ResourceManifest.Restorable()
+    {
+      @Override
+      public boolean restore()
+      {
+        return skull != null && skull.isLoaded();
+      }
+    });
+  }
+
+  // What everything goes through, the textures of the Source included: there's
+  // one state for the whole context, so there must be one cache of it too
+  public GLES getGles()
+  {
+    return gles;
+  }
+
+  public GpuMemoryBudget getBudget()
+  {
+    return budget;
+  }
+
+  public ResourceManifest getManifest()
+  {
+    return manifest;
+  }
+
+  public FramePacer getPacer()
+  {
+    return pacer;
+  }
+
+  public int getSpriteCount()
+  {
+    return spriteCount;
+  }
+
+  // These two methods help to Load/Unload the shaders used by OpenGL Es 2.0
+  // Remember that now OpenGL DOES NOT CONTAIN most of the 'old' OpenGL functions;
+  // Now you need to create your own vertex and fragment shaders. Yay!
+  // (the boring compile/link part lives in ShaderProgram)
+  //
+  // These are only called when the context is created (by the manifest, at
+  // the start of the first frames). A rotation or a resize keeps the same
+  // context, so there's no reason to build everything again.
+  private void setupProgram()
+  {
+    // The shader sources are up there, with the class, so the Prewarmer
+    // (see Demos) can build them before this activity even starts.
+    // (ShaderVariants compiles each variant only once)
+    //
+    // Lets load and compile our shaders, link the program
+    // and tell OpenGL ES to use it for future drawing.
+    program = variants.get(FEATURES);
+    program.use();
+
+    // get the position of our attributes and uniforms, once.
+    attributes = FORMAT.getLocations(program);
+    uScreen = program.getUniform("uScreen");
+    uTexture = program.getUniform("uTexture");
+    uAlpha = program.getUniform("uAlpha");
+    uSeparateAlpha = program.getUniform("uSeparateAlpha");
+    separateAlpha = -1;
+    uTint = program.getUniform("uTint");
+    tintAlpha = -1;
+
+    // The skull goes in the first texture unit (GL_TEXTURE0) and, if
+    // it has one, its alpha texture in the second (GL_TEXTURE1)
+    gles.glUniform1i(uTexture, 0);
+    gles.glUniform1i(uAlpha, 1);
+  }
+
+  private void setupVertices()
+  {
+    // Ok, now is the FUN part.
+    // First of all, our image is a rectangle right? but in OpenGL, we can only draw
+    // triangles! To remedy that we will use 4 vertices (V1 to V4) and draw using
+    // the TRIANGLE_STRIP option. If you look closely to our positions, you will note
+    // that we're drawing a 'N' (or 'Z') shaped line... and TRIANGLE_STRIP 'closes' the
+    // remaining GAP between the vertices, so we have a rectangle (or square)! Yay!
+    //
+    // Apart from V1 to V4, we also specify the position IN THE TEXTURE. Each vertex
+    // of our rectangle must relate to a position in the texture. The texture coordinates
+    // are ALWAYS 0,0 on bottom-left and 1,1 on top-right. Take a look at the values
+    // used and you will understand it easily. If not, mess a little bit with the values
+    // and take a look at the result.
+    float[] data =
+    {
+      50f, 100f,  //V1
+      0f, 0f,     //Texture coordinate for V1
+
+      50f, 300f,  //V2
+      0f,  1f,
+
+      300f, 100f, //V3
+      1f, 0f,
+
+      300f, 300f,  //V4
+      1f, 1f
+    };
+
+    // pack it in our FORMAT (see TriangleColor)
+    VertexWriter writer = new VertexWriter(FORMAT, 4);
+    for (int i = 0; i < data.length; i += 4)
+      writer.put(POSITION, data[i], data[i + 1]).put(TEXTURE, data[i + 2], data[i + 3]).next();
+
+    // Upload the whole thing to the GPU, once. See the Triangle2d sample.
+    if (vertices != null && vertices.isShared())
+      vertices.tearDown();
+
+    vertices = shared != null ? shared.acquireBuffer(gles, "Texture", writer.getBuffer()) : new VertexBuffer(gles, writer.getBuffer());
+
+    // our buffers count in the budget too (they can't be evicted, but they take room)
+    if (vertexBytes != null)
+      vertexBytes.remove();
+
+    vertexBytes = budget.add("Texture vertices", vertices.getSizeInBytes(), null);
+  }
+
+  private void uncountBuffers()
+  {
+    if (vertexBytes != null)
+      vertexBytes.remove();
+
+    if (batchBytes != null)
+      batchBytes.remove();
+
+    vertexBytes = batchBytes = null;
+  }
+
+  // Evict what the trim level asks for. Once we're hidden, the textures and
+  // buffers no demo is using go too (see SharedResources). Returns the bytes freed.
+  public long trimMemory(int level)
+  {
+    long freed = budget.onTrimMemory(level);
+
+    if (shared != null && level >= GpuMemoryBudget.TRIM_MEMORY_UI_HIDDEN)
+      freed += shared.trimUnused(gles);
+
+    // whatever was evicted is loaded again when drawn
+    frames.invalidate();
+    return freed;
+  }
+
+  @Override
+  public void tearDown()
+  {
+    // the programs belong to the cache
+    programs.release();
+    variants.onContextLost();
+
+    program = null;
+
+    source.release(); // free the textures!
+    skull = null;
+    uncountBuffers();
+
+    if (vertices != null)
+    {
+      vertices.tearDown();
+      vertices = null;
+    }
+
+    if (batch != null)
+    {
+      batch.tearDown();
+      batch = null;
+    }
+
+    if (builder != null)
+      builder.shutdown();
+  }
+
+  @Override
+  public void onContextCreated(SharedResources shared)
+  {
+    // A new context means a brand new OpenGL state: whatever the
+    // caches remember is not true anymore.
+    gles.invalidate();
+    programs.onContextLost();
+    variants.onContextLost();
+    camera.invalidate();
+
+    // if our context shares with the Prewarmer's, the program, the buffer
+    // and the skull come from SharedResources. Not the program in overdraw
+    // mode, though: the shared one has the real fragment shader, not the
+    // one that counts.
+    this.shared = shared;
+    programs.setSharedResources(overdraw ? null : shared);
+
+    // Lets initialize everything... but not right here. Building it all at
+    // once would keep the screen black until the very last thing is done:
+    // the manifest rebuilds it a bit at a time, at the start of each frame.
+    batch = null;
+    manifest.onContextLost();
+
+    // Load a bitmap from resources folder and pass it to OpenGL.
+    // Decoding a PNG takes a while, so we DON'T wait for it here: the loader
+    // (our Source, on a device) does it in the background and, until it's
+    // done, the skull is drawn with a placeholder. On a new context, the
+    // loader reloads it by itself.
+    skull = source.onContextCreated(gles, shared);
+  }
+
+  @Override
+  public void onSurfaceChanged(int width, int height)
+  {
+    // The uScreen matrix
+    // This is explained in detail in the Triangle2d sample (and in Camera2D).
+    camera.setViewport(width, height);
+
+    // set the viewport and a fixed, white background
+    gles.glViewport(0, 0, width, height);
+    gles.glClearColor(1f, 1f, 1f, 1f);
+
+    // since we're using a PNG file with transparency, enable alpha blending.
+    gles.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    gles.glEnable(GLES20.GL_BLEND);
+
+    // scatter the stress sprites all over the screen. The seed is fixed,
+    // so every run draws exactly the same scene. All of them, whatever the
+    // quality level: drawStress picks how many are drawn, every frame.
+    Random r = new Random(42);
+
+    for (int i = 0; i < spritePositions.length; i += 2)
+    {
+      spritePositions[i] = r.nextFloat() * (width - STRESS_SPRITE_SIZE);
+      spritePositions[i + 1] = r.nextFloat() * (height - STRESS_SPRITE_SIZE);
+    }
+
+    // the same sprites, for the builder: the whole skull, not rotated
+    for (int i = 0, j = 0; spriteInput != null && i < spritePositions.length; i += 2, j += ParallelSpriteBuilder.INPUT_FLOATS)
+    {
+      spriteInput[j] = spritePositions[i];
+      spriteInput[j + 1] = spritePositions[i + 1];
+      spriteInput[j + 2] = STRESS_SPRITE_SIZE;
+      spriteInput[j + 3] = STRESS_SPRITE_SIZE;
+      spriteInput[j + 4] = 0f;
+      spriteInput[j + 5] = 0f;
+      spriteInput[j + 6] = 0f;
+      spriteInput[j + 7] = 1f;
+      spriteInput[j + 8] = 1f;
+    }
+
+    // new size, new frame
+    frames.invalidate();
+  }
+
+  @Override
+  public void drawFrame()
+  {
+    // In stress mode the whole frame counts against the pacer's budget:
+    // restoring and uploading take time too, and the quality level has to
+    // make room for them.
+    if (spriteCount == 0)
+    {
+      draw();
+      return;
+    }
+
+    pacer.beginFrame();
+    draw();
+    pacer.endFrame();
+  }
+
+  private void draw()
+  {
+    // what's used from now on stays on the GPU (see GpuMemoryBudget)
+    budget.beginFrame();
+
+    // rebuild some more of what a new context lost, and ask for the next
+    // frame if there's still something left
+    if (manifest.restore(RESTORE_BUDGET_NANOS))
+      frames.invalidate();
+
+    // can't draw anything yet
+    if (!manifest.isReady(ResourceManifest.REQUIRED))
+    {
+      gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+      return;
+    }
+
+    // send uScreen, if the camera changed since the last frame
+    camera.apply(gles, uScreen);
+
+    // send whatever textures were decoded since the last frame
+    if (source.uploadPending())
+      frames.invalidate();
+
+    if (batch != null)
+    {
+      drawStress();
+      frames.onFrameRendered();
+      manifest.onFrameRendered();
+      return;
+    }
+
+    bindSkull();
+    tint(fade());
+
+    // Position of our image, and of the texture (read straight from the
+    // buffer on the GPU; FORMAT says where each one is)
+    vertices.bind();
+    FORMAT.bind(gles, attributes, 0);
+
+    // Clear the screen and draw the rectangle
+    gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    gles.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+    frames.onFrameRendered();
+    manifest.onFrameRendered();
+  }
+
+  // Bind the skull (or the placeholder, if it's still loading)
+  private void bindSkull()
+  {
+    int separate = skull.hasSeparateAlpha() ? 1 : 0;
+
+    if (separate == 1)
+    {
+      gles.glActiveTexture(GLES20.GL_TEXTURE1);
+      gles.glBindTexture(GLES20.GL_TEXTURE_2D, skull.getAlphaHandle());
+    }
+
+    gles.glActiveTexture(GLES20.GL_TEXTURE0);
+    gles.glBindTexture(GLES20.GL_TEXTURE_2D, skull.getHandle());
+
+    // uniforms aren't cached by GLStateCache; only set it when it changes
+    if (separateAlpha != separate)
+    {
+      gles.glUniform1i(uSeparateAlpha, separate);
+      separateAlpha = separate;
+    }
+  }
+
+  // How much of the skull shows: 0 to 1 during its fade in, 1 before
+  // (the placeholder shows as it is) and after. This is an animation, so the
+  // frames are asked for at a fixed interval (see RenderScheduler), and
+  // only until it's done: then we're back to drawing only when dirty.
+  private float fade()
+  {
+    if (!skull.isLoaded())
+    {
+      fadeStart = 0;
+      return 1f;
+    }
+
+    long now = System.nanoTime();
+
+    if (fadeStart == 0)
+    {
+      fadeStart = now;
+      fading = true;
+      frames.startAnimation(FADE_FRAME_MILLIS);
+    }
+
+    float t = (float) (now - fadeStart) / FADE_NANOS;
+
+    if (t < 1f)
+      return t;
+
+    if (fading)
+    {
+      fading = false;
+      frames.stopAnimation();
+    }
+
+    return 1f;
+  }
+
+  // uniforms aren't cached by GLStateCache either
+  private void tint(float alpha)
+  {
+    if (alpha != tintAlpha)
+    {
+      gles.glUniform4f(uTint, 1f, 1f, 1f, alpha);
+      tintAlpha = alpha;
+    }
+  }
+
+  // Same skull, but thousands of times. Every sprite uses the same texture,
+  // so the batch only needs to draw when it gets full (or, in 'mixed' mode,
+  // when the queue switches to the other blend mode: once per frame).
+  private void drawStress()
+  {
+    gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    bindSkull();
+    tint(1f);
+
+    // every level the pacer stepped down halves the sprites
+    int count = spriteCount >> pacer.getLevel();
+
+    // all the vertices at once, on every core, and straight to the stream
+    if (builder != null)
+    {
+      batch.begin();
+      batch.draw(skull.getHandle(), builder.build(spriteInput, count), count);
+      batch.end();
+      countStream();
+      return;
+    }
+
+    long normal = RenderQueue.key(0, BLEND_ALPHA, program.getHandle(), skull.getHandle());
+    long glowing = RenderQueue.key(0, mixed ? BLEND_ADD : BLEND_ALPHA, program.getHandle(), skull.getHandle());
+
+    for (int i = 0; i < count * 2; i += 2)
+      queue.record((i & 2) == 0 ? normal : glowing, spritePositions, i);
+
+    batch.begin();
+    queue.submit(spriteTarget);
+    batch.end();
+    countStream();
+  }
+
+  // the stream may have grown
+  private void countStream()
+  {
+    StreamBuffer stream = batch.getStreamBuffer();
+    batchBytes.setResident(stream.getRegionSize() * stream.getFramesInFlight());
+  }
+
+  // What the last stress frame took, for the log (null before the first one)
+  public String describeStress()
+  {
+    if (batch == null)
+      return null;
+
+    if (builder != null)
+      return batch.getSpriteCount() + " sprites built in " + (builder.getLastBuildNanos() / 1000) + "us on " + builder.getThreadCount() +
+        " thread(s), drawn in " + batch.getDrawCalls() + " draw call(s); stream: " + batch.getStreamBuffer() + "; GPU memory: " + budget;
+
+    return batch.getSpriteCount() + " sprites in " + batch.getDrawCalls() + " draw call(s), " +
+      queue.getStateChanges() + " state change(s) (" + queue.getUnsortedStateChanges() + " without sorting); stream: " +
+      batch.getStreamBuffer() + "; GPU memory: " + budget;
+  }
+}
@@ -0,0 +1,370 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+// A big grid of tiles (a 'tilemap'), for scrolling 2D worlds.
+//
+// Each tile is a textured rectangle, just like the Texture sample, with its
+// image taken from a 'tileset': one texture with all the tiles in a grid. A
+// 1000x1000 map is 4 million vertices, so sending it every frame (or even
+// looking at every tile every frame) is out of the question.
+//
+// So the map is cut in square 'chunks' of tiles (32x32 by default). The first
+// time a chunk is seen, its vertices go to a static buffer on the GPU, and stay
+// there; it's only built again when one of its tiles changes. Each frame, we
+// find the part of the world the camera is showing (the inverse of what
+// uScreen does) and only draw the chunks that touch it, one draw call each.
+//
+// The vertices are as small as we can make them (see VertexFormat): positions
+// in shorts when the map fits (floats when it doesn't), and the texture
+// coordinates in normalized unsigned shorts. All the chunks use the same index
+// buffer, like the SpriteBatch.
+//
+// Usage: fill the map with setTile, call setup(gles, program) on every new
+// context, bind the tileset, then draw(camera) every frame. 'program' must
+// have the aPosition and aTexPos attributes of the Texture sample.
+public class TileMap
+{
+  public static final int EMPTY = -1;
+  public static final int DEFAULT_CHUNK_SIZE = 32;
+
+  private static final int POSITION = 0;
+  private static final int TEXTURE = 1;
+  private static final int INDICES_PER_TILE = 6;
+
+  private static class Chunk
+  {
+    VertexBuffer buffer;
+    int tiles;            // not empty ones, that is
+    boolean dirty = true;
+  }
+
+  private final int width;
+  private final int height;
+  private final int tileSize;
+  private final int chunkSize;
+  private final int chunksX;
+  private final int chunksY;
+  private final int tilesetColumns;
+  private final int tilesetRows;
+  private final short[] tiles;
+  private final Chunk[] chunks;
+
+  private final VertexFormat format;
+  private final VertexWriter writer;
+  private final Vec2 corner = new Vec2();
+
+  private GLES gles;
+  private int[] locations;
+  private VertexBuffer indexBuffer;
+
+  // metrics
+  private int builds;
+  private long buildNanos;
+  private long maxBuildNanos;
+  private int visibleChunks;
+  private int drawCalls;
+  private int drawnTiles;
+
+  // 'width' and 'height' in tiles, 'tileSize' in pixels. The tileset has
+  // 'tilesetColumns' x 'tilesetRows' tiles, numbered left to right, top to bottom.
+  public TileMap(int width, int height, int tileSize, int tilesetColumns, int tilesetRows, int chunkSize)
+  {
+    if (width <= 0 || height <= 0 || tileSize <= 0)
+      throw new IllegalArgumentException("Invalid tilemap size: " + width + "x" + height + " tiles of " + tileSize + " pixels");
+
+    // a chunk is drawn with one index buffer of unsigned shorts
+    if (chunkSize <= 0 || chunkSize * chunkSize > SpriteBatch.MAX_SPRITES)
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.chunkSize = chunkSize;
+    this.tilesetColumns = tilesetColumns;
+    this.tilesetRows = tilesetRows;
+    this.chunksX = (width + chunkSize - 1) / chunkSize;
+    this.chunksY = (height + chunkSize - 1) / chunkSize;
+
+    tiles = new short[width * height];
+    Arrays.fill(tiles, (short) EMPTY);
+
+    chunks = new Chunk[chunksX * chunksY];
+    for (int i = 0; i < chunks.length; i++)
+      chunks[i] = new Chunk();
+
+    boolean small = (long) width * tileSize <= Short.MAX_VALUE && (long) height * tileSize <= Short.MAX_VALUE;
+    format = new VertexFormat(
+      new VertexFormat.Attribute("aPosition", 2, small ? GLES20.GL_SHORT : GLES20.GL_FLOAT, false),
+      new VertexFormat.Attribute("aTexPos", 2, GLES20.GL_UNSIGNED_SHORT, true));
+
+    // big enough for the fullest chunk; every build reuses it
+    writer = new VertexWriter(format, chunkSize * chunkSize * 4);
+  }
+
+  public TileMap(int width, int height, int tileSize, int tilesetColumns, int tilesetRows)
+  {
+    this(width, height, tileSize, tilesetColumns, tilesetRows, DEFAULT_CHUNK_SIZE);
+  }
+
+  public void setTile(int x, int y, int tile)
+  {
+    if (x < 0 || y < 0 || x >= width || y >= height)
+      throw new IndexOutOfBoundsException("Tile out of the map: " + x + ", " + y);
+
+    int i = y * width + x;
+    if (tiles[i] == tile)
+      return;
+
+    tiles[i] = (short) tile;
+    chunks[(y / chunkSize) * chunksX + x / chunkSize].dirty = true;
+  }
+
+  public int getTile(int x, int y)
+  {
+    return tiles[y * width + x];
+  }
+
+  // Call on every new context (from onSurfaceCreated). The buffers of the old
+  // context are gone with it; the chunks are built again as they're seen.
+  public void setup(GLES gles, ShaderProgram program)
+  {
+    this.gles = gles;
+    this.locations = format.getLocations(program);
+
+    for (Chunk chunk : chunks)
+    {
+      chunk.buffer = null;
+      chunk.dirty = true;
+    }
+
+    // the same for every chunk: tile N uses vertices 4N to 4N+3 (see SpriteBatch)
+    short[] indices = new short[chunkSize * chunkSize * INDICES_PER_TILE];
+    for (int i = 0, v = 0; i < indices.length; i += INDICES_PER_TILE, v += 4)
+    {
+      indices[i]     = (short) v;
+      indices[i + 1] = (short) (v + 1);
+      indices[i + 2] = (short) (v + 2);
+      indices[i + 3] = (short) (v + 2);
+      indices[i + 4] = (short) (v + 1);
+      indices[i + 5] = (short) (v + 3);
+    }
+
+    indexBuffer = new VertexBuffer(gles, indices);
+  }
+
+  // Draw the chunks the camera can see, with the program and the tileset that
+  // are bound right now
+  public void draw(Camera2D camera)
+  {
+    visibleChunks = 0;
+    drawCalls = 0;
+    drawnTiles = 0;
+
+    // the world under the 4 corners of the screen (the camera may be rotated)
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+    for (int i = 0; i < 4; i++)
+    {
+      corner.set((i & 1) * camera.getViewportWidth(), (i >> 1) * camera.getViewportHeight());
+      camera.screenToWorld(corner);
+      minX = Math.min(minX, corner.x);
+      minY = Math.min(minY, corner.y);
+      maxX = Math.max(maxX, corner.x);
+      maxY = Math.max(maxY, corner.y);
+    }
+
+    // ...and the chunks under it
+    int chunkPixels = chunkSize * tileSize;
+    int x0 = Math.max(0, (int) Math.floor(minX / chunkPixels));
+    int y0 = Math.max(0, (int) Math.floor(minY / chunkPixels));
+    int x1 = Math.min(chunksX - 1, (int) Math.floor(maxX / chunkPixels));
+    int y1 = Math.min(chunksY - 1, (int) Math.floor(maxY / chunkPixels));
+
+    indexBuffer.bind();
+
+    for (int cy = y0; cy <= y1; cy++)
+    {
+      for (int cx = x0; cx <= x1; cx++)
+      {
+        Chunk chunk = chunks[cy * chunksX + cx];
+        visibleChunks++;
+
+        if (chunk.dirty)
+          build(chunk, cx, cy);
+
+        if (chunk.tiles == 0)
+          continue;
+
+        chunk.buffer.bind();
+        format.bind(gles, locations, 0);
+        gles.glDrawElements(GLES20.GL_TRIANGLES, chunk.tiles * INDICES_PER_TILE, GLES20.GL_UNSIGNED_SHORT, 0);
+
+        drawCalls++;
+        drawnTiles += chunk.tiles;
+      }
+    }
+  }
+
+  // Write the vertices of the chunk (only the tiles that aren't empty) and send
+  // them to its buffer. The buffer is reused when they fit.
+  private void build(Chunk chunk, int cx, int cy)
+  {
+    long start = System.nanoTime();
+    writer.clear();
+
+    int tileX = cx * chunkSize;
+    int tileY = cy * chunkSize;
+    int lastX = Math.min(tileX + chunkSize, width);
+    int lastY = Math.min(tileY + chunkSize, height);
+    float du = 1f / tilesetColumns;
+    float dv = 1f / tilesetRows;
+
+    for (int y = tileY; y < lastY; y++)
+    {
+      for (int x = tileX; x < lastX; x++)
+      {
+        int tile = tiles[y * width + x];
+        if (tile == EMPTY)
+          continue;
+
+        float px = x * tileSize;
+        float py = y * tileSize;
+        float u0 = (tile % tilesetColumns) * du;
+        float v0 = (tile / tilesetColumns) * dv;
+
+        // same order as the SpriteBatch: top-left, bottom-left, top-right, bottom-right
+        writer.put(POSITION, px, py).put(TEXTURE, u0, v0).next();
+        writer.put(POSITION, px, py + tileSize).put(TEXTURE, u0, v0 + dv).next();
+        writer.put(POSITION, px + tileSize, py).put(TEXTURE, u0 + du, v0).next();
+        writer.put(POSITION, px + tileSize, py + tileSize).put(TEXTURE, u0 + du, v0 + dv).next();
+      }
+    }
+
+    chunk.tiles = writer.getVertexCount() / 4;
+    chunk.dirty = false;
+
+    if (chunk.tiles > 0)
+    {
+      int bytes = writer.getSizeInBytes();
+
+      if (chunk.buffer != null && chunk.buffer.getSizeInBytes() >= bytes)
+        chunk.buffer.update(0, bytes, writer.getBuffer());
+      else
+      {
+        if (chunk.buffer != null)
+          chunk.buffer.tearDown();
+
+        chunk.buffer = new VertexBuffer(gles, writer.getBuffer());
+      }
+    }
+
+    long elapsed = System.nanoTime() - start;
+    builds++;
+    buildNanos += elapsed;
+    maxBuildNanos = Math.max(maxBuildNanos, elapsed);
+  }
+
+  // Free every buffer. Only call while the context is still there.
+  public void tearDown()
+  {
+    for (Chunk chunk : chunks)
+    {
+      if (chunk.buffer != null)
+        chunk.buffer.tearDown();
+
+      chunk.buffer = null;
+      chunk.dirty = true;
+    }
+
+    if (indexBuffer != null)
+    {
+      indexBuffer.tearDown();
+      indexBuffer = null;
+    }
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getTileSize()
+  {
+    return tileSize;
+  }
+
+  public VertexFormat getFormat()
+  {
+    return format;
+  }
+
+  public int getChunkCount()
+  {
+    return chunks.length;
+  }
+
+  // Chunks with a buffer on the GPU right now
+  public int getBuiltChunkCount()
+  {
+    int built = 0;
+
+    for (Chunk chunk : chunks)
+      if (chunk.buffer != null)
+        built++;
+
+    return built;
+  }
+
+  // GPU memory used by the chunk buffers
+  public long getBytes()
+  {
+    long bytes = 0;
+
+    for (Chunk chunk : chunks)
+      if (chunk.buffer != null)
+        bytes += chunk.buffer.getSizeInBytes();
+
+    return bytes;
+  }
+
+  // Times a chunk was built (first time or not), and how long it took
+  public int getBuildCount()
+  {
+    return builds;
+  }
+
+  public long getBuildTimeNanos()
+  {
+    return buildNanos;
+  }
+
+  public long getMaxBuildTimeNanos()
+  {
+    return maxBuildNanos;
+  }
+
+  // Chunks the camera could see in the last draw (empty ones too)
+  public int getVisibleChunks()
+  {
+    return visibleChunks;
+  }
+
+  public int getDrawCalls()
+  {
+    return drawCalls;
+  }
+
+  public int getDrawnTiles()
+  {
+    return drawnTiles;
+  }
+}
@@ -0,0 +1,84 @@
+package ibraim.opengles2;
+
+// A stack of transforms, like the old glPushMatrix/glPopMatrix.
+//
+// Draw a parent, 'push', move to where its child goes, draw the child, 'pop',
+// and you're back where the parent was. All the matrices are created up front,
+// so pushing and popping never allocates.
+public class TransformStack
+{
+  private final Mat3[] stack;
+  private int top;
+
+  public TransformStack(int maxDepth)
+  {
+    stack = new Mat3[maxDepth];
+
+    for (int i = 0; i < maxDepth; i++)
+      stack[i] = new Mat3();
+  }
+
+  // The current transform
+  public Mat3 peek()
+  {
+    return stack[top];
+  }
+
+  // Save the current transform; the copy on top can be changed freely
+  public TransformStack push()
+  {
+    if (top + 1 == stack.length)
+      throw new IllegalStateException("Transform stack overflow (max depth is " + stack.length + ")");
+
+    stack[top + 1].set(stack[top]);
+    top++;
+    return this;
+  }
+
+  // Go back to the transform saved by the matching 'push'
+  public TransformStack pop()
+  {
+    if (top == 0)
+      throw new IllegalStateException("Transform stack underflow");
+
+    top--;
+    return this;
+  }
+
+  // Back to a single identity transform (ex: at the start of each frame)
+  public TransformStack reset()
+  {
+    top = 0;
+    stack[0].identity();
+    return this;
+  }
+
+  public TransformStack translate(float tx, float ty)
+  {
+    stack[top].translate(tx, ty);
+    return this;
+  }
+
+  public TransformStack rotate(float radians)
+  {
+    stack[top].rotate(radians);
+    return this;
+  }
+
+  public TransformStack scale(float sx, float sy)
+  {
+    stack[top].scale(sx, sy);
+    return this;
+  }
+
+  // Transform a point by the current transform
+  public Vec2 apply(Vec2 point)
+  {
+    return point.transform(stack[top]);
+  }
+
+  public int getDepth()
+  {
+    return top + 1;
+  }
+}
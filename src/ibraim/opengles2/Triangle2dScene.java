@@ -0,0 +1,210 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+// The Triangle2d sample: a red triangle, in pixels. Triangle2dActivity only
+// glues it to a GLSurfaceView (see Scene).
+public class Triangle2dScene implements Scene
+{
+  // Vertex shader source.
+  // This shader uses a constant 4x4 matrix 'uScreen' and multiplies it to
+  // the parameter aPosition. The x and y values of aPosition will be filled with
+  // the vertices of our triangle. uScreen will be a matrix that, when multiplied
+  // with the values of our position will CONVERT these values to the OpenGL coordinate
+  // system. This way we can, say, inform our coordinates in 'pixels' and let OpenGL
+  // figure out were the hell the pixels are. More on this later.
+  //
+  // The source lives in ShaderVariants, shared by all the samples. With only
+  // the TINT feature, this is what's left of it after the #ifdefs (the
+  // #define line aside):
+  //
+  //    uniform mat4 uScreen;
+  //    attribute vec2 aPosition;
+  //    void main() {
+  //      gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);
+  //    }
+  //
+  // And our fragment shader always returns the same color, uTint (RED, see setup):
+  //
+  //    precision mediump float;
+  //    uniform vec4 uTint;
+  //    void main(void)
+  //    {
+  //      vec4 color = vec4(1.0);
+  //      color *= uTint;
+  //      gl_FragColor = color;
+  //    }
+  static final int FEATURES = ShaderVariants.TINT;
+  static final String VERTEX_SRC = ShaderVariants.vertexSource(FEATURES);
+  static final String FRAGMENT_SRC = ShaderVariants.fragmentSource(FEATURES);
+
+  // the same program and buffer are bound on every frame; GLStateCache only
+  // lets the first of those binds through
+  private final GLStateCache gles;
+  private final ProgramCache programs;
+  private final ShaderVariants variants;
+  private final Frames frames;
+  private ShaderProgram program;
+  private int aPosition;
+  private int uScreen;
+
+  // builds the uScreen matrix (and lets us pan/zoom, if we ever want to)
+  private final Camera2D camera = new Camera2D();
+  private VertexBuffer vertices;
+
+  // set when our context shares objects with the Prewarmer's
+  private SharedResources shared;
+
+  public Triangle2dScene(GLES gles, Frames frames)
+  {
+    this.gles = new GLStateCache(gles);
+    this.programs = new ProgramCache(this.gles);
+    this.variants = new ShaderVariants(programs);
+    this.frames = frames;
+  }
+
+  public ProgramCache getPrograms()
+  {
+    return programs;
+  }
+
+  // These two methods help to Load/Unload the shaders used by OpenGL Es 2.0
+  // Remember that now OpenGL DOES NOT CONTAIN most of the 'old' OpenGL functions;
+  // Now you need to create your own vertex and fragment shaders. Yay!
+  // (the boring compile/link part lives in ShaderProgram)
+  //
+  // setup is called only when the context is created. A rotation or a resize
+  // keeps the same context, so there's no reason to build everything again.
+  private void setup()
+  {
+    // The shader sources are up there, with the class, so the Prewarmer
+    // (see Demos) can build them before the activity even starts.
+    // (ShaderVariants compiles each variant only once)
+    //
+    // Lets load and compile our shaders, link the program
+    // and tell OpenGL ES to use it for future drawing.
+    program = variants.get(FEATURES);
+    program.use();
+
+    // discover the 'position' of the uScreen and aPosition values.
+    // They never change once the program is linked, so we do it only once.
+    aPosition = program.getAttribute("aPosition");
+    uScreen = program.getUniform("uScreen");
+
+    // uniforms keep their value until changed, so the color is set once
+    gles.glUniform4f(program.getUniform("uTint"), 1f, 0f, 0f, 1f);
+
+    // The triangle vertices. Note how I'm using
+    // a 'pixel' coordinate system. This is not in the center of the
+    // screen or anything; this is in absolute position, will vary depending
+    // on the size of your display.
+    float[] data =
+    {
+      50f, 100f,
+      300f, 100f,
+      200f, 170f,
+    };
+
+    // Since the triangle never changes, we send it to the GPU only once, here,
+    // instead of sending it again on every frame.
+    // (if the last one came from SharedResources, tearDown just lets go of it)
+    if (vertices != null && vertices.isShared())
+      vertices.tearDown();
+
+    vertices = shared != null ? shared.acquireBuffer(gles, "Triangle2d", data) : new VertexBuffer(gles, data);
+  }
+
+  @Override
+  public void tearDown()
+  {
+    // the programs belong to the cache
+    programs.release();
+    variants.onContextLost();
+
+    program = null;
+
+    if (vertices != null)
+    {
+      vertices.tearDown();
+      vertices = null;
+    }
+  }
+
+  @Override
+  public void onContextCreated(SharedResources shared)
+  {
+    // A new context means a brand new OpenGL state: whatever the
+    // caches remember is not true anymore.
+    gles.invalidate();
+    programs.onContextLost();
+    variants.onContextLost();
+    camera.invalidate();
+
+    // if our context shares with the Prewarmer's, the program and the
+    // buffer come from SharedResources: most likely, they're built already
+    this.shared = shared;
+    programs.setSharedResources(shared);
+
+    // lets initialize everything
+    setup();
+  }
+
+  @Override
+  public void onSurfaceChanged(int width, int height)
+  {
+    // The uScreen matrix
+    // Let's stop  for a minute and think on what we're doing here.
+    //
+    // First of all, the only coordinate system that OpenGL understands
+    // put the center of the screen at the 0,0 position. The maximum value of
+    // the X axis is 1 (rightmost part of the screen) and the minimum is -1
+    // (leftmost part of the screen). The same thing goes for the Y axis,
+    // where 1 is the top of the screen and -1 the bottom.
+    //
+    // However, when you're doing a 2d application you often need to think in 'pixels'
+    // (or something like that). If you have a 300x300 screen, you want to see the center
+    // at 150,150 not 0,0!
+    //
+    // The solution to this 'problem' is to multiply a matrix with your position to
+    // another matrix that will convert 'your' coordinates to the one OpenGL expects.
+    // There's no magic in this, only a bit of math. Try to multiply the uScreen matrix
+    // to the 150,150 position in a sheet of paper and look at the results.
+    //
+    // IMPORTANT: When trying to calculate the matrix on paper, you should treat the
+    // uScreen ROWS as COLUMNS and vice versa. This happens because OpenGL expect the
+    // matrix values ordered in a more efficient way, that unfortunately is different
+    // from the mathematical notation :(
+    //
+    // The matrix is built by Camera2D (take a look at it). All it needs is the size
+    // of the screen; it's sent to OpenGL in drawFrame, only when it changed.
+    camera.setViewport(width, height);
+
+    // set the viewport and a fixed, white background
+    gles.glViewport(0, 0, width, height);
+    gles.glClearColor(1f, 1f, 1f, 1f);
+
+    // new size, new frame
+    frames.invalidate();
+  }
+
+  @Override
+  public void drawFrame()
+  {
+    // send uScreen, if the camera changed since the last frame
+    camera.apply(gles, uScreen);
+
+    // Enable and set the vertex attribute to read from our buffer.
+    // This makes possible to inform all of the vertices in one call.
+    // Since the data is already on the GPU, the last parameter is an
+    // offset (in bytes) inside the buffer, not the data itself.
+    vertices.bind();
+    gles.glVertexAttribPointer(aPosition, 2, GLES20.GL_FLOAT, false, 0, 0);
+    gles.glEnableVertexAttribArray(aPosition);
+
+    // Clear the screen and draw the triangle
+    gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    gles.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+
+    frames.onFrameRendered();
+  }
+}
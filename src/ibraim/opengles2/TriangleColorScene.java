@@ -0,0 +1,262 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+// The TriangleColor sample: a triangle with a color on each vertex, and some
+// shapes below it if asked to. TriangleColorActivity only glues it to a
+// GLSurfaceView (see Scene).
+public class TriangleColorScene implements Scene
+{
+  // Vertex shader source.
+  // This is the the same one used in the Triangle2d sample, but with
+  // an extra attribute: aColor, that will hold a RGB value for the color
+  // of the vertex. This value will be passed directly to vColor
+  //
+  // It comes from ShaderVariants, with the COLOR feature:
+  //
+  //    uniform mat4 uScreen;
+  //    attribute vec2 aPosition;
+  //    attribute vec4 aColor;
+  //    varying vec4 vColor;
+  //    void main() {
+  //      vColor = aColor;
+  //      gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);
+  //    }
+  //
+  // (we only send RGB; OpenGL fills the missing alpha with 1)
+  static final int FEATURES = ShaderVariants.COLOR;
+  static final String VERTEX_SRC = ShaderVariants.vertexSource(FEATURES);
+
+  // Our fragment shader. Just return vColor.
+  // If you look at this source and just said 'WTF?', remember
+  // that all the attributes are defined in the VERTEX shader and
+  // all the 'varying' vars are considered OUTPUT of vertex shader
+  // and INPUT of the fragment shader. Here we just use the color
+  // we received.
+  //
+  //    precision mediump float;
+  //    varying vec4 vColor;
+  //    void main(void)
+  //    {
+  //      vec4 color = vec4(1.0);
+  //      color *= vColor;
+  //      gl_FragColor = color;
+  //    }
+  static final String FRAGMENT_SRC = ShaderVariants.fragmentSource(FEATURES);
+
+  // How a vertex is laid out in the buffer (see VertexFormat).
+  // The position is in pixels, so a short is more than enough, and each color
+  // channel only needs a byte: 0 to 255, that OpenGL turns into 0.0 to 1.0 for
+  // the shader ('normalized'). That's 8 bytes per vertex (the color is padded
+  // to 4), instead of the 20 of five floats. The shaders don't change at all.
+  static final VertexFormat FORMAT = new VertexFormat(
+    new VertexFormat.Attribute("aPosition", 2, GLES20.GL_SHORT, false),
+    new VertexFormat.Attribute("aColor", 3, GLES20.GL_UNSIGNED_BYTE, true));
+
+  private static final int POSITION = 0;
+  private static final int COLOR = 1;
+
+  // the points (XY) of two of the shapes
+  private static final float[] STAR = {0, 0, 60, 20, 120, 0, 100, 60, 120, 120, 60, 90, 0, 120, 20, 60};
+  private static final float[] ZIGZAG = {0, 60, 40, 0, 80, 60, 120, 0, 160, 60};
+
+  // the triangle and the shapes batch bind their own buffers on every frame;
+  // GLStateCache drops the binds that don't change anything
+  private final GLStateCache gles;
+  private final ProgramCache programs;
+  private final ShaderVariants variants;
+  private final Frames frames;
+  private ShaderProgram program;
+  private int[] attributes;
+  private int uScreen;
+  private final Camera2D camera = new Camera2D();
+  private VertexBuffer vertices;
+
+  // set when our context shares objects with the Prewarmer's
+  private SharedResources shared;
+
+  // The shapes are tessellated once, and kept by the tessellator: they're
+  // plain arrays, so they even survive a context loss. Only the batch (its
+  // buffer) has to be created again.
+  private final boolean shapes;
+  private final ShapeTessellator tessellator = new ShapeTessellator();
+  private ShapeBatch batch;
+
+  public TriangleColorScene(GLES gles, Frames frames, boolean shapes)
+  {
+    this.gles = new GLStateCache(gles);
+    this.programs = new ProgramCache(this.gles);
+    this.variants = new ShaderVariants(programs);
+    this.frames = frames;
+    this.shapes = shapes;
+  }
+
+  public ShaderVariants getVariants()
+  {
+    return variants;
+  }
+
+  public ShapeTessellator getTessellator()
+  {
+    return tessellator;
+  }
+
+  // The batch of the shapes (null without them, or without a context)
+  public ShapeBatch getBatch()
+  {
+    return batch;
+  }
+
+  // These two methods help to Load/Unload the shaders used by OpenGL Es 2.0
+  // Remember that now OpenGL DOES NOT CONTAIN most of the 'old' OpenGL functions;
+  // Now you need to create your own vertex and fragment shaders. Yay!
+  // (the boring compile/link part lives in ShaderProgram)
+  //
+  // setup is called only when the context is created. A rotation or a resize
+  // keeps the same context, so there's no reason to build everything again.
+  private void setup()
+  {
+    // The shader sources are up there, with the class, so the Prewarmer
+    // (see Demos) can build them before the activity even starts.
+    // (ShaderVariants compiles each variant only once)
+    //
+    // Lets load and compile our shaders, link the program
+    // and tell OpenGL ES to use it for future drawing.
+    program = variants.get(FEATURES);
+    program.use();
+
+    // get the position of our attributes and uniforms, once.
+    attributes = FORMAT.getLocations(program);
+    uScreen = program.getUniform("uScreen");
+
+    // The triangle vertices. Note how I'm putting the
+    // vertex position and the color on the same array.
+    // This ensures maximum performance for this kind of operation.
+    float[] data =
+    {
+      // XY, RGB
+      50f, 100f,
+      1f, 0f, 0f,
+
+      300f, 100f,
+      0f, 1f, 0f,
+
+      200f, 170f,
+      0f, 0f, 1f
+    };
+
+    // Floats are easier to read, but not to send: pack them in our FORMAT
+    VertexWriter writer = new VertexWriter(FORMAT, 3);
+    for (int i = 0; i < data.length; i += 5)
+      writer.put(POSITION, data[i], data[i + 1]).put(COLOR, data[i + 2], data[i + 3], data[i + 4]).next();
+
+    // Upload the whole thing to the GPU, once. See the Triangle2d sample.
+    if (vertices != null && vertices.isShared())
+      vertices.tearDown();
+
+    vertices = shared != null ? shared.acquireBuffer(gles, "TriangleColor", writer.getBuffer()) : new VertexBuffer(gles, writer.getBuffer());
+
+    // room for all of our shapes, so they take a single draw call
+    if (shapes)
+      batch = new ShapeBatch(gles, program, 4096);
+  }
+
+  // A few of each kind of shape, below the triangle. They come from the
+  // tessellator's cache after the first frame.
+  private void drawShapes()
+  {
+    batch.begin();
+
+    for (int i = 0; i < 4; i++)
+    {
+      float x = 70 + i * 80;
+      batch.draw(tessellator.circle(10 + i * 8), x, 240, 0.2f, 0.8f, 1f - 0.2f * i, 1f);
+      batch.draw(tessellator.roundedRect(60, 40, 4 + i * 5), x - 30, 300, 0.9f, 0.5f, 0.1f, 1f);
+      batch.draw(tessellator.arc(20, 0, (float) Math.PI * (i + 1) / 2, 6), x, 400, 0.5f, 0.1f, 0.7f, 1f);
+    }
+
+    // a concave polygon and a thick zigzag
+    batch.draw(tessellator.polygon(STAR), 40, 460, 0.1f, 0.6f, 0.2f, 1f);
+    batch.draw(tessellator.polyline(ZIGZAG, 8, false), 180, 460, 0.2f, 0.2f, 0.2f, 1f);
+
+    batch.end();
+  }
+
+  @Override
+  public void tearDown()
+  {
+    // the programs belong to the cache
+    programs.release();
+    variants.onContextLost();
+
+    program = null;
+
+    if (batch != null)
+    {
+      batch.tearDown();
+      batch = null;
+    }
+
+    if (vertices != null)
+    {
+      vertices.tearDown();
+      vertices = null;
+    }
+  }
+
+  @Override
+  public void onContextCreated(SharedResources shared)
+  {
+    // A new context means a brand new OpenGL state: whatever the
+    // caches remember is not true anymore.
+    gles.invalidate();
+    programs.onContextLost();
+    variants.onContextLost();
+    camera.invalidate();
+    batch = null;
+
+    // if our context shares with the Prewarmer's, the program and the
+    // buffer come from SharedResources: most likely, they're built already
+    this.shared = shared;
+    programs.setSharedResources(shared);
+
+    // lets initialize everything
+    setup();
+  }
+
+  @Override
+  public void onSurfaceChanged(int width, int height)
+  {
+    // The uScreen matrix
+    // This is explained in detail in the Triangle2d sample (and in Camera2D).
+    camera.setViewport(width, height);
+
+    // set the viewport and a fixed, white background
+    gles.glViewport(0, 0, width, height);
+    gles.glClearColor(1f, 1f, 1f, 1f);
+
+    // new size, new frame
+    frames.invalidate();
+  }
+
+  @Override
+  public void drawFrame()
+  {
+    // send uScreen, if the camera changed since the last frame
+    camera.apply(gles, uScreen);
+
+    // Enable and set the vertex attributes to read from our buffer.
+    // FORMAT knows the type, the size and the offset (in BYTES) of each one.
+    vertices.bind();
+    FORMAT.bind(gles, attributes, 0);
+
+    // Clear the screen and draw the triangle
+    gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    gles.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+
+    if (shapes)
+      drawShapes();
+
+    frames.onFrameRendered();
+  }
+}
@@ -0,0 +1,92 @@
+package ibraim.opengles2;
+
+// A 2D point (or direction).
+//
+// Like everything in Mat3, Mat4 and TransformStack, the operations change the
+// vector itself and return it, so calls can be chained and nothing is ever
+// allocated. Create your vectors once, and reuse them every frame.
+public class Vec2
+{
+  public float x;
+  public float y;
+
+  public Vec2()
+  {
+  }
+
+  public Vec2(float x, float y)
+  {
+    this.x = x;
+    this.y = y;
+  }
+
+  public Vec2 set(float x, float y)
+  {
+    this.x = x;
+    this.y = y;
+    return this;
+  }
+
+  public Vec2 set(Vec2 other)
+  {
+    return set(other.x, other.y);
+  }
+
+  public Vec2 add(float dx, float dy)
+  {
+    x += dx;
+    y += dy;
+    return this;
+  }
+
+  public Vec2 add(Vec2 other)
+  {
+    return add(other.x, other.y);
+  }
+
+  public Vec2 sub(Vec2 other)
+  {
+    return add(-other.x, -other.y);
+  }
+
+  public Vec2 scale(float s)
+  {
+    x *= s;
+    y *= s;
+    return this;
+  }
+
+  public float dot(Vec2 other)
+  {
+    return x * other.x + y * other.y;
+  }
+
+  public float length()
+  {
+    return (float) Math.sqrt(x * x + y * y);
+  }
+
+  // Make it 1 unit long (a zero vector stays zero)
+  public Vec2 normalize()
+  {
+    float length = length();
+    return length == 0 ? this : scale(1f / length);
+  }
+
+  // Multiply by 'm', as a point (translation included)
+  public Vec2 transform(Mat3 m)
+  {
+    float[] v = m.values;
+    float tx = v[0] * x + v[3] * y + v[6];
+    float ty = v[1] * x + v[4] * y + v[7];
+    x = tx;
+    y = ty;
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "(" + x + ", " + y + ")";
+  }
+}
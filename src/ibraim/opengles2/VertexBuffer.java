@@ -0,0 +1,168 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// A buffer object living in GPU memory (a 'VBO').
+//
+// The samples used to create a brand new FloatBuffer on EVERY frame and hand
+// it to glVertexAttribPointer. That works, but it means allocating direct
+// memory and copying all of the vertices to the driver 60 times a second.
+// Since our geometry never changes, we can do much better: upload it ONCE
+// when the surface is created and, from then on, just tell OpenGL where the
+// data is inside the buffer (an 'offset', in bytes).
+//
+// Remember that buffer objects belong to the OpenGL context, so they must be
+// created on the GL thread (onSurfaceCreated/onSurfaceChanged) and they are
+// gone once the context is lost.
+public class VertexBuffer
+{
+  public static final int FLOAT_SIZE = 4;
+  public static final int SHORT_SIZE = 2;
+
+  private final GLES gles;
+  private final int target;
+  private final int usage;
+  private final int[] handle = new int[1];
+  private final int sizeInBytes;
+
+  // when the buffer belongs to SharedResources (see the last constructor)
+  private final SharedResources owner;
+  private final String sharedName;
+
+  // Static vertex data (positions, colors, etc.)
+  public VertexBuffer(GLES gles, float[] data)
+  {
+    this(gles, GLES20.GL_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW, data.length * FLOAT_SIZE);
+    ByteBuffer b = ByteBuffer.allocateDirect(sizeInBytes).order(ByteOrder.nativeOrder());
+    b.asFloatBuffer().put(data);
+    upload(b);
+  }
+
+  // Static vertex data already packed in bytes, from its position to its
+  // limit (see VertexWriter)
+  public VertexBuffer(GLES gles, ByteBuffer data)
+  {
+    this(gles, GLES20.GL_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW, data.remaining());
+    upload(data.slice());
+  }
+
+  // Static index data, to be used with glDrawElements
+  public VertexBuffer(GLES gles, short[] indices)
+  {
+    this(gles, GLES20.GL_ELEMENT_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW, indices.length * SHORT_SIZE);
+    ByteBuffer b = ByteBuffer.allocateDirect(sizeInBytes).order(ByteOrder.nativeOrder());
+    b.asShortBuffer().put(indices);
+    upload(b);
+  }
+
+  // An empty buffer of the given size. Use 'update' to fill it.
+  public VertexBuffer(GLES gles, int target, int usage, int sizeInBytes)
+  {
+    this.gles = gles;
+    this.target = target;
+    this.usage = usage;
+    this.sizeInBytes = sizeInBytes;
+    this.owner = null;
+    this.sharedName = null;
+
+    gles.glGenBuffers(1, handle, 0);
+
+    if (handle[0] == GLES20.GL_FALSE)
+      throw new RuntimeException("Error creating buffer!");
+
+    // reserve the memory, but don't send anything yet
+    gles.glBindBuffer(target, handle[0]);
+    gles.glBufferData(target, sizeInBytes, null, usage);
+  }
+
+  // A buffer that lives in SharedResources, maybe created in another context
+  // (one that shares its objects with ours). tearDown only tells the owner
+  // we're done with it.
+  VertexBuffer(GLES gles, VertexBuffer shared, SharedResources owner, String name)
+  {
+    this.gles = gles;
+    this.target = shared.target;
+    this.usage = shared.usage;
+    this.sizeInBytes = shared.sizeInBytes;
+    this.handle[0] = shared.handle[0];
+    this.owner = owner;
+    this.sharedName = name;
+  }
+
+  private void upload(Buffer data)
+  {
+    // the staging buffer is only needed during the upload; after this
+    // the data lives on the GPU and the buffer can be garbage collected
+    gles.glBindBuffer(target, handle[0]);
+    gles.glBufferData(target, sizeInBytes, data.position(0), usage);
+  }
+
+  // Replace part of the buffer contents. 'data' is read from its current
+  // position up to its limit, and no memory is allocated here.
+  public void update(int offsetInBytes, int countInBytes, Buffer data)
+  {
+    gles.glBindBuffer(target, handle[0]);
+    gles.glBufferSubData(target, offsetInBytes, countInBytes, data);
+  }
+
+  // Throw the contents away, keeping the size. The driver gives us fresh
+  // memory right away, and frees the old one when the GPU is done with it.
+  public void orphan()
+  {
+    gles.glBindBuffer(target, handle[0]);
+    gles.glBufferData(target, sizeInBytes, null, usage);
+  }
+
+  public void bind()
+  {
+    gles.glBindBuffer(target, handle[0]);
+  }
+
+  public void unbind()
+  {
+    gles.glBindBuffer(target, 0);
+  }
+
+  public void tearDown()
+  {
+    if (owner != null)
+    {
+      if (handle[0] != GLES20.GL_FALSE)
+        owner.releaseBuffer(sharedName);
+
+      handle[0] = GLES20.GL_FALSE;
+      return;
+    }
+
+    if (handle[0] != GLES20.GL_FALSE)
+    {
+      gles.glDeleteBuffers(1, handle, 0);
+      handle[0] = GLES20.GL_FALSE;
+    }
+  }
+
+  public int getHandle()
+  {
+    return handle[0];
+  }
+
+  // Does it belong to SharedResources?
+  public boolean isShared()
+  {
+    return owner != null;
+  }
+
+  public int getTarget()
+  {
+    return target;
+  }
+
+  public int getSizeInBytes()
+  {
+    return sizeInBytes;
+  }
+}
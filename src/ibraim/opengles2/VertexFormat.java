@@ -0,0 +1,160 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+// Describes the attributes of a vertex, and where each one is in the buffer.
+//
+// Floats are the easy choice for everything, but they're 4 bytes each, and
+// the GPU has to read every byte of every vertex. A color doesn't need more
+// than a byte per channel, and a position in pixels fits in a short. OpenGL
+// can convert those for us: with 'normalized' set, an unsigned byte 0..255
+// arrives in the shader as 0.0..1.0 (and a short as -1.0..1.0). Without it,
+// the value arrives as is (ex: the short 300 becomes 300.0).
+//
+// A format is a list of attributes (shader name, number of components, type
+// and normalization). From that it works out the offset of each attribute and
+// the size of a whole vertex (the 'stride'). Every attribute starts at a
+// multiple of 4 bytes, since some GPUs are really slow otherwise; that's why
+// 3 bytes of color take 4.
+//
+// Fill a buffer with VertexWriter, and point OpenGL to it with 'bind'.
+public class VertexFormat
+{
+  public static class Attribute
+  {
+    private final String name;
+    private final int count;
+    private final int type;
+    private final boolean normalized;
+
+    // 'count' is the number of components (1 to 4), 'type' one of GL_FLOAT,
+    // GL_SHORT, GL_UNSIGNED_SHORT, GL_BYTE or GL_UNSIGNED_BYTE
+    public Attribute(String name, int count, int type, boolean normalized)
+    {
+      if (count < 1 || count > 4)
+        throw new IllegalArgumentException("Invalid component count for " + name + ": " + count);
+
+      typeSize(type);
+
+      this.name = name;
+      this.count = count;
+      this.type = type;
+      this.normalized = normalized;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public int getCount()
+    {
+      return count;
+    }
+
+    public int getType()
+    {
+      return type;
+    }
+
+    public boolean isNormalized()
+    {
+      return normalized;
+    }
+
+    // bytes used by the data itself, without the padding
+    public int getSize()
+    {
+      return count * typeSize(type);
+    }
+  }
+
+  private final Attribute[] attributes;
+  private final int[] offsets;
+  private final int stride;
+
+  public VertexFormat(Attribute... attributes)
+  {
+    this.attributes = attributes.clone();
+    this.offsets = new int[attributes.length];
+
+    int offset = 0;
+    for (int i = 0; i < attributes.length; i++)
+    {
+      offsets[i] = offset;
+      offset += (attributes[i].getSize() + 3) & ~3;
+    }
+
+    this.stride = offset;
+  }
+
+  // Size of a component of this type, in bytes
+  public static int typeSize(int type)
+  {
+    switch (type)
+    {
+      case GLES20.GL_FLOAT:
+        return 4;
+
+      case GLES20.GL_SHORT:
+      case GLES20.GL_UNSIGNED_SHORT:
+        return 2;
+
+      case GLES20.GL_BYTE:
+      case GLES20.GL_UNSIGNED_BYTE:
+        return 1;
+
+      default:
+        throw new IllegalArgumentException("Unsupported attribute type: 0x" + Integer.toHexString(type));
+    }
+  }
+
+  public int getAttributeCount()
+  {
+    return attributes.length;
+  }
+
+  public Attribute getAttribute(int index)
+  {
+    return attributes[index];
+  }
+
+  // Where the attribute starts, in bytes from the start of the vertex
+  public int getOffset(int index)
+  {
+    return offsets[index];
+  }
+
+  // Bytes per vertex
+  public int getStride()
+  {
+    return stride;
+  }
+
+  // The location of each attribute in 'program' (-1 for the ones it doesn't
+  // use). Do this once, after linking, and pass the result to 'bind'.
+  public int[] getLocations(ShaderProgram program)
+  {
+    int[] locations = new int[attributes.length];
+
+    for (int i = 0; i < attributes.length; i++)
+      locations[i] = program.getAttribute(attributes[i].getName());
+
+    return locations;
+  }
+
+  // Point every attribute to the bound GL_ARRAY_BUFFER, with the first vertex
+  // at 'baseOffset' bytes
+  public void bind(GLES gles, int[] locations, int baseOffset)
+  {
+    for (int i = 0; i < attributes.length; i++)
+    {
+      if (locations[i] < 0)
+        continue;
+
+      Attribute a = attributes[i];
+      gles.glVertexAttribPointer(locations[i], a.count, a.type, a.normalized, stride, baseOffset + offsets[i]);
+      gles.glEnableVertexAttribArray(locations[i]);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Packs vertices into a buffer, following a VertexFormat.
+//
+// Values are always given as floats, and converted to the type of the
+// attribute: a normalized unsigned byte takes 0..1 (ex: 1.0 becomes 255), a
+// short that isn't normalized takes the value itself (rounded). Out of range
+// values are clamped.
+//
+// The buffer is allocated once, in the constructor; writing vertices doesn't
+// allocate anything. Write the attributes of a vertex with 'put', move on to
+// the next one with 'next':
+//
+//    writer.put(POSITION, x, y).put(COLOR, r, g, b).next();
+public class VertexWriter
+{
+  private final VertexFormat format;
+  private final ByteBuffer buffer;
+  private final int capacity;
+  private final int stride;
+
+  // copied from the format, so 'put' doesn't need to look them up
+  private final int[] offsets;
+  private final int[] counts;
+  private final int[] sizes;
+  private final float[] scales;
+  private final float[] mins;
+  private final float[] maxs;
+
+  private int vertex;   // where the current vertex starts, in bytes
+  private int count;
+
+  // 'capacity' is the number of vertices
+  public VertexWriter(VertexFormat format, int capacity)
+  {
+    this.format = format;
+    this.capacity = capacity;
+    this.stride = format.getStride();
+    this.buffer = ByteBuffer.allocateDirect(capacity * stride).order(ByteOrder.nativeOrder());
+
+    int n = format.getAttributeCount();
+    offsets = new int[n];
+    counts = new int[n];
+    sizes = new int[n];
+    scales = new float[n];
+    mins = new float[n];
+    maxs = new float[n];
+
+    for (int i = 0; i < n; i++)
+    {
+      VertexFormat.Attribute a = format.getAttribute(i);
+      offsets[i] = format.getOffset(i);
+      counts[i] = a.getCount();
+      sizes[i] = VertexFormat.typeSize(a.getType());
+      range(i, a.getType(), a.isNormalized());
+    }
+  }
+
+  // what 'write' needs to convert a float to the type of 'attribute'
+  private void range(int attribute, int type, boolean normalized)
+  {
+    float max;
+
+    switch (type)
+    {
+      case GLES20.GL_SHORT:
+        max = 32767f;
+        mins[attribute] = -32768f;
+        break;
+
+      case GLES20.GL_UNSIGNED_SHORT:
+        max = 65535f;
+        break;
+
+      case GLES20.GL_BYTE:
+        max = 127f;
+        mins[attribute] = -128f;
+        break;
+
+      case GLES20.GL_UNSIGNED_BYTE:
+        max = 255f;
+        break;
+
+      default:
+        max = Float.MAX_VALUE;
+        mins[attribute] = -Float.MAX_VALUE;
+        break;
+    }
+
+    maxs[attribute] = max;
+    scales[attribute] = normalized ? max : 1f;
+  }
+
+  public VertexWriter put(int attribute, float x)
+  {
+    int at = vertex + offsets[attribute];
+    write(at, attribute, 0, x);
+    return this;
+  }
+
+  public VertexWriter put(int attribute, float x, float y)
+  {
+    int at = vertex + offsets[attribute];
+    write(at, attribute, 0, x);
+    write(at, attribute, 1, y);
+    return this;
+  }
+
+  public VertexWriter put(int attribute, float x, float y, float z)
+  {
+    int at = vertex + offsets[attribute];
+    write(at, attribute, 0, x);
+    write(at, attribute, 1, y);
+    write(at, attribute, 2, z);
+    return this;
+  }
+
+  public VertexWriter put(int attribute, float x, float y, float z, float w)
+  {
+    int at = vertex + offsets[attribute];
+    write(at, attribute, 0, x);
+    write(at, attribute, 1, y);
+    write(at, attribute, 2, z);
+    write(at, attribute, 3, w);
+    return this;
+  }
+
+  // Done with this vertex
+  public void next()
+  {
+    if (count == capacity)
+      throw new IllegalStateException("VertexWriter is full (" + capacity + " vertices)");
+
+    count++;
+    vertex += stride;
+  }
+
+  // Start again from the first vertex
+  public void clear()
+  {
+    buffer.clear();
+    count = 0;
+    vertex = 0;
+  }
+
+  public int getVertexCount()
+  {
+    return count;
+  }
+
+  public int getSizeInBytes()
+  {
+    return count * stride;
+  }
+
+  public VertexFormat getFormat()
+  {
+    return format;
+  }
+
+  // The vertices written so far, ready to upload (see VertexBuffer). Call
+  // 'clear' before writing again.
+  public ByteBuffer getBuffer()
+  {
+    buffer.limit(count * stride);
+    buffer.position(0);
+    return buffer;
+  }
+
+  // component 'c' of 'attribute', in the vertex starting at 'at'. Components
+  // the attribute doesn't have are ignored.
+  private void write(int at, int attribute, int c, float v)
+  {
+    if (c >= counts[attribute])
+      return;
+
+    if (sizes[attribute] == 4)
+    {
+      buffer.putFloat(at + c * 4, v);
+      return;
+    }
+
+    // scale (if normalized), clamp to the range of the type, and round
+    v *= scales[attribute];
+    v = v < mins[attribute] ? mins[attribute] : (v > maxs[attribute] ? maxs[attribute] : v);
+    int value = (int) (v < 0 ? v - 0.5f : v + 0.5f);
+
+    if (sizes[attribute] == 2)
+      buffer.putShort(at + c * 2, (short) value);
+    else
+      buffer.put(at + c, (byte) value);
+  }
+}
@@ -0,0 +1,39 @@
+package ibraim.opengles2;
+
+// The checks used by the tests (see Tests). A failed one throws, and the
+// runner reports the message.
+public final class Assert
+{
+  private Assert()
+  {
+  }
+
+  public static void fail(String message)
+  {
+    throw new AssertionError(message);
+  }
+
+  public static void assertTrue(String message, boolean condition)
+  {
+    if (!condition)
+      fail(message);
+  }
+
+  public static void assertEquals(String message, long expected, long actual)
+  {
+    if (expected != actual)
+      fail(message + ": expected " + expected + ", got " + actual);
+  }
+
+  public static void assertEquals(String message, Object expected, Object actual)
+  {
+    if (expected == null ? actual != null : !expected.equals(actual))
+      fail(message + ": expected " + expected + ", got " + actual);
+  }
+
+  public static void assertEquals(String message, float expected, float actual, float delta)
+  {
+    if (Math.abs(expected - actual) > delta)
+      fail(message + ": expected " + expected + ", got " + actual);
+  }
+}
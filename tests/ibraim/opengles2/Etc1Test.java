@@ -0,0 +1,177 @@
+package ibraim.opengles2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// The encoder and the PKM files the build writes for TextureLoader.
+public class Etc1Test
+{
+  // a 13x7 image: not a multiple of 4 either way
+  private static final int WIDTH = 13;
+  private static final int HEIGHT = 7;
+
+  private static int[] gradient(int width, int height)
+  {
+    int[] argb = new int[width * height];
+
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        argb[y * width + x] = 0xff000000 | ((x * 255 / width) << 16) | ((y * 255 / height) << 8) | 0x80;
+
+    return argb;
+  }
+
+  public static void testPkmRoundTrip() throws IOException
+  {
+    byte[] data = Etc1.encode(gradient(WIDTH, HEIGHT), WIDTH, HEIGHT, false);
+    assertEquals("encoded size: 4x2 blocks", 4 * 2 * Etc1.BLOCK_SIZE, data.length);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Etc1.writePkm(out, data, WIDTH, HEIGHT);
+    byte[] file = out.toByteArray();
+
+    // the header, byte by byte: magic, version, format, then the padded and
+    // the real sizes, big endian
+    byte[] header = { 'P', 'K', 'M', ' ', '1', '0', 0, 0, 0, 16, 0, 8, 0, 13, 0, 7 };
+    assertEquals("file size", Etc1.PKM_HEADER_SIZE + data.length, file.length);
+    assertTrue("header " + Arrays.toString(Arrays.copyOf(file, 16)), Arrays.equals(header, Arrays.copyOf(file, Etc1.PKM_HEADER_SIZE)));
+
+    Etc1.Image image = Etc1.readPkm(new ByteArrayInputStream(file));
+    assertEquals("width", WIDTH, image.width);
+    assertEquals("height", HEIGHT, image.height);
+    assertTrue("direct buffer, for OpenGL", image.data.isDirect());
+    assertEquals("data position", 0, image.data.position());
+    assertEquals("data size", data.length, image.data.remaining());
+
+    byte[] read = new byte[data.length];
+    image.data.duplicate().get(read);
+    assertTrue("data read back", Arrays.equals(data, read));
+  }
+
+  public static void testBadFilesThrow()
+  {
+    byte[] data = Etc1.encode(gradient(8, 8), 8, 8, false);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try
+    {
+      Etc1.writePkm(out, data, 8, 8);
+    }
+    catch (IOException e)
+    {
+      fail("writing to memory: " + e);
+    }
+
+    byte[] file = out.toByteArray();
+
+    // not a PKM
+    byte[] wrong = file.clone();
+    wrong[0] = 'X';
+    expectIOException("bad magic", wrong, false);
+
+    // ETC2, or anything else we can't upload as ETC1
+    byte[] format = file.clone();
+    format[7] = 1;
+    expectIOException("unsupported format", format, false);
+
+    // a real size bigger than the padded one
+    byte[] size = file.clone();
+    size[13] = 9;
+    expectIOException("invalid size", size, false);
+
+    // cut in the middle of the data
+    expectIOException("truncated", Arrays.copyOf(file, file.length - 3), true);
+  }
+
+  private static void expectIOException(String what, byte[] file, boolean eof)
+  {
+    try
+    {
+      Etc1.readPkm(new ByteArrayInputStream(file));
+      fail(what + ": must throw");
+    }
+    catch (IOException e)
+    {
+      assertEquals(what + ": " + e, eof, e instanceof EOFException);
+    }
+  }
+
+  public static void testFlatColorsSurvive()
+  {
+    // a single color is what ETC1 does best: a base color and a small modifier
+    int[] colors = { 0xff000000, 0xffffffff, 0xff808080, 0xffc04020, 0xff2080f0 };
+
+    for (int color : colors)
+    {
+      int[] argb = new int[16];
+      Arrays.fill(argb, color);
+
+      int[] rgb = Etc1.decode(Etc1.encode(argb, 4, 4, false), 4, 4);
+
+      for (int p : rgb)
+        assertTrue(String.format("0x%06x came back as 0x%06x", color & 0xffffff, p), maxChannelError(color, p) <= 8);
+    }
+  }
+
+  public static void testImagesStayClose()
+  {
+    Random r = new Random(7);
+    int width = 32;
+    int height = 32;
+    int[] argb = gradient(width, height);
+
+    // some noise on top of the gradient
+    for (int i = 0; i < argb.length; i++)
+      argb[i] ^= r.nextInt(8) * 0x010101;
+
+    int[] rgb = Etc1.decode(Etc1.encode(argb, width, height, false), width, height);
+    double error = 0;
+
+    for (int i = 0; i < argb.length; i++)
+      for (int shift = 0; shift <= 16; shift += 8)
+      {
+        int d = ((argb[i] >> shift) & 0xff) - ((rgb[i] >> shift) & 0xff);
+        error += d * d;
+      }
+
+    double psnr = 10 * Math.log10(255.0 * 255.0 / (error / (argb.length * 3)));
+    System.out.println(String.format("           32x32 gradient with noise: %.1f dB", psnr));
+    assertTrue("PSNR " + psnr, psnr > 30);
+  }
+
+  public static void testAlphaGoesToTheGrayLevels()
+  {
+    int[] argb = new int[16];
+
+    for (int i = 0; i < 16; i++)
+      argb[i] = (i < 8 ? 0x00 : 0xff) << 24 | 0x123456;
+
+    // the top half transparent, the bottom half opaque, whatever the colors
+    int[] rgb = Etc1.decode(Etc1.encode(argb, 4, 4, true), 4, 4);
+
+    for (int i = 0; i < 16; i++)
+    {
+      int expected = i < 8 ? 0x000000 : 0xffffff;
+      assertTrue(String.format("texel %d: 0x%06x", i, rgb[i]), maxChannelError(expected, rgb[i]) <= 8);
+      assertTrue("gray", ((rgb[i] >> 16) & 0xff) == (rgb[i] & 0xff));
+    }
+  }
+
+  private static int maxChannelError(int a, int b)
+  {
+    int max = 0;
+
+    for (int shift = 0; shift <= 16; shift += 8)
+      max = Math.max(max, Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)));
+
+    return max;
+  }
+}
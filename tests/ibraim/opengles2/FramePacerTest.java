@@ -0,0 +1,179 @@
+package ibraim.opengles2;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// Drives a FramePacer with a fake Clock: sleeping and 'working' only move the
+// clock forward, so minutes of frames run in a few milliseconds.
+public class FramePacerTest
+{
+  private static final long MS = 1000000L;
+
+  private static class FakeClock implements FramePacer.Clock
+  {
+    // not 0: the pacer takes 0 as 'no deadline yet'
+    long now = 1000 * MS;
+    long slept;
+
+    // like Thread.sleep, it may wake up late
+    long late;
+
+    @Override
+    public long nanoTime()
+    {
+      return now;
+    }
+
+    @Override
+    public void sleep(long nanos)
+    {
+      now += nanos + late;
+      slept += nanos + late;
+    }
+  }
+
+  // 'frames' frames that take 'workMs' each, between beginFrame and endFrame
+  private static int run(FramePacer pacer, FakeClock clock, int frames, long workMs)
+  {
+    int fit = 0;
+
+    for (int i = 0; i < frames; i++)
+    {
+      pacer.beginFrame();
+      clock.now += workMs * MS;
+
+      if (pacer.endFrame())
+        fit++;
+    }
+
+    return fit;
+  }
+
+  public static void testCapsTheFrameRate()
+  {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock, 30);
+    long start = clock.now;
+
+    // 5ms frames would run at 200fps: capped, 31 frames take a second
+    assertEquals("frames that fit", 31, run(pacer, clock, 31, 5));
+
+    long elapsed = clock.now - start;
+    assertTrue("a second for 31 frames at 30fps: " + elapsed / MS + "ms", elapsed >= 1000 * MS && elapsed < 1010 * MS);
+    assertTrue("most of it sleeping", clock.slept > 800 * MS);
+    assertEquals("sleep counted", clock.slept, pacer.getSleepNanos());
+    assertEquals("work counted", 31 * 5 * MS, pacer.getWorkNanos());
+
+    // every frame starts 33ms after the last
+    assertEquals("p50", 34, pacer.getPercentileMillis(50));
+    assertEquals("p99", 34, pacer.getPercentileMillis(99));
+  }
+
+  public static void testSmallDelaysDontAddUp()
+  {
+    FakeClock clock = new FakeClock();
+    clock.late = 2 * MS;
+    FramePacer pacer = new FramePacer(clock, 50);
+    long start = clock.now;
+
+    // every sleep wakes up 2ms late, but the next slot is still on the grid:
+    // waiting 20ms from each wake up would take 2.2s
+    run(pacer, clock, 101, 5);
+
+    long elapsed = clock.now - start;
+    assertTrue("100 frames at 50fps, about 2s: " + elapsed / MS + "ms", elapsed < 2010 * MS);
+  }
+
+  public static void testNoCap()
+  {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock, 0);
+
+    run(pacer, clock, 10, 5);
+    assertEquals("never sleeps", 0, clock.slept);
+    assertEquals("still a 60fps budget", 1000000000L / 60, pacer.getBudgetNanos());
+
+    // and 20ms is over it
+    assertEquals("frames that fit", 0, run(pacer, clock, 5, 20));
+    assertEquals("missed", 5, pacer.getMissedFrames());
+  }
+
+  public static void testQualityStepsDownAndBackUp()
+  {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock, 30);
+    pacer.setAdaptive(FramePacer.ADAPT_QUALITY, 2);
+
+    // 40ms frames don't fit in 33ms: down a level every 15 misses, not below 2
+    run(pacer, clock, 14, 40);
+    assertEquals("level after 14 misses", 0, pacer.getLevel());
+    run(pacer, clock, 1, 40);
+    assertEquals("level after 15 misses", 1, pacer.getLevel());
+    run(pacer, clock, 100, 40);
+    assertEquals("the last level", 2, pacer.getLevel());
+
+    // the quality changes, the rate doesn't
+    assertEquals("effective fps", 30, pacer.getEffectiveFps());
+
+    // frames with room to spare: back up a level every 300 of them
+    run(pacer, clock, 299, 5);
+    assertEquals("level after 299 fast frames", 2, pacer.getLevel());
+    run(pacer, clock, 1, 5);
+    assertEquals("level after 300 fast frames", 1, pacer.getLevel());
+    run(pacer, clock, 300, 5);
+    assertEquals("full quality again", 0, pacer.getLevel());
+
+    // frames that fit, but just barely, don't count as room to spare
+    run(pacer, clock, 15, 40);
+    run(pacer, clock, 600, 30);
+    assertEquals("stays down with no headroom", 1, pacer.getLevel());
+  }
+
+  public static void testRateStepsDown()
+  {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock, 60);
+    pacer.setAdaptive(FramePacer.ADAPT_RATE, 3);
+
+    // 25ms frames: too slow for 60fps, fine at 30
+    run(pacer, clock, 15, 25);
+    assertEquals("level", 1, pacer.getLevel());
+    assertEquals("half the rate", 30, pacer.getEffectiveFps());
+    assertEquals("a 30fps budget", 1000000000L / 30, pacer.getBudgetNanos());
+
+    run(pacer, clock, 200, 25);
+    assertEquals("30fps is enough", 1, pacer.getLevel());
+  }
+
+  public static void testPercentiles()
+  {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock, 0);
+
+    // 90 frames of 10ms and 10 of 50ms
+    run(pacer, clock, 91, 10);
+    run(pacer, clock, 10, 50);
+
+    assertEquals("p50", 11, pacer.getPercentileMillis(50));
+    assertEquals("p90", 11, pacer.getPercentileMillis(90));
+    assertEquals("p99", 51, pacer.getPercentileMillis(99));
+
+    pacer.reset();
+    assertEquals("p50 after reset", 0, pacer.getPercentileMillis(50));
+    assertEquals("frames after reset", 0, pacer.getFrameCount());
+  }
+
+  public static void testNegativeRateThrows()
+  {
+    try
+    {
+      new FramePacer(new FakeClock(), -1);
+      fail("a negative frame rate must throw");
+    }
+    catch (IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+}
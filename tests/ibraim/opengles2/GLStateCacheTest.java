@@ -0,0 +1,152 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ibraim.opengles2.Assert.assertEquals;
+
+// The same frame, twice: the second time, the state it sets is already there,
+// so none of those calls should reach the backend. After 'invalidate' (a new
+// context) they all must again.
+public class GLStateCacheTest
+{
+  // the state calls that made it to the 'driver', by name
+  private static class StateLog extends RecordingGLES
+  {
+    final List<String> calls = new ArrayList<String>();
+
+    @Override
+    public void glUseProgram(int program)
+    {
+      super.glUseProgram(program);
+      calls.add("glUseProgram");
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+      super.glBindBuffer(target, buffer);
+      calls.add("glBindBuffer");
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+      super.glActiveTexture(texture);
+      calls.add("glActiveTexture");
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+      super.glBindTexture(target, texture);
+      calls.add("glBindTexture");
+    }
+
+    @Override
+    public void glEnable(int capability)
+    {
+      super.glEnable(capability);
+      calls.add("glEnable");
+    }
+
+    @Override
+    public void glBlendFunc(int src, int dst)
+    {
+      super.glBlendFunc(src, dst);
+      calls.add("glBlendFunc");
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+      super.glEnableVertexAttribArray(index);
+      calls.add("glEnableVertexAttribArray");
+    }
+  }
+
+  private static final String ALL_STATE = "[glUseProgram, glBindBuffer, glActiveTexture, glBindTexture, glEnable, glBlendFunc, " +
+    "glEnableVertexAttribArray, glEnableVertexAttribArray]";
+
+  // what a textured, blended sprite frame looks like: 8 state calls and 3 others
+  private static void frame(GLES gles)
+  {
+    gles.glUseProgram(3);
+    gles.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 5);
+    gles.glActiveTexture(GLES20.GL_TEXTURE0);
+    gles.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+    gles.glEnable(GLES20.GL_BLEND);
+    gles.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    gles.glEnableVertexAttribArray(0);
+    gles.glEnableVertexAttribArray(1);
+    gles.glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 16, 0);
+    gles.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 16, 8);
+    gles.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
+  }
+
+  public static void testTheSecondFrameSkipsTheState()
+  {
+    StateLog backend = new StateLog();
+    GLStateCache cache = new GLStateCache(backend);
+
+    frame(cache);
+    assertEquals("first frame, all of it", ALL_STATE, backend.calls.toString());
+    assertEquals("issued", 8, cache.getIssuedCalls());
+    assertEquals("skipped", 0, cache.getSkippedCalls());
+    long firstFrameCalls = backend.getCallCount();
+
+    backend.calls.clear();
+    cache.resetCounters();
+    frame(cache);
+
+    assertEquals("second frame, no state", "[]", backend.calls.toString());
+    assertEquals("issued", 0, cache.getIssuedCalls());
+    assertEquals("skipped", 8, cache.getSkippedCalls());
+
+    // the attribute pointers and the draw call always go through
+    assertEquals("calls that reached the backend", 3, backend.getCallCount() - firstFrameCalls);
+    assertEquals("draw calls", 2, backend.getDrawCallCount());
+  }
+
+  public static void testInvalidateSendsEverythingAgain()
+  {
+    StateLog backend = new StateLog();
+    GLStateCache cache = new GLStateCache(backend);
+
+    frame(cache);
+    frame(cache);
+
+    // a new context: none of the state is there anymore
+    cache.invalidate();
+    backend.calls.clear();
+    cache.resetCounters();
+    frame(cache);
+
+    assertEquals("after invalidate, all of it", ALL_STATE, backend.calls.toString());
+    assertEquals("issued", 8, cache.getIssuedCalls());
+    assertEquals("skipped", 0, cache.getSkippedCalls());
+
+    // and the frame after that is back to skipping
+    backend.calls.clear();
+    frame(cache);
+    assertEquals("the frame after", "[]", backend.calls.toString());
+  }
+
+  public static void testChangesStillGoThrough()
+  {
+    StateLog backend = new StateLog();
+    GLStateCache cache = new GLStateCache(backend);
+    frame(cache);
+    backend.calls.clear();
+
+    // another texture and additive blending: only those two change
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 8);
+    cache.glEnable(GLES20.GL_BLEND);
+    cache.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE);
+
+    assertEquals("what changed", "[glBindTexture, glBlendFunc]", backend.calls.toString());
+  }
+}
@@ -0,0 +1,212 @@
+package ibraim.opengles2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+
+// The eviction order, what a frame protects, and how much each trim level keeps.
+public class GpuMemoryBudgetTest
+{
+  private static final int KB = 1024;
+
+  // A texture that only remembers what was done to it
+  private static class FakeTexture implements GpuMemoryBudget.Evictable
+  {
+    final String name;
+    final List<String> log;
+    int evictions;
+    int reloads;
+
+    FakeTexture(String name, List<String> log)
+    {
+      this.name = name;
+      this.log = log;
+    }
+
+    @Override
+    public void evict()
+    {
+      evictions++;
+      log.add(name);
+    }
+
+    @Override
+    public void reload()
+    {
+      reloads++;
+    }
+  }
+
+  private static GpuMemoryBudget.Entry add(GpuMemoryBudget budget, String name, List<String> log)
+  {
+    return budget.add(name, 100 * KB, new FakeTexture(name, log));
+  }
+
+  public static void testEvictsTheLeastRecentlyUsed()
+  {
+    List<String> evicted = new ArrayList<String>();
+    GpuMemoryBudget budget = new GpuMemoryBudget(1000 * KB);
+
+    GpuMemoryBudget.Entry a = add(budget, "a", evicted);
+    GpuMemoryBudget.Entry b = add(budget, "b", evicted);
+    GpuMemoryBudget.Entry c = add(budget, "c", evicted);
+    GpuMemoryBudget.Entry d = add(budget, "d", evicted);
+    assertEquals("oldest", "a", budget.getOldestName());
+
+    // the next frame uses a and c: b and d are now the oldest
+    budget.beginFrame();
+    a.use();
+    c.use();
+    assertEquals("oldest after using a", "b", budget.getOldestName());
+
+    // and a frame later, the budget shrinks to 2 textures
+    budget.beginFrame();
+    budget.setBudget(200 * KB);
+
+    assertEquals("evicted, oldest first", "[b, d]", evicted.toString());
+    assertTrue("a stays", a.isResident());
+    assertTrue("c stays", c.isResident());
+    assertTrue("b is gone", b.isEvicted());
+    assertTrue("d is gone", d.isEvicted());
+    assertEquals("resident bytes", 200 * KB, budget.getResidentBytes());
+    assertEquals("resident count", 2, budget.getResidentCount());
+    assertEquals("evictions", 2, budget.getEvictionCount());
+    assertEquals("bytes evicted", 200 * KB, budget.getBytesEvicted());
+    assertEquals("peak", 400 * KB, budget.getPeakBytes());
+  }
+
+  public static void testTheCurrentFrameIsProtected()
+  {
+    List<String> evicted = new ArrayList<String>();
+    GpuMemoryBudget budget = new GpuMemoryBudget(250 * KB);
+    budget.beginFrame();
+
+    // a frame that needs 4 textures in a budget of 2.5: we go over, and that's it
+    GpuMemoryBudget.Entry[] entries = new GpuMemoryBudget.Entry[4];
+    for (int i = 0; i < entries.length; i++)
+    {
+      entries[i] = add(budget, "t" + i, evicted);
+      entries[i].use();
+    }
+
+    assertEquals("nothing evicted during the frame", 0, evicted.size());
+    assertEquals("over the budget", 400 * KB, budget.getResidentBytes());
+
+    // the next frame only uses the last one: the rest may go now, oldest first
+    budget.beginFrame();
+    entries[3].use();
+    assertEquals("evicted at the next frame", "[t0, t1]", evicted.toString());
+    assertEquals("back under the budget", 200 * KB, budget.getResidentBytes());
+
+    // even trimming to nothing keeps what this frame uses...
+    budget.trim(0, false);
+    assertTrue("in use", entries[3].isResident());
+
+    // ...unless we ask for it
+    budget.trim(0, true);
+    assertTrue("evicted even in use", entries[3].isEvicted());
+    assertEquals("nothing left", 0, budget.getResidentBytes());
+  }
+
+  public static void testPinnedEntriesOnlyCount()
+  {
+    List<String> evicted = new ArrayList<String>();
+    GpuMemoryBudget budget = new GpuMemoryBudget(100 * KB);
+
+    GpuMemoryBudget.Entry buffer = budget.add("buffer", 300 * KB, null);
+    GpuMemoryBudget.Entry texture = add(budget, "texture", evicted);
+    budget.beginFrame();
+    budget.trim(0, true);
+
+    assertTrue("pinned", buffer.isPinned());
+    assertTrue("the buffer stays", buffer.isResident());
+    assertTrue("the texture goes", texture.isEvicted());
+    assertEquals("only the buffer is counted", 300 * KB, budget.getResidentBytes());
+    assertTrue("no texture to evict", budget.getOldestName() == null);
+  }
+
+  public static void testEvictedTexturesComeBack()
+  {
+    List<String> evicted = new ArrayList<String>();
+    GpuMemoryBudget budget = new GpuMemoryBudget(1000 * KB);
+    FakeTexture texture = new FakeTexture("skull", evicted);
+    GpuMemoryBudget.Entry entry = budget.add("skull", 100 * KB, texture);
+
+    budget.beginFrame();
+    budget.trim(0, false);
+    assertEquals("evicted", 1, texture.evictions);
+
+    // every use while it loads is a miss, but it's only loaded once
+    entry.use();
+    entry.use();
+    assertEquals("reload calls", 1, texture.reloads);
+    assertEquals("misses", 1, budget.getMissCount());
+
+    entry.setResident(64 * KB);
+    assertTrue("resident", entry.isResident());
+    assertEquals("its new size", 64 * KB, budget.getResidentBytes());
+    assertEquals("reloads", 1, budget.getReloadCount());
+
+    entry.use();
+    assertEquals("hits", 1, budget.getHitCount());
+  }
+
+  public static void testRemovedEntriesAreForgotten()
+  {
+    List<String> evicted = new ArrayList<String>();
+    GpuMemoryBudget budget = new GpuMemoryBudget(1000 * KB);
+    GpuMemoryBudget.Entry entry = add(budget, "gone", evicted);
+
+    entry.remove();
+    assertEquals("not counted", 0, budget.getResidentBytes());
+    assertEquals("not resident", 0, budget.getResidentCount());
+
+    // a late upload of a texture that was deleted doesn't count either
+    entry.setResident(100 * KB);
+    assertEquals("still not counted", 0, budget.getResidentBytes());
+  }
+
+  public static void testTrimLevels()
+  {
+    GpuMemoryBudget budget = new GpuMemoryBudget(1000 * KB);
+
+    // while on screen, more the more critical it is...
+    assertEquals("running moderate", 750 * KB, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_RUNNING_MODERATE));
+    assertEquals("running low", 500 * KB, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_RUNNING_LOW));
+    assertEquals("running critical", 250 * KB, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_RUNNING_CRITICAL));
+
+    // ...and once hidden, more the closer we are to being killed
+    assertEquals("ui hidden", 500 * KB, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_UI_HIDDEN));
+    assertEquals("background", 250 * KB, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_BACKGROUND));
+    assertEquals("moderate", 0, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_MODERATE));
+    assertEquals("complete", 0, budget.trimTarget(GpuMemoryBudget.TRIM_MEMORY_COMPLETE));
+  }
+
+  public static void testTrimKeepsTheFrameOnlyWhileVisible()
+  {
+    List<String> evicted = new ArrayList<String>();
+    GpuMemoryBudget budget = new GpuMemoryBudget(1000 * KB);
+    GpuMemoryBudget.Entry[] entries = new GpuMemoryBudget.Entry[8];
+
+    for (int i = 0; i < entries.length; i++)
+      entries[i] = add(budget, "t" + i, evicted);
+
+    // the current frame draws the last 4
+    budget.beginFrame();
+    for (int i = 4; i < entries.length; i++)
+      entries[i].use();
+
+    // on screen and critical: down to 250KB, but the frame's 400KB stay
+    long freed = budget.onTrimMemory(GpuMemoryBudget.TRIM_MEMORY_RUNNING_CRITICAL);
+    assertEquals("freed while visible", 400 * KB, freed);
+    assertEquals("what's left", 400 * KB, budget.getResidentBytes());
+
+    // hidden and about to be killed: everything goes
+    budget.onTrimMemory(GpuMemoryBudget.TRIM_MEMORY_COMPLETE);
+    assertEquals("what's left when hidden", 0, budget.getResidentBytes());
+    assertEquals("trims", 2, budget.getTrimCount());
+    assertEquals("evicted, oldest first", "[t0, t1, t2, t3, t4, t5, t6, t7]", evicted.toString());
+  }
+}
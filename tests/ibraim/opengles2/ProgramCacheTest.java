@@ -0,0 +1,81 @@
+package ibraim.opengles2;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+
+// Programs are built once per pair of sources, and every one of them is
+// deleted on release, even when two pairs hash the same.
+public class ProgramCacheTest
+{
+  private static final String VERTEX =
+    "attribute vec2 aPosition;\n" +
+    "void main() {\n" +
+    "  gl_Position = vec4(aPosition, 0.0, 1.0);\n" +
+    "}";
+
+  private static final String FRAGMENT =
+    "precision mediump float;\n" +
+    "void main() {\n" +
+    "  gl_FragColor = vec4(1.0);\n" +
+    "}";
+
+  // counts the programs deleted
+  private static class DeletingGLES extends RecordingGLES
+  {
+    int deleted;
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+      super.glDeleteProgram(program);
+      deleted++;
+    }
+  }
+
+  public static void testBuiltOnce()
+  {
+    ProgramCache cache = new ProgramCache(new RecordingGLES());
+    ShaderProgram program = cache.get(VERTEX, FRAGMENT);
+
+    for (int i = 0; i < 10; i++)
+      assertTrue("the same program", cache.get(VERTEX, FRAGMENT) == program);
+
+    assertEquals("misses", 1, cache.getMisses());
+    assertEquals("hits", 10, cache.getHits());
+  }
+
+  public static void testSameHashDifferentSources()
+  {
+    // "Aa" and "BB" have the same String.hashCode, and so do these two
+    String a = "// Aa\n" + VERTEX;
+    String b = "// BB\n" + VERTEX;
+    assertEquals("same hash", a.hashCode(), b.hashCode());
+
+    DeletingGLES gles = new DeletingGLES();
+    ProgramCache cache = new ProgramCache(gles);
+    ShaderProgram first = cache.get(a, FRAGMENT);
+    ShaderProgram second = cache.get(b, FRAGMENT);
+
+    assertTrue("two programs", first != second);
+    assertTrue("the first one is still there", cache.get(a, FRAGMENT) == first);
+    assertTrue("and so is the second", cache.get(b, FRAGMENT) == second);
+    assertEquals("misses", 2, cache.getMisses());
+
+    // nothing replaced, so nothing leaked: both are deleted
+    cache.release();
+    assertEquals("programs deleted", 2, gles.deleted);
+  }
+
+  public static void testContextLostForgetsWithoutDeleting()
+  {
+    DeletingGLES gles = new DeletingGLES();
+    ProgramCache cache = new ProgramCache(gles);
+    cache.get(VERTEX, FRAGMENT);
+
+    cache.onContextLost();
+    assertEquals("the handles are gone with the context", 0, gles.deleted);
+
+    cache.get(VERTEX, FRAGMENT);
+    assertEquals("built again", 2, cache.getMisses());
+  }
+}
@@ -0,0 +1,240 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+
+// A frame of sprites with 3 programs, 5 textures and 2 blend modes, recorded
+// in the worst order (every draw changes something), replayed on a
+// RecordingGLES with and without the RenderQueue's sorting.
+public class RenderQueueTest
+{
+  private static final int DRAWS = 1200;
+
+  // Sends the state changes to the GL, like a renderer would, and keeps the
+  // last state and payload seen
+  private static class GLTarget implements RenderQueue.Target
+  {
+    final RecordingGLES gles = new RecordingGLES();
+    long lastState = -1;
+    float lastPayload = -1;
+    boolean inOrder = true;
+    int draws;
+    boolean finished;
+    int program, texture, blend;
+
+    @Override
+    public void setProgram(int program)
+    {
+      this.program = program;
+      gles.glUseProgram(program);
+    }
+
+    @Override
+    public void setTexture(int texture)
+    {
+      this.texture = texture;
+      gles.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    }
+
+    @Override
+    public void setBlend(int blend)
+    {
+      this.blend = blend;
+      gles.glBlendFunc(GLES20.GL_SRC_ALPHA, blend == 1 ? GLES20.GL_ONE : GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    @Override
+    public void draw(float[] payload, int offset)
+    {
+      // the draws of the same state keep the order they were recorded in
+      long state = RenderQueue.key(0, blend, program, texture);
+
+      if (state == lastState && payload[offset] < lastPayload)
+        inOrder = false;
+
+      lastState = state;
+      lastPayload = payload[offset];
+      draws++;
+    }
+
+    @Override
+    public void finish()
+    {
+      finished = true;
+    }
+
+    long stateCalls()
+    {
+      return gles.getCallCount();
+    }
+  }
+
+  private static long keyOf(int draw)
+  {
+    return RenderQueue.key(0, draw % 2, 1 + draw % 3, 1 + draw % 5);
+  }
+
+  public static void testSortingReducesStateChanges()
+  {
+    RenderQueue queue = new RenderQueue(DRAWS, 2);
+    float[] data = new float[2];
+
+    for (int i = 0; i < DRAWS; i++)
+    {
+      data[0] = i;
+      queue.record(keyOf(i), data, 0);
+    }
+
+    GLTarget sorted = new GLTarget();
+    queue.submit(sorted);
+
+    // the same draws, sent as they were recorded (only real changes are sent)
+    GLTarget unsorted = new GLTarget();
+    int program = -1, texture = -1, blend = -1;
+
+    for (int i = 0; i < DRAWS; i++)
+    {
+      long key = keyOf(i);
+      int b = (int) (key >>> 52) & RenderQueue.MAX_BLEND;
+      int p = (int) (key >>> 40) & RenderQueue.MAX_PROGRAM;
+      int t = (int) (key >>> 24) & RenderQueue.MAX_TEXTURE;
+
+      if (p != program)
+        unsorted.setProgram(program = p);
+
+      if (b != blend)
+        unsorted.setBlend(blend = b);
+
+      if (t != texture)
+        unsorted.setTexture(texture = t);
+    }
+
+    System.out.println("           " + DRAWS + " draws: " + unsorted.stateCalls() + " state changes without sorting, " + sorted.stateCalls() + " sorted");
+
+    assertEquals("draws", DRAWS, sorted.draws);
+    assertTrue("finish() is called", sorted.finished);
+    assertEquals("GL calls without sorting", queue.getUnsortedStateChanges(), unsorted.stateCalls());
+    assertEquals("GL calls after sorting", queue.getStateChanges(), sorted.stateCalls());
+
+    // sorted by blend, then program, then texture: the first draw sets all 3,
+    // then the blend changes once, the program at most once per blend mode and
+    // the texture at most once per program and blend
+    assertTrue("sorting must cut the state changes", sorted.stateCalls() * 10 < unsorted.stateCalls());
+    assertTrue("sorted changes: " + sorted.stateCalls(), sorted.stateCalls() <= 3 + (2 - 1) + (2 * 3 - 1) + (2 * 3 * 5 - 1));
+    assertTrue("same state keeps the recording order", sorted.inOrder);
+  }
+
+  public static void testLayersComeFirst()
+  {
+    RenderQueue queue = new RenderQueue(16, 1);
+    float[] data = new float[1];
+
+    // recorded top layer first, with the 'cheaper' state
+    data[0] = 1;
+    queue.record(RenderQueue.key(1, 0, 1, 1), data, 0);
+    data[0] = 0;
+    queue.record(RenderQueue.key(0, 1, 2, 2), data, 0);
+
+    final float[] order = new float[2];
+    queue.submit(new RenderQueue.Target()
+    {
+      int at;
+
+      @Override
+      public void setProgram(int program)
+      {
+      }
+
+      @Override
+      public void setTexture(int texture)
+      {
+      }
+
+      @Override
+      public void setBlend(int blend)
+      {
+      }
+
+      @Override
+      public void draw(float[] payload, int offset)
+      {
+        order[at++] = payload[offset];
+      }
+
+      @Override
+      public void finish()
+      {
+      }
+    });
+
+    assertEquals("layer 0 first", 0f, order[0], 0f);
+    assertEquals("layer 1 last", 1f, order[1], 0f);
+  }
+
+  public static void testFullQueueDrops()
+  {
+    RenderQueue queue = new RenderQueue(4, 1);
+    float[] data = new float[1];
+
+    for (int i = 0; i < 6; i++)
+      assertEquals("record " + i, i < 4 ? 1 : 0, queue.record(keyOf(i), data, 0) ? 1 : 0);
+
+    GLTarget target = new GLTarget();
+    queue.submit(target);
+
+    assertEquals("draws", 4, target.draws);
+    assertEquals("dropped", 2, queue.getDroppedCount());
+
+    // and it's empty again
+    GLTarget next = new GLTarget();
+    queue.submit(next);
+    assertEquals("draws after submit", 0, next.draws);
+  }
+
+  public static void testRecordFromThreads() throws InterruptedException
+  {
+    final int threads = 4;
+    final int each = 1000;
+    final RenderQueue queue = new RenderQueue(threads * each, 1);
+    Thread[] workers = new Thread[threads];
+
+    for (int w = 0; w < threads; w++)
+    {
+      final int first = w * each;
+      workers[w] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          float[] data = new float[1];
+
+          for (int i = first; i < first + each; i++)
+          {
+            data[0] = i;
+            queue.record(keyOf(i), data, 0);
+          }
+        }
+      });
+      workers[w].start();
+    }
+
+    // the join is what makes the recorded slots visible here (see RenderQueue)
+    for (Thread t : workers)
+      t.join();
+
+    final boolean[] seen = new boolean[threads * each];
+    queue.submit(new GLTarget()
+    {
+      @Override
+      public void draw(float[] payload, int offset)
+      {
+        seen[(int) payload[offset]] = true;
+      }
+    });
+
+    for (int i = 0; i < seen.length; i++)
+      assertTrue("draw " + i + " is missing", seen[i]);
+  }
+}
@@ -0,0 +1,242 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// ShaderProgram asks the driver for its locations once, after linking, and
+// never again.
+public class ShaderProgramTest
+{
+  private static final String VERTEX =
+    "uniform mat4 uScreen;\n" +
+    "attribute vec2 aPosition;\n" +
+    "attribute vec4 aColor;\n" +
+    "varying vec4 vColor;\n" +
+    "void main() {\n" +
+    "  vColor = aColor;\n" +
+    "  gl_Position = uScreen * vec4(aPosition, 0.0, 1.0);\n" +
+    "}";
+
+  private static final String FRAGMENT =
+    "precision mediump float;\n" +
+    "uniform vec4 uTint;\n" +
+    "varying vec4 vColor;\n" +
+    "void main() {\n" +
+    "  gl_FragColor = vColor * uTint;\n" +
+    "}";
+
+  // Counts the location lookups
+  private static class CountingGLES extends RecordingGLES
+  {
+    int lookups;
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+      lookups++;
+      return super.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+      lookups++;
+      return super.glGetUniformLocation(program, name);
+    }
+  }
+
+  public static void testLocationsAreReadOnce()
+  {
+    CountingGLES gles = new CountingGLES();
+    ShaderProgram program = new ShaderProgram(gles, VERTEX, FRAGMENT);
+
+    // 2 attributes and 2 uniforms, once each
+    assertEquals("lookups when linking", 4, gles.lookups);
+    long calls = gles.getCallCount();
+
+    for (int frame = 0; frame < 100; frame++)
+    {
+      program.use();
+      assertTrue("aPosition", program.getAttribute("aPosition") >= 0);
+      assertTrue("aColor", program.getAttribute("aColor") >= 0);
+      assertTrue("uScreen", program.getUniform("uScreen") >= 0);
+      assertTrue("uTint", program.getUniform("uTint") >= 0);
+    }
+
+    assertEquals("lookups after 100 frames", 4, gles.lookups);
+    assertEquals("GL calls after 100 frames (only glUseProgram)", calls + 100, gles.getCallCount());
+    assertTrue("attributes have their own locations", program.getAttribute("aPosition") != program.getAttribute("aColor"));
+  }
+
+  public static void testUnusedNamesAreMinusOne()
+  {
+    ShaderProgram program = new ShaderProgram(new RecordingGLES(), VERTEX, FRAGMENT);
+
+    assertEquals("unknown attribute", -1, program.getAttribute("aTexCoord"));
+    assertEquals("unknown uniform", -1, program.getUniform("uTexture"));
+
+    // an attribute isn't an uniform
+    assertEquals("attribute as uniform", -1, program.getUniform("aPosition"));
+  }
+
+  public static void testArraysAreFoundByName()
+  {
+    // the driver reports arrays as 'name[0]'
+    RecordingGLES gles = new RecordingGLES()
+    {
+      @Override
+      public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+      {
+        super.glGetActiveUniform(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+
+        if (new String(name, nameOffset, length[lengthOffset]).equals("uTint"))
+        {
+          byte[] array = "uTint[0]".getBytes();
+          System.arraycopy(array, 0, name, nameOffset, array.length);
+          length[lengthOffset] = array.length;
+        }
+      }
+
+      @Override
+      public void glGetProgramiv(int program, int pname, int[] params, int offset)
+      {
+        super.glGetProgramiv(program, pname, params, offset);
+
+        if (pname == GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH)
+          params[offset] += 3;
+      }
+    };
+
+    ShaderProgram program = new ShaderProgram(gles, VERTEX, FRAGMENT);
+    assertTrue("uTint", program.getUniform("uTint") >= 0);
+  }
+
+  // Fails to compile one kind of shader, or to link, and remembers what was
+  // created and what was deleted
+  private static class FailingGLES extends RecordingGLES
+  {
+    final int failShader;
+    final boolean failLink;
+    final Set<Integer> live = new HashSet<Integer>();
+    final Map<Integer, Integer> types = new HashMap<Integer, Integer>();
+
+    FailingGLES(int failShader, boolean failLink)
+    {
+      this.failShader = failShader;
+      this.failLink = failLink;
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+      int shader = super.glCreateShader(type);
+      types.put(shader, type);
+      live.add(shader);
+      return shader;
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+      super.glDeleteShader(shader);
+      live.remove(shader);
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+      int program = super.glCreateProgram();
+      live.add(program);
+      return program;
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+      super.glDeleteProgram(program);
+      live.remove(program);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+      super.glGetShaderiv(shader, pname, params, offset);
+
+      if (pname == GLES20.GL_COMPILE_STATUS && types.get(shader) == failShader)
+        params[offset] = 0;
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+      super.glGetProgramiv(program, pname, params, offset);
+
+      if (pname == GLES20.GL_LINK_STATUS && failLink)
+        params[offset] = 0;
+    }
+  }
+
+  private static void assertThrowsAndCleansUp(FailingGLES gles, String message)
+  {
+    try
+    {
+      new ShaderProgram(gles, VERTEX, FRAGMENT);
+      fail("must throw: " + message);
+    }
+    catch (RuntimeException e)
+    {
+      assertTrue("message: " + e.getMessage(), e.getMessage().startsWith(message));
+    }
+
+    assertEquals("objects left behind: " + gles.live, 0, gles.live.size());
+  }
+
+  public static void testCompileErrorsThrow()
+  {
+    // nothing to clean up but the vertex shader itself...
+    assertThrowsAndCleansUp(new FailingGLES(GLES20.GL_VERTEX_SHADER, false), "Error compiling shader");
+
+    // ...then the vertex shader, already compiled, has to go too...
+    assertThrowsAndCleansUp(new FailingGLES(GLES20.GL_FRAGMENT_SHADER, false), "Error compiling shader");
+
+    // ...and when linking fails, both shaders and the program
+    assertThrowsAndCleansUp(new FailingGLES(0, true), "Error in program linking");
+  }
+
+  public static void testTearDownDeletesEverything()
+  {
+    final int[] deleted = new int[2];
+    RecordingGLES gles = new RecordingGLES()
+    {
+      @Override
+      public void glDeleteProgram(int program)
+      {
+        super.glDeleteProgram(program);
+        deleted[0]++;
+      }
+
+      @Override
+      public void glDeleteShader(int shader)
+      {
+        super.glDeleteShader(shader);
+        deleted[1]++;
+      }
+    };
+
+    ShaderProgram program = new ShaderProgram(gles, VERTEX, FRAGMENT);
+    program.tearDown();
+    program.tearDown();
+
+    assertEquals("programs deleted", 1, deleted[0]);
+    assertEquals("shaders deleted", 2, deleted[1]);
+    assertEquals("no handle left", GLES20.GL_FALSE, program.getHandle());
+  }
+}
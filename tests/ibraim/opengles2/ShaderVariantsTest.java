@@ -0,0 +1,124 @@
+package ibraim.opengles2;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// Variants are compiled the first time they're asked for, and only then. The
+// RecordingGLES 'links' only what the #ifdefs leave in, so the locations of a
+// variant tell us which parts of the source it got.
+public class ShaderVariantsTest
+{
+  public static void testCompiledOnFirstUseOnly()
+  {
+    ProgramCache cache = new ProgramCache(new RecordingGLES());
+    ShaderVariants variants = new ShaderVariants(cache);
+
+    assertEquals("nothing compiled up front", 0, cache.getMisses());
+
+    ShaderProgram textured = variants.get(ShaderVariants.TEXTURE);
+    assertEquals("compiles", 1, variants.getCompileCount());
+    assertEquals("programs built", 1, cache.getMisses());
+
+    for (int frame = 0; frame < 10; frame++)
+      assertTrue("the same program", variants.get(ShaderVariants.TEXTURE) == textured);
+
+    assertEquals("compiles after asking again", 1, variants.getCompileCount());
+    assertEquals("hits", 10, variants.getHitCount());
+    assertEquals("programs built after asking again", 1, cache.getMisses());
+
+    ShaderProgram tinted = variants.get(ShaderVariants.TEXTURE | ShaderVariants.TINT);
+    assertTrue("another variant, another program", tinted != textured);
+    assertEquals("compiles", 2, variants.getCompileCount());
+  }
+
+  public static void testEachVariantGetsItsParts()
+  {
+    ShaderVariants variants = new ShaderVariants(new ProgramCache(new RecordingGLES()));
+
+    ShaderProgram plain = variants.get(0);
+    assertTrue("aPosition, always", plain.getAttribute("aPosition") >= 0);
+    assertTrue("uScreen, always", plain.getUniform("uScreen") >= 0);
+    assertEquals("no aColor", -1, plain.getAttribute("aColor"));
+    assertEquals("no aTexPos", -1, plain.getAttribute("aTexPos"));
+
+    ShaderProgram color = variants.get(ShaderVariants.COLOR);
+    assertTrue("aColor", color.getAttribute("aColor") >= 0);
+    assertEquals("no uTexture", -1, color.getUniform("uTexture"));
+
+    ShaderProgram etc1 = variants.get(ShaderVariants.TEXTURE | ShaderVariants.ALPHA_TEXTURE | ShaderVariants.TINT);
+    assertTrue("aTexPos", etc1.getAttribute("aTexPos") >= 0);
+    assertTrue("uTexture", etc1.getUniform("uTexture") >= 0);
+    assertTrue("uAlpha", etc1.getUniform("uAlpha") >= 0);
+    assertTrue("uSeparateAlpha", etc1.getUniform("uSeparateAlpha") >= 0);
+    assertTrue("uTint", etc1.getUniform("uTint") >= 0);
+    assertEquals("no aColor", -1, etc1.getAttribute("aColor"));
+  }
+
+  public static void testEveryValidVariantBuilds()
+  {
+    ShaderVariants variants = new ShaderVariants(new ProgramCache(new RecordingGLES()));
+    int valid = 0;
+
+    for (int features = 0; features < ShaderVariants.VARIANT_COUNT; features++)
+    {
+      boolean ok = (features & ShaderVariants.ALPHA_TEXTURE) == 0 || (features & ShaderVariants.TEXTURE) != 0;
+
+      try
+      {
+        variants.get(features);
+        assertTrue(ShaderVariants.describe(features) + " must not build", ok);
+        valid++;
+      }
+      catch (IllegalArgumentException e)
+      {
+        assertTrue(ShaderVariants.describe(features) + " must build: " + e.getMessage(), !ok);
+      }
+    }
+
+    // 32 combinations, minus the 8 with ALPHA_TEXTURE and no TEXTURE
+    assertEquals("variants", 24, valid);
+    assertEquals("compiles", 24, variants.getCompileCount());
+  }
+
+  public static void testUnknownFeaturesThrow()
+  {
+    ShaderVariants variants = new ShaderVariants(new ProgramCache(new RecordingGLES()));
+    int[] wrong = { -1, ShaderVariants.VARIANT_COUNT };
+
+    for (int features : wrong)
+    {
+      try
+      {
+        variants.get(features);
+        fail("features " + features + " must throw");
+      }
+      catch (IllegalArgumentException e)
+      {
+        // expected
+      }
+    }
+  }
+
+  public static void testDescribe()
+  {
+    assertEquals("none", "NONE", ShaderVariants.describe(0));
+    assertEquals("two", "COLOR|TINT", ShaderVariants.describe(ShaderVariants.COLOR | ShaderVariants.TINT));
+    assertTrue("defines", ShaderVariants.vertexSource(ShaderVariants.TEXTURE | ShaderVariants.ALPHA_TEST).startsWith("#define TEXTURE\n#define ALPHA_TEST\nuniform"));
+  }
+
+  public static void testContextLostCompilesAgain()
+  {
+    ProgramCache cache = new ProgramCache(new RecordingGLES());
+    ShaderVariants variants = new ShaderVariants(cache);
+
+    ShaderProgram before = variants.get(ShaderVariants.COLOR);
+    variants.onContextLost();
+    cache.onContextLost();
+
+    ShaderProgram after = variants.get(ShaderVariants.COLOR);
+    assertTrue("a new program", after != before);
+    assertEquals("compiles", 2, variants.getCompileCount());
+    assertEquals("programs built", 2, cache.getMisses());
+  }
+}
@@ -0,0 +1,244 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import ibraim.opengles2.tools.AllocationCounter;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// Runs frames of random uploads through a StreamBuffer on a RecordingGLES
+// that remembers every write, and checks that no write ever lands on bytes a
+// frame still in flight (one of the last 'framesInFlight - 1') wrote, unless
+// the buffer was orphaned or replaced in between.
+public class StreamBufferTest
+{
+  private static final int FRAMES_IN_FLIGHT = 3;
+
+  // One glBufferSubData: where, and in which frame
+  private static class Write
+  {
+    final int buffer, offset, size;
+    final long frame;
+
+    Write(int buffer, int offset, int size, long frame)
+    {
+      this.buffer = buffer;
+      this.offset = offset;
+      this.size = size;
+      this.frame = frame;
+    }
+  }
+
+  // Keeps the writes and the orphanings of every buffer
+  private static class TrackingGLES extends RecordingGLES
+  {
+    final List<Write> writes = new ArrayList<Write>();
+    final Map<Integer, Long> orphanedAt = new HashMap<Integer, Long>();
+    final Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+    int bound;
+    int orphans;
+    int deletes;
+    long frame;
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+      super.glBindBuffer(target, buffer);
+
+      if (target == GLES20.GL_ARRAY_BUFFER)
+        bound = buffer;
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+      super.glBufferData(target, size, data, usage);
+
+      // the first one creates the storage, the next ones (with null) orphan it
+      if (sizes.containsKey(bound) && data == null)
+      {
+        orphans++;
+        orphanedAt.put(bound, frame);
+      }
+
+      sizes.put(bound, size);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+      super.glBufferSubData(target, offset, size, data);
+
+      Integer capacity = sizes.get(bound);
+
+      if (capacity == null || offset < 0 || offset + size > capacity)
+        fail("write out of the buffer: " + offset + "+" + size + " in " + capacity);
+
+      Long orphaned = orphanedAt.get(bound);
+
+      for (Write w : writes)
+      {
+        // other buffers, frames done, and memory orphaned since don't count
+        if (w.buffer != bound || w.frame <= frame - FRAMES_IN_FLIGHT || (orphaned != null && w.frame < orphaned))
+          continue;
+
+        if (offset < w.offset + w.size && w.offset < offset + size)
+          fail("frame " + frame + " wrote " + offset + "+" + size + " over " + w.offset + "+" + w.size + ", written in frame " + w.frame);
+      }
+
+      writes.add(new Write(bound, offset, size, frame));
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+      super.glDeleteBuffers(n, buffers, offset);
+      deletes += n;
+    }
+  }
+
+  private static final ByteBuffer DATA = ByteBuffer.allocateDirect(64 * 1024);
+
+  // 'frames' frames of up to 'uploads' uploads of random sizes, up to 'maxBytes' in all
+  private static void run(TrackingGLES gles, StreamBuffer stream, int frames, int uploads, int maxBytes, Random r)
+  {
+    for (int f = 0; f < frames; f++)
+    {
+      gles.frame++;
+      stream.beginFrame();
+      assertEquals("region of frame " + f, (int) (gles.frame - 1) % FRAMES_IN_FLIGHT, stream.getFrameIndex());
+
+      int left = maxBytes;
+      int n = 1 + r.nextInt(uploads);
+
+      for (int i = 0; i < n && left > 0; i++)
+      {
+        int bytes = 1 + r.nextInt(Math.max(1, left / 2));
+        int offset = stream.upload(DATA, bytes);
+        left -= (bytes + 3) & ~3;
+
+        assertEquals("slices are 4 byte aligned", 0, offset % 4);
+        assertTrue("slice in the current region", offset >= stream.getRegionStart() && offset + bytes <= stream.getRegionStart() + stream.getRegionSize());
+      }
+    }
+  }
+
+  public static void testRingNeverOverwritesFramesInFlight()
+  {
+    TrackingGLES gles = new TrackingGLES();
+    StreamBuffer stream = new StreamBuffer(gles, 4096, FRAMES_IN_FLIGHT, StreamBuffer.UPLOAD_SUB_DATA);
+
+    // several turns around the ring, never more than a region per frame
+    run(gles, stream, 100, 8, 4096, new Random(1));
+
+    assertTrue("wrote something", gles.writes.size() > 100);
+    assertEquals("grows", 0, stream.getGrowCount());
+    assertEquals("orphans", 0, gles.orphans);
+  }
+
+  public static void testGrowKeepsTheFrameGoing()
+  {
+    TrackingGLES gles = new TrackingGLES();
+    StreamBuffer stream = new StreamBuffer(gles, 1024, FRAMES_IN_FLIGHT, StreamBuffer.UPLOAD_SUB_DATA);
+    int first = stream.getHandle();
+
+    // a frame of 3000 bytes doesn't fit in 1024: it grows in the middle of it
+    run(gles, stream, 1, 1, 0, new Random(2));
+    gles.frame++;
+    stream.beginFrame();
+
+    for (int i = 0; i < 3; i++)
+      stream.upload(DATA, 1000);
+
+    assertTrue("grew", stream.getGrowCount() >= 1);
+    assertTrue("a new buffer", stream.getHandle() != first);
+    assertEquals("the old one is deleted", stream.getGrowCount(), gles.deletes);
+    assertTrue("region big enough for the frame so far: " + stream.getRegionSize(), stream.getRegionSize() >= 2000);
+    assertEquals("high water mark", 3000, stream.getHighWaterMark());
+
+    // it grows to what it has seen, so frames that size may grow it once more,
+    // and then never again
+    int grows = stream.getGrowCount();
+    run(gles, stream, 50, 6, 3000, new Random(3));
+    assertTrue("grows: " + stream.getGrowCount(), stream.getGrowCount() <= grows + 1);
+
+    grows = stream.getGrowCount();
+    run(gles, stream, 50, 6, 3000, new Random(4));
+    assertEquals("grows once the high water mark settled", grows, stream.getGrowCount());
+  }
+
+  public static void testOrphanOnEveryTurnOfTheRing()
+  {
+    TrackingGLES gles = new TrackingGLES();
+    StreamBuffer stream = new StreamBuffer(gles, 2048, FRAMES_IN_FLIGHT, StreamBuffer.UPLOAD_ORPHAN);
+
+    run(gles, stream, 10, 4, 2048, new Random(4));
+
+    // frames 1..10: back to region 0 at frames 4, 7 and 10
+    assertEquals("orphans", 3, stream.getOrphanCount());
+    assertEquals("glBufferData(null) calls", 3, gles.orphans);
+    assertEquals("grows", 0, stream.getGrowCount());
+  }
+
+  // A few hundred frames of the same uploads, once the ring has settled: not a
+  // single byte of Java heap, with either way of uploading
+  public static void testSteadyStateDoesntAllocate()
+  {
+    AllocationCounter counter = new AllocationCounter();
+
+    if (!counter.isAvailable())
+      return;
+
+    for (int mode : new int[] {StreamBuffer.UPLOAD_SUB_DATA, StreamBuffer.UPLOAD_ORPHAN})
+    {
+      StreamBuffer stream = new StreamBuffer(new RecordingGLES(), 4096, FRAMES_IN_FLIGHT, mode);
+      streamFrames(stream, 100);
+
+      long start = counter.get();
+      streamFrames(stream, 300);
+      long allocated = counter.since(start);
+
+      assertEquals("bytes allocated in 300 frames, mode " + mode, 0, allocated);
+      assertEquals("grows", 0, stream.getGrowCount());
+    }
+  }
+
+  // like a sprite batch: a few uploads, then bind to draw
+  private static void streamFrames(StreamBuffer stream, int frames)
+  {
+    for (int i = 0; i < frames; i++)
+    {
+      stream.beginFrame();
+
+      for (int j = 0; j < 4; j++)
+        stream.upload(DATA, 1000);
+
+      stream.bind();
+    }
+  }
+
+  public static void testUploadBeforeBeginFrameFails()
+  {
+    StreamBuffer stream = new StreamBuffer(new TrackingGLES(), 1024);
+
+    try
+    {
+      stream.upload(DATA, 16);
+      fail("upload() without beginFrame() must throw");
+    }
+    catch (IllegalStateException e)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package ibraim.opengles2;
+
+import ibraim.opengles2.tools.AtlasPackerTest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+// Runs the tests of the classes that don't need a device, on a plain JVM
+// (the 'tests' target of custom_rules.xml). There's no JUnit in this build,
+// so this is the smallest runner that does the job: every public static void
+// method whose name starts with 'test', of every class listed below, is called.
+// A test fails by throwing (see Assert). Exits with 1 if any did.
+//
+// Usage: Tests [class name filter]
+public class Tests
+{
+  private static final Class<?>[] CLASSES = {
+    Etc1Test.class,
+    FramePacerTest.class,
+    GLStateCacheTest.class,
+    GpuMemoryBudgetTest.class,
+    ProgramCacheTest.class,
+    RenderQueueTest.class,
+    ShaderProgramTest.class,
+    ShaderVariantsTest.class,
+    StreamBufferTest.class,
+    TextureAtlasTest.class,
+    VertexBufferTest.class,
+    AtlasPackerTest.class,
+  };
+
+  public static void main(String[] args) throws IllegalAccessException
+  {
+    String filter = args.length > 0 ? args[0] : "";
+    int passed = 0;
+    int failed = 0;
+
+    for (Class<?> c : CLASSES)
+    {
+      if (!c.getSimpleName().contains(filter))
+        continue;
+
+      for (Method m : c.getMethods())
+      {
+        if (!m.getName().startsWith("test") || !Modifier.isStatic(m.getModifiers()) || m.getParameterTypes().length != 0)
+          continue;
+
+        String name = c.getSimpleName() + "." + m.getName();
+
+        try
+        {
+          m.invoke(null);
+          passed++;
+          System.out.println("  ok     " + name);
+        }
+        catch (InvocationTargetException e)
+        {
+          failed++;
+          System.out.println("  FAILED " + name + ": " + e.getCause());
+
+          for (StackTraceElement element : e.getCause().getStackTrace())
+            if (element.getClassName().startsWith(c.getName()))
+              System.out.println("           at " + element);
+        }
+      }
+    }
+
+    System.out.println(passed + " passed, " + failed + " failed");
+
+    if (failed > 0)
+      System.exit(1);
+  }
+}
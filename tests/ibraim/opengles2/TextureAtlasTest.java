@@ -0,0 +1,180 @@
+package ibraim.opengles2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// The index the build writes, read back the way TextureLoader.loadAtlas does,
+// and what the atlas does to the draw calls of a SpriteBatch.
+public class TextureAtlasTest
+{
+  private static TextureAtlas sample()
+  {
+    TextureAtlas atlas = new TextureAtlas();
+    atlas.addPage("atlas_0.png", 512, 256);
+    atlas.addPage("atlas_1.png", 64, 64);
+    atlas.addRegion("skull", 0, 2, 2, 128, 128);
+    atlas.addRegion("ic_launcher", 0, 134, 2, 72, 72);
+    atlas.addRegion("star", 1, 2, 2, 30, 20);
+    return atlas;
+  }
+
+  public static void testIndexRoundTrip() throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    sample().write(out);
+    TextureAtlas atlas = TextureAtlas.read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals("pages", 2, atlas.getPageCount());
+    assertEquals("page name", "atlas_1.png", atlas.getPageName(1));
+    assertEquals("page width", 512, atlas.getPageWidth(0));
+    assertEquals("page height", 256, atlas.getPageHeight(0));
+    assertEquals("regions", 3, atlas.getRegionCount());
+
+    TextureAtlas.Region skull = atlas.find("skull");
+    assertEquals("page", 0, skull.getPage());
+    assertEquals("x", 2, skull.getX());
+    assertEquals("y", 2, skull.getY());
+    assertEquals("width", 128, skull.getWidth());
+    assertEquals("height", 128, skull.getHeight());
+
+    TextureAtlas.Region star = atlas.find("star");
+    assertEquals("star page", 1, star.getPage());
+    assertTrue("unknown names", atlas.find("nothing") == null);
+  }
+
+  public static void testUVs()
+  {
+    TextureAtlas.Region launcher = sample().find("ic_launcher");
+
+    // pixels over the page size, V = 0 at the first row
+    assertEquals("u0", 134f / 512, launcher.getU0(), 0f);
+    assertEquals("v0", 2f / 256, launcher.getV0(), 0f);
+    assertEquals("u1", 206f / 512, launcher.getU1(), 0f);
+    assertEquals("v1", 74f / 256, launcher.getV1(), 0f);
+  }
+
+  public static void testBadIndexThrows() throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    sample().write(out);
+    byte[] index = out.toByteArray();
+
+    byte[] magic = index.clone();
+    magic[0] = 0;
+    expectIOException("bad magic", magic);
+
+    byte[] version = index.clone();
+    version[4] = 9;
+    expectIOException("bad version", version);
+
+    // the 'star' region pointing to a third page: its page byte comes right
+    // before the last 4 shorts
+    byte[] page = index.clone();
+    page[page.length - 9] = 2;
+    expectIOException("region in a page that doesn't exist", page);
+  }
+
+  // 'sprites' sprites of every region, mixed at random, drawn with a SpriteBatch
+  // on a RecordingGLES: with the texture of each image, or of each page. When
+  // 'byPage' is set, the sprites are sorted by page first (like a RenderQueue
+  // would). Returns the draw calls.
+  private static long drawScene(TextureAtlas atlas, int sprites, boolean useAtlas, boolean byPage)
+  {
+    List<TextureAtlas.Region> regions = new ArrayList<TextureAtlas.Region>(atlas.getRegions());
+    List<TextureAtlas.Region> scene = new ArrayList<TextureAtlas.Region>();
+    Random r = new Random(7);
+
+    for (int i = 0; i < sprites; i++)
+      scene.add(regions.get(r.nextInt(regions.size())));
+
+    if (byPage)
+    {
+      List<TextureAtlas.Region> sorted = new ArrayList<TextureAtlas.Region>();
+
+      for (int page = 0; page < atlas.getPageCount(); page++)
+        for (TextureAtlas.Region region : scene)
+          if (region.getPage() == page)
+            sorted.add(region);
+
+      scene = sorted;
+    }
+
+    RecordingGLES gles = new RecordingGLES();
+    ShaderProgram program = new ShaderProgram(gles,
+      ShaderVariants.vertexSource(ShaderVariants.TEXTURE), ShaderVariants.fragmentSource(ShaderVariants.TEXTURE));
+    program.use();
+    SpriteBatch batch = new SpriteBatch(gles, program, sprites);
+
+    // the textures are just names: the first ones for the pages, then the images
+    int pages = atlas.getPageCount();
+    gles.resetCounters();
+    batch.begin();
+
+    for (int i = 0; i < scene.size(); i++)
+    {
+      TextureAtlas.Region region = scene.get(i);
+
+      if (useAtlas)
+        batch.draw(1 + region.getPage(), i % 480, i % 800, region.getWidth(), region.getHeight(),
+          region.getU0(), region.getV0(), region.getU1(), region.getV1());
+      else
+        batch.draw(1 + pages + regions.indexOf(region), i % 480, i % 800, region.getWidth(), region.getHeight());
+    }
+
+    batch.end();
+    return gles.getDrawCallCount();
+  }
+
+  private static TextureAtlas mixed(int pages, int regionsPerPage)
+  {
+    TextureAtlas atlas = new TextureAtlas();
+
+    for (int page = 0; page < pages; page++)
+    {
+      atlas.addPage("atlas_" + page + ".png", 256, 256);
+
+      for (int i = 0; i < regionsPerPage; i++)
+        atlas.addRegion("image" + page + "_" + i, page, (i % 4) * 64, (i / 4) * 64, 32 + i, 32 + i);
+    }
+
+    return atlas;
+  }
+
+  public static void testOneDrawCallPerPage()
+  {
+    // 8 images, mixed at random: a texture each flushes the batch on almost
+    // every sprite, the atlas draws them all at once
+    TextureAtlas single = mixed(1, 8);
+    long separate = drawScene(single, 500, false, false);
+    assertTrue("a texture per image: " + separate + " draw calls", separate > 400);
+    assertEquals("one page", 1, drawScene(single, 500, true, false));
+
+    // 3 pages: one draw call each, once the sprites are grouped by page
+    TextureAtlas three = mixed(3, 8);
+    assertEquals("three pages, grouped", 3, drawScene(three, 500, true, true));
+
+    // still a texture change per sprite, even grouped the same way
+    assertTrue("a texture per image, grouped by page", drawScene(three, 500, false, true) > 400);
+  }
+
+  private static void expectIOException(String what, byte[] index)
+  {
+    try
+    {
+      TextureAtlas.read(new ByteArrayInputStream(index));
+      fail(what + ": must throw");
+    }
+    catch (IOException e)
+    {
+      // expected
+    }
+  }
+}
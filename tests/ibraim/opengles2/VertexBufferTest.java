@@ -0,0 +1,166 @@
+package ibraim.opengles2;
+
+import android.opengl.GLES20;
+
+import ibraim.opengles2.tools.AllocationCounter;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+
+// The whole point of a VertexBuffer: the data goes to the GPU once, when it's
+// created, and drawing it afterwards only binds it.
+public class VertexBufferTest
+{
+  // Counts the buffer calls that send data, and the deletes
+  private static class CountingGLES extends RecordingGLES
+  {
+    int uploads;
+    int deletes;
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+      super.glBufferData(target, size, data, usage);
+
+      if (data != null)
+        uploads++;
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+      super.glBufferSubData(target, offset, size, data);
+      uploads++;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+      super.glDeleteBuffers(n, buffers, offset);
+      deletes += n;
+    }
+  }
+
+  private static final float[] TRIANGLE = {
+    0f, 0f,   1f, 0f, 0f, 1f,
+    100f, 0f, 0f, 1f, 0f, 1f,
+    50f, 80f, 0f, 0f, 1f, 1f,
+  };
+
+  // asks for no frames: the test draws them itself
+  private static final Scene.Frames NO_FRAMES = new Scene.Frames()
+  {
+    @Override
+    public void invalidate()
+    {
+    }
+
+    @Override
+    public void startAnimation(long intervalMillis)
+    {
+    }
+
+    @Override
+    public void stopAnimation()
+    {
+    }
+
+    @Override
+    public void onFrameRendered()
+    {
+    }
+  };
+
+  public static void testUploadsOnceAndDrawsWithoutCopying()
+  {
+    CountingGLES gles = new CountingGLES();
+    VertexBuffer buffer = new VertexBuffer(gles, TRIANGLE);
+
+    assertEquals("uploads on creation", 1, gles.uploads);
+    assertEquals("bytes uploaded", TRIANGLE.length * VertexBuffer.FLOAT_SIZE, gles.getBytesUploaded());
+    assertEquals("size", TRIANGLE.length * VertexBuffer.FLOAT_SIZE, buffer.getSizeInBytes());
+    assertEquals("target", GLES20.GL_ARRAY_BUFFER, buffer.getTarget());
+    assertTrue("has a handle", buffer.getHandle() != GLES20.GL_FALSE);
+
+    // The Triangle2d sample keeps its triangle in one of these. Its frames,
+    // the very code that runs on a device: the triangle goes to the GPU when
+    // the context is created, and never again
+    gles = new CountingGLES();
+    Triangle2dScene scene = new Triangle2dScene(gles, NO_FRAMES);
+    scene.onContextCreated(null);
+    scene.onSurfaceChanged(480, 800);
+
+    assertEquals("scene uploads on creation", 1, gles.uploads);
+    long uploaded = gles.getBytesUploaded();
+
+    // warm up (the JIT allocates a bit the first times through), then a few
+    // hundred frames without a single byte of Java heap
+    for (int frame = 0; frame < 100; frame++)
+      scene.drawFrame();
+
+    AllocationCounter counter = new AllocationCounter();
+    long start = counter.get();
+
+    for (int frame = 0; frame < 300; frame++)
+      scene.drawFrame();
+
+    long allocated = counter.since(start);
+
+    assertEquals("uploads after drawing", 1, gles.uploads);
+    assertEquals("bytes uploaded after drawing", uploaded, gles.getBytesUploaded());
+    assertEquals("draw calls", 400, gles.getDrawCallCount());
+
+    if (counter.isAvailable())
+      assertEquals("bytes allocated in 300 frames", 0, allocated);
+  }
+
+  public static void testIndicesAndPackedBytes()
+  {
+    CountingGLES gles = new CountingGLES();
+
+    VertexBuffer indices = new VertexBuffer(gles, new short[] { 0, 1, 2, 2, 3, 0 });
+    assertEquals("index target", GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.getTarget());
+    assertEquals("index size", 6 * VertexBuffer.SHORT_SIZE, indices.getSizeInBytes());
+
+    // only from the position to the limit
+    ByteBuffer packed = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+    packed.position(16);
+    packed.limit(48);
+    VertexBuffer bytes = new VertexBuffer(gles, packed);
+    assertEquals("packed size", 32, bytes.getSizeInBytes());
+    assertEquals("uploads", 2, gles.uploads);
+  }
+
+  public static void testUpdateAndOrphanKeepTheSize()
+  {
+    CountingGLES gles = new CountingGLES();
+    VertexBuffer buffer = new VertexBuffer(gles, GLES20.GL_ARRAY_BUFFER, GLES20.GL_DYNAMIC_DRAW, 1024);
+
+    // an empty buffer only reserves the memory
+    assertEquals("uploads of an empty buffer", 0, gles.uploads);
+
+    ByteBuffer data = ByteBuffer.allocateDirect(256);
+    buffer.update(128, 256, data);
+    assertEquals("bytes updated", 256, gles.getBytesUploaded());
+
+    buffer.orphan();
+    assertEquals("orphaning sends nothing", 1, gles.uploads);
+    assertEquals("size", 1024, buffer.getSizeInBytes());
+  }
+
+  public static void testTearDownDeletesOnce()
+  {
+    CountingGLES gles = new CountingGLES();
+    VertexBuffer buffer = new VertexBuffer(gles, TRIANGLE);
+
+    buffer.tearDown();
+    buffer.tearDown();
+
+    assertEquals("deletes", 1, gles.deletes);
+    assertEquals("no handle left", GLES20.GL_FALSE, buffer.getHandle());
+  }
+}
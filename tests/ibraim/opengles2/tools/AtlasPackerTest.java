@@ -0,0 +1,164 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.TextureAtlas;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static ibraim.opengles2.Assert.assertEquals;
+import static ibraim.opengles2.Assert.assertTrue;
+import static ibraim.opengles2.Assert.fail;
+
+// The packer must never put two rectangles on top of each other, nor outside
+// the page, whatever it's given.
+public class AtlasPackerTest
+{
+  // place random rectangles until the page is full, checking every one
+  public static void testNoOverlaps()
+  {
+    Random r = new Random(21);
+
+    for (int round = 0; round < 20; round++)
+    {
+      AtlasPacker packer = new AtlasPacker(512, 512);
+      List<AtlasPacker.Rect> placed = new ArrayList<AtlasPacker.Rect>();
+      long area = 0;
+      int misses = 0;
+
+      while (misses < 20)
+      {
+        int w = 4 + r.nextInt(round % 2 == 0 ? 60 : 200);
+        int h = 4 + r.nextInt(round % 2 == 0 ? 60 : 200);
+        AtlasPacker.Rect rect = packer.insert(w, h);
+
+        if (rect == null)
+        {
+          misses++;
+          continue;
+        }
+
+        assertEquals("width", w, rect.width);
+        assertEquals("height", h, rect.height);
+        assertTrue("inside the page: " + describe(rect), rect.x >= 0 && rect.y >= 0 && rect.x + w <= 512 && rect.y + h <= 512);
+
+        for (AtlasPacker.Rect other : placed)
+          if (rect.intersects(other))
+            fail(describe(rect) + " is on top of " + describe(other));
+
+        placed.add(rect);
+        area += (long) w * h;
+      }
+
+      assertEquals("used area", area, packer.getUsedArea());
+      assertTrue("used width", packer.getUsedWidth() <= 512);
+      assertTrue("used height", packer.getUsedHeight() <= 512);
+    }
+  }
+
+  public static void testFillsThePageExactly()
+  {
+    // 16 squares of 64 fill a 256x256 page, and then nothing else fits
+    AtlasPacker packer = new AtlasPacker(256, 256);
+
+    for (int i = 0; i < 16; i++)
+      assertTrue("square " + i + " fits", packer.insert(64, 64) != null);
+
+    assertEquals("used area", 256 * 256, packer.getUsedArea());
+    assertTrue("a full page takes nothing else", packer.insert(1, 1) == null);
+  }
+
+  public static void testTooBigDoesntFit()
+  {
+    AtlasPacker packer = new AtlasPacker(128, 64);
+
+    assertTrue("too wide", packer.insert(129, 10) == null);
+    assertTrue("too tall", packer.insert(10, 65) == null);
+    assertTrue("just right", packer.insert(128, 64) != null);
+  }
+
+  // the whole build step: PNGs in, pages and regions out
+  public static void testToolPacksWithPadding() throws IOException
+  {
+    File dir = File.createTempFile("atlas", "");
+    dir.delete();
+    dir.mkdir();
+
+    try
+    {
+      Random r = new Random(5);
+      File[] pngs = new File[24];
+
+      for (int i = 0; i < pngs.length; i++)
+      {
+        int w = 8 + r.nextInt(56);
+        int h = 8 + r.nextInt(56);
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+
+        // a different color for each image, so we know whose pixels are where
+        for (int y = 0; y < h; y++)
+          for (int x = 0; x < w; x++)
+            image.setRGB(x, y, 0xff000000 | (i * 10 << 16) | (x << 8) | y);
+
+        pngs[i] = new File(dir, "image" + i + ".png");
+        ImageIO.write(image, "png", pngs[i]);
+      }
+
+      int padding = 2;
+      List<BufferedImage> pages = new ArrayList<BufferedImage>();
+      TextureAtlas atlas = AtlasTool.pack(pngs, 128, padding, pages);
+
+      assertEquals("regions", pngs.length, atlas.getRegionCount());
+      assertEquals("pages", atlas.getPageCount(), pages.size());
+      assertTrue("more than one page", pages.size() > 1);
+
+      List<TextureAtlas.Region> regions = new ArrayList<TextureAtlas.Region>(atlas.getRegions());
+
+      for (TextureAtlas.Region a : regions)
+      {
+        int index = Integer.parseInt(a.getName().substring(5));
+        BufferedImage page = pages.get(a.getPage());
+
+        // the padding around it must fit in the page too
+        assertTrue(a.getName() + " with its padding inside the page", a.getX() >= padding && a.getY() >= padding
+          && a.getX() + a.getWidth() + padding <= page.getWidth() && a.getY() + a.getHeight() + padding <= page.getHeight());
+
+        // its corners, and the padding repeating them
+        int topLeft = 0xff000000 | (index * 10 << 16);
+        assertEquals(a.getName() + " top left", topLeft, page.getRGB(a.getX(), a.getY()));
+        assertEquals(a.getName() + " padding", topLeft, page.getRGB(a.getX() - padding, a.getY() - padding));
+        int bottomRight = topLeft | ((a.getWidth() - 1) << 8) | (a.getHeight() - 1);
+        assertEquals(a.getName() + " bottom right", bottomRight, page.getRGB(a.getX() + a.getWidth() + padding - 1, a.getY() + a.getHeight() + padding - 1));
+
+        // and nobody else's padding on top of it
+        for (TextureAtlas.Region b : regions)
+        {
+          if (a == b || a.getPage() != b.getPage())
+            continue;
+
+          boolean apart = a.getX() + a.getWidth() + padding <= b.getX() - padding || b.getX() + b.getWidth() + padding <= a.getX() - padding
+            || a.getY() + a.getHeight() + padding <= b.getY() - padding || b.getY() + b.getHeight() + padding <= a.getY() - padding;
+
+          assertTrue(a.getName() + " overlaps " + b.getName(), apart);
+        }
+      }
+    }
+    finally
+    {
+      for (File f : dir.listFiles())
+        f.delete();
+
+      dir.delete();
+    }
+  }
+
+  private static String describe(AtlasPacker.Rect r)
+  {
+    return r.width + "x" + r.height + " at " + r.x + "," + r.y;
+  }
+}
@@ -0,0 +1,67 @@
+package ibraim.opengles2.tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+// How many bytes the current thread allocated, from the JVM's own counter.
+//
+// The counter is in com.sun.management.ThreadMXBean: HotSpot and OpenJDK have
+// it, other JVMs may not, so it's found by reflection. Without it, everything
+// reads 0 and isAvailable says so. Reading it allocates a little by itself
+// (the boxed result); that's measured once and taken out of 'since'.
+//
+// The tests use it too, to check that the per-frame code doesn't allocate.
+public class AllocationCounter
+{
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final Method method;
+  private final long overhead;
+
+  public AllocationCounter()
+  {
+    Method m;
+
+    try
+    {
+      m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+    }
+    catch (Exception e)
+    {
+      m = null;
+    }
+
+    method = m;
+
+    get();
+    long before = get();
+    overhead = get() - before;
+  }
+
+  public boolean isAvailable()
+  {
+    return method != null;
+  }
+
+  // Bytes allocated by this thread so far
+  public long get()
+  {
+    if (method == null)
+      return 0;
+
+    try
+    {
+      return (Long) method.invoke(threads, Thread.currentThread().getId());
+    }
+    catch (Exception e)
+    {
+      return 0;
+    }
+  }
+
+  // Bytes allocated by this thread since 'start' (a value of 'get')
+  public long since(long start)
+  {
+    return Math.max(0, get() - start - overhead);
+  }
+}
@@ -0,0 +1,166 @@
+package ibraim.opengles2.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Finds a place for each rectangle in a page ('MaxRects', best short side fit).
+//
+// It keeps a list of the free rectangles of the page, all the biggest ones
+// possible (so they overlap). A new rectangle goes to the free one where it
+// leaves the smallest leftover on its shortest side, at its top-left corner.
+// Then every free rectangle it touches is split in the (up to 4) parts around
+// it, and the ones that end up inside another are dropped.
+//
+// Slower than simpler packers, but it wastes very little space.
+public class AtlasPacker
+{
+  public static class Rect
+  {
+    public final int x;
+    public final int y;
+    public final int width;
+    public final int height;
+
+    Rect(int x, int y, int width, int height)
+    {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+    }
+
+    boolean contains(Rect other)
+    {
+      return other.x >= x && other.y >= y && other.x + other.width <= x + width && other.y + other.height <= y + height;
+    }
+
+    boolean intersects(Rect other)
+    {
+      return other.x < x + width && other.x + other.width > x && other.y < y + height && other.y + other.height > y;
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final List<Rect> free = new ArrayList<Rect>();
+  private int usedWidth;
+  private int usedHeight;
+  private long usedArea;
+
+  public AtlasPacker(int width, int height)
+  {
+    this.width = width;
+    this.height = height;
+    free.add(new Rect(0, 0, width, height));
+  }
+
+  // Where a 'w' x 'h' rectangle goes, or null if it doesn't fit anymore
+  public Rect insert(int w, int h)
+  {
+    Rect best = null;
+    int bestShort = Integer.MAX_VALUE;
+    int bestLong = Integer.MAX_VALUE;
+
+    for (Rect f : free)
+    {
+      if (f.width < w || f.height < h)
+        continue;
+
+      int leftoverX = f.width - w;
+      int leftoverY = f.height - h;
+      int shortSide = Math.min(leftoverX, leftoverY);
+      int longSide = Math.max(leftoverX, leftoverY);
+
+      if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong))
+      {
+        best = f;
+        bestShort = shortSide;
+        bestLong = longSide;
+      }
+    }
+
+    if (best == null)
+      return null;
+
+    Rect placed = new Rect(best.x, best.y, w, h);
+    split(placed);
+    prune();
+
+    usedWidth = Math.max(usedWidth, placed.x + w);
+    usedHeight = Math.max(usedHeight, placed.y + h);
+    usedArea += (long) w * h;
+    return placed;
+  }
+
+  // every free rectangle under 'placed' becomes the parts around it
+  private void split(Rect placed)
+  {
+    List<Rect> parts = new ArrayList<Rect>();
+
+    for (int i = free.size() - 1; i >= 0; i--)
+    {
+      Rect f = free.get(i);
+
+      if (!f.intersects(placed))
+        continue;
+
+      free.remove(i);
+
+      if (placed.x > f.x)
+        parts.add(new Rect(f.x, f.y, placed.x - f.x, f.height));
+
+      if (placed.x + placed.width < f.x + f.width)
+        parts.add(new Rect(placed.x + placed.width, f.y, f.x + f.width - placed.x - placed.width, f.height));
+
+      if (placed.y > f.y)
+        parts.add(new Rect(f.x, f.y, f.width, placed.y - f.y));
+
+      if (placed.y + placed.height < f.y + f.height)
+        parts.add(new Rect(f.x, placed.y + placed.height, f.width, f.y + f.height - placed.y - placed.height));
+    }
+
+    free.addAll(parts);
+  }
+
+  // drop the free rectangles that are inside another one
+  private void prune()
+  {
+    for (int i = free.size() - 1; i >= 0; i--)
+    {
+      for (int j = 0; j < free.size(); j++)
+      {
+        if (i != j && free.get(j).contains(free.get(i)))
+        {
+          free.remove(i);
+          break;
+        }
+      }
+    }
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  // The part of the page really used (the page can be cut down to this)
+  public int getUsedWidth()
+  {
+    return usedWidth;
+  }
+
+  public int getUsedHeight()
+  {
+    return usedHeight;
+  }
+
+  public long getUsedArea()
+  {
+    return usedArea;
+  }
+}
@@ -0,0 +1,105 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.Camera2D;
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.ShaderProgram;
+import ibraim.opengles2.ShaderVariants;
+import ibraim.opengles2.SpriteBatch;
+import ibraim.opengles2.TextureAtlas;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Shows what the atlas does to the draw calls, without a device.
+//
+// Packs the drawables of one res/drawable-*dpi folder (like AtlasTool, but
+// nothing is written), then draws the same scene twice with a SpriteBatch on a
+// RecordingGLES: sprites of all the images, mixed at random. First with one
+// texture per image (the batch flushes on almost every sprite), and then with
+// the atlas regions (it only flushes when the page changes).
+//
+// Usage: AtlasReport <drawable dir> [sprites] [page size] [padding]
+public class AtlasReport
+{
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 1)
+    {
+      System.err.println("Usage: AtlasReport <drawable dir> [sprites] [page size] [padding]");
+      System.exit(1);
+    }
+
+    File dir = new File(args[0]);
+    int sprites = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+    int padding = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+    File[] pngs = AtlasTool.pngs(dir, new String[0]);
+
+    if (pngs.length == 0)
+      throw new IOException("No PNGs in " + dir);
+
+    long start = System.nanoTime();
+    TextureAtlas atlas = AtlasTool.pack(pngs, pageSize, padding, new ArrayList<BufferedImage>());
+    long packNanos = System.nanoTime() - start;
+
+    // every sprite picks an image at random (the same ones in both runs)
+    List<TextureAtlas.Region> regions = new ArrayList<TextureAtlas.Region>(atlas.getRegions());
+    int[] scene = new int[sprites];
+    Random r = new Random(42);
+
+    for (int i = 0; i < sprites; i++)
+      scene[i] = r.nextInt(regions.size());
+
+    RecordingGLES gles = new RecordingGLES();
+    ShaderProgram program = new ShaderProgram(gles,
+      ShaderVariants.vertexSource(ShaderVariants.TEXTURE), ShaderVariants.fragmentSource(ShaderVariants.TEXTURE));
+    program.use();
+
+    SpriteBatch batch = new SpriteBatch(gles, program, Math.max(1, Math.min(sprites, SpriteBatch.MAX_SPRITES)));
+    Camera2D camera = new Camera2D();
+    camera.setViewport(480, 800);
+    camera.apply(gles, program.getUniform("uScreen"));
+
+    // the textures are just names here: one per image, and then one per page
+    int[] imageTextures = new int[regions.size()];
+    gles.glGenTextures(imageTextures.length, imageTextures, 0);
+    int[] pageTextures = new int[atlas.getPageCount()];
+    gles.glGenTextures(pageTextures.length, pageTextures, 0);
+
+    gles.resetCounters();
+    batch.begin();
+    for (int i = 0; i < sprites; i++)
+    {
+      TextureAtlas.Region region = regions.get(scene[i]);
+      batch.draw(imageTextures[scene[i]], (i * 37) % 480, (i * 53) % 800, region.getWidth(), region.getHeight());
+    }
+    batch.end();
+    long separateDraws = gles.getDrawCallCount();
+    long separateCalls = gles.getCallCount();
+
+    gles.resetCounters();
+    batch.begin();
+    for (int i = 0; i < sprites; i++)
+    {
+      TextureAtlas.Region region = regions.get(scene[i]);
+      batch.draw(pageTextures[region.getPage()], (i * 37) % 480, (i * 53) % 800, region.getWidth(), region.getHeight(),
+        region.getU0(), region.getV0(), region.getU1(), region.getV1());
+    }
+    batch.end();
+    long atlasDraws = gles.getDrawCallCount();
+    long atlasCalls = gles.getCallCount();
+
+    System.out.println(String.format(Locale.US, "%s: %d image(s) packed in %d page(s), %.1f%% used, in %.1fms",
+      dir.getPath(), atlas.getRegionCount(), atlas.getPageCount(), 100 * AtlasTool.efficiency(atlas), packNanos / 1e6));
+    System.out.println(String.format(Locale.US, "  %d sprites, one texture per image: %d draw call(s) (%d GL calls)",
+      sprites, separateDraws, separateCalls));
+    System.out.println(String.format(Locale.US, "  %d sprites, atlas: %d draw call(s) (%d GL calls)",
+      sprites, atlasDraws, atlasCalls));
+  }
+}
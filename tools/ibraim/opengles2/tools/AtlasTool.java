@@ -0,0 +1,268 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.TextureAtlas;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+// Build step that packs the drawables into texture atlases (see TextureAtlas
+// and custom_rules.xml).
+//
+// For every res/drawable-*dpi folder, the PNGs are packed (with AtlasPacker)
+// into as few pages as possible, no bigger than 'page size', and each page is
+// then cut down to the smallest power of two that holds what's in it. Writes
+// <output>/drawable-*dpi/atlas_<n>.png and the index, atlas.idx.
+//
+// Each image gets 'padding' pixels all around, filled with copies of its edges
+// ('extrusion'). Without it, the texture filtering and the rounding of the UVs
+// would bleed a bit of the neighbors into the edges of the sprite.
+//
+// Usage: AtlasTool <res dir> <output dir> <page size> <padding> [drawable name]...
+// (no names: every PNG)
+public class AtlasTool
+{
+  private static class Image
+  {
+    final String name;
+    final BufferedImage pixels;
+
+    Image(String name, BufferedImage pixels)
+    {
+      this.name = name;
+      this.pixels = pixels;
+    }
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 4)
+    {
+      System.err.println("Usage: AtlasTool <res dir> <output dir> <page size> <padding> [drawable name]...");
+      System.exit(1);
+    }
+
+    File res = new File(args[0]);
+    File output = new File(args[1]);
+    int pageSize = Integer.parseInt(args[2]);
+    int padding = Integer.parseInt(args[3]);
+    String[] names = Arrays.copyOfRange(args, 4, args.length);
+    File[] dirs = res.listFiles();
+
+    if (dirs == null)
+      throw new IOException("Not a directory: " + res);
+
+    Arrays.sort(dirs);
+
+    for (File dir : dirs)
+      if (dir.isDirectory() && dir.getName().startsWith("drawable") && dir.getName().endsWith("dpi"))
+        build(dir, new File(output, dir.getName()), pageSize, padding, names);
+  }
+
+  private static void build(File dir, File output, int pageSize, int padding, String[] names) throws IOException
+  {
+    File[] pngs = pngs(dir, names);
+    File index = new File(output, TextureAtlas.INDEX_NAME);
+
+    // nothing changed since the last build
+    if (pngs.length == 0 || index.lastModified() >= newest(pngs))
+      return;
+
+    long start = System.nanoTime();
+    List<BufferedImage> pages = new ArrayList<BufferedImage>();
+    TextureAtlas atlas = pack(pngs, pageSize, padding, pages);
+
+    if (!output.isDirectory() && !output.mkdirs())
+      throw new IOException("Unable to create " + output);
+
+    for (int i = 0; i < pages.size(); i++)
+      ImageIO.write(pages.get(i), "png", new File(output, atlas.getPageName(i)));
+
+    OutputStream out = new FileOutputStream(index);
+
+    try
+    {
+      atlas.write(out);
+    }
+    finally
+    {
+      out.close();
+    }
+
+    System.out.println(String.format(Locale.US, "%s: %d image(s) in %d page(s) (%s), %.1f%% used, %d bytes of index, built in %.1fms",
+      dir.getPath(), atlas.getRegionCount(), pages.size(), pageSizes(atlas), 100 * efficiency(atlas), index.length(), (System.nanoTime() - start) / 1e6));
+  }
+
+  // The PNGs of a folder with these names (all of them, with no names)
+  static File[] pngs(File dir, String[] names)
+  {
+    List<File> files = new ArrayList<File>();
+    File[] all = dir.listFiles();
+
+    if (all != null)
+    {
+      Arrays.sort(all);
+
+      for (File f : all)
+      {
+        String name = f.getName();
+
+        if (name.endsWith(".png") && (names.length == 0 || Arrays.asList(names).contains(name.substring(0, name.length() - 4))))
+          files.add(f);
+      }
+    }
+
+    return files.toArray(new File[files.size()]);
+  }
+
+  private static long newest(File[] files)
+  {
+    long newest = 0;
+
+    for (File f : files)
+      newest = Math.max(newest, f.lastModified());
+
+    return newest;
+  }
+
+  // Pack the images; the pages are added to 'pages', in order
+  static TextureAtlas pack(File[] pngs, int pageSize, int padding, List<BufferedImage> pages) throws IOException
+  {
+    List<Image> images = new ArrayList<Image>();
+
+    for (File png : pngs)
+    {
+      BufferedImage pixels = ImageIO.read(png);
+
+      if (pixels == null)
+        throw new IOException("Unable to read " + png);
+
+      if (pixels.getWidth() + 2 * padding > pageSize || pixels.getHeight() + 2 * padding > pageSize)
+        throw new IOException(png + " doesn't fit in a " + pageSize + "x" + pageSize + " page");
+
+      images.add(new Image(png.getName().substring(0, png.getName().length() - 4), pixels));
+    }
+
+    // the big ones first: they're the hard ones to place
+    Collections.sort(images, new Comparator<Image>()
+    {
+      @Override
+      public int compare(Image a, Image b)
+      {
+        int sideA = Math.max(a.pixels.getWidth(), a.pixels.getHeight());
+        int sideB = Math.max(b.pixels.getWidth(), b.pixels.getHeight());
+        return sideA != sideB ? sideB - sideA : a.name.compareTo(b.name);
+      }
+    });
+
+    List<AtlasPacker> packers = new ArrayList<AtlasPacker>();
+    List<List<Image>> placedImages = new ArrayList<List<Image>>();
+    List<List<AtlasPacker.Rect>> placedRects = new ArrayList<List<AtlasPacker.Rect>>();
+
+    for (Image image : images)
+    {
+      int w = image.pixels.getWidth() + 2 * padding;
+      int h = image.pixels.getHeight() + 2 * padding;
+      AtlasPacker.Rect rect = null;
+      int page = 0;
+
+      for (; page < packers.size() && rect == null; page++)
+        rect = packers.get(page).insert(w, h);
+
+      if (rect == null)
+      {
+        packers.add(new AtlasPacker(pageSize, pageSize));
+        placedImages.add(new ArrayList<Image>());
+        placedRects.add(new ArrayList<AtlasPacker.Rect>());
+        page = packers.size();
+        rect = packers.get(page - 1).insert(w, h);
+      }
+
+      placedImages.get(page - 1).add(image);
+      placedRects.get(page - 1).add(rect);
+    }
+
+    TextureAtlas atlas = new TextureAtlas();
+
+    for (int p = 0; p < packers.size(); p++)
+    {
+      int width = powerOfTwo(packers.get(p).getUsedWidth());
+      int height = powerOfTwo(packers.get(p).getUsedHeight());
+      BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      atlas.addPage("atlas_" + p + ".png", width, height);
+
+      for (int i = 0; i < placedImages.get(p).size(); i++)
+      {
+        Image image = placedImages.get(p).get(i);
+        AtlasPacker.Rect rect = placedRects.get(p).get(i);
+        draw(page, image.pixels, rect.x + padding, rect.y + padding, padding);
+        atlas.addRegion(image.name, p, rect.x + padding, rect.y + padding, image.pixels.getWidth(), image.pixels.getHeight());
+      }
+
+      pages.add(page);
+    }
+
+    return atlas;
+  }
+
+  // 'image' at x, y, with its edges repeated 'padding' pixels outwards
+  private static void draw(BufferedImage page, BufferedImage image, int x, int y, int padding)
+  {
+    int w = image.getWidth();
+    int h = image.getHeight();
+
+    for (int py = -padding; py < h + padding; py++)
+    {
+      int sy = Math.max(0, Math.min(h - 1, py));
+
+      for (int px = -padding; px < w + padding; px++)
+      {
+        int sx = Math.max(0, Math.min(w - 1, px));
+        page.setRGB(x + px, y + py, image.getRGB(sx, sy));
+      }
+    }
+  }
+
+  private static int powerOfTwo(int n)
+  {
+    int p = 1;
+
+    while (p < n)
+      p <<= 1;
+
+    return p;
+  }
+
+  private static String pageSizes(TextureAtlas atlas)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < atlas.getPageCount(); i++)
+      sb.append(i > 0 ? ", " : "").append(atlas.getPageWidth(i)).append("x").append(atlas.getPageHeight(i));
+
+    return sb.toString();
+  }
+
+  // How much of the pages is covered by the images themselves
+  static double efficiency(TextureAtlas atlas)
+  {
+    long used = 0, total = 0;
+
+    for (TextureAtlas.Region r : atlas.getRegions())
+      used += (long) r.getWidth() * r.getHeight();
+
+    for (int i = 0; i < atlas.getPageCount(); i++)
+      total += (long) atlas.getPageWidth(i) * atlas.getPageHeight(i);
+
+    return total == 0 ? 0 : (double) used / total;
+  }
+}
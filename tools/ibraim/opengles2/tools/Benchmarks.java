@@ -0,0 +1,259 @@
+package ibraim.opengles2.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Runs every benchmark and report of tools/, one after the other, and writes
+// what they printed to a JSON file, so runs can be kept and compared (the
+// 'benchmarks' target of custom_rules.xml).
+//
+// Each one is run exactly as from the command line, with the arguments listed
+// below. Its output still goes to the console, and also to the file, line by
+// line, with how long it took and how many bytes its thread allocated (see
+// AllocationCounter; the threads it starts aren't counted), and the numbers it
+// reported (see 'report'), so they don't have to be parsed out of the output.
+// The machine and the JVM go in the file too: numbers from different machines
+// don't compare.
+//
+// Usage: Benchmarks [results file] [name filter]
+public class Benchmarks
+{
+  private static class Benchmark
+  {
+    final Class<?> main;
+    final String[] args;
+
+    Benchmark(Class<?> main, String... args)
+    {
+      this.main = main;
+      this.args = args;
+    }
+  }
+
+  private static final Benchmark[] BENCHMARKS = {
+    new Benchmark(VertexFormatBenchmark.class),
+    new Benchmark(MathBenchmark.class),
+    new Benchmark(TileMapBenchmark.class),
+    new Benchmark(ShapeBenchmark.class),
+    new Benchmark(SpriteBuildBenchmark.class),
+    new Benchmark(OverdrawReport.class),
+    new Benchmark(AtlasReport.class, "res/drawable-mdpi"),
+    new Benchmark(MemoryBudgetReport.class),
+    new Benchmark(RestoreReport.class),
+    new Benchmark(RendererBenchmark.class),
+  };
+
+  // what the benchmark being run reported so far
+  private static final Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+
+  // For the benchmarks: a number that goes in the JSON, under 'metrics'. Does
+  // nothing useful when the benchmark is run by itself.
+  public static void report(String name, double value)
+  {
+    metrics.put(name, value);
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    File file = new File(args.length > 0 ? args[0] : "bin/benchmarks/results.json");
+    String filter = args.length > 1 ? args[1] : "";
+    AllocationCounter counter = new AllocationCounter();
+    PrintStream console = System.out;
+    StringBuilder results = new StringBuilder();
+    int failed = 0;
+
+    for (Benchmark b : BENCHMARKS)
+    {
+      String name = b.main.getSimpleName();
+
+      if (!name.contains(filter))
+        continue;
+
+      console.println("== " + name + " " + join(b.args));
+
+      // everything it prints goes to the console and to 'output'
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(new Tee(console, output), true));
+      String error = null;
+      metrics.clear();
+      long bytes = counter.get();
+      long start = System.nanoTime();
+
+      try
+      {
+        b.main.getMethod("main", String[].class).invoke(null, (Object) b.args);
+      }
+      catch (InvocationTargetException e)
+      {
+        error = String.valueOf(e.getCause());
+      }
+      catch (ReflectiveOperationException e)
+      {
+        error = String.valueOf(e);
+      }
+      finally
+      {
+        System.setOut(console);
+      }
+
+      long nanos = System.nanoTime() - start;
+      long allocated = counter.since(bytes);
+
+      if (error != null)
+      {
+        failed++;
+        console.println("FAILED: " + error);
+      }
+
+      results.append(results.length() > 0 ? ",\n" : "").append("    {")
+        .append("\"name\": ").append(quote(name))
+        .append(", \"args\": [").append(quoteAll(b.args)).append("]")
+        .append(", \"ok\": ").append(error == null)
+        .append(String.format(Locale.US, ", \"millis\": %.1f", nanos / 1e6))
+        .append(", \"allocatedBytes\": ").append(counter.isAvailable() ? String.valueOf(allocated) : "null");
+
+      if (error != null)
+        results.append(", \"error\": ").append(quote(error));
+
+      if (!metrics.isEmpty())
+      {
+        results.append(",\n      \"metrics\": {");
+        String separator = "";
+
+        for (Map.Entry<String, Double> m : metrics.entrySet())
+        {
+          results.append(separator).append(quote(m.getKey())).append(": ").append(String.format(Locale.US, "%.2f", m.getValue()));
+          separator = ", ";
+        }
+
+        results.append("}");
+      }
+
+      results.append(",\n      \"output\": [").append(quoteAll(output.toString("UTF-8").split("\r?\n"))).append("]}");
+    }
+
+    SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+    date.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+    StringBuilder json = new StringBuilder();
+    json.append("{\n")
+      .append("  \"date\": ").append(quote(date.format(new Date()))).append(",\n")
+      .append("  \"java\": ").append(quote(System.getProperty("java.version") + " (" + System.getProperty("java.vm.name") + ")")).append(",\n")
+      .append("  \"os\": ").append(quote(System.getProperty("os.name") + " " + System.getProperty("os.arch"))).append(",\n")
+      .append("  \"cores\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n")
+      .append("  \"results\": [\n").append(results).append("\n  ]\n")
+      .append("}\n");
+
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Unable to create " + dir);
+
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try
+    {
+      out.write(json.toString());
+    }
+    finally
+    {
+      out.close();
+    }
+
+    console.println("Results written to " + file + (failed > 0 ? "; " + failed + " failed" : ""));
+
+    if (failed > 0)
+      System.exit(1);
+  }
+
+  // Writes to two streams at once
+  private static class Tee extends OutputStream
+  {
+    private final OutputStream a;
+    private final OutputStream b;
+
+    Tee(OutputStream a, OutputStream b)
+    {
+      this.a = a;
+      this.b = b;
+    }
+
+    @Override
+    public void write(int c) throws IOException
+    {
+      a.write(c);
+      b.write(c);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+      a.write(bytes, offset, length);
+      b.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      a.flush();
+      b.flush();
+    }
+  }
+
+  private static String join(String[] values)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (String v : values)
+      sb.append(sb.length() > 0 ? " " : "").append(v);
+
+    return sb.toString();
+  }
+
+  private static String quoteAll(String[] values)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (String v : values)
+      sb.append(sb.length() > 0 ? ", " : "").append(quote(v));
+
+    return sb.toString();
+  }
+
+  // A JSON string
+  private static String quote(String s)
+  {
+    StringBuilder sb = new StringBuilder("\"");
+
+    for (int i = 0; i < s.length(); i++)
+    {
+      char c = s.charAt(i);
+
+      if (c == '"' || c == '\\')
+        sb.append('\\').append(c);
+      else if (c == '\n')
+        sb.append("\\n");
+      else if (c == '\t')
+        sb.append("\\t");
+      else if (c < 0x20)
+        sb.append(String.format("\\u%04x", (int) c));
+      else
+        sb.append(c);
+    }
+
+    return sb.append('"').toString();
+  }
+}
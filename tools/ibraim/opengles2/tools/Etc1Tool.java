@@ -0,0 +1,134 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.Etc1;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Build step that encodes drawables to ETC1 (see custom_rules.xml).
+//
+// For every res/drawable-*/<name>.png, writes <output>/drawable-*/<name>.pkm
+// with the colors and, if the image has transparency, <name>_alpha.pkm with the
+// alpha channel. TextureLoader looks for these in the assets and falls back to
+// the PNG when they're not there.
+//
+// Usage: Etc1Tool <res dir> <output dir> <drawable name>...
+public class Etc1Tool
+{
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 3)
+    {
+      System.err.println("Usage: Etc1Tool <res dir> <output dir> <drawable name>...");
+      System.exit(1);
+    }
+
+    File res = new File(args[0]);
+    File output = new File(args[1]);
+    File[] dirs = res.listFiles();
+
+    if (dirs == null)
+      throw new IOException("Not a directory: " + res);
+
+    Arrays.sort(dirs);
+
+    for (File dir : dirs)
+    {
+      if (!dir.isDirectory() || !dir.getName().startsWith("drawable"))
+        continue;
+
+      for (int i = 2; i < args.length; i++)
+      {
+        File png = new File(dir, args[i] + ".png");
+
+        if (png.exists())
+          encode(png, new File(output, dir.getName()), args[i]);
+      }
+    }
+  }
+
+  private static void encode(File png, File dir, String name) throws IOException
+  {
+    File rgbFile = new File(dir, name + ".pkm");
+    File alphaFile = new File(dir, name + "_alpha.pkm");
+
+    // nothing changed since the last build
+    if (rgbFile.lastModified() >= png.lastModified())
+      return;
+
+    BufferedImage image = ImageIO.read(png);
+
+    if (image == null)
+      throw new IOException("Unable to read " + png);
+
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Unable to create " + dir);
+
+    byte[] rgb = Etc1.encode(argb, width, height, false);
+    write(rgbFile, rgb, width, height);
+    int size = rgb.length;
+
+    if (image.getColorModel().hasAlpha())
+    {
+      byte[] alpha = Etc1.encode(argb, width, height, true);
+      write(alphaFile, alpha, width, height);
+      size += alpha.length;
+    }
+    else if (alphaFile.exists() && !alphaFile.delete())
+      throw new IOException("Unable to delete " + alphaFile);
+
+    // how much did we save, and how much did we lose?
+    int raw = width * height * 4;
+    System.out.println(String.format(Locale.US, "%s: %dx%d, %d bytes as RGBA, %d as ETC1 (%d saved, %.1f%%), PSNR %.1fdB",
+      png.getPath(), width, height, raw, size, raw - size, 100.0 * (raw - size) / raw, psnr(argb, Etc1.decode(rgb, width, height), width, height)));
+  }
+
+  private static void write(File file, byte[] data, int width, int height) throws IOException
+  {
+    OutputStream out = new FileOutputStream(file);
+
+    try
+    {
+      Etc1.writePkm(out, data, width, height);
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  // peak signal-to-noise ratio of the colors; the higher, the better
+  private static double psnr(int[] argb, int[] decoded, int width, int height)
+  {
+    int stride = (width + 3) & ~3;
+    double error = 0;
+
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        int a = argb[y * width + x];
+        int b = decoded[y * stride + x];
+
+        for (int shift = 0; shift <= 16; shift += 8)
+        {
+          int d = ((a >> shift) & 0xff) - ((b >> shift) & 0xff);
+          error += d * d;
+        }
+      }
+    }
+
+    double mse = error / (width * height * 3);
+    return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+  }
+}
@@ -0,0 +1,186 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.Camera2D;
+import ibraim.opengles2.Mat3;
+import ibraim.opengles2.Mat4;
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.TransformStack;
+import ibraim.opengles2.Vec2;
+
+import java.util.Locale;
+
+// Measures the math classes (Mat3, Mat4, TransformStack, Camera2D) on a plain
+// JVM: how long each operation takes, and how many bytes it allocates.
+//
+// The whole point of those classes is that they never allocate, so a frame
+// full of transforms doesn't feed the garbage collector. The bytes come from
+// the JVM's own per-thread allocation counter (see AllocationCounter); on a
+// JVM without it, only the times are printed. Each case runs a few rounds
+// first, so the JIT is done with it before anything is measured.
+//
+// Usage: MathBenchmark [operations]
+public class MathBenchmark
+{
+  private static final int WARMUP_ROUNDS = 5;
+
+  // One thing to measure: 'run' does it 'ops' times and returns something
+  // computed from the result, so the JIT can't skip the work
+  private static abstract class Case
+  {
+    final String name;
+
+    Case(String name)
+    {
+      this.name = name;
+    }
+
+    abstract float run(int ops);
+  }
+
+  public static void main(String[] args)
+  {
+    int ops = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+    final Mat3 m3 = new Mat3();
+    final Mat3 other3 = new Mat3().translate(3f, 4f).rotate(0.5f).scale(2f, 2f);
+    final Mat4 m4 = new Mat4();
+    final Mat4 other4 = new Mat4().setOrtho(0f, 800f, 480f, 0f, -1f, 1f);
+    final TransformStack stack = new TransformStack(8);
+    final Vec2 point = new Vec2();
+    final Camera2D camera = new Camera2D();
+    final RecordingGLES gles = new RecordingGLES();
+    camera.setViewport(800, 480);
+
+    Case[] cases = {
+      new Case("Mat3 translate+rotate+scale")
+      {
+        @Override
+        float run(int ops)
+        {
+          for (int i = 0; i < ops; i++)
+            m3.identity().translate(i, 2f).rotate(0.01f * (i & 63)).scale(1.5f, 1.5f);
+
+          return m3.values[6];
+        }
+      },
+      new Case("Mat3 multiply")
+      {
+        @Override
+        float run(int ops)
+        {
+          m3.identity();
+
+          for (int i = 0; i < ops; i++)
+          {
+            m3.multiply(other3);
+
+            if ((i & 15) == 15)
+              m3.identity();
+          }
+
+          return m3.values[0];
+        }
+      },
+      new Case("Mat4 multiply")
+      {
+        @Override
+        float run(int ops)
+        {
+          m4.identity();
+
+          for (int i = 0; i < ops; i++)
+          {
+            m4.multiply(other4);
+
+            if ((i & 15) == 15)
+              m4.identity();
+          }
+
+          return m4.values[0];
+        }
+      },
+      new Case("Mat4 set(Mat3)")
+      {
+        @Override
+        float run(int ops)
+        {
+          for (int i = 0; i < ops; i++)
+            m4.set(other3);
+
+          return m4.values[12];
+        }
+      },
+      new Case("TransformStack push+move+apply+pop")
+      {
+        @Override
+        float run(int ops)
+        {
+          float sum = 0;
+          stack.reset().translate(400f, 240f);
+
+          // a parent and its child, like a scene graph
+          for (int i = 0; i < ops; i++)
+          {
+            stack.push().translate(i & 255, 10f).rotate(0.1f);
+            sum += stack.apply(point.set(1f, 1f)).x;
+            stack.pop();
+          }
+
+          return sum;
+        }
+      },
+      new Case("Camera2D move+matrix+apply")
+      {
+        @Override
+        float run(int ops)
+        {
+          // a camera that moves every frame: rebuilt and sent every time
+          for (int i = 0; i < ops; i++)
+          {
+            camera.moveBy(1f, 0.5f);
+            camera.apply(gles, 0);
+          }
+
+          return camera.getMatrix().values[12];
+        }
+      },
+      new Case("Camera2D apply, unchanged")
+      {
+        @Override
+        float run(int ops)
+        {
+          // a camera that stays put: nothing to rebuild or send
+          int sent = 0;
+
+          for (int i = 0; i < ops; i++)
+            if (camera.apply(gles, 0))
+              sent++;
+
+          return sent;
+        }
+      },
+    };
+
+    AllocationCounter counter = new AllocationCounter();
+    System.out.println(String.format(Locale.US, "%d operations per case%s", ops, counter.isAvailable() ? "" : " (no allocation counter in this JVM)"));
+
+    float sink = 0;
+
+    for (Case c : cases)
+    {
+      for (int i = 0; i < WARMUP_ROUNDS; i++)
+        sink += c.run(ops);
+
+      long bytes = counter.get();
+      long start = System.nanoTime();
+      sink += c.run(ops);
+      long nanos = System.nanoTime() - start;
+      long allocated = counter.since(bytes);
+
+      System.out.println(String.format(Locale.US, "  %-36s %7.2fns/op, %s", c.name, (double) nanos / ops,
+        !counter.isAvailable() ? "allocations unknown" : String.format(Locale.US, "%.3f bytes/op (%d bytes in all)", (double) allocated / ops, allocated)));
+    }
+
+    System.out.println(String.format(Locale.US, "(checksum %.1f)", sink));
+  }
+}
@@ -0,0 +1,137 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.GpuMemoryBudget;
+
+import java.util.Locale;
+import java.util.Random;
+
+// Runs the GpuMemoryBudget through a made up game, on a plain JVM, and prints
+// how it copes with budgets of different sizes.
+//
+// There are 'textures' textures, from 32x32 to 512x512 (RGBA), and every frame
+// draws a few of them: most from a small set that slowly changes (the current
+// level), some at random. The textures are 'loaded' right away here, so a miss
+// costs one upload. A couple of buffers are counted too, and never evicted.
+//
+// Then, with the whole set resident (and just under the budget), each
+// onTrimMemory level is sent once, to show how much of it is given back.
+//
+// Usage: MemoryBudgetReport [textures] [frames] [textures per frame]
+public class MemoryBudgetReport
+{
+  public static void main(String[] args)
+  {
+    int textures = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int frames = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+    int perFrame = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+
+    Random r = new Random(42);
+    int[] sizes = new int[textures];
+    long all = 0;
+
+    for (int i = 0; i < textures; i++)
+    {
+      int side = 32 << r.nextInt(5);
+      sizes[i] = side * side * 4;
+      all += sizes[i];
+    }
+
+    System.out.println(String.format(Locale.US, "%d textures, %dKB in all; %d frames drawing %d of them",
+      textures, all / 1024, frames, perFrame));
+
+    for (int percent : new int[] {100, 50, 25, 10})
+    {
+      long budgetBytes = all * percent / 100;
+      GpuMemoryBudget budget = new GpuMemoryBudget(budgetBytes);
+      Scene scene = new Scene(budget, sizes);
+
+      long start = System.nanoTime();
+      scene.run(frames, perFrame, new Random(7));
+      long nanos = System.nanoTime() - start;
+
+      System.out.println(String.format(Locale.US, "  budget %3d%% (%dKB): %.1f%% hits, %d evictions, %.1f uploads per frame, peak %dKB, %.3fus per use",
+        percent, budgetBytes / 1024, 100.0 * budget.getHitCount() / (budget.getHitCount() + budget.getMissCount()),
+        budget.getEvictionCount(), (double) budget.getReloadCount() / frames, budget.getPeakBytes() / 1024,
+        nanos / 1000.0 / ((long) frames * perFrame)));
+    }
+
+    int[] levels = {
+      GpuMemoryBudget.TRIM_MEMORY_RUNNING_MODERATE, GpuMemoryBudget.TRIM_MEMORY_RUNNING_LOW, GpuMemoryBudget.TRIM_MEMORY_RUNNING_CRITICAL,
+      GpuMemoryBudget.TRIM_MEMORY_UI_HIDDEN, GpuMemoryBudget.TRIM_MEMORY_BACKGROUND, GpuMemoryBudget.TRIM_MEMORY_MODERATE,
+      GpuMemoryBudget.TRIM_MEMORY_COMPLETE
+    };
+
+    System.out.println("onTrimMemory, with everything resident and a frame in progress:");
+
+    for (int level : levels)
+    {
+      GpuMemoryBudget budget = new GpuMemoryBudget(all + 1024 * 1024);
+      Scene scene = new Scene(budget, sizes);
+      scene.run(1, perFrame, new Random(7));
+
+      long before = budget.getResidentBytes();
+      long freed = budget.onTrimMemory(level);
+
+      System.out.println(String.format(Locale.US, "  level %2d: %dKB freed, %dKB left (%d resident)",
+        level, freed / 1024, before / 1024 - freed / 1024, budget.getResidentCount()));
+    }
+  }
+
+  // The 'textures' of the game; evicting and loading them again is instant
+  private static class Scene
+  {
+    private final GpuMemoryBudget budget;
+    private final int[] sizes;
+    private final GpuMemoryBudget.Entry[] entries;
+
+    Scene(GpuMemoryBudget budget, int[] sizes)
+    {
+      this.budget = budget;
+      this.sizes = sizes;
+      this.entries = new GpuMemoryBudget.Entry[sizes.length];
+
+      budget.add("vertices", 64 * 1024, null);
+      budget.add("stream", 3 * 256 * 1024, null);
+
+      // one texture loaded per frame
+      for (int i = 0; i < sizes.length; i++)
+      {
+        final int texture = i;
+        budget.beginFrame();
+        entries[i] = budget.add("texture " + i, sizes[i], new GpuMemoryBudget.Evictable()
+        {
+          @Override
+          public void evict()
+          {
+          }
+
+          @Override
+          public void reload()
+          {
+            entries[texture].setResident(Scene.this.sizes[texture]);
+          }
+        });
+      }
+    }
+
+    void run(int frames, int perFrame, Random r)
+    {
+      int level = 0;
+
+      for (int f = 0; f < frames; f++)
+      {
+        budget.beginFrame();
+
+        // a new level every 500 frames: a window of 16 textures, moving on
+        if (f % 500 == 0)
+          level = r.nextInt(sizes.length);
+
+        for (int i = 0; i < perFrame; i++)
+        {
+          int texture = r.nextInt(10) < 8 ? (level + r.nextInt(16)) % sizes.length : r.nextInt(sizes.length);
+          entries[texture].use();
+        }
+      }
+    }
+  }
+}
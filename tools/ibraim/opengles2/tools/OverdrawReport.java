@@ -0,0 +1,72 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.Camera2D;
+import ibraim.opengles2.OverdrawRasterizer;
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.ShaderProgram;
+import ibraim.opengles2.SpriteBatch;
+import android.opengl.GLES20;
+
+import java.util.Locale;
+import java.util.Random;
+
+// Measures the overdraw of the Texture sample's stress scene, without a device.
+//
+// The scene is drawn with the very same SpriteBatch, on a RecordingGLES with an
+// OverdrawRasterizer, and the numbers of the frame are printed.
+//
+// Usage: OverdrawReport [sprites] [width] [height]
+public class OverdrawReport
+{
+  private static final float SPRITE_SIZE = 64f;
+
+  public static void main(String[] args)
+  {
+    int sprites = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    int width = args.length > 1 ? Integer.parseInt(args[1]) : 480;
+    int height = args.length > 2 ? Integer.parseInt(args[2]) : 800;
+
+    RecordingGLES gles = new RecordingGLES();
+    OverdrawRasterizer rasterizer = new OverdrawRasterizer();
+    gles.setRasterizer(rasterizer);
+
+    // the attributes and uniforms of the Texture sample
+    ShaderProgram program = new ShaderProgram(gles,
+      "uniform mat4 uScreen;\n" +
+      "attribute vec2 aPosition;\n" +
+      "attribute vec2 aTexPos;\n" +
+      "varying vec2 vTexPos;\n" +
+      "void main() {\n" +
+      "  vTexPos = aTexPos;\n" +
+      "  gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);\n" +
+      "}",
+      "precision mediump float;\n" +
+      "uniform sampler2D uTexture;\n" +
+      "varying vec2 vTexPos;\n" +
+      "void main(void)\n" +
+      "{\n" +
+      "  gl_FragColor = texture2D(uTexture, vTexPos);\n" +
+      "}");
+    program.use();
+
+    SpriteBatch batch = new SpriteBatch(gles, program, Math.max(1, Math.min(sprites, SpriteBatch.MAX_SPRITES)));
+    Camera2D camera = new Camera2D();
+    camera.setViewport(width, height);
+
+    gles.glViewport(0, 0, width, height);
+    gles.glEnable(GLES20.GL_BLEND);
+    camera.apply(gles, program.getUniform("uScreen"));
+
+    // same scene as the sample: same seed, same places
+    Random r = new Random(42);
+    gles.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    batch.begin();
+    for (int i = 0; i < sprites; i++)
+      batch.draw(1, r.nextFloat() * (width - SPRITE_SIZE), r.nextFloat() * (height - SPRITE_SIZE), SPRITE_SIZE, SPRITE_SIZE);
+    batch.end();
+
+    System.out.println(String.format(Locale.US, "%d sprites on %dx%d: %d fragments (%d blended), %.2f layers per pixel (%.2f where covered), %d at most",
+      sprites, width, height, rasterizer.getFragments(), rasterizer.getBlendedFragments(), rasterizer.getAverageLayers(),
+      rasterizer.getAverageCoveredLayers(), rasterizer.getMaxLayers()));
+  }
+}
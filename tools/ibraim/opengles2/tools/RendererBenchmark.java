@@ -0,0 +1,133 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.EpilepsyScene;
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.Scene;
+import ibraim.opengles2.TextureScene;
+import ibraim.opengles2.Triangle2dScene;
+import ibraim.opengles2.TriangleColorScene;
+
+import java.util.Locale;
+
+// Measures what a frame of each demo costs on the CPU, on a plain JVM.
+//
+// Each demo draws through its Scene: the very code its activity runs on a
+// device, here on a RecordingGLES instead of AndroidGLES. After a warm up (and
+// after the animations it asks for are over, like the fade in of the skull),
+// each scene draws a number of frames, and we print the time per frame, the
+// bytes allocated per frame (see AllocationCounter) and the GL calls per frame
+// that got past the scene's GLStateCache, draw calls apart. There's no GPU
+// here: only the CPU side of a frame is measured. The numbers also go to the
+// JSON of Benchmarks.
+//
+// Usage: RendererBenchmark [frames] [stress sprites]
+public class RendererBenchmark
+{
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+  private static final int WARM_UP_FRAMES = 500;
+
+  // the most frames we wait for an animation to end
+  private static final int MAX_ANIMATION_FRAMES = 100000;
+
+  // Stands for the RenderScheduler: only remembers if an animation is running
+  private static class Scheduler implements Scene.Frames
+  {
+    boolean animating;
+
+    @Override
+    public void invalidate()
+    {
+    }
+
+    @Override
+    public void startAnimation(long intervalMillis)
+    {
+      animating = true;
+    }
+
+    @Override
+    public void stopAnimation()
+    {
+      animating = false;
+    }
+
+    @Override
+    public void onFrameRendered()
+    {
+    }
+  }
+
+  public static void main(String[] args)
+  {
+    int frames = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    int sprites = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    AllocationCounter counter = new AllocationCounter();
+
+    System.out.println(String.format(Locale.US, "%d frames each, %dx%d, %d sprites in stress mode", frames, WIDTH, HEIGHT, sprites));
+
+    for (int i = 0; i < NAMES.length; i++)
+    {
+      RecordingGLES gles = new RecordingGLES();
+      Scheduler scheduler = new Scheduler();
+      Scene scene = create(i, gles, scheduler, sprites);
+
+      scene.onContextCreated(null);
+      scene.onSurfaceChanged(WIDTH, HEIGHT);
+
+      for (int f = 0; f < WARM_UP_FRAMES || (scheduler.animating && f < MAX_ANIMATION_FRAMES); f++)
+        scene.drawFrame();
+
+      gles.resetCounters();
+      long bytes = counter.get();
+      long start = System.nanoTime();
+
+      for (int f = 0; f < frames; f++)
+        scene.drawFrame();
+
+      long nanos = System.nanoTime() - start;
+      long allocated = counter.since(bytes);
+      scene.tearDown();
+
+      double nanosPerFrame = (double) nanos / frames;
+      double callsPerFrame = (double) gles.getCallCount() / frames;
+      double drawCallsPerFrame = (double) gles.getDrawCallCount() / frames;
+
+      System.out.println(String.format(Locale.US, "  %-20s %10.0f ns per frame, %s per frame, %6.1f GL calls per frame (%.1f draw calls)",
+        NAMES[i], nanosPerFrame, counter.isAvailable() ? String.format(Locale.US, "%6.0f bytes", (double) allocated / frames) : "? bytes",
+        callsPerFrame, drawCallsPerFrame));
+
+      String key = NAMES[i].replace(' ', '_');
+      Benchmarks.report(key + ".nanosPerFrame", nanosPerFrame);
+      Benchmarks.report(key + ".glCallsPerFrame", callsPerFrame);
+      Benchmarks.report(key + ".drawCallsPerFrame", drawCallsPerFrame);
+
+      if (counter.isAvailable())
+        Benchmarks.report(key + ".bytesPerFrame", (double) allocated / frames);
+    }
+  }
+
+  private static final String[] NAMES = {"Epilepsy", "Triangle2d", "TriangleColor shapes", "Texture", "Texture stress", "Texture stress mixed"};
+
+  // the scenes, as their activities create them (no frame rate cap, no threads)
+  private static Scene create(int which, RecordingGLES gles, Scheduler scheduler, int sprites)
+  {
+    long budget = 16 * 1024 * 1024;
+
+    switch (which)
+    {
+      case 0:
+        return new EpilepsyScene(gles, scheduler, 0);
+      case 1:
+        return new Triangle2dScene(gles, scheduler);
+      case 2:
+        return new TriangleColorScene(gles, scheduler, true);
+      case 3:
+        return new TextureScene(gles, scheduler, new TextureScene.BlankSource(), 0, false, false, 0, budget, -1);
+      case 4:
+        return new TextureScene(gles, scheduler, new TextureScene.BlankSource(), sprites, false, false, 0, budget, -1);
+      default:
+        return new TextureScene(gles, scheduler, new TextureScene.BlankSource(), sprites, true, false, 0, budget, -1);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.ResourceManifest;
+
+import java.util.Locale;
+
+// Compares rebuilding everything at once after a context loss with the
+// incremental restoring of a ResourceManifest, on a plain JVM.
+//
+// The 'resources' take a fixed time to restore (the CPU just spins): a program
+// and two buffers that every frame needs, some textures on screen and some that
+// aren't yet. A frame takes 2ms to draw, plus whatever was restored in it.
+// Prints, for a few per-frame budgets, the time to the first frame, to
+// everything restored, and the longest frame on the way. All of them are taken
+// from the same start, at the end of the frame where it happened (drawing
+// included): restoring everything at once is done when its first frame is.
+//
+// Usage: RestoreReport [visible textures] [background textures] [ms per texture]
+public class RestoreReport
+{
+  private static final long DRAW_NANOS = 2000000;
+
+  public static void main(String[] args)
+  {
+    int visible = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int background = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    double textureMillis = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+    ResourceManifest manifest = new ResourceManifest();
+    manifest.add("program", ResourceManifest.REQUIRED, work(3));
+    manifest.add("vertices", ResourceManifest.REQUIRED, work(0.5));
+    manifest.add("sprite batch", ResourceManifest.REQUIRED, work(0.5));
+
+    // added out of order on purpose: the manifest sorts them
+    for (int i = 0; i < Math.max(visible, background); i++)
+    {
+      if (i < background)
+        manifest.add("background " + i, ResourceManifest.BACKGROUND, work(textureMillis));
+
+      if (i < visible)
+        manifest.add("texture " + i, ResourceManifest.VISIBLE, work(textureMillis));
+    }
+
+    System.out.println(String.format(Locale.US, "%d resources: 3 required (4ms), %d visible and %d background textures (%.1fms each)",
+      manifest.getCount(), visible, background, textureMillis));
+
+    for (long budgetMillis : new long[] {Long.MAX_VALUE, 16, 8, 4, 1})
+    {
+      manifest.onContextLost();
+      long worst = 0;
+      long firstFrameAt = 0;
+      long visibleAt = 0;
+      long restoredAt = 0;
+      long start = System.nanoTime();
+
+      while (true)
+      {
+        long frameStart = System.nanoTime();
+        boolean left = manifest.restore(budgetMillis == Long.MAX_VALUE ? Long.MAX_VALUE : budgetMillis * 1000000);
+
+        if (manifest.isReady(ResourceManifest.REQUIRED))
+        {
+          spin(DRAW_NANOS);
+          manifest.onFrameRendered();
+        }
+
+        long frameEnd = System.nanoTime();
+
+        if (firstFrameAt == 0 && manifest.isReady(ResourceManifest.REQUIRED))
+          firstFrameAt = frameEnd - start;
+
+        if (visibleAt == 0 && manifest.isReady(ResourceManifest.VISIBLE))
+          visibleAt = frameEnd - start;
+
+        worst = Math.max(worst, frameEnd - frameStart);
+
+        if (!left)
+        {
+          restoredAt = frameEnd - start;
+          break;
+        }
+      }
+
+      System.out.println(String.format(Locale.US, "  %s: first frame after %.1fms, on screen complete after %.1fms, all restored after %.1fms; %d frame(s), %.1fms at most",
+        budgetMillis == Long.MAX_VALUE ? "all at once" : "budget " + budgetMillis + "ms", firstFrameAt / 1e6, visibleAt / 1e6,
+        restoredAt / 1e6, manifest.getRestoreFrames(), worst / 1e6));
+    }
+  }
+
+  private static ResourceManifest.Restorable work(final double millis)
+  {
+    return new ResourceManifest.Restorable()
+    {
+      @Override
+      public boolean restore()
+      {
+        spin((long) (millis * 1000000));
+        return true;
+      }
+    };
+  }
+
+  private static void spin(long nanos)
+  {
+    long end = System.nanoTime() + nanos;
+
+    while (System.nanoTime() < end)
+    {
+      // busy, like a real upload would keep the GL thread
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.ShaderProgram;
+import ibraim.opengles2.ShaderVariants;
+import ibraim.opengles2.Shape;
+import ibraim.opengles2.ShapeBatch;
+import ibraim.opengles2.ShapeTessellator;
+
+import java.util.Locale;
+import java.util.Random;
+
+// Measures the ShapeTessellator and the ShapeBatch on a plain JVM.
+//
+// First, how fast each kind of shape is tessellated (no cache), in triangles
+// per second. Then a made up scene, drawn for a number of frames: mostly shapes
+// that never change (a few dozen different ones, drawn many times), plus some
+// circles whose radius changes every frame. It's drawn three ways: without the
+// cache, with everything going through the cache, and with the changing
+// circles skipping it. Prints the cache hit rate, the time and the bytes
+// allocated per frame of each (see AllocationCounter), and the draw calls the
+// ShapeBatch needed.
+//
+// Usage: ShapeBenchmark [frames] [shapes per frame] [changing shapes per frame]
+public class ShapeBenchmark
+{
+  private static final int DISTINCT = 48;
+
+  public static void main(String[] args)
+  {
+    int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int perFrame = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+    int changing = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+    System.out.println("Tessellation, no cache:");
+    Random r = new Random(42);
+    float[][] polygons = new float[64][];
+
+    for (int i = 0; i < polygons.length; i++)
+      polygons[i] = star(r, 5 + r.nextInt(28));
+
+    for (int kind = 0; kind < 5; kind++)
+    {
+      ShapeTessellator tessellator = new ShapeTessellator();
+
+      // warm up, then measure
+      for (int pass = 0; pass < 2; pass++)
+      {
+        long triangles = 0;
+        int count = pass == 0 ? 2000 : 20000;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < count; i++)
+          triangles += tessellate(tessellator, kind, i, polygons).getTriangleCount();
+
+        long nanos = System.nanoTime() - start;
+
+        if (pass == 1)
+          System.out.println(String.format(Locale.US, "  %-12s %6.1f triangles per shape, %8.2fM triangles/s, %6.2fus per shape",
+            NAMES[kind], (double) triangles / count, triangles * 1e3 / nanos, nanos / 1e3 / count));
+      }
+    }
+
+    // the COLOR variant, the program of the TriangleColor sample
+    RecordingGLES gles = new RecordingGLES();
+    ShaderProgram program = new ShaderProgram(gles, ShaderVariants.vertexSource(ShaderVariants.COLOR), ShaderVariants.fragmentSource(ShaderVariants.COLOR));
+    program.use();
+    ShapeBatch batch = new ShapeBatch(gles, program, 8192);
+    Random scene = new Random();
+
+    System.out.println(String.format(Locale.US, "Scene: %d frames, %d shapes per frame (%d distinct that never change, %d changing every frame)",
+      frames, perFrame, DISTINCT, changing));
+
+    AllocationCounter counter = new AllocationCounter();
+
+    for (int mode = 0; mode < 3; mode++)
+    {
+      ShapeTessellator tessellator = new ShapeTessellator();
+      gles.resetCounters();
+      long triangles = 0;
+      long bytes = counter.get();
+      long start = System.nanoTime();
+
+      for (int f = 0; f < frames; f++)
+      {
+        scene.setSeed(7);
+        batch.begin();
+
+        for (int i = 0; i < perFrame; i++)
+        {
+          Shape shape;
+
+          if (i < changing)
+          {
+            // never the same radius twice (until 24000 of them)
+            float radius = 8 + (f * changing + i) % 24000 / 1000f;
+            shape = mode == 1 ? tessellator.circle(radius) : tessellator.tessellateCircle(radius);
+          }
+          else
+          {
+            int which = scene.nextInt(DISTINCT);
+            shape = mode == 0 ? tessellate(tessellator, which % 5, which, polygons) : cached(tessellator, which % 5, which, polygons);
+          }
+
+          batch.draw(shape, scene.nextFloat() * 480, scene.nextFloat() * 800, 1f, scene.nextFloat() * 6.28f,
+            scene.nextFloat(), scene.nextFloat(), scene.nextFloat(), 1f);
+        }
+
+        batch.end();
+        triangles += batch.getTriangleCount();
+      }
+
+      long nanos = System.nanoTime() - start;
+      long allocated = counter.since(bytes);
+      long lookups = tessellator.getHitCount() + tessellator.getMissCount();
+
+      System.out.println(String.format(Locale.US, "  %-26s %s, %.2fms per frame (%.2fms tessellating), %s per frame, %.0f triangles and %.1f draw calls per frame, %.1fM triangles/s",
+        MODES[mode], lookups == 0 ? "no cache" : String.format(Locale.US, "%5.1f%% hits (%d cached, %d evicted)", 100.0 * tessellator.getHitCount() / lookups,
+        tessellator.getCachedCount(), tessellator.getEvictionCount()), nanos / 1e6 / frames, tessellator.getTessellateTimeNanos() / 1e6 / frames,
+        counter.isAvailable() ? String.format(Locale.US, "%.0f bytes", (double) allocated / frames) : "? bytes",
+        (double) triangles / frames, (double) gles.getDrawCallCount() / frames, triangles * 1e3 / nanos));
+    }
+
+    batch.tearDown();
+  }
+
+  private static final String[] NAMES = {"circle", "rounded rect", "polygon", "polyline", "arc"};
+  private static final String[] MODES = {"no cache:", "cache everything:", "cache only what's static:"};
+
+  // shape 'i' of a kind, without the cache...
+  private static Shape tessellate(ShapeTessellator t, int kind, int i, float[][] polygons)
+  {
+    float size = 4 + (i % 16) * 8;
+
+    switch (kind)
+    {
+      case 0:
+        return t.tessellateCircle(size);
+      case 1:
+        return t.tessellateRoundedRect(size * 2, size, size / 4);
+      case 2:
+        return t.tessellatePolygon(polygons[i % polygons.length]);
+      case 3:
+        return t.tessellatePolyline(polygons[i % polygons.length], 1 + i % 4, (i & 1) == 0);
+      default:
+        return t.tessellateArc(size, 0, 1 + (i % 5), 2 + i % 3);
+    }
+  }
+
+  // ...and with it
+  private static Shape cached(ShapeTessellator t, int kind, int i, float[][] polygons)
+  {
+    float size = 4 + (i % 16) * 8;
+
+    switch (kind)
+    {
+      case 0:
+        return t.circle(size);
+      case 1:
+        return t.roundedRect(size * 2, size, size / 4);
+      case 2:
+        return t.polygon(polygons[i % polygons.length]);
+      case 3:
+        return t.polyline(polygons[i % polygons.length], 1 + i % 4, (i & 1) == 0);
+      default:
+        return t.arc(size, 0, 1 + (i % 5), 2 + i % 3);
+    }
+  }
+
+  // a random star (concave, but simple): 'n' points at random distances
+  private static float[] star(Random r, int n)
+  {
+    float[] points = new float[n * 2];
+
+    for (int i = 0; i < n; i++)
+    {
+      double angle = 2 * Math.PI * i / n;
+      double distance = 10 + r.nextDouble() * 50;
+      points[i * 2] = (float) (distance * Math.cos(angle));
+      points[i * 2 + 1] = (float) (distance * Math.sin(angle));
+    }
+
+    return points;
+  }
+}
@@ -0,0 +1,122 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.ParallelSpriteBuilder;
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.ShaderProgram;
+import ibraim.opengles2.ShaderVariants;
+import ibraim.opengles2.SpriteBatch;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+// Measures how long building the vertices of lots of rotated sprites takes,
+// on a plain JVM: with a ParallelSpriteBuilder on 1, 2, 4... threads, up to
+// twice the cores of this machine. For reference, the same number of sprites
+// (not rotated: it can't) through SpriteBatch.draw, on a RecordingGLES.
+//
+// Every build is timed, after a warm up, and the median is printed with the
+// speedup over one thread. The vertices of every thread count are compared
+// with the single threaded ones: they must be exactly the same.
+//
+// Usage: SpriteBuildBenchmark [sprites] [builds] [max threads]
+public class SpriteBuildBenchmark
+{
+  public static void main(String[] args)
+  {
+    int sprites = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+    int builds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int cores = Runtime.getRuntime().availableProcessors();
+    int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(4, cores * 2);
+
+    // random sprites, all rotated
+    Random r = new Random(42);
+    float[] input = new float[sprites * ParallelSpriteBuilder.INPUT_FLOATS];
+
+    for (int i = 0; i < input.length; i += ParallelSpriteBuilder.INPUT_FLOATS)
+    {
+      input[i] = r.nextFloat() * 1024;
+      input[i + 1] = r.nextFloat() * 1024;
+      input[i + 2] = 16 + r.nextFloat() * 48;
+      input[i + 3] = 16 + r.nextFloat() * 48;
+      input[i + 4] = r.nextFloat() * 6.28f;
+      input[i + 5] = 0f;
+      input[i + 6] = 0f;
+      input[i + 7] = 1f;
+      input[i + 8] = 1f;
+    }
+
+    System.out.println(String.format(Locale.US, "%d rotated sprites, %d builds, %d core(s)", sprites, builds, cores));
+
+    // the reference: SpriteBatch, one draw() per sprite
+    RecordingGLES gles = new RecordingGLES();
+    ShaderProgram program = new ShaderProgram(gles, ShaderVariants.vertexSource(ShaderVariants.TEXTURE), ShaderVariants.fragmentSource(ShaderVariants.TEXTURE));
+    program.use();
+    SpriteBatch batch = new SpriteBatch(gles, program, Math.min(sprites, SpriteBatch.MAX_SPRITES));
+    long[] times = new long[builds];
+
+    for (int b = -builds / 10; b < builds; b++)
+    {
+      long start = System.nanoTime();
+      batch.begin();
+
+      for (int i = 0; i < input.length; i += ParallelSpriteBuilder.INPUT_FLOATS)
+        batch.draw(1, input[i], input[i + 1], input[i + 2], input[i + 3]);
+
+      batch.end();
+
+      if (b >= 0)
+        times[b] = System.nanoTime() - start;
+    }
+
+    System.out.println(String.format(Locale.US, "  SpriteBatch.draw:  %7.2fms per frame (not rotated, upload included)", median(times) / 1e6));
+    batch.tearDown();
+
+    FloatBuffer reference = null;
+    double single = 0;
+
+    for (int threads = 1; threads <= maxThreads; threads *= 2)
+    {
+      ParallelSpriteBuilder builder = new ParallelSpriteBuilder(sprites, threads);
+
+      for (int b = -builds / 10; b < builds; b++)
+      {
+        long start = System.nanoTime();
+        builder.build(input, sprites);
+
+        if (b >= 0)
+          times[b] = System.nanoTime() - start;
+      }
+
+      double median = median(times);
+
+      if (threads == 1)
+      {
+        single = median;
+        reference = copy(builder.build(input, sprites));
+      }
+
+      boolean same = reference.equals(builder.build(input, sprites));
+      builder.shutdown();
+
+      System.out.println(String.format(Locale.US, "  %2d thread(s):      %7.2fms per build, %5.2fx one thread, %4.1fM sprites/s%s",
+        threads, median / 1e6, single / median, sprites * 1e3 / median, same ? "" : " (DIFFERENT VERTICES!)"));
+    }
+  }
+
+  private static double median(long[] times)
+  {
+    long[] sorted = times.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  private static FloatBuffer copy(FloatBuffer b)
+  {
+    FloatBuffer copy = FloatBuffer.allocate(b.remaining());
+    copy.put(b.duplicate());
+    copy.flip();
+    return copy;
+  }
+}
@@ -0,0 +1,108 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.Camera2D;
+import ibraim.opengles2.RecordingGLES;
+import ibraim.opengles2.ShaderProgram;
+import ibraim.opengles2.TileMap;
+
+import java.util.Locale;
+import java.util.Random;
+
+// Scrolls a camera across a big TileMap, without a device, and prints what it
+// cost: chunk builds, visible chunks and draw calls per frame, and the bytes
+// sent to the GPU (compared with sending the whole map every frame).
+//
+// The camera goes diagonally across the map, zooming out to half size and back,
+// and every 10 frames a tile on the screen changes (so its chunk is built again).
+//
+// Usage: TileMapBenchmark [width] [height] [frames] [screen width] [screen height]
+public class TileMapBenchmark
+{
+  private static final int TILE_SIZE = 32;
+  private static final int TILESET_SIZE = 8;    // 8x8 tiles in the tileset
+
+  public static void main(String[] args)
+  {
+    int width = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int height = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int frames = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+    int screenWidth = args.length > 3 ? Integer.parseInt(args[3]) : 480;
+    int screenHeight = args.length > 4 ? Integer.parseInt(args[4]) : 800;
+
+    // random tiles, 1 in 10 empty
+    Random r = new Random(42);
+    long start = System.nanoTime();
+    TileMap map = new TileMap(width, height, TILE_SIZE, TILESET_SIZE, TILESET_SIZE);
+
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        map.setTile(x, y, r.nextInt(10) == 0 ? TileMap.EMPTY : r.nextInt(TILESET_SIZE * TILESET_SIZE));
+
+    long fillNanos = System.nanoTime() - start;
+
+    // the attributes and uniforms of the Texture sample
+    RecordingGLES gles = new RecordingGLES();
+    ShaderProgram program = new ShaderProgram(gles,
+      "uniform mat4 uScreen;\n" +
+      "attribute vec2 aPosition;\n" +
+      "attribute vec2 aTexPos;\n" +
+      "varying vec2 vTexPos;\n" +
+      "void main() {\n" +
+      "  vTexPos = aTexPos;\n" +
+      "  gl_Position = uScreen * vec4(aPosition.xy, 0.0, 1.0);\n" +
+      "}",
+      "precision mediump float;\n" +
+      "uniform sampler2D uTexture;\n" +
+      "varying vec2 vTexPos;\n" +
+      "void main(void)\n" +
+      "{\n" +
+      "  gl_FragColor = texture2D(uTexture, vTexPos);\n" +
+      "}");
+    program.use();
+    map.setup(gles, program);
+
+    Camera2D camera = new Camera2D();
+    camera.setViewport(screenWidth, screenHeight);
+    int uScreen = program.getUniform("uScreen");
+
+    float travelX = width * TILE_SIZE - screenWidth;
+    float travelY = height * TILE_SIZE - screenHeight;
+    long visible = 0, drawCalls = 0, maxDrawCalls = 0;
+    long bytesBefore = gles.getBytesUploaded();
+
+    start = System.nanoTime();
+    for (int f = 0; f < frames; f++)
+    {
+      float t = (float) f / Math.max(1, frames - 1);
+      camera.setPosition(t * travelX, t * travelY);
+      camera.setZoom(1f - 0.5f * (float) Math.sin(t * Math.PI));
+      camera.apply(gles, uScreen);
+
+      if (f % 10 == 0)
+      {
+        int x = Math.min(width - 1, (int) (camera.getX() / TILE_SIZE) + r.nextInt(screenWidth / TILE_SIZE));
+        int y = Math.min(height - 1, (int) (camera.getY() / TILE_SIZE) + r.nextInt(screenHeight / TILE_SIZE));
+        map.setTile(x, y, (map.getTile(x, y) + 1) % (TILESET_SIZE * TILESET_SIZE));
+      }
+
+      map.draw(camera);
+      visible += map.getVisibleChunks();
+      drawCalls += map.getDrawCalls();
+      maxDrawCalls = Math.max(maxDrawCalls, map.getDrawCalls());
+    }
+    long frameNanos = System.nanoTime() - start;
+
+    long streamed = gles.getBytesUploaded() - bytesBefore;
+    long wholeMap = (long) width * height * 4 * map.getFormat().getStride();
+
+    System.out.println(String.format(Locale.US, "%dx%d tiles (%d chunks), %d frames on %dx%d, filled in %.1fms",
+      width, height, map.getChunkCount(), frames, screenWidth, screenHeight, fillNanos / 1e6));
+    System.out.println(String.format(Locale.US, "  chunk builds: %d (%d chunks on the GPU, %dKB), %.3fms on average, %.3fms at most",
+      map.getBuildCount(), map.getBuiltChunkCount(), map.getBytes() / 1024, map.getBuildTimeNanos() / 1e6 / Math.max(1, map.getBuildCount()),
+      map.getMaxBuildTimeNanos() / 1e6));
+    System.out.println(String.format(Locale.US, "  per frame: %.1f visible chunks, %.1f draw calls (%d at most), %.3fms of CPU",
+      (double) visible / frames, (double) drawCalls / frames, maxDrawCalls, frameNanos / 1e6 / frames));
+    System.out.println(String.format(Locale.US, "  uploaded: %.1fKB per frame, instead of %.1fMB for the whole map",
+      streamed / 1024.0 / frames, wholeMap / 1024.0 / 1024.0));
+  }
+}
@@ -0,0 +1,120 @@
+package ibraim.opengles2.tools;
+
+import ibraim.opengles2.VertexFormat;
+import ibraim.opengles2.VertexWriter;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+// Compares the compact vertex formats of the TriangleColor and Texture samples
+// with the all-float layout they used before, without a device.
+//
+// For each layout it prints the bytes per vertex (what the GPU reads, and what
+// an upload sends) and how fast the CPU packs vertices: floats go through a
+// FloatBuffer, like VertexBuffer and SpriteBatch do; the compact formats go
+// through a VertexWriter. Each one runs a few rounds first, so the JIT is done
+// with it before the clock starts.
+//
+// Usage: VertexFormatBenchmark [vertices] [rounds]
+public class VertexFormatBenchmark
+{
+  private static final int WARMUP_ROUNDS = 20;
+
+  public static void main(String[] args)
+  {
+    int vertices = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+    // random, but the same on every run: positions in pixels, values in 0..1
+    Random r = new Random(42);
+    float[] source = new float[vertices * 5];
+    for (int i = 0; i < source.length; i += 5)
+    {
+      source[i] = r.nextInt(800);
+      source[i + 1] = r.nextInt(800);
+      source[i + 2] = r.nextFloat();
+      source[i + 3] = r.nextFloat();
+      source[i + 4] = r.nextFloat();
+    }
+
+    // XY + RGB, like TriangleColor
+    run("color (XY + RGB)", source, vertices, rounds, 3, new VertexFormat(
+      new VertexFormat.Attribute("aPosition", 2, GLES20.GL_SHORT, false),
+      new VertexFormat.Attribute("aColor", 3, GLES20.GL_UNSIGNED_BYTE, true)));
+
+    // XY + UV, like Texture
+    run("texture (XY + UV)", source, vertices, rounds, 2, new VertexFormat(
+      new VertexFormat.Attribute("aPosition", 2, GLES20.GL_SHORT, false),
+      new VertexFormat.Attribute("aTexPos", 2, GLES20.GL_UNSIGNED_BYTE, true)));
+  }
+
+  // 'components' is the size of the second attribute (3 for a color, 2 for UVs)
+  private static void run(String name, float[] source, int vertices, int rounds, int components, VertexFormat format)
+  {
+    int floatStride = (2 + components) * 4;
+    FloatBuffer floats = ByteBuffer.allocateDirect(vertices * floatStride).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    VertexWriter writer = new VertexWriter(format, vertices);
+
+    // anything read back goes here, so the JIT can't skip the work
+    float sink = 0;
+
+    for (int i = 0; i < WARMUP_ROUNDS; i++)
+      sink += packFloats(floats, source, vertices, components) + packCompact(writer, source, vertices, components);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      sink += packFloats(floats, source, vertices, components);
+    long floatNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      sink += packCompact(writer, source, vertices, components);
+    long compactNanos = System.nanoTime() - start;
+
+    double total = (double) vertices * rounds;
+    System.out.println(String.format(Locale.US, "%s, %d vertices x %d rounds (checksum %.1f)", name, vertices, rounds, sink));
+    System.out.println(String.format(Locale.US, "  all floats: %2d bytes/vertex, %7.2f Mvertices/s, %7.1f MB/s",
+      floatStride, total * 1000 / floatNanos, total * floatStride * 1000 / floatNanos));
+    System.out.println(String.format(Locale.US, "  compact:    %2d bytes/vertex, %7.2f Mvertices/s, %7.1f MB/s (%.1fx less to send)",
+      format.getStride(), total * 1000 / compactNanos, total * format.getStride() * 1000 / compactNanos,
+      (double) floatStride / format.getStride()));
+  }
+
+  private static float packFloats(FloatBuffer floats, float[] source, int vertices, int components)
+  {
+    floats.clear();
+
+    for (int v = 0, i = 0; v < vertices; v++, i += 5)
+    {
+      floats.put(source[i]).put(source[i + 1]);
+
+      for (int c = 0; c < components; c++)
+        floats.put(source[i + 2 + c]);
+    }
+
+    return floats.get(floats.position() - 1);
+  }
+
+  private static float packCompact(VertexWriter writer, float[] source, int vertices, int components)
+  {
+    writer.clear();
+
+    for (int v = 0, i = 0; v < vertices; v++, i += 5)
+    {
+      writer.put(0, source[i], source[i + 1]);
+
+      if (components == 3)
+        writer.put(1, source[i + 2], source[i + 3], source[i + 4]);
+      else
+        writer.put(1, source[i + 2], source[i + 3]);
+
+      writer.next();
+    }
+
+    return writer.getBuffer().get(writer.getSizeInBytes() - 1);
+  }
+}